@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger;
+
+/**
+ * Context of an add entry operation, passed to {@link ManagedLedger#asyncAddEntry}, that records the time the entry
+ * spent in each phase of the write.
+ */
+public interface AddEntryLatencyRecorder {
+
+    /**
+     * Record the latency of an add entry operation, before its callback is completed.
+     *
+     * @param queuedNanos time the entry waited in the managed ledger before being written to the ledger, e.g. while
+     *                    the ledger was being rolled over
+     * @param ledgerWriteNanos time spent writing the entry to the ledger
+     */
+    void recordAddEntryLatency(long queuedNanos, long ledgerWriteNanos);
+}
@@ -19,11 +19,13 @@
 package org.apache.bookkeeper.mledger;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import io.netty.buffer.ByteBuf;
 import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 import lombok.Getter;
 import lombok.Setter;
 import org.apache.bookkeeper.client.EnsemblePlacementPolicy;
@@ -46,6 +48,8 @@ public class ManagedLedgerConfig {
     private int maxUnackedRangesToPersist = 10000;
     private int maxBatchDeletedIndexToPersist = 10000;
     private boolean persistentUnackedRangesWithMultipleEntriesEnabled = false;
+    private boolean persistentUnackedRangesIncrementalEnabled = false;
+    private int persistentUnackedRangesCompactionThreshold = 100;
     private boolean deletionAtBatchIndexLevelEnabled = true;
     private int maxUnackedRangesToPersistInMetadataStore = 1000;
     private int maxEntriesPerLedger = 50000;
@@ -65,12 +69,14 @@ public class ManagedLedgerConfig {
     private long retentionSizeInMB = 0;
     private boolean autoSkipNonRecoverableData;
     private boolean lazyCursorRecovery = false;
+    private int maxConcurrentCursorRecoveries = 0;
     private long metadataOperationsTimeoutSeconds = 60;
     private long readEntryTimeoutSeconds = 120;
     private long addEntryTimeoutSeconds = 120;
     private DigestType digestType = DigestType.CRC32C;
     private byte[] password = "".getBytes(StandardCharsets.UTF_8);
     private boolean unackedRangesOpenCacheSetEnabled = true;
+    private boolean unackedRangesRoaringBitmapEnabled = false;
     private Class<? extends EnsemblePlacementPolicy>  bookKeeperEnsemblePlacementPolicyClassName;
     private Map<String, Object> bookKeeperEnsemblePlacementPolicyProperties;
     private LedgerOffloader ledgerOffloader = NullLedgerOffloader.INSTANCE;
@@ -85,6 +91,16 @@ public class ManagedLedgerConfig {
     private int minimumBacklogCursorsForCaching = 0;
     private int minimumBacklogEntriesForCaching = 1000;
     private int maxBacklogBetweenCursorsForCaching = 1000;
+    private boolean cacheRetentionByActiveCursors = false;
+    private long cacheRetentionMaxSizeBytes = 32 * 1024 * 1024;
+    private boolean readAheadEnabled = false;
+    private int readAheadMaxEntries = 1000;
+    private boolean tailFanOutEnabled = false;
+    private String readsInFlightGroup;
+    private long timestampIndexIntervalMillis = 0;
+    private ToLongFunction<ByteBuf> entryTimestampExtractor;
+    private double standbyLedgerThreshold = 0;
+    private boolean backlogConsistencyCheckEnabled = false;
 
     @Getter
     @Setter
@@ -109,8 +125,9 @@ public class ManagedLedgerConfig {
     /**
      * Whether to recover cursors lazily when trying to recover a
      * managed ledger backing a persistent topic. It can improve write availability of topics.
-     * The caveat is now when recovered ledger is ready to write we're not sure if all old consumers last mark
-     * delete position can be recovered or not.
+     * Only the mark delete positions stored in the cursors meta-data are read before the managed ledger is ready,
+     * the ledgers are not trimmed past them until the cursors are recovered. The cursors are recovered in the
+     * background, or right away when they are opened.
      * @param lazyCursorRecovery if enable lazy cursor recovery.
      */
     public ManagedLedgerConfig setLazyCursorRecovery(boolean lazyCursorRecovery) {
@@ -118,6 +135,23 @@ public class ManagedLedgerConfig {
         return this;
     }
 
+    /**
+     * @return the maximum number of cursors recovered concurrently when the managed ledger is opened
+     */
+    public int getMaxConcurrentCursorRecoveries() {
+        return maxConcurrentCursorRecoveries;
+    }
+
+    /**
+     * Set the maximum number of cursors recovered concurrently when the managed ledger is opened, 0 for no limit.
+     *
+     * @param maxConcurrentCursorRecoveries
+     */
+    public ManagedLedgerConfig setMaxConcurrentCursorRecoveries(int maxConcurrentCursorRecoveries) {
+        this.maxConcurrentCursorRecoveries = maxConcurrentCursorRecoveries;
+        return this;
+    }
+
     /**
      * @return the maxEntriesPerLedger
      */
@@ -293,6 +327,20 @@ public class ManagedLedgerConfig {
         return this;
     }
 
+    /**
+     * should use {@link org.apache.bookkeeper.mledger.impl.RoaringLongPairRangeSet} to store unacked ranges. When
+     * enabled, it takes precedence over {@link #isUnackedRangesOpenCacheSetEnabled()}.
+     * @return
+     */
+    public boolean isUnackedRangesRoaringBitmapEnabled() {
+        return unackedRangesRoaringBitmapEnabled;
+    }
+
+    public ManagedLedgerConfig setUnackedRangesRoaringBitmapEnabled(boolean unackedRangesRoaringBitmapEnabled) {
+        this.unackedRangesRoaringBitmapEnabled = unackedRangesRoaringBitmapEnabled;
+        return this;
+    }
+
     /**
      * @return the metadataEnsemblesize
      */
@@ -487,6 +535,44 @@ public class ManagedLedgerConfig {
         this.persistentUnackedRangesWithMultipleEntriesEnabled = multipleEntriesEnabled;
     }
 
+    /**
+     * @return whether the individually deleted messages are persisted in the cursor ledger as compressed bitmaps,
+     *         appending only the acknowledgments since the previous update in each entry
+     */
+    public boolean isPersistentUnackedRangesIncrementalEnabled() {
+        return persistentUnackedRangesIncrementalEnabled;
+    }
+
+    /**
+     * @param persistentUnackedRangesIncrementalEnabled
+     *            whether the individually deleted messages are persisted in the cursor ledger as compressed bitmaps,
+     *            appending only the acknowledgments since the previous update in each entry
+     */
+    public ManagedLedgerConfig setPersistentUnackedRangesIncrementalEnabled(
+            boolean persistentUnackedRangesIncrementalEnabled) {
+        this.persistentUnackedRangesIncrementalEnabled = persistentUnackedRangesIncrementalEnabled;
+        return this;
+    }
+
+    /**
+     * @return the number of incremental updates appended to the cursor ledger after which the full set of
+     *         individually deleted messages is written again
+     */
+    public int getPersistentUnackedRangesCompactionThreshold() {
+        return persistentUnackedRangesCompactionThreshold;
+    }
+
+    /**
+     * @param persistentUnackedRangesCompactionThreshold
+     *            the number of incremental updates appended to the cursor ledger after which the full set of
+     *            individually deleted messages is written again
+     */
+    public ManagedLedgerConfig setPersistentUnackedRangesCompactionThreshold(
+            int persistentUnackedRangesCompactionThreshold) {
+        this.persistentUnackedRangesCompactionThreshold = persistentUnackedRangesCompactionThreshold;
+        return this;
+    }
+
     /**
      * @param maxUnackedRangesToPersist
      *            max unacked message ranges that will be persisted and receverd.
@@ -748,6 +834,201 @@ public class ManagedLedgerConfig {
         this.maxBacklogBetweenCursorsForCaching = maxBacklogBetweenCursorsForCaching;
     }
 
+    /**
+     * Whether the cached entries between the slowest active cursor and the write position are retained, instead of
+     * being evicted once they're older than the cache eviction time threshold.
+     *
+     * @return
+     */
+    public boolean isCacheRetentionByActiveCursors() {
+        return cacheRetentionByActiveCursors;
+    }
+
+    /**
+     * Set whether the cached entries not yet read by all the active cursors should be retained.
+     *
+     * @param cacheRetentionByActiveCursors
+     */
+    public void setCacheRetentionByActiveCursors(boolean cacheRetentionByActiveCursors) {
+        this.cacheRetentionByActiveCursors = cacheRetentionByActiveCursors;
+    }
+
+    /**
+     * Max size of the entries retained in cache for the active cursors of this managed ledger. When the retained
+     * entries exceed it, the oldest ones are evicted.
+     *
+     * @return
+     */
+    public long getCacheRetentionMaxSizeBytes() {
+        return cacheRetentionMaxSizeBytes;
+    }
+
+    /**
+     * Set the max size of the entries retained in cache for the active cursors.
+     *
+     * @param cacheRetentionMaxSizeBytes
+     */
+    public void setCacheRetentionMaxSizeBytes(long cacheRetentionMaxSizeBytes) {
+        this.cacheRetentionMaxSizeBytes = cacheRetentionMaxSizeBytes;
+    }
+
+    /**
+     * Whether the entries following the reads of a cursor catching up on its backlog are prefetched in the entry
+     * cache. When the caching of the backlog reads is enabled, with {@link #getMinimumBacklogCursorsForCaching()},
+     * only the cursors whose reads are cached read ahead.
+     *
+     * @return
+     */
+    public boolean isReadAheadEnabled() {
+        return readAheadEnabled;
+    }
+
+    /**
+     * Set whether the entries following the reads of a cursor catching up on its backlog are prefetched in the entry
+     * cache.
+     *
+     * @param readAheadEnabled
+     */
+    public void setReadAheadEnabled(boolean readAheadEnabled) {
+        this.readAheadEnabled = readAheadEnabled;
+    }
+
+    /**
+     * Max number of entries prefetched ahead of the read position of a cursor.
+     *
+     * @return
+     */
+    public int getReadAheadMaxEntries() {
+        return readAheadMaxEntries;
+    }
+
+    /**
+     * Set the max number of entries prefetched ahead of the read position of a cursor.
+     *
+     * @param readAheadMaxEntries
+     */
+    public void setReadAheadMaxEntries(int readAheadMaxEntries) {
+        this.readAheadMaxEntries = readAheadMaxEntries;
+    }
+
+    /**
+     * Whether a newly added entry is handed over directly to the cursors waiting to read it, instead of having each
+     * of them read it back from the entry cache.
+     *
+     * @return
+     */
+    public boolean isTailFanOutEnabled() {
+        return tailFanOutEnabled;
+    }
+
+    /**
+     * Set whether a newly added entry is handed over directly to the cursors waiting to read it.
+     *
+     * @param tailFanOutEnabled
+     */
+    public void setTailFanOutEnabled(boolean tailFanOutEnabled) {
+        this.tailFanOutEnabled = tailFanOutEnabled;
+    }
+
+    /**
+     * The group of the managed ledger, for the fair sharing of the reads in flight budget across groups.
+     *
+     * @return
+     */
+    public String getReadsInFlightGroup() {
+        return readsInFlightGroup;
+    }
+
+    /**
+     * Set the group of the managed ledger, for the fair sharing of the reads in flight budget across groups.
+     *
+     * @param readsInFlightGroup
+     */
+    public void setReadsInFlightGroup(String readsInFlightGroup) {
+        this.readsInFlightGroup = readsInFlightGroup;
+    }
+
+    /**
+     * The minimum time between two entries sampled in the timestamp index of a ledger.
+     *
+     * @return
+     */
+    public long getTimestampIndexIntervalMillis() {
+        return timestampIndexIntervalMillis;
+    }
+
+    /**
+     * Set the minimum time between two entries sampled in the timestamp index of a ledger, 0 to disable the index.
+     * The index is only built when an entry timestamp extractor is set.
+     *
+     * @param timestampIndexIntervalMillis
+     */
+    public void setTimestampIndexIntervalMillis(long timestampIndexIntervalMillis) {
+        this.timestampIndexIntervalMillis = timestampIndexIntervalMillis;
+    }
+
+    /**
+     * The function reading the timestamp of an added entry, for the timestamp index of the ledgers.
+     *
+     * @return
+     */
+    public ToLongFunction<ByteBuf> getEntryTimestampExtractor() {
+        return entryTimestampExtractor;
+    }
+
+    /**
+     * Set the function reading the timestamp of an added entry, for the timestamp index of the ledgers. It returns
+     * a negative value when the entry has no timestamp.
+     *
+     * @param entryTimestampExtractor
+     */
+    public void setEntryTimestampExtractor(ToLongFunction<ByteBuf> entryTimestampExtractor) {
+        this.entryTimestampExtractor = entryTimestampExtractor;
+    }
+
+    /**
+     * The fraction of the max entries, max size or max rollover time of the current ledger above which the next
+     * ledger is created and registered ahead of the rollover.
+     *
+     * @return
+     */
+    public double getStandbyLedgerThreshold() {
+        return standbyLedgerThreshold;
+    }
+
+    /**
+     * Set the fraction of the max entries, max size or max rollover time of the current ledger above which the next
+     * ledger is created and registered ahead of the rollover, 0 to disable it. The rollover then switches to this
+     * standby ledger right away, instead of holding the added entries while a new ledger is created and the list of
+     * ledgers is updated.
+     *
+     * @param standbyLedgerThreshold
+     */
+    public void setStandbyLedgerThreshold(double standbyLedgerThreshold) {
+        checkArgument(standbyLedgerThreshold >= 0 && standbyLedgerThreshold < 1);
+        this.standbyLedgerThreshold = standbyLedgerThreshold;
+    }
+
+    /**
+     * Whether the backlog of the cursors is checked against a full count of their individually deleted entries.
+     *
+     * @return
+     */
+    public boolean isBacklogConsistencyCheckEnabled() {
+        return backlogConsistencyCheckEnabled;
+    }
+
+    /**
+     * Set whether the backlog of the cursors, which is computed from counters kept up to date on every
+     * acknowledgment, is checked against a full count of their individually deleted entries. A mismatch fails the
+     * backlog query. This is expensive and only meant for tests.
+     *
+     * @param backlogConsistencyCheckEnabled
+     */
+    public void setBacklogConsistencyCheckEnabled(boolean backlogConsistencyCheckEnabled) {
+        this.backlogConsistencyCheckEnabled = backlogConsistencyCheckEnabled;
+    }
+
     public String getShadowSource() {
         return MapUtils.getString(properties, PROPERTY_SOURCE_TOPIC_KEY);
     }
@@ -21,6 +21,7 @@ package org.apache.bookkeeper.mledger;
 import lombok.Data;
 import org.apache.bookkeeper.common.annotation.InterfaceAudience;
 import org.apache.bookkeeper.common.annotation.InterfaceStability;
+import org.apache.bookkeeper.mledger.impl.cache.EntryCacheDefaultEvictionPolicy;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats;
 
 /**
@@ -51,16 +52,48 @@ public class ManagedLedgerFactoryConfig {
      */
     private long cacheEvictionTimeThresholdMillis = 1000;
 
+    /**
+     * Class name of the policy used to select the entries to evict when the cache is full.
+     */
+    private String cacheEvictionPolicyClassName = EntryCacheDefaultEvictionPolicy.class.getName();
+
     /**
      * Whether we should make a copy of the entry payloads when inserting in cache.
      */
     private boolean copyEntriesInCache = false;
 
+    /**
+     * Whether the entry cache should store the entries of each ledger in array segments indexed by entry id, instead
+     * of using a skip-list ordered by position.
+     */
+    private boolean segmentedEntryCacheEnabled = false;
+
+    /**
+     * Directory where the entries evicted from the entry cache are spilled, in memory-mapped segment files. The disk
+     * tier of the cache is disabled when not set.
+     */
+    private String diskCacheDirectory = null;
+
+    /**
+     * Maximum size in bytes of the disk tier of the entry cache. The disk tier is disabled when set to 0.
+     */
+    private long diskCacheMaxSize = 0;
+
+    /**
+     * Size in bytes of each segment file of the disk tier of the entry cache.
+     */
+    private int diskCacheSegmentSize = 64 * 1024 * 1024;
+
     /**
      * Maximum number of (estimated) data in-flight reading from storage and the cache.
      */
     private long managedLedgerMaxReadsInFlightSize = 0;
 
+    /**
+     * Whether the reads in flight budget is shared fairly across the groups of managed ledgers.
+     */
+    private boolean managedLedgerReadsInFlightFairSharingEnabled = false;
+
     /**
      * Whether trace managed ledger task execution time.
      */
@@ -108,6 +141,13 @@ public class ManagedLedgerFactoryConfig {
      */
     private long managedCursorInfoCompressionThresholdInBytes = 0;
 
+    /**
+     * Max number of LedgerInfo kept in the ManagedLedgerInfo node. Beyond it, the oldest ledgers are sealed into
+     * separate pages of this many ledgers, so that updating the newest ledgers doesn't rewrite the whole list.
+     * 0 keeps the whole list in the ManagedLedgerInfo node.
+     */
+    private int managedLedgerInfoPageSize = 0;
+
     public MetadataCompressionConfig getCompressionConfigForManagedLedgerInfo() {
         return new MetadataCompressionConfig(managedLedgerInfoCompressionType,
                 managedLedgerInfoCompressionThresholdInBytes);
@@ -81,4 +81,54 @@ public interface ManagedLedgerFactoryMXBean {
      * Current number of entries in the cache.
      */
     long getCacheEntriesCount();
+
+    /**
+     * Cumulative number of entries read from storage that the eviction policy didn't admit into the cache.
+     */
+    long getCacheAdmissionRejectedEntriesCount();
+
+    /**
+     * Get the name of the cache eviction policy in use.
+     */
+    String getCacheEvictionPolicy();
+
+    /**
+     * Get the size in byte used by the entries spilled to the disk cache tier.
+     */
+    long getDiskCacheUsedSize();
+
+    /**
+     * Get the configured maximum size of the disk cache tier, or 0 if the tier is disabled.
+     */
+    long getDiskCacheMaxSize();
+
+    /**
+     * Get the number of entries per second read from the disk cache tier.
+     */
+    double getDiskCacheHitsRate();
+
+    /**
+     * Get the number of entries per second missed in memory and not found in the disk cache tier either.
+     */
+    double getDiskCacheMissesRate();
+
+    /**
+     * Get the amount of data retrieved from the disk cache tier in byte/s.
+     */
+    double getDiskCacheHitsThroughput();
+
+    /**
+     * Cumulative number of entries spilled to the disk cache tier.
+     */
+    long getDiskCacheWrittenEntriesCount();
+
+    /**
+     * Get the average latency of the reads served by the disk cache tier.
+     */
+    double getDiskCacheReadLatencyAverageUsec();
+
+    /**
+     * Get the latency distribution of the reads served by the disk cache tier.
+     */
+    long[] getDiskCacheReadLatencyBuckets();
 }
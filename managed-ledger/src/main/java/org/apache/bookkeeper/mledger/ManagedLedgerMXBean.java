@@ -110,6 +110,37 @@ public interface ManagedLedgerMXBean {
      */
     double getReadEntriesOpsCacheMissesRate();
 
+    /**
+     * @return the number of entries read from cache that were only still there because they were retained for the
+     *         active cursors, i.e. the number of reads to bookies avoided by the cache retention
+     */
+    long getCacheRetentionHits();
+
+    /**
+     * @return the number of entries prefetched in the cache by the read-ahead of the cursors
+     */
+    long getReadAheadPrefetchedEntries();
+
+    /**
+     * @return the number of prefetched entries that were read by the cursors before being evicted from the cache
+     */
+    long getReadAheadConsumedEntries();
+
+    /**
+     * @return the number of newly added entries handed over directly to the cursors waiting to read them
+     */
+    long getTailFanOutEntries();
+
+    /**
+     * @return the time spent recovering the ledgers when the managed ledger was opened, in milliseconds
+     */
+    long getLedgersRecoveryTimeMillis();
+
+    /**
+     * @return the time spent recovering the cursors when the managed ledger was opened, in milliseconds
+     */
+    long getCursorsRecoveryTimeMillis();
+
     // Entry size statistics
 
     double getEntrySizeAverage();
@@ -126,6 +157,13 @@ public interface ManagedLedgerMXBean {
 
     double getLedgerSwitchLatencyAverageUsec();
 
+    /**
+     * @return the time the added entries waited for a ledger to write into, at the ledger rollovers
+     */
+    long[] getLedgerRolloverStallBuckets();
+
+    double getLedgerRolloverStallAverageUsec();
+
     StatsBuckets getInternalAddEntryLatencyBuckets();
 
     StatsBuckets getInternalEntrySizeBuckets();
@@ -0,0 +1,492 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The batch indexes that are not deleted yet for the partially acknowledged batches of a cursor.
+ *
+ * <p/>The state is stored in an open hash map with linear probing, where the keys are the (ledgerId, entryId) pairs
+ * of the batches and the values are the words of the bitsets of the indexes not deleted yet. The words of bitsets up
+ * to {@link #INLINE_WORDS} words long are stored inline in the table, so that acknowledging messages of a batch does
+ * not allocate any object. A sorted array of the keys is used to remove the batches before a mark-delete position
+ * without scanning the whole table. Keys removed individually are lazily dropped from the sorted array.
+ *
+ * <p/>All the operations are thread-safe.
+ */
+public class BatchDeletedIndexes {
+
+    /**
+     * Processor of the batches of a {@link BatchDeletedIndexes}.
+     */
+    public interface BatchProcessor {
+        /**
+         * @return false to stop the iteration
+         */
+        boolean process(long ledgerId, long entryId, long[] ackSet);
+    }
+
+    static final int INLINE_WORDS = 2;
+
+    private static final long EMPTY_KEY = -1L;
+    private static final int ITEM_SIZE = 2 + INLINE_WORDS;
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float FILL_FACTOR = 0.66f;
+    private static final int MIN_STALE_KEYS_TO_COMPACT = 64;
+
+    private static final long HASH_MIXER = 0xc6a4a7935bd1e995L;
+    private static final int R = 47;
+
+    private static final long[] EMPTY_ACK_SET = new long[0];
+
+    private final StampedLock lock = new StampedLock();
+
+    // The following fields are guarded by the lock
+    private long[] table;
+    private long[][] overflowAckSets;
+    private int capacity;
+    private int size;
+
+    // Sorted keys, stored interleaved between sortedKeysHead and sortedKeysTail. Some of them can be stale, when
+    // they were removed from the table without going through removeUpTo()
+    private long[] sortedKeys;
+    private int sortedKeysHead;
+    private int sortedKeysTail;
+    private int staleKeys;
+
+    public BatchDeletedIndexes() {
+        reset();
+    }
+
+    private void reset() {
+        capacity = DEFAULT_CAPACITY;
+        table = new long[ITEM_SIZE * capacity];
+        Arrays.fill(table, EMPTY_KEY);
+        overflowAckSets = new long[capacity][];
+        size = 0;
+        sortedKeys = new long[2 * DEFAULT_CAPACITY];
+        sortedKeysHead = 0;
+        sortedKeysTail = 0;
+        staleKeys = 0;
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return a copy of the ack set of the batch, or null if the batch is not partially acknowledged
+     */
+    public long[] get(long ledgerId, long entryId) {
+        long stamp = lock.readLock();
+        try {
+            int slot = findSlot(ledgerId, entryId);
+            return slot < 0 ? null : getAckSet(slot);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Set the ack set of a batch, replacing the previous one.
+     */
+    public void put(long ledgerId, long entryId, long[] ackSet) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = findSlot(ledgerId, entryId);
+            if (slot < 0) {
+                slot = insert(ledgerId, entryId);
+            }
+            setAckSet(slot, ackSet);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Set the ack set of a batch, unless its first index not deleted yet is after the one of the given ack set, so
+     * that the state of a batch never rolls back.
+     */
+    public void putIfAdvanced(long ledgerId, long entryId, long[] ackSet) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = findSlot(ledgerId, entryId);
+            if (slot < 0) {
+                setAckSet(insert(ledgerId, entryId), ackSet);
+            } else if (nextSetBit(ackSet, 0, ackSet.length) > nextSetBit(slot)) {
+                setAckSet(slot, ackSet);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Delete the indexes of a batch that are not set in the given ack set.
+     *
+     * @return true if all the indexes of the batch are now deleted, in which case the batch is removed
+     */
+    public boolean and(long ledgerId, long entryId, long[] ackSet) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = findSlot(ledgerId, entryId);
+            if (slot < 0) {
+                slot = insert(ledgerId, entryId);
+                setAckSet(slot, ackSet);
+            } else {
+                andAckSet(slot, ackSet);
+            }
+            if (isAckSetEmpty(slot)) {
+                removeSlot(slot);
+                onKeyRemoved();
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return true if the batch was partially acknowledged
+     */
+    public boolean remove(long ledgerId, long entryId) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = findSlot(ledgerId, entryId);
+            if (slot < 0) {
+                return false;
+            }
+            removeSlot(slot);
+            onKeyRemoved();
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove all the batches before the given position.
+     *
+     * @param inclusive
+     *            whether the batch at the given position is removed as well
+     */
+    public void removeUpTo(long ledgerId, long entryId, boolean inclusive) {
+        long stamp = lock.writeLock();
+        try {
+            while (sortedKeysHead < sortedKeysTail) {
+                long keyLedgerId = sortedKeys[2 * sortedKeysHead];
+                long keyEntryId = sortedKeys[2 * sortedKeysHead + 1];
+                int cmp = compare(keyLedgerId, keyEntryId, ledgerId, entryId);
+                if (cmp > 0 || (cmp == 0 && !inclusive)) {
+                    break;
+                }
+                int slot = findSlot(keyLedgerId, keyEntryId);
+                if (slot >= 0) {
+                    removeSlot(slot);
+                } else {
+                    staleKeys--;
+                }
+                sortedKeysHead++;
+            }
+            if (size == 0) {
+                reset();
+            } else if (capacity > DEFAULT_CAPACITY && size < capacity / 8) {
+                rehash(capacity / 2);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            reset();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Process the batches in the order of their positions. The processor must not access this object.
+     */
+    public void forEach(BatchProcessor processor) {
+        long stamp = lock.readLock();
+        try {
+            for (int i = sortedKeysHead; i < sortedKeysTail; i++) {
+                long ledgerId = sortedKeys[2 * i];
+                long entryId = sortedKeys[2 * i + 1];
+                int slot = findSlot(ledgerId, entryId);
+                if (slot >= 0 && !processor.process(ledgerId, entryId, getAckSet(slot))) {
+                    return;
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int findSlot(long ledgerId, long entryId) {
+        int mask = capacity - 1;
+        int slot = (int) (hash(ledgerId, entryId) & mask);
+        while (true) {
+            long storedLedgerId = table[slot * ITEM_SIZE];
+            if (storedLedgerId == EMPTY_KEY) {
+                return -1;
+            } else if (storedLedgerId == ledgerId && table[slot * ITEM_SIZE + 1] == entryId) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int insert(long ledgerId, long entryId) {
+        if (size + 1 > capacity * FILL_FACTOR) {
+            rehash(capacity * 2);
+        }
+        // Insert the sorted key first, so that a stale copy of it is dropped if the sorted keys are compacted
+        insertSortedKey(ledgerId, entryId);
+        size++;
+        return insertInTable(ledgerId, entryId);
+    }
+
+    private int insertInTable(long ledgerId, long entryId) {
+        int mask = capacity - 1;
+        int slot = (int) (hash(ledgerId, entryId) & mask);
+        while (table[slot * ITEM_SIZE] != EMPTY_KEY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot * ITEM_SIZE] = ledgerId;
+        table[slot * ITEM_SIZE + 1] = entryId;
+        return slot;
+    }
+
+    private void removeSlot(int slot) {
+        // Shift back the following entries of the probe sequence, so that no tombstone is needed
+        int mask = capacity - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (table[next * ITEM_SIZE] != EMPTY_KEY) {
+            int ideal = (int) (hash(table[next * ITEM_SIZE], table[next * ITEM_SIZE + 1]) & mask);
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                System.arraycopy(table, next * ITEM_SIZE, table, hole * ITEM_SIZE, ITEM_SIZE);
+                overflowAckSets[hole] = overflowAckSets[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        Arrays.fill(table, hole * ITEM_SIZE, hole * ITEM_SIZE + ITEM_SIZE, EMPTY_KEY);
+        overflowAckSets[hole] = null;
+        size--;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldTable = table;
+        long[][] oldOverflowAckSets = overflowAckSets;
+        int oldCapacity = capacity;
+
+        capacity = newCapacity;
+        table = new long[ITEM_SIZE * capacity];
+        Arrays.fill(table, EMPTY_KEY);
+        overflowAckSets = new long[capacity][];
+        for (int i = 0; i < oldCapacity; i++) {
+            if (oldTable[i * ITEM_SIZE] != EMPTY_KEY) {
+                int slot = insertInTable(oldTable[i * ITEM_SIZE], oldTable[i * ITEM_SIZE + 1]);
+                System.arraycopy(oldTable, i * ITEM_SIZE + 2, table, slot * ITEM_SIZE + 2, INLINE_WORDS);
+                overflowAckSets[slot] = oldOverflowAckSets[i];
+            }
+        }
+    }
+
+    private void onKeyRemoved() {
+        staleKeys++;
+        if (staleKeys > MIN_STALE_KEYS_TO_COMPACT && staleKeys > size) {
+            compactSortedKeys();
+        }
+    }
+
+    private void insertSortedKey(long ledgerId, long entryId) {
+        if (sortedKeysHead < sortedKeysTail) {
+            int last = sortedKeysTail - 1;
+            int cmp = compare(ledgerId, entryId, sortedKeys[2 * last], sortedKeys[2 * last + 1]);
+            if (cmp == 0) {
+                // The stale key is in use again
+                staleKeys--;
+                return;
+            } else if (cmp < 0) {
+                insertSortedKeyInTheMiddle(ledgerId, entryId);
+                return;
+            }
+        }
+
+        // Fast path, the batches are usually acknowledged in order
+        ensureSortedKeysCapacity();
+        sortedKeys[2 * sortedKeysTail] = ledgerId;
+        sortedKeys[2 * sortedKeysTail + 1] = entryId;
+        sortedKeysTail++;
+    }
+
+    private void insertSortedKeyInTheMiddle(long ledgerId, long entryId) {
+        ensureSortedKeysCapacity();
+        int low = sortedKeysHead;
+        int high = sortedKeysTail - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(sortedKeys[2 * mid], sortedKeys[2 * mid + 1], ledgerId, entryId);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                staleKeys--;
+                return;
+            }
+        }
+
+        System.arraycopy(sortedKeys, 2 * low, sortedKeys, 2 * low + 2, 2 * (sortedKeysTail - low));
+        sortedKeys[2 * low] = ledgerId;
+        sortedKeys[2 * low + 1] = entryId;
+        sortedKeysTail++;
+    }
+
+    private void ensureSortedKeysCapacity() {
+        if (2 * sortedKeysTail < sortedKeys.length) {
+            return;
+        }
+        compactSortedKeys();
+        if (2 * sortedKeysTail >= sortedKeys.length) {
+            sortedKeys = Arrays.copyOf(sortedKeys, sortedKeys.length * 2);
+        }
+    }
+
+    private void compactSortedKeys() {
+        int tail = 0;
+        for (int i = sortedKeysHead; i < sortedKeysTail; i++) {
+            long ledgerId = sortedKeys[2 * i];
+            long entryId = sortedKeys[2 * i + 1];
+            if (findSlot(ledgerId, entryId) >= 0) {
+                sortedKeys[2 * tail] = ledgerId;
+                sortedKeys[2 * tail + 1] = entryId;
+                tail++;
+            }
+        }
+        sortedKeysHead = 0;
+        sortedKeysTail = tail;
+        staleKeys = 0;
+        if (sortedKeys.length > 2 * DEFAULT_CAPACITY && 8 * tail < sortedKeys.length) {
+            sortedKeys = Arrays.copyOf(sortedKeys, Math.max(2 * DEFAULT_CAPACITY, 4 * tail));
+        }
+    }
+
+    private long[] getAckSet(int slot) {
+        long[] overflowAckSet = overflowAckSets[slot];
+        if (overflowAckSet != null) {
+            return overflowAckSet.clone();
+        }
+        int base = slot * ITEM_SIZE + 2;
+        int length = trimmedLength(table, base, INLINE_WORDS);
+        return length == 0 ? EMPTY_ACK_SET : Arrays.copyOfRange(table, base, base + length);
+    }
+
+    private void setAckSet(int slot, long[] ackSet) {
+        int base = slot * ITEM_SIZE + 2;
+        int length = trimmedLength(ackSet, 0, ackSet.length);
+        if (length > INLINE_WORDS) {
+            overflowAckSets[slot] = Arrays.copyOf(ackSet, length);
+            Arrays.fill(table, base, base + INLINE_WORDS, 0L);
+        } else {
+            overflowAckSets[slot] = null;
+            for (int i = 0; i < INLINE_WORDS; i++) {
+                table[base + i] = i < length ? ackSet[i] : 0L;
+            }
+        }
+    }
+
+    private void andAckSet(int slot, long[] ackSet) {
+        long[] overflowAckSet = overflowAckSets[slot];
+        if (overflowAckSet != null) {
+            for (int i = 0; i < overflowAckSet.length; i++) {
+                overflowAckSet[i] &= i < ackSet.length ? ackSet[i] : 0L;
+            }
+            if (trimmedLength(overflowAckSet, 0, overflowAckSet.length) <= INLINE_WORDS) {
+                setAckSet(slot, overflowAckSet);
+            }
+        } else {
+            int base = slot * ITEM_SIZE + 2;
+            for (int i = 0; i < INLINE_WORDS; i++) {
+                table[base + i] &= i < ackSet.length ? ackSet[i] : 0L;
+            }
+        }
+    }
+
+    private boolean isAckSetEmpty(int slot) {
+        return overflowAckSets[slot] == null && trimmedLength(table, slot * ITEM_SIZE + 2, INLINE_WORDS) == 0;
+    }
+
+    private static int trimmedLength(long[] words, int offset, int length) {
+        while (length > 0 && words[offset + length - 1] == 0L) {
+            length--;
+        }
+        return length;
+    }
+
+    private int nextSetBit(int slot) {
+        long[] overflowAckSet = overflowAckSets[slot];
+        if (overflowAckSet != null) {
+            return nextSetBit(overflowAckSet, 0, overflowAckSet.length);
+        }
+        return nextSetBit(table, slot * ITEM_SIZE + 2, INLINE_WORDS);
+    }
+
+    private static int nextSetBit(long[] words, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (words[offset + i] != 0L) {
+                return i * Long.SIZE + Long.numberOfTrailingZeros(words[offset + i]);
+            }
+        }
+        return -1;
+    }
+
+    private static int compare(long ledgerId1, long entryId1, long ledgerId2, long entryId2) {
+        int cmp = Long.compare(ledgerId1, ledgerId2);
+        return cmp != 0 ? cmp : Long.compare(entryId1, entryId2);
+    }
+
+    private static long hash(long ledgerId, long entryId) {
+        long hash = ledgerId * HASH_MIXER;
+        hash ^= hash >>> R;
+        hash *= HASH_MIXER;
+        hash += 31 + (entryId * HASH_MIXER);
+        hash ^= hash >>> R;
+        hash *= HASH_MIXER;
+        return hash;
+    }
+}
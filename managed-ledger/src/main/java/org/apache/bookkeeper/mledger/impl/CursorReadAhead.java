@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.ReadHandle;
+
+/**
+ * Adaptive read-ahead of a single cursor.
+ *
+ * <p/>When the cursor keeps reading a ledger sequentially behind the last confirmed entry, the entries following its
+ * read are loaded in the entry cache in parallel with the consumers' processing, so that the next reads are served
+ * from memory instead of doing many small reads from the bookies. The size of the read-ahead window follows the
+ * throughput at which the cursor is reading, to cover about one second of reads, up to the configured max number of
+ * entries.
+ *
+ * <p/>While some prefetched entries are not read yet, the read-ahead is registered in the ledger, which keeps them in
+ * the cache when the entries before the slowest active cursor are invalidated: the cursor reading ahead is typically
+ * backlogged, and thus not active.
+ */
+class CursorReadAhead {
+
+    /**
+     * Number of consecutive sequential reads after which the cursor is considered to be catching up.
+     */
+    static final int MIN_SEQUENTIAL_READS = 2;
+
+    private static final long LOOK_AHEAD_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double THROUGHPUT_SMOOTHING_FACTOR = 0.3;
+
+    private final ManagedLedgerImpl ledger;
+    private final ManagedCursorImpl cursor;
+
+    // The following fields are guarded by the instance monitor
+    private long ledgerId = -1;
+    private long nextEntry = -1;
+    private int sequentialReads = 0;
+    private long lastReadTime;
+    private long lastReadEntries;
+    private double entriesPerNano = 0;
+
+    // Range of prefetched entries not read yet by the cursor
+    private long prefetchedFirstEntry = -1;
+    private long prefetchedLastEntry = -1;
+
+    CursorReadAhead(ManagedLedgerImpl ledger, ManagedCursorImpl cursor) {
+        this.ledger = ledger;
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return the position of the first prefetched entry not read yet by the cursor, or null if there's none
+     */
+    synchronized PositionImpl getFirstPrefetchedPosition() {
+        if (prefetchedFirstEntry < 0 || prefetchedFirstEntry > prefetchedLastEntry || cursor.isClosed()) {
+            return null;
+        }
+        return PositionImpl.get(ledgerId, prefetchedFirstEntry);
+    }
+
+    /**
+     * Forget the prefetched entries, which can then be evicted as any other entry.
+     */
+    synchronized void reset() {
+        ledgerId = -1;
+        nextEntry = -1;
+        sequentialReads = 0;
+        entriesPerNano = 0;
+        prefetchedFirstEntry = -1;
+        prefetchedLastEntry = -1;
+        ledger.prefetchingReadAheads.remove(this);
+    }
+
+    /**
+     * Track a read of the cursor and start prefetching the entries following it, when the cursor is catching up.
+     *
+     * @param lh
+     *            the handle of the ledger being read
+     * @param firstEntry
+     *            the first entry of the read
+     * @param lastEntry
+     *            the last entry of the read
+     * @param lastEntryInLedger
+     *            the last entry of the ledger that can be read
+     * @param maxEntries
+     *            the max number of entries to read ahead
+     */
+    void onRead(ReadHandle lh, long firstEntry, long lastEntry, long lastEntryInLedger, int maxEntries) {
+        long now = System.nanoTime();
+        long readEntries = lastEntry - firstEntry + 1;
+        long firstEntryToLoad;
+        long lastEntryToLoad;
+        long consumedFirstEntry = -1;
+        long consumedLastEntry = -1;
+
+        synchronized (this) {
+            if (lh.getId() == ledgerId && firstEntry == nextEntry) {
+                sequentialReads++;
+                long elapsed = now - lastReadTime;
+                if (elapsed > 0) {
+                    double throughput = lastReadEntries / (double) elapsed;
+                    entriesPerNano = entriesPerNano == 0 ? throughput
+                            : THROUGHPUT_SMOOTHING_FACTOR * throughput
+                                    + (1 - THROUGHPUT_SMOOTHING_FACTOR) * entriesPerNano;
+                }
+            } else {
+                // The cursor was moved or switched to another ledger
+                ledgerId = lh.getId();
+                sequentialReads = 0;
+                entriesPerNano = 0;
+                prefetchedFirstEntry = -1;
+                prefetchedLastEntry = -1;
+            }
+
+            nextEntry = lastEntry + 1;
+            lastReadTime = now;
+            lastReadEntries = readEntries;
+
+            if (prefetchedLastEntry >= firstEntry) {
+                consumedFirstEntry = Math.max(firstEntry, prefetchedFirstEntry);
+                consumedLastEntry = Math.min(lastEntry, prefetchedLastEntry);
+                prefetchedFirstEntry = Math.max(prefetchedFirstEntry, lastEntry + 1);
+            }
+            if (prefetchedFirstEntry < 0 || prefetchedFirstEntry > prefetchedLastEntry) {
+                ledger.prefetchingReadAheads.remove(this);
+            }
+
+            long window = Math.min(maxEntries,
+                    Math.max(2 * readEntries, (long) (entriesPerNano * LOOK_AHEAD_NANOS)));
+            firstEntryToLoad = Math.max(lastEntry + 1, prefetchedLastEntry + 1);
+            lastEntryToLoad = Math.min(lastEntry + window, lastEntryInLedger);
+            // Top up the prefetched range only once at least half of the window was read, to avoid many small reads
+            if (sequentialReads < MIN_SEQUENTIAL_READS || lastEntryToLoad - firstEntryToLoad + 1 < window / 2) {
+                firstEntryToLoad = -1;
+            }
+        }
+
+        if (consumedFirstEntry >= 0 && consumedFirstEntry <= consumedLastEntry) {
+            // Entries that were prefetched and are still in the cache when the cursor reads them
+            ledger.mbean.recordReadAheadConsumedEntries(
+                    ledger.entryCache.getNumberOfCachedEntries(lh.getId(), consumedFirstEntry, consumedLastEntry));
+        }
+
+        if (firstEntryToLoad < 0) {
+            return;
+        }
+
+        long lastLoadedEntry = ledger.entryCache.prefetchEntries(lh, firstEntryToLoad, lastEntryToLoad);
+        if (lastLoadedEntry < firstEntryToLoad) {
+            return;
+        }
+
+        ledger.mbean.recordReadAheadPrefetchedEntries(lastLoadedEntry - firstEntryToLoad + 1);
+        synchronized (this) {
+            if (lh.getId() == ledgerId) {
+                if (prefetchedFirstEntry > prefetchedLastEntry || prefetchedLastEntry < firstEntryToLoad - 1) {
+                    prefetchedFirstEntry = firstEntryToLoad;
+                }
+                prefetchedLastEntry = Math.max(prefetchedLastEntry, lastLoadedEntry);
+                ledger.prefetchingReadAheads.add(this);
+            }
+        }
+    }
+}
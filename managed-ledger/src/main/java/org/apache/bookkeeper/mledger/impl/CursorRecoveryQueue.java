@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the recoveries of the cursors of a managed ledger, with at most {@code maxConcurrentRecoveries} recoveries in
+ * progress at the same time.
+ *
+ * <p/>The recoveries are started in the order they were added, but the recovery of a cursor that is needed right away
+ * can be started ahead of its turn with {@link #startNow(String)}.
+ */
+class CursorRecoveryQueue {
+
+    /**
+     * The recovery of a cursor, which must run the given callback once it has completed, successfully or not.
+     */
+    interface Recovery {
+        void start(Runnable onComplete);
+    }
+
+    private final int maxConcurrentRecoveries;
+    private final Map<String, Recovery> queuedRecoveries = new LinkedHashMap<>();
+    private int recoveriesInProgress;
+
+    /**
+     * @param maxConcurrentRecoveries
+     *            the maximum number of recoveries in progress at the same time, 0 for no limit
+     */
+    CursorRecoveryQueue(int maxConcurrentRecoveries) {
+        this.maxConcurrentRecoveries = maxConcurrentRecoveries;
+    }
+
+    synchronized void add(String cursorName, Recovery recovery) {
+        queuedRecoveries.put(cursorName, recovery);
+    }
+
+    /**
+     * Start the queued recoveries, up to the concurrency limit.
+     */
+    void start() {
+        List<Recovery> recoveries = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Recovery> iterator = queuedRecoveries.values().iterator();
+            while (iterator.hasNext()
+                    && (maxConcurrentRecoveries <= 0 || recoveriesInProgress < maxConcurrentRecoveries)) {
+                recoveries.add(iterator.next());
+                iterator.remove();
+                recoveriesInProgress++;
+            }
+        }
+        recoveries.forEach(this::run);
+    }
+
+    /**
+     * Start the recovery of a cursor if it is still queued, regardless of the concurrency limit.
+     */
+    void startNow(String cursorName) {
+        Recovery recovery;
+        synchronized (this) {
+            recovery = queuedRecoveries.remove(cursorName);
+            if (recovery == null) {
+                return;
+            }
+            recoveriesInProgress++;
+        }
+        run(recovery);
+    }
+
+    /**
+     * Drop the queued recoveries, the ones in progress are not interrupted.
+     */
+    synchronized void clear() {
+        queuedRecoveries.clear();
+    }
+
+    synchronized int getQueuedRecoveries() {
+        return queuedRecoveries.size();
+    }
+
+    private void run(Recovery recovery) {
+        recovery.start(() -> {
+            synchronized (this) {
+                recoveriesInProgress--;
+            }
+            start();
+        });
+    }
+}
@@ -39,13 +39,11 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -97,7 +95,6 @@ import org.apache.bookkeeper.mledger.proto.MLDataFormats.PositionInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.StringProperty;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.pulsar.common.util.FutureUtil;
-import org.apache.pulsar.common.util.collections.BitSetRecyclable;
 import org.apache.pulsar.common.util.collections.LongPairRangeSet;
 import org.apache.pulsar.common.util.collections.LongPairRangeSet.LongPairConsumer;
 import org.apache.pulsar.common.util.collections.LongPairRangeSet.RangeBoundConsumer;
@@ -172,6 +169,11 @@ public class ManagedCursorImpl implements ManagedCursor {
     // time a message is read or deleted.
     protected volatile long messagesConsumedCounter;
 
+    // Number of entries individually deleted after the mark-delete position. It's kept up to date with the
+    // acknowledgments so that the precise backlog doesn't have to walk the individually deleted messages, and it's
+    // counted again only when set to -1, eg. after a recovery. Guarded by the cursor lock.
+    private long deletedEntriesAfterMarkDelete = 0;
+
     // Current ledger used to append the mark-delete position
     private volatile LedgerHandle cursorLedger;
 
@@ -197,10 +199,12 @@ public class ManagedCursorImpl implements ManagedCursor {
         return position;
     };
     protected final RangeSetWrapper<PositionImpl> individualDeletedMessages;
+    // Only set when the individually deleted messages are persisted incrementally
+    private final UnackedRangesDeltaTracker unackedRangesDeltaTracker;
 
     // Maintain the deletion status for batch messages
     // (ledgerId, entryId) -> deletion indexes
-    protected final ConcurrentSkipListMap<PositionImpl, BitSetRecyclable> batchDeletedIndexes;
+    protected final BatchDeletedIndexes batchDeletedIndexes;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     private RateLimiter markDeleteLimiter;
@@ -217,6 +221,7 @@ public class ManagedCursorImpl implements ManagedCursor {
     private int individualDeletedMessagesSerializedSize;
     private static final String COMPACTION_CURSOR_NAME = "__compaction";
     private volatile boolean cacheReadEntry = false;
+    private final CursorReadAhead readAhead;
 
     // active state cache in ManagedCursor. It should be in sync with the state in activeCursors in ManagedLedger.
     private volatile boolean isActive = false;
@@ -307,8 +312,10 @@ public class ManagedCursorImpl implements ManagedCursor {
         this.name = cursorName;
         this.individualDeletedMessages = new RangeSetWrapper<>(positionRangeConverter,
                 positionRangeReverseConverter, this);
+        this.unackedRangesDeltaTracker = config.isPersistentUnackedRangesIncrementalEnabled()
+                ? new UnackedRangesDeltaTracker(config.getPersistentUnackedRangesCompactionThreshold()) : null;
         if (config.isDeletionAtBatchIndexLevelEnabled()) {
-            this.batchDeletedIndexes = new ConcurrentSkipListMap<>();
+            this.batchDeletedIndexes = new BatchDeletedIndexes();
         } else {
             this.batchDeletedIndexes = null;
         }
@@ -329,6 +336,7 @@ public class ManagedCursorImpl implements ManagedCursor {
             markDeleteLimiter = null;
         }
         this.mbean = new ManagedCursorMXBeanImpl(this);
+        this.readAhead = new CursorReadAhead(ledger, this);
     }
 
     private void updateCursorLedgerStat(ManagedCursorInfo cursorInfo, Stat stat) {
@@ -343,6 +351,9 @@ public class ManagedCursorImpl implements ManagedCursor {
 
     @Override
     public boolean isCursorDataFullyPersistable() {
+        if (unackedRangesDeltaTracker != null) {
+            return unackedRangesDeltaTracker.isLastSnapshotComplete();
+        }
         return individualDeletedMessages.size() <= config.getMaxUnackedRangesToPersist();
     }
 
@@ -477,59 +488,65 @@ public class ManagedCursorImpl implements ManagedCursor {
         ledger.getStore().asyncGetCursorInfo(ledger.getName(), name, new MetaStoreCallback<ManagedCursorInfo>() {
             @Override
             public void operationComplete(ManagedCursorInfo info, Stat stat) {
+                recover(info, stat, callback);
+            }
 
-                updateCursorLedgerStat(info, stat);
-                lastActive = info.getLastActive() != 0 ? info.getLastActive() : lastActive;
+            @Override
+            public void operationFailed(MetaStoreException e) {
+                callback.operationFailed(e);
+            }
+        });
+    }
 
-                if (log.isDebugEnabled()) {
-                    log.debug("[{}] [{}] Recover cursor last active to [{}]", ledger.getName(), name, lastActive);
-                }
+    /**
+     * Recover the cursor from its meta-data, already read from the store.
+     */
+    void recover(ManagedCursorInfo info, Stat stat, final VoidCallback callback) {
+        updateCursorLedgerStat(info, stat);
+        lastActive = info.getLastActive() != 0 ? info.getLastActive() : lastActive;
 
-                Map<String, String> recoveredCursorProperties = Collections.emptyMap();
-                if (info.getCursorPropertiesCount() > 0) {
-                    // Recover properties map
-                    recoveredCursorProperties = new HashMap<>();
-                    for (int i = 0; i < info.getCursorPropertiesCount(); i++) {
-                        StringProperty property = info.getCursorProperties(i);
-                        recoveredCursorProperties.put(property.getName(), property.getValue());
-                    }
-                }
-                cursorProperties = recoveredCursorProperties;
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] [{}] Recover cursor last active to [{}]", ledger.getName(), name, lastActive);
+        }
 
-                if (info.getCursorsLedgerId() == -1L) {
-                    // There is no cursor ledger to read the last position from. It means the cursor has been properly
-                    // closed and the last mark-delete position is stored in the ManagedCursorInfo itself.
-                    PositionImpl recoveredPosition = new PositionImpl(info.getMarkDeleteLedgerId(),
-                            info.getMarkDeleteEntryId());
-                    if (info.getIndividualDeletedMessagesCount() > 0) {
-                        recoverIndividualDeletedMessages(info.getIndividualDeletedMessagesList());
-                    }
+        Map<String, String> recoveredCursorProperties = Collections.emptyMap();
+        if (info.getCursorPropertiesCount() > 0) {
+            // Recover properties map
+            recoveredCursorProperties = new HashMap<>();
+            for (int i = 0; i < info.getCursorPropertiesCount(); i++) {
+                StringProperty property = info.getCursorProperties(i);
+                recoveredCursorProperties.put(property.getName(), property.getValue());
+            }
+        }
+        cursorProperties = recoveredCursorProperties;
 
-                    Map<String, Long> recoveredProperties = Collections.emptyMap();
-                    if (info.getPropertiesCount() > 0) {
-                        // Recover properties map
-                        recoveredProperties = new HashMap<>();
-                        for (int i = 0; i < info.getPropertiesCount(); i++) {
-                            LongProperty property = info.getProperties(i);
-                            recoveredProperties.put(property.getName(), property.getValue());
-                        }
-                    }
+        if (info.getCursorsLedgerId() == -1L) {
+            // There is no cursor ledger to read the last position from. It means the cursor has been properly
+            // closed and the last mark-delete position is stored in the ManagedCursorInfo itself.
+            PositionImpl recoveredPosition = new PositionImpl(info.getMarkDeleteLedgerId(),
+                    info.getMarkDeleteEntryId());
+            if (info.getIndividualDeletedMessagesCount() > 0) {
+                recoverIndividualDeletedMessages(info.getIndividualDeletedMessagesList());
+            }
 
-                    recoveredCursor(recoveredPosition, recoveredProperties, recoveredCursorProperties, null);
-                    callback.operationComplete();
-                } else {
-                    // Need to proceed and read the last entry in the specified ledger to find out the last position
-                    log.info("[{}] Cursor {} meta-data recover from ledger {}", ledger.getName(), name,
-                            info.getCursorsLedgerId());
-                    recoverFromLedger(info, callback);
+            Map<String, Long> recoveredProperties = Collections.emptyMap();
+            if (info.getPropertiesCount() > 0) {
+                // Recover properties map
+                recoveredProperties = new HashMap<>();
+                for (int i = 0; i < info.getPropertiesCount(); i++) {
+                    LongProperty property = info.getProperties(i);
+                    recoveredProperties.put(property.getName(), property.getValue());
                 }
             }
 
-            @Override
-            public void operationFailed(MetaStoreException e) {
-                callback.operationFailed(e);
-            }
-        });
+            recoveredCursor(recoveredPosition, recoveredProperties, recoveredCursorProperties, null);
+            callback.operationComplete();
+        } else {
+            // Need to proceed and read the last entry in the specified ledger to find out the last position
+            log.info("[{}] Cursor {} meta-data recover from ledger {}", ledger.getName(), name,
+                    info.getCursorsLedgerId());
+            recoverFromLedger(info, callback);
+        }
     }
 
     protected void recoverFromLedger(final ManagedCursorInfo info, final VoidCallback callback) {
@@ -593,26 +610,13 @@ public class ManagedCursorImpl implements ManagedCursor {
                     return;
                 }
 
-                Map<String, Long> recoveredProperties = Collections.emptyMap();
-                if (positionInfo.getPropertiesCount() > 0) {
-                    // Recover properties map
-                    recoveredProperties = new HashMap<>();
-                    for (int i = 0; i < positionInfo.getPropertiesCount(); i++) {
-                        LongProperty property = positionInfo.getProperties(i);
-                        recoveredProperties.put(property.getName(), property.getValue());
-                    }
-                }
-
-                PositionImpl position = new PositionImpl(positionInfo);
-                if (positionInfo.getIndividualDeletedMessagesCount() > 0) {
-                    recoverIndividualDeletedMessages(positionInfo.getIndividualDeletedMessagesList());
-                }
-                if (config.isDeletionAtBatchIndexLevelEnabled()
-                    && positionInfo.getBatchedEntryDeletionIndexInfoCount() > 0) {
-                    recoverBatchDeletedIndexes(positionInfo.getBatchedEntryDeletionIndexInfoList());
+                if (positionInfo.hasSnapshotEntryId()) {
+                    // The last entry only has the messages deleted since the previous one, replay all the entries
+                    // starting from the last snapshot of the individually deleted messages
+                    recoverFromIncrementalEntries(info, lh, positionInfo, callback);
+                } else {
+                    recoveredFromLedger(lh, Collections.singletonList(positionInfo), callback);
                 }
-                recoveredCursor(position, recoveredProperties, cursorProperties, lh);
-                callback.operationComplete();
             }, null);
         };
         try {
@@ -624,6 +628,105 @@ public class ManagedCursorImpl implements ManagedCursor {
         }
     }
 
+    private void recoverFromIncrementalEntries(ManagedCursorInfo info, LedgerHandle lh, PositionInfo lastPositionInfo,
+                                              VoidCallback callback) {
+        long ledgerId = lh.getId();
+        long firstEntry = lastPositionInfo.getSnapshotEntryId();
+        long lastEntry = lh.getLastAddConfirmed() - 1;
+        if (firstEntry < 0 || firstEntry > lastEntry) {
+            log.warn("[{}] Invalid snapshot entry {} in metadata ledger {} for cursor {}", ledger.getName(),
+                    firstEntry, ledgerId, name);
+            recoveredFromLedger(lh, Collections.singletonList(lastPositionInfo), callback);
+            return;
+        }
+        lh.asyncReadEntries(firstEntry, lastEntry, (rc, lh1, seq, ctx) -> {
+            if (isBkErrorNotRecoverable(rc)) {
+                log.error("[{}] Error reading from metadata ledger {} for cursor {}: {}", ledger.getName(),
+                        ledgerId, name, BKException.getMessage(rc));
+                // Rewind to oldest entry available
+                initialize(getRollbackPosition(info), Collections.emptyMap(), cursorProperties, callback);
+                return;
+            } else if (rc != BKException.Code.OK) {
+                log.warn("[{}] Error reading from metadata ledger {} for cursor {}: {}", ledger.getName(),
+                        ledgerId, name, BKException.getMessage(rc));
+                callback.operationFailed(createManagedLedgerException(rc));
+                return;
+            }
+
+            List<PositionInfo> positionInfos = new ArrayList<>((int) (lastEntry - firstEntry + 2));
+            try {
+                while (seq.hasMoreElements()) {
+                    LedgerEntry entry = seq.nextElement();
+                    mbean.addReadCursorLedgerSize(entry.getLength());
+                    positionInfos.add(PositionInfo.parseFrom(entry.getEntry()));
+                }
+            } catch (InvalidProtocolBufferException e) {
+                callback.operationFailed(new ManagedLedgerException(e));
+                return;
+            }
+            positionInfos.add(lastPositionInfo);
+            log.info("[{}] Cursor {} recovering individually deleted messages from {} entries of ledger {}",
+                    ledger.getName(), name, positionInfos.size(), ledgerId);
+            recoveredFromLedger(lh, positionInfos, callback);
+        }, null);
+    }
+
+    /**
+     * Complete the recovery of the cursor from the positions read from its ledger: the last one has the position of
+     * the cursor, the previous ones are only read to recover the individually deleted messages that were persisted
+     * incrementally.
+     */
+    private void recoveredFromLedger(LedgerHandle lh, List<PositionInfo> positionInfos, VoidCallback callback) {
+        PositionInfo positionInfo = positionInfos.get(positionInfos.size() - 1);
+        Map<String, Long> recoveredProperties = Collections.emptyMap();
+        if (positionInfo.getPropertiesCount() > 0) {
+            // Recover properties map
+            recoveredProperties = new HashMap<>();
+            for (int i = 0; i < positionInfo.getPropertiesCount(); i++) {
+                LongProperty property = positionInfo.getProperties(i);
+                recoveredProperties.put(property.getName(), property.getValue());
+            }
+        }
+
+        PositionImpl position = new PositionImpl(positionInfo);
+        PositionInfo snapshot = positionInfos.get(0);
+        if (snapshot.getIndividualDeletedMessagesCount() > 0) {
+            recoverIndividualDeletedMessages(snapshot.getIndividualDeletedMessagesList());
+        }
+        try {
+            recoverIndividualDeletedEntries(positionInfos, position);
+        } catch (IllegalArgumentException e) {
+            callback.operationFailed(new ManagedLedgerException(e));
+            return;
+        }
+        if (config.isDeletionAtBatchIndexLevelEnabled()
+            && positionInfo.getBatchedEntryDeletionIndexInfoCount() > 0) {
+            recoverBatchDeletedIndexes(positionInfo.getBatchedEntryDeletionIndexInfoList());
+        }
+        recoveredCursor(position, recoveredProperties, cursorProperties, lh);
+        callback.operationComplete();
+    }
+
+    private void recoverIndividualDeletedEntries(List<PositionInfo> positionInfos, PositionImpl markDeletePosition) {
+        boolean recovered = false;
+        lock.writeLock().lock();
+        try {
+            for (PositionInfo positionInfo : positionInfos) {
+                if (positionInfo.getIndividualDeletedEntriesCount() > 0) {
+                    UnackedRangesDeltaTracker.recoverDeletedEntries(positionInfo, individualDeletedMessages);
+                    recovered = true;
+                }
+            }
+            if (recovered) {
+                // The incremental updates can have entries that were later covered by the mark-delete position
+                individualDeletedMessages.removeAtMost(markDeletePosition.getLedgerId(),
+                        markDeletePosition.getEntryId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     private void recoverIndividualDeletedMessages(List<MLDataFormats.MessageRange> individualDeletedMessagesList) {
         lock.writeLock().lock();
         try {
@@ -672,8 +775,8 @@ public class ManagedCursorImpl implements ManagedCursor {
                     for (int i = 0; i < batchDeletedIndexInfo.getDeleteSetList().size(); i++) {
                         array[i] = batchDeletedIndexInfo.getDeleteSetList().get(i);
                     }
-                    this.batchDeletedIndexes.put(PositionImpl.get(batchDeletedIndexInfo.getPosition().getLedgerId(),
-                        batchDeletedIndexInfo.getPosition().getEntryId()), BitSetRecyclable.create().resetWords(array));
+                    this.batchDeletedIndexes.put(batchDeletedIndexInfo.getPosition().getLedgerId(),
+                        batchDeletedIndexInfo.getPosition().getEntryId(), array);
                 }
             });
         } finally {
@@ -703,6 +806,7 @@ public class ManagedCursorImpl implements ManagedCursor {
         this.cursorProperties = cursorProperties == null ? Collections.emptyMap() : cursorProperties;
         messagesConsumedCounter = -getNumberOfEntries(Range.openClosed(position, ledger.getLastPosition()));
         markDeletePosition = position;
+        deletedEntriesAfterMarkDelete = individualDeletedMessages.isEmpty() ? 0 : -1;
         persistentMarkDeletePosition = position;
         inProgressMarkDeletePersistPosition = null;
         readPosition = ledger.getNextValidPosition(position);
@@ -1126,21 +1230,75 @@ public class ManagedCursorImpl implements ManagedCursor {
                     messagesConsumedCounter, markDeletePosition, readPosition);
         }
         if (isPrecise) {
-            if (markDeletePosition.compareTo(ledger.getLastPosition()) >= 0) {
-                return 0;
-            }
-            return getNumberOfEntries(Range.openClosed(markDeletePosition, ledger.getLastPosition()));
+            return getPreciseNumberOfEntriesInBacklog();
         }
 
         long backlog = ManagedLedgerImpl.ENTRIES_ADDED_COUNTER_UPDATER.get(ledger) - messagesConsumedCounter;
         if (backlog < 0) {
             // In some case the counters get incorrect values, fall back to the precise backlog count
-            backlog = getNumberOfEntries(Range.openClosed(markDeletePosition, ledger.getLastPosition()));
+            backlog = getPreciseNumberOfEntriesInBacklog();
         }
 
         return backlog;
     }
 
+    private long getPreciseNumberOfEntriesInBacklog() {
+        if (deletedEntriesAfterMarkDelete < 0) {
+            countDeletedEntriesAfterMarkDelete();
+        }
+        lock.readLock().lock();
+        try {
+            PositionImpl lastPosition = ledger.getLastPosition();
+            if (markDeletePosition.compareTo(lastPosition) >= 0) {
+                return 0;
+            }
+            Range<PositionImpl> range = Range.openClosed(markDeletePosition, lastPosition);
+            long deletedEntries = deletedEntriesAfterMarkDelete;
+            if (deletedEntries < 0) {
+                // Invalidated again in the meantime
+                return getNumberOfEntries(range);
+            }
+            long backlog = ledger.getNumberOfEntries(range) - deletedEntries;
+            if (config.isBacklogConsistencyCheckEnabled()) {
+                long expectedBacklog = getNumberOfEntries(range);
+                if (backlog != expectedBacklog) {
+                    throw new IllegalStateException(String.format(
+                            "[%s] [%s] Inconsistent backlog %d, expected %d -- deleted entries: %d mdPos %s",
+                            ledger.getName(), name, backlog, expectedBacklog, deletedEntries, markDeletePosition));
+                }
+            }
+            return backlog;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void countDeletedEntriesAfterMarkDelete() {
+        lock.writeLock().lock();
+        try {
+            if (deletedEntriesAfterMarkDelete < 0) {
+                Range<PositionImpl> range = Range.openClosed(markDeletePosition, ledger.getLastPosition());
+                deletedEntriesAfterMarkDelete = markDeletePosition.compareTo(ledger.getLastPosition()) >= 0
+                        ? 0 : ledger.getNumberOfEntries(range) - getNumberOfEntries(range);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Make the cursor count its individually deleted entries again, once some of them are no longer in the ledgers
+     * of the managed ledger.
+     */
+    void invalidateDeletedEntriesAfterMarkDelete() {
+        lock.writeLock().lock();
+        try {
+            deletedEntriesAfterMarkDelete = -1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     public long getNumberOfEntriesInStorage() {
         return ledger.getNumberOfEntries(Range.openClosed(markDeletePosition, ledger.getLastPosition()));
     }
@@ -1215,6 +1373,18 @@ public class ManagedCursorImpl implements ManagedCursor {
     @Override
     public void asyncFindNewestMatching(FindPositionConstraint constraint, Predicate<Entry> condition,
             FindEntryCallback callback, Object ctx, boolean isFindFromLedger) {
+        findNewestMatching(constraint, condition, null, callback, ctx, isFindFromLedger);
+    }
+
+    @Override
+    public void asyncFindNewestMatching(FindPositionConstraint constraint, Predicate<Entry> condition,
+            long timestamp, FindEntryCallback callback, Object ctx, boolean isFindFromLedger) {
+        findNewestMatching(constraint, condition, ledger.getTimestampIndexRange(timestamp), callback, ctx,
+                isFindFromLedger);
+    }
+
+    private void findNewestMatching(FindPositionConstraint constraint, Predicate<Entry> condition,
+            Range<PositionImpl> searchRange, FindEntryCallback callback, Object ctx, boolean isFindFromLedger) {
         OpFindNewest op;
         PositionImpl startPosition = null;
         long max = 0;
@@ -1236,6 +1406,23 @@ public class ManagedCursorImpl implements ManagedCursor {
                     Optional.empty(), ctx);
             return;
         }
+        if (searchRange != null) {
+            // The newest matching entry is in the range, skip the reads of the entries outside of it
+            if (searchRange.hasLowerBound() && searchRange.lowerEndpoint().compareTo(startPosition) > 0) {
+                max -= ledger.getNumberOfEntries(Range.closedOpen(startPosition, searchRange.lowerEndpoint()));
+                startPosition = searchRange.lowerEndpoint();
+            }
+            if (searchRange.hasUpperBound()) {
+                if (searchRange.upperEndpoint().compareTo(startPosition) < 0) {
+                    // Even the first entry doesn't match
+                    callback.findEntryComplete(null, ctx);
+                    return;
+                }
+                // The last entry checked is the one max entries after the start position
+                max = Math.min(max,
+                        ledger.getNumberOfEntries(Range.openClosed(startPosition, searchRange.upperEndpoint())));
+            }
+        }
         if (isFindFromLedger) {
             op = new OpFindNewest(this.ledger, startPosition, condition, max, callback, ctx);
         } else {
@@ -1324,13 +1511,16 @@ public class ManagedCursorImpl implements ManagedCursor {
                     lastMarkDeleteEntry = new MarkDeleteEntry(newMarkDeletePosition, isCompactionCursor()
                             ? getProperties() : Collections.emptyMap(), null, null);
                     individualDeletedMessages.clear();
+                    deletedEntriesAfterMarkDelete = 0;
+                    if (unackedRangesDeltaTracker != null) {
+                        unackedRangesDeltaTracker.reset();
+                    }
                     if (config.isDeletionAtBatchIndexLevelEnabled()) {
-                        batchDeletedIndexes.values().forEach(BitSetRecyclable::recycle);
                         batchDeletedIndexes.clear();
                         long[] resetWords = newReadPosition.ackSet;
                         if (resetWords != null) {
-                            BitSetRecyclable ackSet = BitSetRecyclable.create().resetWords(resetWords);
-                            batchDeletedIndexes.put(newReadPosition, ackSet);
+                            batchDeletedIndexes.put(newReadPosition.getLedgerId(), newReadPosition.getEntryId(),
+                                    resetWords);
                         }
                     }
 
@@ -1839,6 +2029,7 @@ public class ManagedCursorImpl implements ManagedCursor {
         readPosition = ledger.getNextValidPosition(lastPositionCounter.getLeft());
         ledger.onCursorReadPositionUpdated(this, readPosition);
         markDeletePosition = lastPositionCounter.getLeft();
+        deletedEntriesAfterMarkDelete = individualDeletedMessages.isEmpty() ? 0 : -1;
         lastMarkDeleteEntry = new MarkDeleteEntry(markDeletePosition, getProperties(), null, null);
         persistentMarkDeletePosition = null;
         inProgressMarkDeletePersistPosition = null;
@@ -1896,6 +2087,11 @@ public class ManagedCursorImpl implements ManagedCursor {
                         oldMarkDeletePosition, newMarkDeletePosition, skippedEntries);
             }
             MSG_CONSUMED_COUNTER_UPDATER.addAndGet(this, skippedEntries);
+            if (deletedEntriesAfterMarkDelete >= 0) {
+                // The entries now covered by the mark-delete position that weren't skipped were individually deleted
+                deletedEntriesAfterMarkDelete -= ledger.getNumberOfEntries(
+                        Range.openClosed(oldMarkDeletePosition, newMarkDeletePosition)) - skippedEntries;
+            }
         }
 
         // markDelete-position and clear out deletedMsgSet
@@ -1965,32 +2161,14 @@ public class ManagedCursorImpl implements ManagedCursor {
 
         if (config.isDeletionAtBatchIndexLevelEnabled()) {
             if (newPosition.ackSet != null) {
-                AtomicReference<BitSetRecyclable> bitSetRecyclable = new AtomicReference<>();
-                BitSetRecyclable givenBitSet = BitSetRecyclable.create().resetWords(newPosition.ackSet);
                 // In order to prevent the batch index recorded in batchDeletedIndexes from rolling back,
                 // only update batchDeletedIndexes when the submitted batch index is greater
                 // than the recorded index.
-                batchDeletedIndexes.compute(newPosition,
-                        (k, v) -> {
-                            if (v == null) {
-                                return givenBitSet;
-                            }
-                            if (givenBitSet.nextSetBit(0) > v.nextSetBit(0)) {
-                                bitSetRecyclable.set(v);
-                                return givenBitSet;
-                            } else {
-                                bitSetRecyclable.set(givenBitSet);
-                                return v;
-                            }
-                        });
-                if (bitSetRecyclable.get() != null) {
-                    bitSetRecyclable.get().recycle();
-                }
+                batchDeletedIndexes.putIfAdvanced(newPosition.getLedgerId(), newPosition.getEntryId(),
+                        newPosition.ackSet);
                 newPosition = ledger.getPreviousPosition(newPosition);
             }
-            Map<PositionImpl, BitSetRecyclable> subMap = batchDeletedIndexes.subMap(PositionImpl.EARLIEST, newPosition);
-            subMap.values().forEach(BitSetRecyclable::recycle);
-            subMap.clear();
+            batchDeletedIndexes.removeUpTo(newPosition.getLedgerId(), newPosition.getEntryId(), false);
         } else if (newPosition.ackSet != null) {
             newPosition = ledger.getPreviousPosition(newPosition);
             newPosition.ackSet = null;
@@ -2147,11 +2325,8 @@ public class ManagedCursorImpl implements ManagedCursor {
                     individualDeletedMessages.removeAtMost(mdEntry.newPosition.getLedgerId(),
                             mdEntry.newPosition.getEntryId());
                     if (config.isDeletionAtBatchIndexLevelEnabled()) {
-                        Map<PositionImpl, BitSetRecyclable> subMap = batchDeletedIndexes.subMap(PositionImpl.EARLIEST,
-                                false, PositionImpl.get(mdEntry.newPosition.getLedgerId(),
-                                mdEntry.newPosition.getEntryId()), true);
-                        subMap.values().forEach(BitSetRecyclable::recycle);
-                        subMap.clear();
+                        batchDeletedIndexes.removeUpTo(mdEntry.newPosition.getLedgerId(),
+                                mdEntry.newPosition.getEntryId(), true);
                     }
                     persistentMarkDeletePosition = mdEntry.newPosition;
                 } finally {
@@ -2286,10 +2461,7 @@ public class ManagedCursorImpl implements ManagedCursor {
 
                 if (isMessageDeleted(position)) {
                     if (config.isDeletionAtBatchIndexLevelEnabled()) {
-                        BitSetRecyclable bitSetRecyclable = batchDeletedIndexes.remove(position);
-                        if (bitSetRecyclable != null) {
-                            bitSetRecyclable.recycle();
-                        }
+                        batchDeletedIndexes.remove(position.getLedgerId(), position.getEntryId());
                     }
                     if (log.isDebugEnabled()) {
                         log.debug("[{}] [{}] Position was already deleted {}", ledger.getName(), name, position);
@@ -2298,38 +2470,38 @@ public class ManagedCursorImpl implements ManagedCursor {
                 }
                 if (position.ackSet == null) {
                     if (config.isDeletionAtBatchIndexLevelEnabled()) {
-                        BitSetRecyclable bitSetRecyclable = batchDeletedIndexes.remove(position);
-                        if (bitSetRecyclable != null) {
-                            bitSetRecyclable.recycle();
-                        }
+                        batchDeletedIndexes.remove(position.getLedgerId(), position.getEntryId());
                     }
                     // Add a range (prev, pos] to the set. Adding the previous entry as an open limit to the range will
                     // make the RangeSet recognize the "continuity" between adjacent Positions.
                     PositionImpl previousPosition = ledger.getPreviousPosition(position);
                     individualDeletedMessages.addOpenClosed(previousPosition.getLedgerId(),
                         previousPosition.getEntryId(), position.getLedgerId(), position.getEntryId());
+                    if (unackedRangesDeltaTracker != null) {
+                        unackedRangesDeltaTracker.recordDeletedEntry(position.getLedgerId(), position.getEntryId());
+                    }
                     MSG_CONSUMED_COUNTER_UPDATER.incrementAndGet(this);
+                    if (deletedEntriesAfterMarkDelete >= 0) {
+                        deletedEntriesAfterMarkDelete++;
+                    }
 
                     if (log.isDebugEnabled()) {
                         log.debug("[{}] [{}] Individually deleted messages: {}", ledger.getName(), name,
                             individualDeletedMessages);
                     }
                 } else if (config.isDeletionAtBatchIndexLevelEnabled()) {
-                    BitSetRecyclable givenBitSet = BitSetRecyclable.create().resetWords(position.ackSet);
-                    BitSetRecyclable bitSet = batchDeletedIndexes.computeIfAbsent(position, (v) -> givenBitSet);
-                    if (givenBitSet != bitSet) {
-                        bitSet.and(givenBitSet);
-                        givenBitSet.recycle();
-                    }
-                    if (bitSet.isEmpty()) {
+                    if (batchDeletedIndexes.and(position.getLedgerId(), position.getEntryId(), position.ackSet)) {
                         PositionImpl previousPosition = ledger.getPreviousPosition(position);
                         individualDeletedMessages.addOpenClosed(previousPosition.getLedgerId(),
                             previousPosition.getEntryId(),
                             position.getLedgerId(), position.getEntryId());
+                        if (unackedRangesDeltaTracker != null) {
+                            unackedRangesDeltaTracker.recordDeletedEntry(position.getLedgerId(),
+                                    position.getEntryId());
+                        }
                         MSG_CONSUMED_COUNTER_UPDATER.incrementAndGet(this);
-                        BitSetRecyclable bitSetRecyclable = batchDeletedIndexes.remove(position);
-                        if (bitSetRecyclable != null) {
-                            bitSetRecyclable.recycle();
+                        if (deletedEntriesAfterMarkDelete >= 0) {
+                            deletedEntriesAfterMarkDelete++;
                         }
                     }
                 }
@@ -3058,6 +3230,25 @@ public class ManagedCursorImpl implements ManagedCursor {
         }
     }
 
+    /**
+     * Add the individually deleted entries to a position that is going to be appended to the cursor ledger, either
+     * all of them or only those deleted since the previous position, see {@link UnackedRangesDeltaTracker}.
+     *
+     * @return the sequence number of the snapshot, or -1 if the position is an incremental update
+     */
+    private long buildIndividualDeletedEntries(LedgerHandle lh, PositionInfo.Builder piBuilder) {
+        lock.readLock().lock();
+        try {
+            long snapshotSequence = unackedRangesDeltaTracker.buildUpdate(lh.getId(), individualDeletedMessages,
+                    piBuilder);
+            this.individualDeletedMessagesSerializedSize = unackedRangesDeltaTracker.getLastSnapshotSize();
+            individualDeletedMessages.resetDirtyKeys();
+            return snapshotSequence;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     private List<MLDataFormats.BatchedEntryDeletionIndexInfo> buildBatchEntryDeletionIndexInfoList() {
         lock.readLock().lock();
         try {
@@ -3069,13 +3260,13 @@ public class ManagedCursorImpl implements ManagedCursor {
             MLDataFormats.BatchedEntryDeletionIndexInfo.Builder batchDeletedIndexInfoBuilder = MLDataFormats
                     .BatchedEntryDeletionIndexInfo.newBuilder();
             List<MLDataFormats.BatchedEntryDeletionIndexInfo> result = new ArrayList<>();
-            Iterator<Map.Entry<PositionImpl, BitSetRecyclable>> iterator = batchDeletedIndexes.entrySet().iterator();
-            while (iterator.hasNext() && result.size() < config.getMaxBatchDeletedIndexToPersist()) {
-                Map.Entry<PositionImpl, BitSetRecyclable> entry = iterator.next();
-                nestedPositionBuilder.setLedgerId(entry.getKey().getLedgerId());
-                nestedPositionBuilder.setEntryId(entry.getKey().getEntryId());
+            batchDeletedIndexes.forEach((ledgerId, entryId, array) -> {
+                if (result.size() >= config.getMaxBatchDeletedIndexToPersist()) {
+                    return false;
+                }
+                nestedPositionBuilder.setLedgerId(ledgerId);
+                nestedPositionBuilder.setEntryId(entryId);
                 batchDeletedIndexInfoBuilder.setPosition(nestedPositionBuilder.build());
-                long[] array = entry.getValue().toLongArray();
                 List<Long> deleteSet = new ArrayList<>(array.length);
                 for (long l : array) {
                     deleteSet.add(l);
@@ -3083,7 +3274,8 @@ public class ManagedCursorImpl implements ManagedCursor {
                 batchDeletedIndexInfoBuilder.clearDeleteSet();
                 batchDeletedIndexInfoBuilder.addAllDeleteSet(deleteSet);
                 result.add(batchDeletedIndexInfoBuilder.build());
-            }
+                return true;
+            });
             return result;
         } finally {
             lock.readLock().unlock();
@@ -3092,9 +3284,16 @@ public class ManagedCursorImpl implements ManagedCursor {
 
     void persistPositionToLedger(final LedgerHandle lh, MarkDeleteEntry mdEntry, final VoidCallback callback) {
         PositionImpl position = mdEntry.newPosition;
-        PositionInfo pi = PositionInfo.newBuilder().setLedgerId(position.getLedgerId())
-                .setEntryId(position.getEntryId())
-                .addAllIndividualDeletedMessages(buildIndividualDeletedMessageRanges())
+        PositionInfo.Builder piBuilder = PositionInfo.newBuilder().setLedgerId(position.getLedgerId())
+                .setEntryId(position.getEntryId());
+        final long snapshotSequence;
+        if (unackedRangesDeltaTracker != null) {
+            snapshotSequence = buildIndividualDeletedEntries(lh, piBuilder);
+        } else {
+            snapshotSequence = -1;
+            piBuilder.addAllIndividualDeletedMessages(buildIndividualDeletedMessageRanges());
+        }
+        PositionInfo pi = piBuilder
                 .addAllBatchedEntryDeletionIndexInfo(buildBatchEntryDeletionIndexInfoList())
                 .addAllProperties(buildPropertiesMap(mdEntry.properties)).build();
 
@@ -3113,6 +3312,10 @@ public class ManagedCursorImpl implements ManagedCursor {
                             lh1.getId());
                 }
 
+                if (snapshotSequence >= 0) {
+                    unackedRangesDeltaTracker.snapshotPersisted(lh1.getId(), entryId, snapshotSequence);
+                }
+
                 if (shouldCloseLedger(lh1)) {
                     if (log.isDebugEnabled()) {
                         log.debug("[{}] Need to create new metadata ledger for cursor {}", ledger.getName(), name);
@@ -3126,6 +3329,10 @@ public class ManagedCursorImpl implements ManagedCursor {
             } else {
                 log.warn("[{}] Error updating cursor {} position {} in meta-ledger {}: {}", ledger.getName(), name,
                         position, lh1.getId(), BKException.getMessage(rc));
+                if (unackedRangesDeltaTracker != null) {
+                    // The deleted entries of this update are lost, the next one needs to be a full snapshot
+                    unackedRangesDeltaTracker.reset();
+                }
                 // If we've had a write error, the ledger will be automatically closed, we need to create a new one,
                 // in the meantime the mark-delete will be queued.
                 STATE_UPDATER.compareAndSet(ManagedCursorImpl.this, State.Open, State.NoLedger);
@@ -3213,6 +3420,14 @@ public class ManagedCursorImpl implements ManagedCursor {
      * @return Whether the cursor responded to the notification
      */
     void notifyEntriesAvailable() {
+        notifyEntriesAvailable(null);
+    }
+
+    /**
+     * @param addedEntry the entry that was just added, completing the pending read when it is the next entry to
+     *                   read, or null. The cursor takes ownership of it
+     */
+    void notifyEntriesAvailable(EntryImpl addedEntry) {
         if (log.isDebugEnabled()) {
             log.debug("[{}] [{}] Received ml notification", ledger.getName(), name);
         }
@@ -3228,6 +3443,13 @@ public class ManagedCursorImpl implements ManagedCursor {
 
             PENDING_READ_OPS_UPDATER.incrementAndGet(this);
             opReadEntry.readPosition = (PositionImpl) getReadPosition();
+            if (addedEntry != null && canReadAddedEntry(opReadEntry, addedEntry)) {
+                // The cursor is caught up: skip the read of the entry from the cache
+                ledger.mbean.recordTailFanOutEntry();
+                ledger.mbean.addReadEntriesSample(1, addedEntry.getLength());
+                opReadEntry.readEntriesComplete(Lists.newArrayList(addedEntry), opReadEntry.ctx);
+                return;
+            }
             ledger.asyncReadEntries(opReadEntry);
         } else {
             // No one is waiting to be notified. Ignore
@@ -3235,6 +3457,19 @@ public class ManagedCursorImpl implements ManagedCursor {
                 log.debug("[{}] [{}] Received notification but had no pending read operation", ledger.getName(), name);
             }
         }
+        if (addedEntry != null) {
+            addedEntry.release();
+        }
+    }
+
+    private boolean canReadAddedEntry(OpReadEntry opReadEntry, EntryImpl addedEntry) {
+        PositionImpl position = opReadEntry.readPosition;
+        ManagedLedgerImpl.State state = ledger.getState();
+        return position.getLedgerId() == addedEntry.getLedgerId()
+                && position.getEntryId() == addedEntry.getEntryId()
+                && !state.isFenced() && state != ManagedLedgerImpl.State.Closed
+                && opReadEntry.maxPosition.compareTo(position) >= 0
+                && (opReadEntry.skipCondition == null || !opReadEntry.skipCondition.test(position));
     }
 
     void asyncCloseCursorLedger(final AsyncCallbacks.CloseCallback callback, final Object ctx) {
@@ -3427,12 +3662,8 @@ public class ManagedCursorImpl implements ManagedCursor {
         }
 
         if (batchDeletedIndexes != null) {
-            BitSetRecyclable bitSetRecyclable = batchDeletedIndexes.get(position);
-            if (bitSetRecyclable == null) {
-                return null;
-            } else {
-                return bitSetRecyclable.toLongArray();
-            }
+            return batchDeletedIndexes.get(((PositionImpl) position).getLedgerId(),
+                    ((PositionImpl) position).getEntryId());
         } else {
             return null;
         }
@@ -3524,8 +3755,7 @@ public class ManagedCursorImpl implements ManagedCursor {
     @Override
     public long[] getDeletedBatchIndexesAsLongArray(PositionImpl position) {
         if (config.isDeletionAtBatchIndexLevelEnabled()) {
-            BitSetRecyclable bitSet = batchDeletedIndexes.get(position);
-            return bitSet == null ? null : bitSet.toLongArray();
+            return batchDeletedIndexes.get(position.getLedgerId(), position.getEntryId());
         } else {
             return null;
         }
@@ -3621,6 +3851,10 @@ public class ManagedCursorImpl implements ManagedCursor {
         return cacheReadEntry;
     }
 
+    CursorReadAhead getReadAhead() {
+        return readAhead;
+    }
+
     private static final Logger log = LoggerFactory.getLogger(ManagedCursorImpl.class);
 
     public ManagedLedgerConfig getConfig() {
@@ -3642,12 +3876,13 @@ public class ManagedCursorImpl implements ManagedCursor {
                         range.upperEndpoint().getEntryId());
                 return true;
             });
+            newNonDurableCursor.invalidateDeletedEntriesAfterMarkDelete();
         }
         if (batchDeletedIndexes != null) {
-            for (Map.Entry<PositionImpl, BitSetRecyclable> entry : this.batchDeletedIndexes.entrySet()) {
-                BitSetRecyclable copiedBitSet = BitSetRecyclable.valueOf(entry.getValue());
-                newNonDurableCursor.batchDeletedIndexes.put(entry.getKey(), copiedBitSet);
-            }
+            this.batchDeletedIndexes.forEach((ledgerId, entryId, ackSet) -> {
+                newNonDurableCursor.batchDeletedIndexes.put(ledgerId, entryId, ackSet);
+                return true;
+            });
         }
         return newNonDurableCursor;
     }
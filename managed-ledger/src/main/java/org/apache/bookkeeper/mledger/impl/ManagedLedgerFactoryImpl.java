@@ -201,7 +201,8 @@ public class ManagedLedgerFactoryImpl implements ManagedLedgerFactory {
         this.metadataStore = metadataStore;
         this.store = new MetaStoreImpl(metadataStore, scheduledExecutor,
                 compressionConfigForManagedLedgerInfo,
-                compressionConfigForManagedCursorInfo);
+                compressionConfigForManagedCursorInfo,
+                config.getManagedLedgerInfoPageSize());
         this.config = config;
         this.mbean = new ManagedLedgerFactoryMBeanImpl(this);
         this.entryCacheManager = new RangeEntryCacheManagerImpl(this);
@@ -21,6 +21,8 @@ package org.apache.bookkeeper.mledger.impl;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 import org.apache.bookkeeper.mledger.ManagedLedgerFactoryMXBean;
+import org.apache.bookkeeper.mledger.impl.cache.EntryCacheDiskTier;
+import org.apache.bookkeeper.mledger.util.StatsBuckets;
 import org.apache.pulsar.common.stats.Rate;
 
 @SuppressWarnings("checkstyle:javadoctype")
@@ -31,10 +33,16 @@ public class ManagedLedgerFactoryMBeanImpl implements ManagedLedgerFactoryMXBean
     final Rate cacheHits = new Rate();
     final Rate cacheMisses = new Rate();
     final Rate cacheEvictions = new Rate();
+    final Rate diskCacheHits = new Rate();
+    final Rate diskCacheMisses = new Rate();
 
     private final LongAdder insertedEntryCount = new LongAdder();
     private final LongAdder evictedEntryCount = new LongAdder();
     private final LongAdder cacheEntryCount = new LongAdder();
+    private final LongAdder admissionRejectedEntryCount = new LongAdder();
+    private final LongAdder diskCacheWrittenEntryCount = new LongAdder();
+    private final StatsBuckets diskCacheReadLatencyStatsUsec =
+            new StatsBuckets(ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC);
 
     public ManagedLedgerFactoryMBeanImpl(ManagedLedgerFactoryImpl factory) throws Exception {
         this.factory = factory;
@@ -51,6 +59,9 @@ public class ManagedLedgerFactoryMBeanImpl implements ManagedLedgerFactoryMXBean
         cacheHits.calculateRate(seconds);
         cacheMisses.calculateRate(seconds);
         cacheEvictions.calculateRate(seconds);
+        diskCacheHits.calculateRate(seconds);
+        diskCacheMisses.calculateRate(seconds);
+        diskCacheReadLatencyStatsUsec.refresh();
     }
 
     public void recordCacheHit(long size) {
@@ -79,6 +90,23 @@ public class ManagedLedgerFactoryMBeanImpl implements ManagedLedgerFactoryMXBean
         cacheEntryCount.add(-count);
     }
 
+    public void recordCacheAdmissionRejected(int count) {
+        admissionRejectedEntryCount.add(count);
+    }
+
+    public void recordDiskCacheHits(int count, long totalSize, long latencyNanos) {
+        diskCacheHits.recordMultipleEvents(count, totalSize);
+        diskCacheReadLatencyStatsUsec.addValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    }
+
+    public void recordDiskCacheMisses(int count) {
+        diskCacheMisses.recordMultipleEvents(count, 0);
+    }
+
+    public void recordDiskCacheWrite() {
+        diskCacheWrittenEntryCount.increment();
+    }
+
     @Override
     public int getNumberOfManagedLedgers() {
         return factory.ledgers.size();
@@ -131,4 +159,56 @@ public class ManagedLedgerFactoryMBeanImpl implements ManagedLedgerFactoryMXBean
         return cacheEntryCount.sum();
     }
 
+    @Override
+    public long getCacheAdmissionRejectedEntriesCount() {
+        return admissionRejectedEntryCount.sum();
+    }
+
+    @Override
+    public String getCacheEvictionPolicy() {
+        return factory.getEntryCacheManager().getEvictionPolicy().getClass().getSimpleName();
+    }
+
+    @Override
+    public long getDiskCacheUsedSize() {
+        EntryCacheDiskTier diskTier = factory.getEntryCacheManager().getDiskTier();
+        return diskTier != null ? diskTier.getSize() : 0;
+    }
+
+    @Override
+    public long getDiskCacheMaxSize() {
+        EntryCacheDiskTier diskTier = factory.getEntryCacheManager().getDiskTier();
+        return diskTier != null ? diskTier.getMaxSize() : 0;
+    }
+
+    @Override
+    public double getDiskCacheHitsRate() {
+        return diskCacheHits.getRate();
+    }
+
+    @Override
+    public double getDiskCacheMissesRate() {
+        return diskCacheMisses.getRate();
+    }
+
+    @Override
+    public double getDiskCacheHitsThroughput() {
+        return diskCacheHits.getValueRate();
+    }
+
+    @Override
+    public long getDiskCacheWrittenEntriesCount() {
+        return diskCacheWrittenEntryCount.sum();
+    }
+
+    @Override
+    public double getDiskCacheReadLatencyAverageUsec() {
+        return diskCacheReadLatencyStatsUsec.getAvg();
+    }
+
+    @Override
+    public long[] getDiskCacheReadLatencyBuckets() {
+        return diskCacheReadLatencyStatsUsec.getBuckets();
+    }
+
 }
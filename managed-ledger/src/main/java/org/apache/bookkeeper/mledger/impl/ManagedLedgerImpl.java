@@ -56,6 +56,7 @@ import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -65,6 +66,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import lombok.Getter;
@@ -119,6 +121,8 @@ import org.apache.bookkeeper.mledger.impl.cache.EntryCache;
 import org.apache.bookkeeper.mledger.intercept.ManagedLedgerInterceptor;
 import org.apache.bookkeeper.mledger.offload.OffloadUtils;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.EntryTimestamp;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedCursorInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.NestedPositionInfo;
@@ -171,6 +175,9 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     // ordered by read position (when cacheEvictionByMarkDeletedPosition=false) or by mark delete position
     // (when cacheEvictionByMarkDeletedPosition=true)
     private final ManagedCursorContainer activeCursors = new ManagedCursorContainer();
+    // read-aheads with prefetched entries not read yet, which are kept when invalidating the entries before the
+    // slowest active cursor
+    final Set<CursorReadAhead> prefetchingReadAheads = ConcurrentHashMap.newKeySet();
 
 
     // Ever-increasing counter of entries added
@@ -199,6 +206,22 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     // uninitialized cursor future from the 1st request
     final Map<String, CompletableFuture<ManagedCursor>> uninitializedCursors;
 
+    // Mark delete positions read from the meta-data of the cursors being lazily recovered. The ledgers are not trimmed
+    // past them until the cursors are recovered
+    final Map<String, PositionImpl> recoveringCursorsMarkDeletePositions = new ConcurrentHashMap<>();
+    private volatile CursorRecoveryQueue cursorRecoveryQueue;
+
+    // Sparse index of the timestamps of the entries of the current ledger, stored in its LedgerInfo when it is closed
+    private final List<EntryTimestamp> currentLedgerTimestampIndex = new ArrayList<>();
+    private long currentLedgerTimestampIndexId = -1;
+    private long currentLedgerTimestampIndexIntervalMillis;
+    private long lastTimestampIndexSampleMillis;
+    // Max number of entries sampled in the timestamp index of a ledger. Over it, every other sample is dropped and
+    // the interval between the samples of the ledger is doubled. The index is stored in the ManagedLedgerInfo z-node,
+    // at ~13 bytes per sample the cap keeps it under 1KB per ledger
+    static final int MAX_TIMESTAMP_INDEX_SIZE = 64;
+    private long initializeStartNanos;
+
     final EntryCache entryCache;
 
     private ScheduledFuture<?> timeoutTask;
@@ -220,6 +243,11 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     protected volatile long lastLedgerCreatedTimestamp = 0;
     private volatile long lastLedgerCreationFailureTimestamp = 0;
     private long lastLedgerCreationInitiationTimestamp = 0;
+    // The next ledger, created and registered in the ledgers list ahead of the rollover of the current one
+    protected volatile LedgerHandle standbyLedger;
+    private boolean creatingStandbyLedger = false;
+    // When the first of the added entries waiting for a ledger to write into was added, 0 if none is waiting
+    private long rolloverStallStartNanos = 0;
 
     private long lastOffloadLedgerId = 0;
     private volatile long lastOffloadSuccessTimestamp = 0;
@@ -375,6 +403,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
     synchronized void initialize(final ManagedLedgerInitializeLedgerCallback callback, final Object ctx) {
         log.info("Opening managed ledger {}", name);
+        initializeStartNanos = System.nanoTime();
 
         // Fetch the list of existing ledgers in the managed ledger
         store.getManagedLedgerInfo(name, config.isCreateIfMissing(), config.getProperties(),
@@ -406,6 +435,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                 // Last ledger stat may be zeroed, we must update it
                 if (!ledgers.isEmpty()) {
                     final long id = ledgers.lastKey();
+                    final AtomicReference<LedgerHandle> previousLedger = new AtomicReference<>();
                     OpenCallback opencb = (rc, lh, ctx1) -> {
                         executor.execute(() -> {
                             mbean.endDataLedgerOpenOp();
@@ -418,7 +448,12 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                                         .setTimestamp(clock.millis()).build();
                                 ledgers.put(id, info);
                                 if (managedLedgerInterceptor != null) {
-                                    managedLedgerInterceptor.onManagedLedgerLastLedgerInitialize(name, lh)
+                                    // The last ledger may be a standby ledger that was never written into
+                                    LedgerHandle lastLedger = lh;
+                                    if (lh.getLastAddConfirmed() < 0 && previousLedger.get() != null) {
+                                        lastLedger = previousLedger.get();
+                                    }
+                                    managedLedgerInterceptor.onManagedLedgerLastLedgerInitialize(name, lastLedger)
                                         .thenRun(() -> initializeBookKeeper(callback))
                                         .exceptionally(ex -> {
                                             callback.initializeFailed(
@@ -440,11 +475,17 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                         });
                     };
 
-                    if (log.isDebugEnabled()) {
-                        log.debug("[{}] Opening ledger {}", name, id);
-                    }
-                    mbean.startDataLedgerOpenOp();
-                    bookKeeper.asyncOpenLedger(id, digestType, config.getPassword(), opencb, null);
+                    recoverMissingLedgersStat(id).thenAccept(lh -> {
+                        previousLedger.set(lh);
+                        if (log.isDebugEnabled()) {
+                            log.debug("[{}] Opening ledger {}", name, id);
+                        }
+                        mbean.startDataLedgerOpenOp();
+                        bookKeeper.asyncOpenLedger(id, digestType, config.getPassword(), opencb, null);
+                    }).exceptionally(ex -> {
+                        callback.initializeFailed(ManagedLedgerException.getManagedLedgerException(ex.getCause()));
+                        return null;
+                    });
                 } else {
                     initializeBookKeeper(callback);
                 }
@@ -464,6 +505,48 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         scheduleTimeoutTask();
     }
 
+    /**
+     * Update the stats of the ledgers before the last one that are missing from the ledgers list. It happens when the
+     * managed ledger switched to a standby ledger, and was not closed properly before the stats of the ledger closed by
+     * the rollover were stored.
+     *
+     * @return the handle of the newest of these ledgers, or null if there is none
+     */
+    private CompletableFuture<LedgerHandle> recoverMissingLedgersStat(long lastLedgerId) {
+        List<CompletableFuture<LedgerHandle>> futures = new ArrayList<>();
+        for (LedgerInfo ledgerInfo : ledgers.headMap(lastLedgerId).values()) {
+            if (ledgerInfo.hasEntries()) {
+                continue;
+            }
+            final long id = ledgerInfo.getLedgerId();
+            CompletableFuture<LedgerHandle> future = new CompletableFuture<>();
+            futures.add(future);
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Opening ledger {} to recover its stat", name, id);
+            }
+            mbean.startDataLedgerOpenOp();
+            bookKeeper.asyncOpenLedger(id, digestType, config.getPassword(), (rc, lh, ctx) -> {
+                mbean.endDataLedgerOpenOp();
+                if (rc == BKException.Code.OK) {
+                    LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(id)
+                            .setEntries(lh.getLastAddConfirmed() + 1).setSize(lh.getLength())
+                            .setTimestamp(clock.millis()).build();
+                    ledgers.put(id, info);
+                    future.complete(lh);
+                } else if (isNoSuchLedgerExistsException(rc)) {
+                    log.warn("[{}] Ledger not found: {}", name, id);
+                    ledgers.remove(id);
+                    future.complete(null);
+                } else {
+                    log.error("[{}] Failed to open ledger {}: {}", name, id, BKException.getMessage(rc));
+                    future.completeExceptionally(createManagedLedgerException(rc));
+                }
+            }, null);
+        }
+        return FutureUtil.waitForAll(futures)
+                .thenApply(__ -> futures.isEmpty() ? null : futures.get(futures.size() - 1).join());
+    }
+
     protected synchronized void initializeBookKeeper(final ManagedLedgerInitializeLedgerCallback callback) {
         if (log.isDebugEnabled()) {
             log.debug("[{}] initializing bookkeeper; ledgers {}", name, ledgers);
@@ -558,6 +641,8 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         if (log.isDebugEnabled()) {
             log.debug("[{}] initializing cursors", name);
         }
+        final long cursorsRecoveryStartNanos = System.nanoTime();
+        mbean.recordLedgersRecoveryTime(cursorsRecoveryStartNanos - initializeStartNanos, TimeUnit.NANOSECONDS);
         store.getCursors(name, new MetaStoreCallback<List<String>>() {
             @Override
             public void operationComplete(List<String> consumers, Stat s) {
@@ -568,74 +653,88 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                 }
 
                 if (consumers.isEmpty()) {
+                    mbean.recordCursorsRecoveryTime(System.nanoTime() - cursorsRecoveryStartNanos,
+                            TimeUnit.NANOSECONDS);
                     callback.initializeComplete();
                     return;
                 }
 
+                final CursorRecoveryQueue recoveryQueue = new CursorRecoveryQueue(
+                        ManagedLedgerImpl.this.config.getMaxConcurrentCursorRecoveries());
                 if (!ManagedLedgerImpl.this.config.isLazyCursorRecovery()) {
                     log.debug("[{}] Loading cursors", name);
 
                     for (final String cursorName : consumers) {
-                        log.info("[{}] Loading cursor {}", name, cursorName);
-                        final ManagedCursorImpl cursor;
-                        cursor = new ManagedCursorImpl(bookKeeper, config, ManagedLedgerImpl.this, cursorName);
-
-                        cursor.recover(new VoidCallback() {
-                            @Override
-                            public void operationComplete() {
-                                log.info("[{}] Recovery for cursor {} completed. pos={} -- todo={}", name, cursorName,
-                                        cursor.getMarkDeletedPosition(), cursorCount.get() - 1);
-                                cursor.setActive();
-                                addCursor(cursor);
+                        recoveryQueue.add(cursorName, onComplete -> {
+                            log.info("[{}] Loading cursor {}", name, cursorName);
+                            final ManagedCursorImpl cursor;
+                            cursor = new ManagedCursorImpl(bookKeeper, config, ManagedLedgerImpl.this, cursorName);
+
+                            cursor.recover(new VoidCallback() {
+                                @Override
+                                public void operationComplete() {
+                                    log.info("[{}] Recovery for cursor {} completed. pos={} -- todo={}", name,
+                                            cursorName, cursor.getMarkDeletedPosition(), cursorCount.get() - 1);
+                                    cursor.setActive();
+                                    addCursor(cursor);
 
-                                if (cursorCount.decrementAndGet() == 0) {
-                                    // The initialization is now completed, register the jmx mbean
-                                    callback.initializeComplete();
+                                    if (cursorCount.decrementAndGet() == 0) {
+                                        // The initialization is now completed, register the jmx mbean
+                                        mbean.recordCursorsRecoveryTime(System.nanoTime() - cursorsRecoveryStartNanos,
+                                                TimeUnit.NANOSECONDS);
+                                        callback.initializeComplete();
+                                    }
+                                    onComplete.run();
                                 }
-                            }
 
-                            @Override
-                            public void operationFailed(ManagedLedgerException exception) {
-                                log.warn("[{}] Recovery for cursor {} failed", name, cursorName, exception);
-                                cursorCount.set(-1);
-                                callback.initializeFailed(exception);
-                            }
+                                @Override
+                                public void operationFailed(ManagedLedgerException exception) {
+                                    log.warn("[{}] Recovery for cursor {} failed", name, cursorName, exception);
+                                    cursorCount.set(-1);
+                                    recoveryQueue.clear();
+                                    callback.initializeFailed(exception);
+                                    onComplete.run();
+                                }
+                            });
                         });
                     }
+                    recoveryQueue.start();
                 } else {
-                    // Lazily recover cursors by put them to uninitializedCursors map.
+                    // Only read the meta-data of the cursors before completing the ledger recovery, to know the mark
+                    // delete positions the ledgers must not be trimmed past
+                    List<CompletableFuture<Pair<ManagedCursorInfo, Stat>>> cursorsInfo = new ArrayList<>();
                     for (final String cursorName : consumers) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("[{}] Recovering cursor {} lazily", name, cursorName);
-                        }
-                        final ManagedCursorImpl cursor;
-                        cursor = new ManagedCursorImpl(bookKeeper, config, ManagedLedgerImpl.this, cursorName);
-                        CompletableFuture<ManagedCursor> cursorRecoveryFuture = new CompletableFuture<>();
-                        uninitializedCursors.put(cursorName, cursorRecoveryFuture);
-
-                        cursor.recover(new VoidCallback() {
+                        CompletableFuture<Pair<ManagedCursorInfo, Stat>> cursorInfo = new CompletableFuture<>();
+                        store.asyncGetCursorInfo(name, cursorName, new MetaStoreCallback<ManagedCursorInfo>() {
                             @Override
-                            public void operationComplete() {
-                                log.info("[{}] Lazy recovery for cursor {} completed. pos={} -- todo={}", name,
-                                        cursorName, cursor.getMarkDeletedPosition(), cursorCount.get() - 1);
-                                cursor.setActive();
-                                synchronized (ManagedLedgerImpl.this) {
-                                    addCursor(cursor);
-                                    uninitializedCursors.remove(cursor.getName()).complete(cursor);
-                                }
+                            public void operationComplete(ManagedCursorInfo info, Stat stat) {
+                                cursorInfo.complete(Pair.of(info, stat));
                             }
 
                             @Override
-                            public void operationFailed(ManagedLedgerException exception) {
-                                log.warn("[{}] Lazy recovery for cursor {} failed", name, cursorName, exception);
-                                synchronized (ManagedLedgerImpl.this) {
-                                    uninitializedCursors.remove(cursor.getName()).completeExceptionally(exception);
-                                }
+                            public void operationFailed(MetaStoreException e) {
+                                // The cursor will read its meta-data again when it is recovered
+                                log.warn("[{}] Failed to read the meta-data of cursor {}, recovering it lazily",
+                                        name, cursorName, e);
+                                cursorInfo.complete(null);
                             }
                         });
+                        cursorsInfo.add(cursorInfo);
                     }
-                    // Complete ledger recovery.
-                    callback.initializeComplete();
+                    FutureUtil.waitForAll(cursorsInfo).thenRun(() -> executor.execute(() -> {
+                        cursorRecoveryQueue = recoveryQueue;
+                        for (int i = 0; i < consumers.size(); i++) {
+                            lazyRecoverCursor(consumers.get(i), cursorsInfo.get(i).join(), recoveryQueue, () -> {
+                                if (cursorCount.decrementAndGet() == 0) {
+                                    mbean.recordCursorsRecoveryTime(System.nanoTime() - cursorsRecoveryStartNanos,
+                                            TimeUnit.NANOSECONDS);
+                                }
+                            });
+                        }
+                        recoveryQueue.start();
+                        // Complete ledger recovery.
+                        callback.initializeComplete();
+                    }));
                 }
             }
 
@@ -647,6 +746,57 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         });
     }
 
+    private synchronized void lazyRecoverCursor(String cursorName, Pair<ManagedCursorInfo, Stat> cursorInfo,
+                                                CursorRecoveryQueue recoveryQueue, Runnable onRecovered) {
+        // Lazily recover cursors by put them to uninitializedCursors map.
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Recovering cursor {} lazily", name, cursorName);
+        }
+        // The mark delete position of a cursor whose meta-data couldn't be read is unknown, so all the ledgers are
+        // kept until it's recovered
+        ManagedCursorInfo info = cursorInfo != null ? cursorInfo.getLeft() : null;
+        recoveringCursorsMarkDeletePositions.put(cursorName, info != null && info.hasMarkDeleteLedgerId()
+                ? PositionImpl.get(info.getMarkDeleteLedgerId(), info.getMarkDeleteEntryId())
+                : PositionImpl.EARLIEST);
+        CompletableFuture<ManagedCursor> cursorRecoveryFuture = new CompletableFuture<>();
+        uninitializedCursors.put(cursorName, cursorRecoveryFuture);
+
+        recoveryQueue.add(cursorName, onComplete -> {
+            final ManagedCursorImpl cursor = new ManagedCursorImpl(bookKeeper, config, this, cursorName);
+            VoidCallback recoveryCallback = new VoidCallback() {
+                @Override
+                public void operationComplete() {
+                    log.info("[{}] Lazy recovery for cursor {} completed. pos={} -- todo={}", name, cursorName,
+                            cursor.getMarkDeletedPosition(), recoveringCursorsMarkDeletePositions.size() - 1);
+                    cursor.setActive();
+                    synchronized (ManagedLedgerImpl.this) {
+                        addCursor(cursor);
+                        recoveringCursorsMarkDeletePositions.remove(cursorName);
+                        uninitializedCursors.remove(cursorName).complete(cursor);
+                    }
+                    onRecovered.run();
+                    onComplete.run();
+                }
+
+                @Override
+                public void operationFailed(ManagedLedgerException exception) {
+                    log.warn("[{}] Lazy recovery for cursor {} failed", name, cursorName, exception);
+                    synchronized (ManagedLedgerImpl.this) {
+                        recoveringCursorsMarkDeletePositions.remove(cursorName);
+                        uninitializedCursors.remove(cursorName).completeExceptionally(exception);
+                    }
+                    onRecovered.run();
+                    onComplete.run();
+                }
+            };
+            if (cursorInfo != null) {
+                cursor.recover(cursorInfo.getLeft(), cursorInfo.getRight(), recoveryCallback);
+            } else {
+                cursor.recover(recoveryCallback);
+            }
+        });
+    }
+
     private void addCursor(ManagedCursorImpl cursor) {
         Position positionForOrdering = null;
         if (cursor.isDurable()) {
@@ -821,6 +971,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             if (log.isDebugEnabled()) {
                 log.debug("[{}] Queue addEntry request", name);
             }
+            startRolloverStall();
             if (State.CreatingLedger == state) {
                 long elapsedMs = System.currentTimeMillis() - this.lastLedgerCreationInitiationTimestamp;
                 if (elapsedMs > TimeUnit.SECONDS.toMillis(2 * config.getMetadataOperationsTimeoutSeconds())) {
@@ -830,8 +981,10 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                 }
             }
         } else if (state == State.ClosedLedger) {
-            // No ledger and no pending operations. Create a new ledger
-            if (STATE_UPDATER.compareAndSet(this, State.ClosedLedger, State.CreatingLedger)) {
+            startRolloverStall();
+            // No ledger and no pending operations. Create a new ledger, unless there is a standby one
+            if (!switchToStandbyLedger()
+                    && STATE_UPDATER.compareAndSet(this, State.ClosedLedger, State.CreatingLedger)) {
                 log.info("[{}] Creating a new ledger", name);
                 this.lastLedgerCreationInitiationTimestamp = System.currentTimeMillis();
                 mbean.startDataLedgerCreateOp();
@@ -858,6 +1011,8 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                 // This entry will be the last added to current ledger
                 addOperation.setCloseWhenDone(true);
                 STATE_UPDATER.set(this, State.ClosingLedger);
+            } else {
+                maybeCreateStandbyLedger();
             }
             addOperation.initiate();
         }
@@ -976,6 +1131,11 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                 callback.openCursorFailed((ManagedLedgerException) ex, ctx);
                 return null;
             });
+            CursorRecoveryQueue recoveryQueue = cursorRecoveryQueue;
+            if (recoveryQueue != null) {
+                // The cursor is needed now, don't wait for its turn to be recovered
+                recoveryQueue.startNow(cursorName);
+            }
             return;
         }
         ManagedCursor cachedCursor = cursors.get(cursorName);
@@ -1033,6 +1193,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             return;
         } else if (!cursor.isDurable()) {
             cursor.setState(ManagedCursorImpl.State.Closed);
+            cursor.getReadAhead().reset();
             cursors.removeCursor(consumerName);
             deactivateCursorByName(consumerName);
             callback.deleteCursorComplete(ctx);
@@ -1045,6 +1206,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             @Override
             public void operationComplete(Void result, Stat stat) {
                 cursor.asyncDeleteCursorLedger();
+                cursor.getReadAhead().reset();
                 cursors.removeCursor(consumerName);
                 deactivateCursorByName(consumerName);
 
@@ -1370,6 +1532,12 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                     public void operationComplete(Void result, Stat stat) {
                         ledgersStat = stat;
                         log.info("[{}] Terminated managed ledger at {}", name, lastConfirmedEntry);
+                        // The standby ledger was dropped from the ledgers list, no more ledgers will be written
+                        LedgerHandle standbyLedger = ManagedLedgerImpl.this.standbyLedger;
+                        if (standbyLedger != null) {
+                            ManagedLedgerImpl.this.standbyLedger = null;
+                            asyncDeleteLedger(standbyLedger.getId(), DEFAULT_LEDGER_DELETE_RETRIES);
+                        }
                         callback.terminateComplete(lastConfirmedEntry, ctx);
                     }
 
@@ -1484,6 +1652,12 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         STATE_UPDATER.set(this, State.Closed);
         cancelScheduledTasks();
 
+        // The standby ledger stays in the ledgers list, it is dropped when the managed ledger is opened again
+        LedgerHandle standbyLedger = this.standbyLedger;
+        if (standbyLedger != null) {
+            standbyLedger.closeAsync();
+        }
+
         LedgerHandle lh = currentLedger;
 
         if (lh == null) {
@@ -1680,6 +1854,10 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
     protected synchronized void updateLedgersIdsComplete(@Nullable LedgerHandle originalCurrentLedger) {
         STATE_UPDATER.set(this, State.LedgerOpened);
+        if (rolloverStallStartNanos != 0) {
+            mbean.addLedgerRolloverStallSample(System.nanoTime() - rolloverStallStartNanos, TimeUnit.NANOSECONDS);
+            rolloverStallStartNanos = 0;
+        }
         // Delete original "currentLedger" if it has been removed from "ledgers".
         if (originalCurrentLedger != null && !ledgers.containsKey(originalCurrentLedger.getId())){
             bookKeeper.asyncDeleteLedger(originalCurrentLedger.getId(), (rc, ctx) -> {
@@ -1743,7 +1921,8 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         }
         if (entriesInLedger > 0) {
             LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(lh.getId()).setEntries(entriesInLedger)
-                    .setSize(lh.getLength()).setTimestamp(clock.millis()).build();
+                    .setSize(lh.getLength()).setTimestamp(clock.millis())
+                    .addAllTimestampIndex(getTimestampIndex(lh.getId())).build();
             ledgers.put(lh.getId(), info);
         } else {
             // The last ledger was empty, so we can discard it
@@ -1758,6 +1937,102 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         createLedgerAfterClosed();
     }
 
+    /**
+     * Sample an added entry in the timestamp index of its ledger, when the time since the last sampled entry is over
+     * the index interval. The index of a ledger is downsampled when it reaches {@link #MAX_TIMESTAMP_INDEX_SIZE}.
+     */
+    void addToTimestampIndex(long ledgerId, long entryId, ByteBuf data) {
+        long intervalMillis = config.getTimestampIndexIntervalMillis();
+        ToLongFunction<ByteBuf> timestampExtractor = config.getEntryTimestampExtractor();
+        if (intervalMillis <= 0 || timestampExtractor == null) {
+            return;
+        }
+        long now = clock.millis();
+        synchronized (currentLedgerTimestampIndex) {
+            if (ledgerId != currentLedgerTimestampIndexId) {
+                currentLedgerTimestampIndex.clear();
+                currentLedgerTimestampIndexId = ledgerId;
+                currentLedgerTimestampIndexIntervalMillis = intervalMillis;
+            } else if (now - lastTimestampIndexSampleMillis < currentLedgerTimestampIndexIntervalMillis) {
+                return;
+            }
+            long timestamp;
+            try {
+                timestamp = timestampExtractor.applyAsLong(data.duplicate());
+            } catch (Exception e) {
+                log.warn("[{}] Failed to read the timestamp of entry {}:{}", name, ledgerId, entryId, e);
+                return;
+            }
+            if (timestamp < 0) {
+                return;
+            }
+            if (currentLedgerTimestampIndex.size() >= MAX_TIMESTAMP_INDEX_SIZE) {
+                // Keep the first sample, it bounds the lookups of the earliest entries of the ledger
+                int size = 0;
+                for (int i = 0; i < currentLedgerTimestampIndex.size(); i += 2) {
+                    currentLedgerTimestampIndex.set(size++, currentLedgerTimestampIndex.get(i));
+                }
+                currentLedgerTimestampIndex.subList(size, currentLedgerTimestampIndex.size()).clear();
+                currentLedgerTimestampIndexIntervalMillis *= 2;
+            }
+            currentLedgerTimestampIndex.add(
+                    EntryTimestamp.newBuilder().setEntryId(entryId).setTimestamp(timestamp).build());
+            lastTimestampIndexSampleMillis = now;
+        }
+    }
+
+    @VisibleForTesting
+    List<EntryTimestamp> getTimestampIndex(long ledgerId) {
+        synchronized (currentLedgerTimestampIndex) {
+            return ledgerId == currentLedgerTimestampIndexId
+                    ? new ArrayList<>(currentLedgerTimestampIndex) : Collections.emptyList();
+        }
+    }
+
+    /**
+     * Get the range of entries holding the newest entry with a timestamp earlier than the given one, according to the
+     * timestamp index of the ledgers. The timestamps of the entries are expected to be increasing.
+     *
+     * @param timestamp
+     *            the timestamp to search for
+     * @return the range of entries, unbounded on the sides the index doesn't narrow, or null if no ledger is indexed
+     */
+    Range<PositionImpl> getTimestampIndexRange(long timestamp) {
+        PositionImpl lowerPosition = null;
+        PositionImpl upperPosition = null;
+        boolean indexed = false;
+        for (LedgerInfo ledgerInfo : ledgers.values()) {
+            long ledgerId = ledgerInfo.getLedgerId();
+            List<EntryTimestamp> index = ledgerInfo.getTimestampIndexCount() > 0
+                    ? ledgerInfo.getTimestampIndexList() : getTimestampIndex(ledgerId);
+            for (EntryTimestamp entryTimestamp : index) {
+                indexed = true;
+                if (entryTimestamp.getTimestamp() < timestamp) {
+                    // The newest matching entry is this one or a later one
+                    lowerPosition = PositionImpl.get(ledgerId, entryTimestamp.getEntryId());
+                    upperPosition = null;
+                } else if (upperPosition == null) {
+                    // The newest matching entry is before this one
+                    upperPosition = PositionImpl.get(ledgerId, entryTimestamp.getEntryId());
+                }
+            }
+        }
+        if (!indexed) {
+            return null;
+        }
+        if (upperPosition != null) {
+            upperPosition = getPreviousPosition(upperPosition);
+        }
+        if (lowerPosition != null && upperPosition != null) {
+            return Range.closed(lowerPosition, upperPosition);
+        } else if (lowerPosition != null) {
+            return Range.atLeast(lowerPosition);
+        } else if (upperPosition != null) {
+            return Range.atMost(upperPosition);
+        }
+        return Range.all();
+    }
+
     @Override
     public void skipNonRecoverableLedger(long ledgerId){
         for (ManagedCursor managedCursor : cursors) {
@@ -1767,6 +2042,9 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
     synchronized void createLedgerAfterClosed() {
         if (isNeededCreateNewLedgerAfterCloseLedger()) {
+            if (switchToStandbyLedger()) {
+                return;
+            }
             log.info("[{}] Creating a new ledger after closed {}", name,
                     currentLedger == null ? "null" : currentLedger.getId());
             STATE_UPDATER.set(this, State.CreatingLedger);
@@ -1779,6 +2057,151 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         }
     }
 
+    private void startRolloverStall() {
+        if (rolloverStallStartNanos == 0) {
+            rolloverStallStartNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Create the next ledger and register it in the ledgers list, when the current ledger is close to be full.
+     */
+    private void maybeCreateStandbyLedger() {
+        double threshold = config.getStandbyLedgerThreshold();
+        if (threshold <= 0 || standbyLedger != null || creatingStandbyLedger) {
+            return;
+        }
+        boolean nearlyFull = currentLedgerEntries >= config.getMaxEntriesPerLedger() * threshold
+                || currentLedgerSize >= config.getMaxSizePerLedgerMb() * MegaByte * threshold
+                || clock.millis() - lastLedgerCreatedTimestamp >= config.getMaximumRolloverTimeMs() * threshold;
+        if (!nearlyFull || !factory.isMetadataServiceAvailable()) {
+            return;
+        }
+        log.info("[{}] Creating a standby ledger ahead of the rollover of {}", name, currentLedger.getId());
+        creatingStandbyLedger = true;
+        mbean.startDataLedgerCreateOp();
+        this.executor.execute(() -> asyncCreateLedger(bookKeeper, config, digestType, (rc, lh, ctx) -> {
+            if (checkAndCompleteLedgerOpTask(rc, lh, ctx)) {
+                return;
+            }
+            mbean.endDataLedgerCreateOp();
+            if (rc != BKException.Code.OK) {
+                log.warn("[{}] Error creating standby ledger rc={} {}", name, rc, BKException.getMessage(rc));
+                synchronized (ManagedLedgerImpl.this) {
+                    creatingStandbyLedger = false;
+                }
+                return;
+            }
+            registerStandbyLedger(lh);
+        }, Collections.emptyMap()));
+    }
+
+    private void registerStandbyLedger(LedgerHandle lh) {
+        if (!metadataMutex.tryLock()) {
+            // Defer update for later
+            scheduledExecutor.schedule(() -> registerStandbyLedger(lh), 100, TimeUnit.MILLISECONDS);
+            return;
+        }
+        State state = STATE_UPDATER.get(this);
+        if (state == State.Closed || state == State.Terminated || state.isFenced()) {
+            metadataMutex.unlock();
+            asyncDeleteLedger(lh.getId(), DEFAULT_LEDGER_DELETE_RETRIES);
+            return;
+        }
+
+        LedgerInfo standbyLedgerInfo = LedgerInfo.newBuilder().setLedgerId(lh.getId()).setTimestamp(0).build();
+        store.asyncUpdateLedgerIds(name, getManagedLedgerInfo(standbyLedgerInfo), ledgersStat,
+                new MetaStoreCallback<Void>() {
+                    @Override
+                    public void operationComplete(Void result, Stat stat) {
+                        log.info("[{}] Registered standby ledger {}", name, lh.getId());
+                        ledgersStat = stat;
+                        synchronized (ManagedLedgerImpl.this) {
+                            standbyLedger = lh;
+                            creatingStandbyLedger = false;
+                        }
+                        metadataMutex.unlock();
+                    }
+
+                    @Override
+                    public void operationFailed(MetaStoreException e) {
+                        log.warn("[{}] Error registering standby ledger {}: {}", name, lh.getId(), e.getMessage());
+                        handleBadVersion(e);
+                        metadataMutex.unlock();
+                        synchronized (ManagedLedgerImpl.this) {
+                            creatingStandbyLedger = false;
+                        }
+                        asyncDeleteLedger(lh.getId(), DEFAULT_LEDGER_DELETE_RETRIES);
+                    }
+                });
+    }
+
+    /**
+     * Switch to the standby ledger, if there is one. It is already registered in the ledgers list, so the pending
+     * entries are written into it right away, while the stats of the closed ledger are stored in the background.
+     *
+     * @return whether the managed ledger switched to the standby ledger
+     */
+    private synchronized boolean switchToStandbyLedger() {
+        LedgerHandle lh = standbyLedger;
+        if (lh == null) {
+            return false;
+        }
+        standbyLedger = null;
+        LedgerHandle originalCurrentLedger = currentLedger;
+        if (originalCurrentLedger != null && lh.getId() < originalCurrentLedger.getId()) {
+            // A ledger was created while the standby one was being registered, the standby one can't follow it
+            log.info("[{}] Discarding standby ledger {} created before {}", name, lh.getId(),
+                    originalCurrentLedger.getId());
+            asyncDeleteLedger(lh.getId(), DEFAULT_LEDGER_DELETE_RETRIES);
+            return false;
+        }
+
+        log.info("[{}] Switching to standby ledger {} after closed {}", name, lh.getId(),
+                originalCurrentLedger == null ? "null" : originalCurrentLedger.getId());
+        ledgers.put(lh.getId(), LedgerInfo.newBuilder().setLedgerId(lh.getId()).setTimestamp(0).build());
+        currentLedger = lh;
+        currentLedgerEntries = 0;
+        currentLedgerSize = 0;
+        updateLedgersIdsComplete(originalCurrentLedger);
+        updateLedgersListAfterStandbySwitch();
+
+        // May need to update the cursor position
+        maybeUpdateCursorBeforeTrimmingConsumedLedger();
+        return true;
+    }
+
+    private void updateLedgersListAfterStandbySwitch() {
+        if (!metadataMutex.tryLock()) {
+            // Defer update for later
+            scheduledExecutor.schedule(this::updateLedgersListAfterStandbySwitch, 100, TimeUnit.MILLISECONDS);
+            return;
+        }
+        State state = STATE_UPDATER.get(this);
+        if (state == State.Closed || state.isFenced()) {
+            metadataMutex.unlock();
+            return;
+        }
+
+        store.asyncUpdateLedgerIds(name, getManagedLedgerInfo(), ledgersStat, new MetaStoreCallback<Void>() {
+            @Override
+            public void operationComplete(Void result, Stat stat) {
+                ledgersStat = stat;
+                metadataMutex.unlock();
+            }
+
+            @Override
+            public void operationFailed(MetaStoreException e) {
+                // The stats of the closed ledger are recovered from BookKeeper if they are still missing when the
+                // managed ledger is opened
+                log.warn("[{}] Error updating meta data after switching to the standby ledger: {}", name,
+                        e.getMessage());
+                handleBadVersion(e);
+                metadataMutex.unlock();
+            }
+        });
+    }
+
     boolean isNeededCreateNewLedgerAfterCloseLedger() {
         final State state = STATE_UPDATER.get(this);
         if (state != State.CreatingLedger && state != State.LedgerOpened) {
@@ -1858,6 +2281,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     }
 
     void clearPendingAddEntries(ManagedLedgerException e) {
+        rolloverStallStartNanos = 0;
         while (!pendingAddEntries.isEmpty()) {
             OpAddEntry op = pendingAddEntries.poll();
             op.failed(e);
@@ -2122,6 +2546,12 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             log.debug("[{}] Reading entries from ledger {} - first={} last={}", name, ledger.getId(), firstEntry,
                     lastEntry);
         }
+        // When the backlog reads caching is enabled, only the cursors whose reads are cached read ahead
+        if (config.isReadAheadEnabled() && lastEntry < lastEntryInLedger
+                && (minBacklogCursorsForCaching < 1 || opReadEntry.cursor.isCacheReadEntry())) {
+            opReadEntry.cursor.getReadAhead().onRead(ledger, firstEntry, lastEntry, lastEntryInLedger,
+                    config.getReadAheadMaxEntries());
+        }
         asyncReadEntry(ledger, firstEntry, lastEntry, opReadEntry, opReadEntry.ctx);
     }
 
@@ -2320,9 +2750,23 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     }
 
     void doCacheEviction(long maxTimestamp) {
-        if (entryCache.getSize() > 0) {
-            entryCache.invalidateEntriesBeforeTimestamp(maxTimestamp);
+        if (entryCache.getSize() <= 0) {
+            return;
         }
+
+        if (config.isCacheRetentionByActiveCursors() && !activeCursors.isEmpty()) {
+            // Entries before the slowest active cursor are already invalidated when the cursors move, so everything
+            // left in the cache is still going to be read. Retain it regardless of its age, within the budget. Over
+            // the budget, drop the entries furthest ahead of the slowest active cursor, which reads the oldest ones
+            // next
+            long sizeOverBudget = entryCache.getSize() - config.getCacheRetentionMaxSizeBytes();
+            if (sizeOverBudget > 0) {
+                entryCache.evictNewestEntries(sizeOverBudget);
+            }
+            return;
+        }
+
+        entryCache.invalidateEntriesBeforeTimestamp(maxTimestamp);
     }
 
     // slowest reader position is earliest mark delete position when cacheEvictionByMarkDeletedPosition=true
@@ -2331,16 +2775,39 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         if (entryCache.getSize() <= 0) {
             return;
         }
+        PositionImpl prefetchedPos = getFirstPrefetchedPosition();
         if (!activeCursors.isEmpty()) {
             PositionImpl evictionPos = activeCursors.getSlowestReaderPosition();
             if (evictionPos != null) {
+                if (prefetchedPos != null && prefetchedPos.compareTo(evictionPos) < 0) {
+                    evictionPos = prefetchedPos;
+                }
                 entryCache.invalidateEntries(evictionPos);
             }
+        } else if (prefetchedPos != null) {
+            entryCache.invalidateEntries(prefetchedPos);
         } else {
             entryCache.clear();
         }
     }
 
+    /**
+     * @return the first entry prefetched by the read-ahead of a cursor that was not read yet, or null if there's none
+     */
+    private PositionImpl getFirstPrefetchedPosition() {
+        PositionImpl firstPrefetchedPos = null;
+        for (CursorReadAhead readAhead : prefetchingReadAheads) {
+            PositionImpl pos = readAhead.getFirstPrefetchedPosition();
+            if (pos == null) {
+                // The cursor was closed or has read all its prefetched entries
+                prefetchingReadAheads.remove(readAhead);
+            } else if (firstPrefetchedPos == null || pos.compareTo(firstPrefetchedPos) < 0) {
+                firstPrefetchedPos = pos;
+            }
+        }
+        return firstPrefetchedPos;
+    }
+
     void onCursorMarkDeletePositionUpdated(ManagedCursorImpl cursor, PositionImpl newPosition) {
         if (config.isCacheEvictionByMarkDeletedPosition()) {
             updateActiveCursor(cursor, newPosition);
@@ -2406,6 +2873,43 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         }
     }
 
+    /**
+     * Notify the waiting cursors of a newly added entry, handing it over to them so that the cursors waiting to read
+     * it don't have to read it back from the entry cache.
+     *
+     * @param position the position of the added entry
+     * @param data the data of the added entry
+     */
+    void notifyCursors(PositionImpl position, ByteBuf data) {
+        EntryImpl addedEntry = null;
+        try {
+            while (true) {
+                final ManagedCursorImpl waitingCursor = waitingCursors.poll();
+                if (waitingCursor == null) {
+                    break;
+                }
+                if (addedEntry == null) {
+                    addedEntry = EntryImpl.create(position, data);
+                }
+
+                // Each cursor gets its own duplicate of the data, since the readers move its indexes
+                final EntryImpl entry = EntryImpl.create(addedEntry);
+                try {
+                    executor.execute(() -> waitingCursor.notifyEntriesAvailable(entry));
+                } catch (RejectedExecutionException e) {
+                    // The executor is shutting down, the cursor won't read the entry
+                    entry.release();
+                    log.warn("[{}] Failed to notify cursor {} of entry {}: {}", name, waitingCursor.getName(),
+                            position, e.getMessage());
+                }
+            }
+        } finally {
+            if (addedEntry != null) {
+                addedEntry.release();
+            }
+        }
+    }
+
     void notifyWaitingEntryCallBacks() {
         while (true) {
             final WaitingEntryCallBack cb = waitingEntryCallBacks.poll();
@@ -2662,6 +3166,10 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                     return;
                 }
             }
+            // Keep the ledgers needed by the cursors that are still being lazily recovered
+            for (PositionImpl markDeletePosition : recoveringCursorsMarkDeletePositions.values()) {
+                slowestReaderLedgerId = Math.min(slowestReaderLedgerId, markDeletePosition.getLedgerId());
+            }
 
             if (log.isDebugEnabled()) {
                 log.debug("[{}] Slowest consumer ledger id: {}", name, slowestReaderLedgerId);
@@ -2759,6 +3267,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             }
 
             doDeleteLedgers(ledgersToDelete);
+            invalidateCursorsBehindDeletedLedgers(ledgersToDelete);
 
             for (LedgerInfo ls : offloadedLedgersToDelete) {
                 LedgerInfo.Builder newInfoBuilder = ls.toBuilder();
@@ -2886,6 +3395,23 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         });
     }
 
+    /**
+     * The cursors that were not moved past the deleted ledgers, eg. the non-durable ones reading compacted data, can
+     * have individually deleted entries in these ledgers, which are no longer part of their backlog.
+     */
+    protected void invalidateCursorsBehindDeletedLedgers(List<LedgerInfo> deletedLedgers) {
+        PositionImpl highestDeletedPosition = calculateLastEntryInLedgerList(deletedLedgers);
+        if (highestDeletedPosition == null) {
+            return;
+        }
+        cursors.forEach(cursor -> {
+            if (cursor instanceof ManagedCursorImpl
+                    && highestDeletedPosition.compareTo((PositionImpl) cursor.getMarkDeletedPosition()) > 0) {
+                ((ManagedCursorImpl) cursor).invalidateDeletedEntriesAfterMarkDelete();
+            }
+        });
+    }
+
     /**
      * @return null if all ledgers is empty.
      */
@@ -3045,6 +3571,10 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     @SuppressWarnings("checkstyle:fallthrough")
     private void deleteAllLedgers(DeleteLedgerCallback callback, Object ctx) {
         List<LedgerInfo> ledgers = Lists.newArrayList(ManagedLedgerImpl.this.ledgers.values());
+        LedgerHandle standbyLedger = this.standbyLedger;
+        if (standbyLedger != null) {
+            ledgers.add(LedgerInfo.newBuilder().setLedgerId(standbyLedger.getId()).build());
+        }
         AtomicInteger ledgersToDelete = new AtomicInteger(ledgers.size());
         if (ledgers.isEmpty()) {
             // No ledgers to delete, proceed with deleting metadata
@@ -3877,6 +4407,11 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         if (state == State.Terminated) {
             mlInfo.setTerminatedPosition(NestedPositionInfo.newBuilder().setLedgerId(lastConfirmedEntry.getLedgerId())
                     .setEntryId(lastConfirmedEntry.getEntryId()));
+        } else {
+            LedgerHandle standbyLedger = this.standbyLedger;
+            if (standbyLedger != null) {
+                mlInfo.addLedgerInfo(LedgerInfo.newBuilder().setLedgerId(standbyLedger.getId()).setTimestamp(0));
+            }
         }
         if (managedLedgerInterceptor != null) {
             managedLedgerInterceptor.onUpdateManagedLedgerInfo(propertiesMap);
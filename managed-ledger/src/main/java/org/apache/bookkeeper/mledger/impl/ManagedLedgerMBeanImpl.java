@@ -51,12 +51,20 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
     private final LongAdder cursorLedgerCloseOp = new LongAdder();
     private final LongAdder cursorLedgerCreateOp = new LongAdder();
     private final LongAdder cursorLedgerDeleteOp = new LongAdder();
+    private final LongAdder cacheRetentionHits = new LongAdder();
+    private final LongAdder readAheadPrefetchedEntries = new LongAdder();
+    private final LongAdder readAheadConsumedEntries = new LongAdder();
+    private final LongAdder tailFanOutEntries = new LongAdder();
+    private volatile long ledgersRecoveryTimeMillis;
+    private volatile long cursorsRecoveryTimeMillis;
 
     // addEntryLatencyStatsUsec measure total latency including time entry spent while waiting in queue
     private final StatsBuckets addEntryLatencyStatsUsec = new StatsBuckets(ENTRY_LATENCY_BUCKETS_USEC);
     // ledgerAddEntryLatencyStatsUsec measure latency to persist entry into ledger
     private final StatsBuckets ledgerAddEntryLatencyStatsUsec = new StatsBuckets(ENTRY_LATENCY_BUCKETS_USEC);
     private final StatsBuckets ledgerSwitchLatencyStatsUsec = new StatsBuckets(ENTRY_LATENCY_BUCKETS_USEC);
+    // ledgerRolloverStallStatsUsec measure the time the added entries waited for a ledger to write into
+    private final StatsBuckets ledgerRolloverStallStatsUsec = new StatsBuckets(ENTRY_LATENCY_BUCKETS_USEC);
     private final StatsBuckets entryStats = new StatsBuckets(ENTRY_SIZE_BUCKETS_BYTES);
 
     public ManagedLedgerMBeanImpl(ManagedLedgerImpl managedLedger) {
@@ -80,6 +88,7 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
         addEntryLatencyStatsUsec.refresh();
         ledgerAddEntryLatencyStatsUsec.refresh();
         ledgerSwitchLatencyStatsUsec.refresh();
+        ledgerRolloverStallStatsUsec.refresh();
         entryStats.refresh();
         entriesRead.calculateRate(seconds);
     }
@@ -106,6 +115,30 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
         readEntriesOpsCacheMisses.recordMultipleEvents(count, totalSize);
     }
 
+    public void recordCacheRetentionHits(int count) {
+        cacheRetentionHits.add(count);
+    }
+
+    public void recordReadAheadPrefetchedEntries(long count) {
+        readAheadPrefetchedEntries.add(count);
+    }
+
+    public void recordReadAheadConsumedEntries(long count) {
+        readAheadConsumedEntries.add(count);
+    }
+
+    public void recordTailFanOutEntry() {
+        tailFanOutEntries.increment();
+    }
+
+    public void recordLedgersRecoveryTime(long time, TimeUnit unit) {
+        ledgersRecoveryTimeMillis = unit.toMillis(time);
+    }
+
+    public void recordCursorsRecoveryTime(long time, TimeUnit unit) {
+        cursorsRecoveryTimeMillis = unit.toMillis(time);
+    }
+
     public void addAddEntryLatencySample(long latency, TimeUnit unit) {
         addEntryLatencyStatsUsec.addValue(unit.toMicros(latency));
     }
@@ -118,6 +151,10 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
         ledgerSwitchLatencyStatsUsec.addValue(unit.toMicros(latency));
     }
 
+    public void addLedgerRolloverStallSample(long stall, TimeUnit unit) {
+        ledgerRolloverStallStatsUsec.addValue(unit.toMicros(stall));
+    }
+
     public void addReadEntriesSample(int count, long totalSize) {
         readEntriesOps.recordMultipleEvents(count, totalSize);
     }
@@ -230,6 +267,36 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
         return addEntryOps.getCount();
     }
 
+    @Override
+    public long getCacheRetentionHits() {
+        return cacheRetentionHits.sum();
+    }
+
+    @Override
+    public long getReadAheadPrefetchedEntries() {
+        return readAheadPrefetchedEntries.sum();
+    }
+
+    @Override
+    public long getReadAheadConsumedEntries() {
+        return readAheadConsumedEntries.sum();
+    }
+
+    @Override
+    public long getTailFanOutEntries() {
+        return tailFanOutEntries.sum();
+    }
+
+    @Override
+    public long getLedgersRecoveryTimeMillis() {
+        return ledgersRecoveryTimeMillis;
+    }
+
+    @Override
+    public long getCursorsRecoveryTimeMillis() {
+        return cursorsRecoveryTimeMillis;
+    }
+
     @Override
     public long getAddEntryErrors() {
         return addEntryOpsFailed.getCount();
@@ -290,6 +357,11 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
         return ledgerSwitchLatencyStatsUsec.getBuckets();
     }
 
+    @Override
+    public long[] getLedgerRolloverStallBuckets() {
+        return ledgerRolloverStallStatsUsec.getBuckets();
+    }
+
     @Override
     public StatsBuckets getInternalAddEntryLatencyBuckets() {
         return addEntryLatencyStatsUsec;
@@ -310,6 +382,11 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
         return ledgerSwitchLatencyStatsUsec.getAvg();
     }
 
+    @Override
+    public double getLedgerRolloverStallAverageUsec() {
+        return ledgerRolloverStallStatsUsec.getAvg();
+    }
+
     @Override
     public long getStoredMessagesSize() {
         return managedLedger.getTotalSize() * managedLedger.getConfig().getWriteQuorumSize();
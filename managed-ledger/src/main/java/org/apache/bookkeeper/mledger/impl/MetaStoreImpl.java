@@ -24,6 +24,7 @@ import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -31,6 +32,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
@@ -42,6 +44,9 @@ import org.apache.bookkeeper.mledger.proto.MLDataFormats;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.CompressionType;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedCursorInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfo;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfoPage;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.pulsar.common.allocator.PulsarByteBufAllocator;
 import org.apache.pulsar.common.compression.CompressionCodec;
 import org.apache.pulsar.common.compression.CompressionCodecProvider;
@@ -58,12 +63,17 @@ public class MetaStoreImpl implements MetaStore, Consumer<Notification> {
     private static final String BASE_NODE = "/managed-ledgers";
     private static final String PREFIX = BASE_NODE + "/";
 
+    // Child node of the managed ledger node holding the sealed pages of its ledgers list
+    static final String LEDGER_INFO_PAGES_NODE = "__ledger-info-pages";
+    private static final int MAX_READ_ATTEMPTS = 3;
+
     private final MetadataStore store;
     private final OrderedExecutor executor;
 
     private static final int MAGIC_MANAGED_INFO_METADATA = 0x4778; // 0100 0111 0111 1000
     private final MetadataCompressionConfig ledgerInfoCompressionConfig;
     private final MetadataCompressionConfig cursorInfoCompressionConfig;
+    private final int ledgerInfoPageSize;
 
     private final Map<String, UpdateCallback<ManagedLedgerInfo>> managedLedgerInfoUpdateCallbackMap;
 
@@ -72,6 +82,7 @@ public class MetaStoreImpl implements MetaStore, Consumer<Notification> {
         this.executor = executor;
         this.ledgerInfoCompressionConfig = MetadataCompressionConfig.noCompression;
         this.cursorInfoCompressionConfig = MetadataCompressionConfig.noCompression;
+        this.ledgerInfoPageSize = 0;
         managedLedgerInfoUpdateCallbackMap = new ConcurrentHashMap<>();
         if (store != null) {
             store.registerListener(this);
@@ -81,10 +92,25 @@ public class MetaStoreImpl implements MetaStore, Consumer<Notification> {
     public MetaStoreImpl(MetadataStore store, OrderedExecutor executor,
                          MetadataCompressionConfig ledgerInfoCompressionConfig,
                          MetadataCompressionConfig cursorInfoCompressionConfig) {
+        this(store, executor, ledgerInfoCompressionConfig, cursorInfoCompressionConfig, 0);
+    }
+
+    /**
+     * Create a meta store that stores the oldest ledgers of long ledgers lists in sealed pages.
+     *
+     * @param ledgerInfoPageSize
+     *            max number of ledgers kept in the managed ledger node, and number of ledgers per sealed page.
+     *            0 keeps the whole list in the managed ledger node.
+     */
+    public MetaStoreImpl(MetadataStore store, OrderedExecutor executor,
+                         MetadataCompressionConfig ledgerInfoCompressionConfig,
+                         MetadataCompressionConfig cursorInfoCompressionConfig,
+                         int ledgerInfoPageSize) {
         this.store = store;
         this.executor = executor;
         this.ledgerInfoCompressionConfig = ledgerInfoCompressionConfig;
         this.cursorInfoCompressionConfig = cursorInfoCompressionConfig;
+        this.ledgerInfoPageSize = ledgerInfoPageSize;
         managedLedgerInfoUpdateCallbackMap = new ConcurrentHashMap<>();
         if (store != null) {
             store.registerListener(this);
@@ -96,17 +122,10 @@ public class MetaStoreImpl implements MetaStore, Consumer<Notification> {
             MetaStoreCallback<ManagedLedgerInfo> callback) {
         // Try to get the content or create an empty node
         String path = PREFIX + ledgerName;
-        store.get(path)
+        readManagedLedgerInfo(ledgerName, MAX_READ_ATTEMPTS)
                 .thenAcceptAsync(optResult -> {
                     if (optResult.isPresent()) {
-                        ManagedLedgerInfo info;
-                        try {
-                            info = parseManagedLedgerInfo(optResult.get().getValue());
-                            info = updateMLInfoTimestamp(info);
-                            callback.operationComplete(info, optResult.get().getStat());
-                        } catch (InvalidProtocolBufferException e) {
-                            callback.operationFailed(getException(e));
-                        }
+                        callback.operationComplete(optResult.get().getLeft(), optResult.get().getRight());
                     } else {
                         // Z-node doesn't exist
                         if (createIfMissing) {
@@ -183,9 +202,42 @@ public class MetaStoreImpl implements MetaStore, Consumer<Notification> {
         }
 
         String path = PREFIX + ledgerName;
-        store.put(path, compressLedgerInfo(mlInfo), Optional.of(stat.getVersion()))
-                .thenAcceptAsync(newVersion -> callback.operationComplete(null, newVersion),
-                        executor.chooseThread(ledgerName))
+        LedgerInfoPages currentPages = stat instanceof PagedStat ? ((PagedStat) stat).pages : LedgerInfoPages.EMPTY;
+        if (ledgerInfoPageSize <= 0 && currentPages.isEmpty()) {
+            store.put(path, compressLedgerInfo(mlInfo), Optional.of(stat.getVersion()))
+                    .thenAcceptAsync(newVersion -> callback.operationComplete(null, newVersion),
+                            executor.chooseThread(ledgerName))
+                    .exceptionally(ex -> {
+                        executor.executeOrdered(ledgerName,
+                                () -> callback.operationFailed(getException(ex)));
+                        return null;
+                    });
+            return;
+        }
+
+        // The new pages are written before the managed ledger node that references them and the replaced pages are
+        // only deleted once it's updated, so that a failed or concurrent update never leaves a dangling reference
+        LedgerInfoPagesUpdate update = new LedgerInfoPagesUpdate(currentPages, mlInfo.getLedgerInfoList(),
+                ledgerInfoPageSize);
+        ManagedLedgerInfo head = mlInfo.toBuilder()
+                .clearLedgerInfo()
+                .addAllLedgerInfo(update.headLedgers)
+                .clearLedgerInfoPage()
+                .addAllLedgerInfoPage(update.pages.index)
+                .build();
+        writeLedgerInfoPages(ledgerName, update.addedPages)
+                .thenCompose(__ -> store.put(path, compressLedgerInfo(head), Optional.of(stat.getVersion()))
+                        .whenComplete((newStat, ex) -> {
+                            if (ex != null && FutureUtil.unwrapCompletionException(ex)
+                                    instanceof MetadataStoreException.BadVersionException) {
+                                deleteLedgerInfoPages(ledgerName, update.addedPages);
+                            }
+                        }))
+                .thenAcceptAsync(newStat -> {
+                    deleteLedgerInfoPages(ledgerName, update.removedPages);
+                    callback.operationComplete(null, update.pages.isEmpty() ? newStat
+                            : new PagedStat(newStat, update.pages));
+                }, executor.chooseThread(ledgerName))
                 .exceptionally(ex -> {
                     executor.executeOrdered(ledgerName,
                             () -> callback.operationFailed(getException(ex)));
@@ -193,6 +245,88 @@ public class MetaStoreImpl implements MetaStore, Consumer<Notification> {
                 });
     }
 
+    private CompletableFuture<Void> writeLedgerInfoPages(String ledgerName, Map<Long, List<LedgerInfo>> pages) {
+        List<CompletableFuture<Stat>> futures = new ArrayList<>(pages.size());
+        pages.forEach((pageId, ledgers) -> {
+            byte[] content = compressLedgerInfo(ManagedLedgerInfo.newBuilder().addAllLedgerInfo(ledgers).build());
+            futures.add(store.put(getLedgerInfoPagePath(ledgerName, pageId), content, Optional.of(-1L)));
+        });
+        return FutureUtil.waitForAll(futures).whenComplete((__, ex) -> {
+            if (ex != null) {
+                log.warn("[{}] Failed to write the ledger info pages {}", ledgerName, pages.keySet(), ex);
+                deleteLedgerInfoPages(ledgerName, pages);
+            }
+        });
+    }
+
+    private void deleteLedgerInfoPages(String ledgerName, Map<Long, List<LedgerInfo>> pages) {
+        pages.keySet().forEach(pageId -> store.delete(getLedgerInfoPagePath(ledgerName, pageId), Optional.empty())
+                .exceptionally(ex -> {
+                    Throwable cause = FutureUtil.unwrapCompletionException(ex);
+                    if (!(cause instanceof MetadataStoreException.NotFoundException)) {
+                        log.warn("[{}] Failed to delete the ledger info page {}", ledgerName, pageId, ex);
+                    }
+                    return null;
+                }));
+    }
+
+    private CompletableFuture<Optional<Pair<ManagedLedgerInfo, Stat>>> readManagedLedgerInfo(String ledgerName,
+                                                                                             int attempts) {
+        return store.get(PREFIX + ledgerName).thenComposeAsync(optResult -> {
+            if (optResult.isEmpty()) {
+                return CompletableFuture.completedFuture(Optional.empty());
+            }
+            ManagedLedgerInfo info;
+            try {
+                info = parseManagedLedgerInfo(optResult.get().getValue());
+            } catch (InvalidProtocolBufferException e) {
+                return FutureUtil.failedFuture(e);
+            }
+            Stat stat = optResult.get().getStat();
+            if (info.getLedgerInfoPageCount() == 0) {
+                return CompletableFuture.completedFuture(Optional.of(Pair.of(updateMLInfoTimestamp(info), stat)));
+            }
+            return readLedgerInfoPages(ledgerName, info.getLedgerInfoPageList())
+                    .thenApply(pages -> Optional.of(Pair.of(updateMLInfoTimestamp(pages.merge(info)),
+                            (Stat) new PagedStat(stat, pages))))
+                    .exceptionallyCompose(ex -> {
+                        // A page can be replaced by an update of the ledgers list between the two reads
+                        if (attempts > 1 && FutureUtil.unwrapCompletionException(ex)
+                                instanceof MetadataStoreException.NotFoundException) {
+                            return readManagedLedgerInfo(ledgerName, attempts - 1);
+                        }
+                        return FutureUtil.failedFuture(ex);
+                    });
+        }, executor.chooseThread(ledgerName));
+    }
+
+    private CompletableFuture<LedgerInfoPages> readLedgerInfoPages(String ledgerName,
+                                                                   List<LedgerInfoPage> index) {
+        List<CompletableFuture<List<LedgerInfo>>> futures = new ArrayList<>(index.size());
+        for (LedgerInfoPage page : index) {
+            String path = getLedgerInfoPagePath(ledgerName, page.getPageId());
+            futures.add(store.get(path).thenApply(optResult -> {
+                if (optResult.isEmpty()) {
+                    throw new CompletionException(new MetadataStoreException.NotFoundException(path));
+                }
+                try {
+                    return parseManagedLedgerInfo(optResult.get().getValue()).getLedgerInfoList();
+                } catch (InvalidProtocolBufferException e) {
+                    throw new CompletionException(e);
+                }
+            }));
+        }
+        return FutureUtil.waitForAll(futures).thenApply(__ -> {
+            List<List<LedgerInfo>> contents = new ArrayList<>(futures.size());
+            futures.forEach(future -> contents.add(future.join()));
+            return new LedgerInfoPages(index, contents);
+        });
+    }
+
+    private static String getLedgerInfoPagePath(String ledgerName, long pageId) {
+        return PREFIX + ledgerName + "/" + LEDGER_INFO_PAGES_NODE + "/" + pageId;
+    }
+
     @Override
     public void getCursors(String ledgerName, MetaStoreCallback<List<String>> callback) {
         if (log.isDebugEnabled()) {
@@ -201,8 +335,11 @@ public class MetaStoreImpl implements MetaStore, Consumer<Notification> {
 
         String path = PREFIX + ledgerName;
         store.getChildren(path)
-                .thenAcceptAsync(cursors -> callback.operationComplete(cursors, null), executor
-                        .chooseThread(ledgerName))
+                .thenAcceptAsync(children -> {
+                    List<String> cursors = new ArrayList<>(children);
+                    cursors.remove(LEDGER_INFO_PAGES_NODE);
+                    callback.operationComplete(cursors, null);
+                }, executor.chooseThread(ledgerName))
                 .exceptionally(ex -> {
                     executor.executeOrdered(ledgerName,
                             () -> callback.operationFailed(getException(ex)));
@@ -304,7 +441,8 @@ public class MetaStoreImpl implements MetaStore, Consumer<Notification> {
         log.info("[{}] Remove ManagedLedger", ledgerName);
 
         String path = PREFIX + ledgerName;
-        store.delete(path, Optional.empty())
+        store.deleteRecursive(path + "/" + LEDGER_INFO_PAGES_NODE)
+                .thenCompose(__ -> store.delete(path, Optional.empty()))
                 .thenAcceptAsync(v -> {
                     if (log.isDebugEnabled()) {
                         log.debug("[{}] managed ledger delete done", ledgerName);
@@ -352,16 +490,9 @@ public class MetaStoreImpl implements MetaStore, Consumer<Notification> {
             return;
         }
         String ledgerName = notification.getPath().substring(PREFIX.length());
-        store.get(notification.getPath()).thenAcceptAsync(optResult -> {
+        readManagedLedgerInfo(ledgerName, MAX_READ_ATTEMPTS).thenAcceptAsync(optResult -> {
             if (optResult.isPresent()) {
-                ManagedLedgerInfo info;
-                try {
-                    info = parseManagedLedgerInfo(optResult.get().getValue());
-                    info = updateMLInfoTimestamp(info);
-                    callback.onUpdate(info, optResult.get().getStat());
-                } catch (InvalidProtocolBufferException e) {
-                    log.error("[{}] Error when parseManagedLedgerInfo", ledgerName, e);
-                }
+                callback.onUpdate(optResult.get().getLeft(), optResult.get().getRight());
             }
         }, executor.chooseThread(ledgerName)).exceptionally(ex -> {
             log.error("[{}] Error when read ManagedLedgerInfo", ledgerName, ex);
@@ -541,4 +672,104 @@ public class MetaStoreImpl implements MetaStore, Consumer<Notification> {
                 org.apache.pulsar.common.api.proto.CompressionType.valueOf(compressionType.name()));
     }
 
+    /**
+     * Sealed pages of a ledgers list, with the ledgers they held when they were written.
+     */
+    static final class LedgerInfoPages {
+        static final LedgerInfoPages EMPTY = new LedgerInfoPages(List.of(), List.of());
+
+        final List<LedgerInfoPage> index;
+        final List<List<LedgerInfo>> contents;
+
+        LedgerInfoPages(List<LedgerInfoPage> index, List<List<LedgerInfo>> contents) {
+            this.index = index;
+            this.contents = contents;
+        }
+
+        boolean isEmpty() {
+            return index.isEmpty();
+        }
+
+        ManagedLedgerInfo merge(ManagedLedgerInfo head) {
+            ManagedLedgerInfo.Builder builder = head.toBuilder().clearLedgerInfo().clearLedgerInfoPage();
+            contents.forEach(builder::addAllLedgerInfo);
+            return builder.addAllLedgerInfo(head.getLedgerInfoList()).build();
+        }
+    }
+
+    /**
+     * Version of a managed ledger node that references sealed pages, handed back on the next update to only rewrite
+     * the pages whose ledgers changed.
+     */
+    static final class PagedStat extends Stat {
+        final LedgerInfoPages pages;
+
+        PagedStat(Stat stat, LedgerInfoPages pages) {
+            super(stat.getPath(), stat.getVersion(), stat.getCreationTimestamp(), stat.getModificationTimestamp(),
+                    stat.isEphemeral(), stat.isCreatedBySelf(), stat.isFirstVersion());
+            this.pages = pages;
+        }
+    }
+
+    /**
+     * Split of a ledgers list into sealed pages and the ledgers kept in the managed ledger node.
+     *
+     * <p/>The pages of the previous version are kept as long as their ledgers didn't change, otherwise they are
+     * replaced by a new page, since pages are never updated in place. The ledgers after the last page are sealed into
+     * new pages of {@code pageSize} ledgers once there are more than {@code pageSize} of them, so an update of the
+     * newest ledgers only rewrites the managed ledger node.
+     */
+    static final class LedgerInfoPagesUpdate {
+        final LedgerInfoPages pages;
+        final List<LedgerInfo> headLedgers;
+        final Map<Long, List<LedgerInfo>> addedPages = new LinkedHashMap<>();
+        final Map<Long, List<LedgerInfo>> removedPages = new LinkedHashMap<>();
+
+        LedgerInfoPagesUpdate(LedgerInfoPages currentPages, List<LedgerInfo> ledgers, int pageSize) {
+            List<LedgerInfoPage> index = new ArrayList<>();
+            List<List<LedgerInfo>> contents = new ArrayList<>();
+            int start = 0;
+            for (int i = 0; i < currentPages.index.size(); i++) {
+                LedgerInfoPage page = currentPages.index.get(i);
+                List<LedgerInfo> content = currentPages.contents.get(i);
+                int end = start;
+                while (pageSize > 0 && end < ledgers.size()
+                        && ledgers.get(end).getLedgerId() <= page.getLastLedgerId()) {
+                    end++;
+                }
+                List<LedgerInfo> pageLedgers = ledgers.subList(start, end);
+                if (pageLedgers.equals(content)) {
+                    index.add(page);
+                    contents.add(content);
+                } else {
+                    removedPages.put(page.getPageId(), content);
+                    if (!pageLedgers.isEmpty()) {
+                        addPage(index, contents, pageLedgers);
+                    }
+                }
+                start = end;
+            }
+            while (pageSize > 0 && ledgers.size() - start > pageSize) {
+                addPage(index, contents, ledgers.subList(start, start + pageSize));
+                start += pageSize;
+            }
+            this.pages = new LedgerInfoPages(index, contents);
+            this.headLedgers = ledgers.subList(start, ledgers.size());
+        }
+
+        private void addPage(List<LedgerInfoPage> index, List<List<LedgerInfo>> contents,
+                             List<LedgerInfo> pageLedgers) {
+            // Random ids never collide with the pages left behind by a concurrent or interrupted update
+            long pageId = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+            List<LedgerInfo> content = List.copyOf(pageLedgers);
+            index.add(LedgerInfoPage.newBuilder()
+                    .setPageId(pageId)
+                    .setFirstLedgerId(content.get(0).getLedgerId())
+                    .setLastLedgerId(content.get(content.size() - 1).getLedgerId())
+                    .build());
+            contents.add(content);
+            addedPages.put(pageId, content);
+        }
+    }
+
 }
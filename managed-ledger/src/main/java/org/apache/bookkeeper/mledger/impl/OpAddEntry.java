@@ -31,6 +31,7 @@ import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
 import org.apache.bookkeeper.client.AsyncCallback.CloseCallback;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.mledger.AddEntryLatencyRecorder;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.AddEntryCallback;
 import org.apache.bookkeeper.mledger.ManagedLedgerException;
 import org.apache.bookkeeper.mledger.Position;
@@ -240,6 +241,7 @@ public class OpAddEntry implements AddCallback, CloseCallback, Runnable {
         PositionImpl lastEntry = PositionImpl.get(ledgerId, entryId);
         ManagedLedgerImpl.ENTRIES_ADDED_COUNTER_UPDATER.incrementAndGet(ml);
         ml.lastConfirmedEntry = lastEntry;
+        ml.addToTimestampIndex(ledgerId, entryId, data);
 
         if (closeWhenDone) {
             log.info("[{}] Closing ledger {} for being full", ml.getName(), ledgerId);
@@ -252,7 +254,7 @@ public class OpAddEntry implements AddCallback, CloseCallback, Runnable {
             AddEntryCallback cb = callbackUpdater.getAndSet(this, null);
             if (cb != null) {
                 cb.addComplete(lastEntry, data.asReadOnly(), ctx);
-                ml.notifyCursors();
+                notifyCursors(lastEntry);
                 ml.notifyWaitingEntryCallBacks();
                 ReferenceCountUtil.release(data);
                 this.recycle();
@@ -278,8 +280,9 @@ public class OpAddEntry implements AddCallback, CloseCallback, Runnable {
 
         AddEntryCallback cb = callbackUpdater.getAndSet(this, null);
         if (cb != null) {
-            cb.addComplete(PositionImpl.get(lh.getId(), entryId), data.asReadOnly(), ctx);
-            ml.notifyCursors();
+            PositionImpl lastEntry = PositionImpl.get(lh.getId(), entryId);
+            cb.addComplete(lastEntry, data.asReadOnly(), ctx);
+            notifyCursors(lastEntry);
             ml.notifyWaitingEntryCallBacks();
             ReferenceCountUtil.release(data);
             this.recycle();
@@ -288,9 +291,21 @@ public class OpAddEntry implements AddCallback, CloseCallback, Runnable {
         }
     }
 
+    private void notifyCursors(PositionImpl lastEntry) {
+        if (ml.getConfig().isTailFanOutEnabled()) {
+            ml.notifyCursors(lastEntry, data);
+        } else {
+            ml.notifyCursors();
+        }
+    }
+
     private void updateLatency() {
-        ml.mbean.addAddEntryLatencySample(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
-        ml.mbean.addLedgerAddEntryLatencySample(System.nanoTime() - lastInitTime, TimeUnit.NANOSECONDS);
+        long now = System.nanoTime();
+        ml.mbean.addAddEntryLatencySample(now - startTime, TimeUnit.NANOSECONDS);
+        ml.mbean.addLedgerAddEntryLatencySample(now - lastInitTime, TimeUnit.NANOSECONDS);
+        if (ctx instanceof AddEntryLatencyRecorder recorder) {
+            recorder.recordAddEntryLatency(lastInitTime - startTime, now - lastInitTime);
+        }
     }
 
     /**
@@ -54,9 +54,13 @@ public class RangeSetWrapper<T extends Comparable<T>> implements LongPairRangeSe
         requireNonNull(managedCursor);
         this.config = managedCursor.getConfig();
         this.rangeConverter = rangeConverter;
-        this.rangeSet = config.isUnackedRangesOpenCacheSetEnabled()
-                ? new ConcurrentOpenLongPairRangeSet<>(4096, rangeConverter)
-                : new LongPairRangeSet.DefaultRangeSet<>(rangeConverter, rangeBoundConsumer);
+        if (config.isUnackedRangesRoaringBitmapEnabled()) {
+            this.rangeSet = new RoaringLongPairRangeSet<>(rangeConverter);
+        } else if (config.isUnackedRangesOpenCacheSetEnabled()) {
+            this.rangeSet = new ConcurrentOpenLongPairRangeSet<>(4096, rangeConverter);
+        } else {
+            this.rangeSet = new LongPairRangeSet.DefaultRangeSet<>(rangeConverter, rangeBoundConsumer);
+        }
         this.enableMultiEntry = config.isPersistentUnackedRangesWithMultipleEntriesEnabled();
     }
 
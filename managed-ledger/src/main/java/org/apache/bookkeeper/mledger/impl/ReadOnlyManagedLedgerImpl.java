@@ -19,6 +19,8 @@
 package org.apache.bookkeeper.mledger.impl;
 
 import com.google.common.collect.Range;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import lombok.extern.slf4j.Slf4j;
@@ -34,6 +36,7 @@ import org.apache.bookkeeper.mledger.ReadOnlyCursor;
 import org.apache.bookkeeper.mledger.impl.MetaStore.MetaStoreCallback;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfo;
+import org.apache.pulsar.common.util.FutureUtil;
 import org.apache.pulsar.metadata.api.Stat;
 
 @Slf4j
@@ -58,51 +61,23 @@ public class ReadOnlyManagedLedgerImpl extends ManagedLedgerImpl {
                     ledgers.put(ls.getLedgerId(), ls);
                 }
 
-                // Last ledger stat may be zeroed, we must update it
-                if (ledgers.size() > 0 && ledgers.lastEntry().getValue().getEntries() == 0) {
-                    long lastLedgerId = ledgers.lastKey();
-
-                    // Fetch last add confirmed for last ledger
-                    bookKeeper.newOpenLedgerOp().withRecovery(false).withLedgerId(lastLedgerId)
-                            .withDigestType(config.getDigestType()).withPassword(config.getPassword()).execute()
-                            .thenAccept(readHandle -> {
-                                readHandle.readLastAddConfirmedAsync().thenAccept(lastAddConfirmed -> {
-                                    LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(lastLedgerId)
-                                            .setEntries(lastAddConfirmed + 1).setSize(readHandle.getLength())
-                                            .setTimestamp(clock.millis()).build();
-                                    ledgers.put(lastLedgerId, info);
-
-                                    future.complete(null);
-                                }).exceptionally(ex -> {
-                                    if (ex instanceof CompletionException
-                                            && ex.getCause() instanceof IllegalArgumentException) {
-                                        // The last ledger was empty, so we cannot read the last add confirmed.
-                                        LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(lastLedgerId)
-                                                .setEntries(0).setSize(0).setTimestamp(clock.millis()).build();
-                                        ledgers.put(lastLedgerId, info);
-                                        future.complete(null);
-                                    } else {
-                                        future.completeExceptionally(new ManagedLedgerException(ex));
-                                    }
-                                    return null;
-                                });
-                            }).exceptionally(ex -> {
-                                if (ex instanceof CompletionException
-                                        && ex.getCause() instanceof ArrayIndexOutOfBoundsException) {
-                                    // The last ledger was empty, so we cannot read the last add confirmed.
-                                    LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(lastLedgerId).setEntries(0)
-                                            .setSize(0).setTimestamp(clock.millis()).build();
-                                    ledgers.put(lastLedgerId, info);
-                                    future.complete(null);
-                                } else {
-                                    future.completeExceptionally(new ManagedLedgerException(ex));
-                                }
-                                return null;
-                            });
-                } else {
-                    // The read-only managed ledger is ready to use
-                    future.complete(null);
+                // The stats of the ledgers that are not closed yet are zeroed, we must update them. With a standby
+                // ledger, it is the case of both the ledger being written and the standby one
+                List<CompletableFuture<Void>> futures = new ArrayList<>();
+                for (LedgerInfo ls : ledgers.descendingMap().values()) {
+                    if (ls.getEntries() > 0) {
+                        break;
+                    }
+                    futures.add(recoverLedgerStats(ls.getLedgerId()));
                 }
+                // The read-only managed ledger is ready to use once the stats are updated
+                FutureUtil.waitForAll(futures).whenComplete((ignore, ex) -> {
+                    if (ex != null) {
+                        future.completeExceptionally(FutureUtil.unwrapCompletionException(ex));
+                    } else {
+                        future.complete(null);
+                    }
+                });
             }
 
             @Override
@@ -118,20 +93,55 @@ public class ReadOnlyManagedLedgerImpl extends ManagedLedgerImpl {
         return future;
     }
 
+    private CompletableFuture<Void> recoverLedgerStats(long ledgerId) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        // Fetch last add confirmed for the ledger
+        bookKeeper.newOpenLedgerOp().withRecovery(false).withLedgerId(ledgerId)
+                .withDigestType(config.getDigestType()).withPassword(config.getPassword()).execute()
+                .thenAccept(readHandle -> {
+                    readHandle.readLastAddConfirmedAsync().thenAccept(lastAddConfirmed -> {
+                        LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(ledgerId)
+                                .setEntries(lastAddConfirmed + 1).setSize(readHandle.getLength())
+                                .setTimestamp(clock.millis()).build();
+                        ledgers.put(ledgerId, info);
+
+                        future.complete(null);
+                    }).exceptionally(ex -> {
+                        if (ex instanceof CompletionException
+                                && ex.getCause() instanceof IllegalArgumentException) {
+                            // The ledger was empty, so we cannot read the last add confirmed.
+                            LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(ledgerId)
+                                    .setEntries(0).setSize(0).setTimestamp(clock.millis()).build();
+                            ledgers.put(ledgerId, info);
+                            future.complete(null);
+                        } else {
+                            future.completeExceptionally(new ManagedLedgerException(ex));
+                        }
+                        return null;
+                    });
+                }).exceptionally(ex -> {
+                    if (ex instanceof CompletionException
+                            && ex.getCause() instanceof ArrayIndexOutOfBoundsException) {
+                        // The ledger was empty, so we cannot read the last add confirmed.
+                        LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(ledgerId).setEntries(0)
+                                .setSize(0).setTimestamp(clock.millis()).build();
+                        ledgers.put(ledgerId, info);
+                        future.complete(null);
+                    } else {
+                        future.completeExceptionally(new ManagedLedgerException(ex));
+                    }
+                    return null;
+                });
+        return future;
+    }
+
     ReadOnlyCursor createReadOnlyCursor(PositionImpl startPosition) {
-        if (ledgers.isEmpty()) {
-            lastConfirmedEntry = PositionImpl.EARLIEST;
-        } else if (ledgers.lastEntry().getValue().getEntries() > 0) {
-            // Last ledger has some of the entries
-            lastConfirmedEntry = new PositionImpl(ledgers.lastKey(), ledgers.lastEntry().getValue().getEntries() - 1);
-        } else {
-            // Last ledger is empty. If there is a previous ledger, position on the last entry of that ledger
-            if (ledgers.size() > 1) {
-                long lastLedgerId = ledgers.lastKey();
-                LedgerInfo li = ledgers.headMap(lastLedgerId, false).lastEntry().getValue();
+        // Position on the last entry of the newest ledger that has entries, the ledgers after it are empty
+        lastConfirmedEntry = PositionImpl.EARLIEST;
+        for (LedgerInfo li : ledgers.descendingMap().values()) {
+            if (li.getEntries() > 0) {
                 lastConfirmedEntry = new PositionImpl(li.getLedgerId(), li.getEntries() - 1);
-            } else {
-                lastConfirmedEntry = PositionImpl.EARLIEST;
+                break;
             }
         }
 
@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.collect.Range;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet;
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * A concurrent set of {@link LongPair} ranges backed by one {@link RoaringBitmap} per key.
+ *
+ * <p/>Like {@link org.apache.pulsar.common.util.collections.ConcurrentOpenLongPairRangeSet}, the values of each key
+ * are stored as the bits of a bitmap, without creating an object for each range. The roaring bitmaps only allocate
+ * memory for the chunks of values that are actually set, and store long runs of consecutive values in compressed
+ * containers, so that the set stays small when the keys have many values that are spread apart, as the individually
+ * deleted entries of a cursor with many acknowledgment holes.
+ *
+ * <p/>The values are stored as unsigned 32 bits integers, so they must be lower than {@link #MAX_VALUE}.
+ */
+public class RoaringLongPairRangeSet<T extends Comparable<T>> implements LongPairRangeSet<T> {
+
+    /**
+     * Number of additions after which the bitmap being modified is converted to run containers where it saves space.
+     */
+    private static final int RUN_OPTIMIZE_INTERVAL = 1024;
+
+    static final long MAX_VALUE = 0xFFFFFFFFL;
+
+    private final NavigableMap<Long, RoaringBitmap> rangeBitmapMap = new ConcurrentSkipListMap<>();
+    private final LongPairConsumer<T> consumer;
+
+    private final AtomicInteger additions = new AtomicInteger(0);
+    private volatile int cachedSize = 0;
+    private volatile boolean updatedAfterCachedForSize = true;
+
+    public RoaringLongPairRangeSet(LongPairConsumer<T> consumer) {
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void addOpenClosed(long lowerKey, long lowerValueOpen, long upperKey, long upperValue) {
+        long lowerValue = lowerValueOpen + 1;
+        if (lowerKey != upperKey) {
+            // Only fill the lower key up to its last value, since we don't know where that key ends
+            if (isValid(lowerKey, lowerValue)) {
+                RoaringBitmap bitmap = rangeBitmapMap.get(lowerKey);
+                if (bitmap != null) {
+                    synchronized (bitmap) {
+                        if (!bitmap.isEmpty() && Integer.toUnsignedLong(bitmap.last()) > lowerValueOpen) {
+                            bitmap.add(Math.max(lowerValue, 0), Integer.toUnsignedLong(bitmap.last()) + 1);
+                        }
+                    }
+                }
+            }
+            if (isValid(upperKey, upperValue)) {
+                add(upperKey, 0, upperValue);
+            }
+        } else {
+            add(lowerKey, lowerValue, upperValue);
+        }
+        updatedAfterCachedForSize = true;
+    }
+
+    private void add(long key, long lowerValue, long upperValue) {
+        checkArgument(upperValue < MAX_VALUE, "Value %s of key %s is out of the 32 bits range", upperValue, key);
+        long lower = Math.max(lowerValue, 0);
+        if (upperValue < lower) {
+            return;
+        }
+        RoaringBitmap bitmap = rangeBitmapMap.computeIfAbsent(key, k -> new RoaringBitmap());
+        synchronized (bitmap) {
+            bitmap.add(lower, upperValue + 1);
+            if (additions.incrementAndGet() % RUN_OPTIMIZE_INTERVAL == 0) {
+                bitmap.runOptimize();
+            }
+        }
+    }
+
+    private static boolean isValid(long key, long value) {
+        return key != LongPair.earliest.getKey() && value != LongPair.earliest.getValue()
+                && key != LongPair.latest.getKey() && value != LongPair.latest.getValue();
+    }
+
+    @Override
+    public boolean contains(long key, long value) {
+        RoaringBitmap bitmap = rangeBitmapMap.get(key);
+        if (bitmap == null || value < 0 || value >= MAX_VALUE) {
+            return false;
+        }
+        synchronized (bitmap) {
+            return bitmap.contains((int) value);
+        }
+    }
+
+    @Override
+    public Range<T> rangeContaining(long key, long value) {
+        RoaringBitmap bitmap = rangeBitmapMap.get(key);
+        if (bitmap == null || value < 0 || value >= MAX_VALUE) {
+            return null;
+        }
+        long lower;
+        long upper;
+        synchronized (bitmap) {
+            if (!bitmap.contains((int) value)) {
+                return null;
+            }
+            lower = bitmap.previousAbsentValue((int) value) + 1;
+            upper = bitmap.nextAbsentValue((int) value) - 1;
+        }
+        return Range.closed(consumer.apply(key, lower), consumer.apply(key, upper));
+    }
+
+    @Override
+    public void removeAtMost(long key, long value) {
+        rangeBitmapMap.headMap(key, false).clear();
+        RoaringBitmap bitmap = rangeBitmapMap.get(key);
+        if (bitmap != null && value >= 0) {
+            synchronized (bitmap) {
+                bitmap.remove(0, Math.min(value + 1, MAX_VALUE));
+                if (bitmap.isEmpty()) {
+                    rangeBitmapMap.remove(key, bitmap);
+                }
+            }
+        }
+        updatedAfterCachedForSize = true;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (RoaringBitmap bitmap : rangeBitmapMap.values()) {
+            synchronized (bitmap) {
+                if (!bitmap.isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        rangeBitmapMap.clear();
+        updatedAfterCachedForSize = true;
+    }
+
+    @Override
+    public Range<T> span() {
+        Range<T> first = firstRange();
+        Range<T> last = lastRange();
+        if (first == null || last == null) {
+            return null;
+        }
+        return Range.openClosed(first.lowerEndpoint(), last.upperEndpoint());
+    }
+
+    @Override
+    public List<Range<T>> asRanges() {
+        List<Range<T>> ranges = new ArrayList<>();
+        forEach((range) -> {
+            ranges.add(range);
+            return true;
+        });
+        return ranges;
+    }
+
+    @Override
+    public void forEach(RangeProcessor<T> action) {
+        forEach(action, consumer);
+    }
+
+    @Override
+    public void forEach(RangeProcessor<T> action, LongPairConsumer<? extends T> consumerParam) {
+        forEachRawRange((lowerKey, lowerValue, upperKey, upperValue) -> {
+            Range<T> range = Range.openClosed(
+                    consumerParam.apply(lowerKey, lowerValue),
+                    consumerParam.apply(upperKey, upperValue)
+            );
+            return action.process(range);
+        });
+    }
+
+    @Override
+    public void forEachRawRange(RawRangeProcessor processor) {
+        for (Map.Entry<Long, RoaringBitmap> entry : rangeBitmapMap.entrySet()) {
+            long key = entry.getKey();
+            RoaringBitmap bitmap = entry.getValue();
+            synchronized (bitmap) {
+                long lower = bitmap.nextValue(0);
+                while (lower >= 0) {
+                    long upperOpen = bitmap.nextAbsentValue((int) lower);
+                    if (!processor.processRawRange(key, lower - 1, key, upperOpen - 1)) {
+                        return;
+                    }
+                    if (upperOpen >= MAX_VALUE) {
+                        break;
+                    }
+                    lower = bitmap.nextValue((int) upperOpen);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        if (updatedAfterCachedForSize) {
+            int[] size = new int[1];
+            forEachRawRange((lowerKey, lowerValue, upperKey, upperValue) -> {
+                size[0]++;
+                return true;
+            });
+            cachedSize = size[0];
+            updatedAfterCachedForSize = false;
+        }
+        return cachedSize;
+    }
+
+    @Override
+    public Range<T> firstRange() {
+        for (Map.Entry<Long, RoaringBitmap> entry : rangeBitmapMap.entrySet()) {
+            RoaringBitmap bitmap = entry.getValue();
+            long lower;
+            long upper;
+            synchronized (bitmap) {
+                if (bitmap.isEmpty()) {
+                    continue;
+                }
+                lower = Integer.toUnsignedLong(bitmap.first());
+                upper = bitmap.nextAbsentValue((int) lower) - 1;
+            }
+            return Range.openClosed(consumer.apply(entry.getKey(), lower - 1), consumer.apply(entry.getKey(), upper));
+        }
+        return null;
+    }
+
+    @Override
+    public Range<T> lastRange() {
+        for (Map.Entry<Long, RoaringBitmap> entry : rangeBitmapMap.descendingMap().entrySet()) {
+            RoaringBitmap bitmap = entry.getValue();
+            long lower;
+            long upper;
+            synchronized (bitmap) {
+                if (bitmap.isEmpty()) {
+                    continue;
+                }
+                upper = Integer.toUnsignedLong(bitmap.last());
+                lower = bitmap.previousAbsentValue((int) upper);
+            }
+            return Range.openClosed(consumer.apply(entry.getKey(), lower), consumer.apply(entry.getKey(), upper));
+        }
+        return null;
+    }
+
+    @Override
+    public int cardinality(long lowerKey, long lowerValue, long upperKey, long upperValue) {
+        long cardinality = 0;
+        for (Map.Entry<Long, RoaringBitmap> entry : rangeBitmapMap.subMap(lowerKey, true, upperKey, true).entrySet()) {
+            long start = entry.getKey() == lowerKey ? Math.max(lowerValue, 0) : 0;
+            long end = entry.getKey() == upperKey ? Math.min(upperValue + 1, MAX_VALUE) : MAX_VALUE;
+            if (end <= start) {
+                continue;
+            }
+            RoaringBitmap bitmap = entry.getValue();
+            synchronized (bitmap) {
+                cardinality += bitmap.rangeCardinality(start, end);
+            }
+        }
+        return (int) cardinality;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder toString = new StringBuilder("[");
+        forEach((range) -> {
+            if (toString.length() > 1) {
+                toString.append(",");
+            }
+            toString.append(range);
+            return true;
+        });
+        return toString.append("]").toString();
+    }
+}
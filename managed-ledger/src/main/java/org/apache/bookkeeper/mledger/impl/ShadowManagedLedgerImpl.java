@@ -355,6 +355,7 @@ public class ShadowManagedLedgerImpl extends ManagedLedgerImpl {
                 log.info("[{}] First non deleted Ledger is not found, advanceCursors fails", name);
             }
             doDeleteLedgers(ledgersToDelete);
+            invalidateCursorsBehindDeletedLedgers(ledgersToDelete);
         }
     }
 
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import com.google.protobuf.ByteString;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.LedgerDeletedEntries;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.MessageRange;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.NestedPositionInfo;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.PositionInfo;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet;
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Incremental persistence of the individually deleted messages of a cursor in its ledger.
+ *
+ * <p/>Instead of rewriting all the unacked ranges on every position update, the entries deleted since the previous
+ * update are appended to the cursor ledger as compressed bitmaps, along with the id of the entry of the ledger holding
+ * the last full snapshot of the individually deleted entries. A new snapshot is written every
+ * {@code compactionThreshold} updates, when the cursor switches to a new ledger and when the individually deleted
+ * messages are reset, so that the recovery never has to replay more than {@code compactionThreshold} entries.
+ *
+ * <p/>The bitmaps only hold 32 bits entry ids. Entries with a larger id are never part of an incremental update: they
+ * trigger a new snapshot, where their ranges are written as plain message ranges.
+ */
+class UnackedRangesDeltaTracker {
+
+    /**
+     * Max size of the individually deleted entries written in a snapshot, to stay below the max size of an entry.
+     */
+    static final int MAX_SNAPSHOT_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Max entry id that can be stored in the bitmaps.
+     */
+    static final long MAX_ENTRY_ID = RoaringLongPairRangeSet.MAX_VALUE - 1;
+
+    private final int compactionThreshold;
+
+    // The following fields are guarded by the instance monitor
+    private final NavigableMap<Long, RoaringBitmap> pendingDeletedEntries = new TreeMap<>();
+    private long snapshotLedgerId = -1;
+    private long snapshotEntryId = -1;
+    private long snapshotSequence = 0;
+    private int updatesSinceSnapshot = 0;
+    private int lastSnapshotSize = 0;
+    private boolean lastSnapshotComplete = true;
+
+    UnackedRangesDeltaTracker(int compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Record an entry that was individually deleted, to be included in the next incremental update.
+     */
+    synchronized void recordDeletedEntry(long ledgerId, long entryId) {
+        if (entryId > MAX_ENTRY_ID) {
+            // Supersede the snapshot being persisted as well, since it might not include the entry
+            reset();
+            snapshotSequence++;
+            return;
+        }
+        pendingDeletedEntries.computeIfAbsent(ledgerId, k -> new RoaringBitmap()).add(entryId, entryId + 1);
+    }
+
+    /**
+     * Forget about the last snapshot, since the individually deleted messages are no longer a superset of it. The next
+     * update will be a full snapshot.
+     */
+    synchronized void reset() {
+        pendingDeletedEntries.clear();
+        snapshotLedgerId = -1;
+        snapshotEntryId = -1;
+    }
+
+    /**
+     * Add the individually deleted entries to the position that is going to be appended to the cursor ledger.
+     *
+     * @param cursorLedgerId
+     *            the id of the ledger the position is appended to
+     * @param individualDeletedMessages
+     *            the current individually deleted messages of the cursor
+     * @param builder
+     *            the position being built
+     * @return the sequence number to pass to {@link #snapshotPersisted(long, long, long)} once the position is
+     *         persisted if the position holds a full snapshot, or -1 for an incremental update
+     */
+    synchronized long buildUpdate(long cursorLedgerId, LongPairRangeSet<?> individualDeletedMessages,
+                                  PositionInfo.Builder builder) {
+        if (cursorLedgerId == snapshotLedgerId && updatesSinceSnapshot < compactionThreshold) {
+            updatesSinceSnapshot++;
+            builder.setSnapshotEntryId(snapshotEntryId);
+            pendingDeletedEntries.forEach((ledgerId, entries) -> builder.addIndividualDeletedEntries(
+                    serialize(ledgerId, entries)));
+            pendingDeletedEntries.clear();
+            return -1;
+        }
+
+        // Until the snapshot is persisted, the following updates need to be snapshots as well
+        pendingDeletedEntries.clear();
+        updatesSinceSnapshot = 0;
+        snapshotLedgerId = -1;
+        snapshotEntryId = -1;
+
+        NavigableMap<Long, RoaringBitmap> deletedEntries = new TreeMap<>();
+        NestedPositionInfo.Builder nestedPositionBuilder = NestedPositionInfo.newBuilder();
+        MessageRange.Builder messageRangeBuilder = MessageRange.newBuilder();
+        individualDeletedMessages.forEachRawRange((lowerKey, lowerValue, upperKey, upperValue) -> {
+            if (lowerKey == upperKey && upperValue <= MAX_ENTRY_ID) {
+                deletedEntries.computeIfAbsent(lowerKey, k -> new RoaringBitmap()).add(lowerValue + 1, upperValue + 1);
+            } else {
+                // Ranges spanning over multiple ledgers are only kept by the default range set, and, as the ranges
+                // beyond the 32 bits entry ids, are rare enough to be persisted as they are
+                builder.addIndividualDeletedMessages(messageRangeBuilder
+                        .setLowerEndpoint(nestedPositionBuilder.setLedgerId(lowerKey).setEntryId(lowerValue).build())
+                        .setUpperEndpoint(nestedPositionBuilder.setLedgerId(upperKey).setEntryId(upperValue).build())
+                        .build());
+            }
+            return true;
+        });
+
+        int size = 0;
+        boolean complete = true;
+        for (Map.Entry<Long, RoaringBitmap> entry : deletedEntries.entrySet()) {
+            LedgerDeletedEntries ledgerDeletedEntries = serialize(entry.getKey(), entry.getValue());
+            size += ledgerDeletedEntries.getSerializedSize();
+            if (size > MAX_SNAPSHOT_SIZE) {
+                complete = false;
+                break;
+            }
+            builder.addIndividualDeletedEntries(ledgerDeletedEntries);
+        }
+        lastSnapshotSize = size;
+        lastSnapshotComplete = complete;
+        return ++snapshotSequence;
+    }
+
+    /**
+     * Notify that a snapshot was persisted in the cursor ledger, so that the following updates can be incremental.
+     */
+    synchronized void snapshotPersisted(long cursorLedgerId, long entryId, long sequence) {
+        // Ignore snapshots that were superseded while being persisted
+        if (sequence == snapshotSequence) {
+            snapshotLedgerId = cursorLedgerId;
+            snapshotEntryId = entryId;
+        }
+    }
+
+    /**
+     * @return the size of the individually deleted entries written in the last snapshot
+     */
+    synchronized int getLastSnapshotSize() {
+        return lastSnapshotSize;
+    }
+
+    /**
+     * @return whether all the individually deleted entries could be written in the last snapshot
+     */
+    synchronized boolean isLastSnapshotComplete() {
+        return lastSnapshotComplete;
+    }
+
+    private static LedgerDeletedEntries serialize(long ledgerId, RoaringBitmap entries) {
+        entries.runOptimize();
+        ByteBuffer buffer = ByteBuffer.allocate(entries.serializedSizeInBytes());
+        entries.serialize(buffer);
+        buffer.flip();
+        return LedgerDeletedEntries.newBuilder()
+                .setLedgerId(ledgerId)
+                .setEntries(ByteString.copyFrom(buffer))
+                .build();
+    }
+
+    /**
+     * Add the individually deleted entries of a position read from the cursor ledger to the given range set.
+     */
+    static void recoverDeletedEntries(PositionInfo positionInfo, LongPairRangeSet<?> individualDeletedMessages) {
+        for (LedgerDeletedEntries ledgerDeletedEntries : positionInfo.getIndividualDeletedEntriesList()) {
+            RoaringBitmap entries = new RoaringBitmap();
+            try {
+                entries.deserialize(ledgerDeletedEntries.getEntries().asReadOnlyByteBuffer());
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Invalid deleted entries of ledger "
+                        + ledgerDeletedEntries.getLedgerId(), e);
+            }
+
+            long ledgerId = ledgerDeletedEntries.getLedgerId();
+            long lower = entries.nextValue(0);
+            while (lower >= 0) {
+                long upperOpen = entries.nextAbsentValue((int) lower);
+                individualDeletedMessages.addOpenClosed(ledgerId, lower - 1, ledgerId, upperOpen - 1);
+                if (upperOpen > Integer.MAX_VALUE) {
+                    break;
+                }
+                lower = entries.nextValue((int) upperOpen);
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.bookkeeper.mledger.impl.cache;
 
+import java.util.function.Predicate;
 import org.apache.bookkeeper.client.api.ReadHandle;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntryCallback;
@@ -80,6 +81,26 @@ public interface EntryCache extends Comparable<EntryCache> {
      */
     Pair<Integer, Long> evictEntries(long sizeToFree);
 
+    /**
+     * Force the cache to drop entries to free space, keeping the entries to retain.
+     *
+     * @param sizeToFree
+     *            the total memory size to free
+     * @param retain
+     *            tells whether the entry at a position has to be kept in the cache
+     * @return a pair containing the number of entries evicted and their total size
+     */
+    Pair<Integer, Long> evictEntries(long sizeToFree, Predicate<PositionImpl> retain);
+
+    /**
+     * Force the cache to drop its newest entries to free space.
+     *
+     * @param sizeToFree
+     *            the total memory size to free
+     * @return a pair containing the number of entries evicted and their total size
+     */
+    Pair<Integer, Long> evictNewestEntries(long sizeToFree);
+
     /**
      * Read entries from the cache or from bookkeeper.
      *
@@ -117,6 +138,37 @@ public interface EntryCache extends Comparable<EntryCache> {
      */
     void asyncReadEntry(ReadHandle lh, PositionImpl position, ReadEntryCallback callback, Object ctx);
 
+    /**
+     * Load in the cache the entries of a range that are about to be read, without returning them.
+     *
+     * <p/>The range is shortened when there isn't enough room for it in the cache or in the memory reserved for the
+     * reads in flight, so that the prefetch doesn't evict other entries or delay the reads of the consumers. The
+     * loaded entries are inserted in the cache regardless of the admission of the eviction policy, since they're
+     * known to be read next.
+     *
+     * @param lh
+     *            the ledger handle
+     * @param firstEntry
+     *            the first entry to load (inclusive)
+     * @param lastEntry
+     *            the last entry to load (inclusive)
+     * @return the last entry that is being loaded, or firstEntry - 1 if none
+     */
+    long prefetchEntries(ReadHandle lh, long firstEntry, long lastEntry);
+
+    /**
+     * Get the number of entries of a range that are stored in this cache.
+     *
+     * @param ledgerId
+     *            the ledger id
+     * @param firstEntry
+     *            the first entry of the range (inclusive)
+     * @param lastEntry
+     *            the last entry of the range (inclusive)
+     * @return the number of entries in cache
+     */
+    int getNumberOfCachedEntries(long ledgerId, long firstEntry, long lastEntry);
+
     /**
      * Get the total size in bytes of all the entries stored in this cache.
      *
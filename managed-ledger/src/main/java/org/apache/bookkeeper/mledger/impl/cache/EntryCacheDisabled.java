@@ -22,6 +22,7 @@ import static org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl.createManaged
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Predicate;
 import org.apache.bookkeeper.client.api.LedgerEntry;
 import org.apache.bookkeeper.client.api.ReadHandle;
 import org.apache.bookkeeper.mledger.AsyncCallbacks;
@@ -72,6 +73,16 @@ public class EntryCacheDisabled implements EntryCache {
         return Pair.of(0, (long) 0);
     }
 
+    @Override
+    public Pair<Integer, Long> evictEntries(long sizeToFree, Predicate<PositionImpl> retain) {
+        return Pair.of(0, (long) 0);
+    }
+
+    @Override
+    public Pair<Integer, Long> evictNewestEntries(long sizeToFree) {
+        return Pair.of(0, (long) 0);
+    }
+
     @Override
     public void invalidateEntriesBeforeTimestamp(long timestamp) {
     }
@@ -135,6 +146,16 @@ public class EntryCacheDisabled implements EntryCache {
                 }, ml.getExecutor());
     }
 
+    @Override
+    public long prefetchEntries(ReadHandle lh, long firstEntry, long lastEntry) {
+        return firstEntry - 1;
+    }
+
+    @Override
+    public int getNumberOfCachedEntries(long ledgerId, long firstEntry, long lastEntry) {
+        return 0;
+    }
+
     @Override
     public long getSize() {
         return 0;
@@ -0,0 +1,514 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.buffer.UnpooledDirectByteBuf;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCounted;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+import org.apache.bookkeeper.mledger.impl.EntryImpl;
+import org.apache.bookkeeper.mledger.impl.ManagedLedgerFactoryMBeanImpl;
+import org.apache.pulsar.common.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.pulsar.common.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Second tier of the entry cache, where the entries evicted from memory are spilled to memory-mapped segment files on
+ * a local disk, so that catch-up reads can be served without going to the bookies.
+ *
+ * <p/>Segments are fixed size, append-only files. Entries are appended to the active segment and indexed by
+ * (ledgerId, entryId). When the active segment is full a new one is created and, once the max size is reached, the
+ * oldest segment is dropped with all its entries. Reads wrap the mapped region of the entry into a {@link ByteBuf},
+ * without copying the payload.
+ *
+ * <p/>The tier is accessed from the read path and from the cache eviction, so the copies, checksums and page faults
+ * are done on dedicated threads: {@link #putAsync(EntryImpl)} queues the entry to a single writer thread and
+ * {@link #getRangeAsync(long, long, long)} reads the mapped regions on a small pool of reader threads.
+ *
+ * <p/>Segments are reference counted by the entries read from them, so that the mapping of a dropped segment is
+ * released as soon as its last entry is released, instead of holding the disk space and the virtual memory until it
+ * is garbage collected.
+ *
+ * <p/>Every record is checksummed. On startup the index is rebuilt from the valid records of the existing segments,
+ * while segments with an unknown format and the records following a torn write are discarded.
+ */
+public class EntryCacheDiskTier implements Closeable {
+
+    private static final int SEGMENT_MAGIC = 0x504c3243;
+    private static final int SEGMENT_VERSION = 1;
+    static final int SEGMENT_HEADER_SIZE = 8;
+
+    // Record layout: magic (4) | length (4) | ledgerId (8) | entryId (8) | checksum (4) | payload
+    private static final int RECORD_MAGIC = 0x52454331;
+    private static final int RECORD_LENGTH_OFFSET = 4;
+    private static final int RECORD_LEDGER_ID_OFFSET = 8;
+    private static final int RECORD_ENTRY_ID_OFFSET = 16;
+    private static final int RECORD_CHECKSUM_OFFSET = 24;
+    static final int RECORD_HEADER_SIZE = 28;
+
+    private static final String SEGMENT_FILE_SUFFIX = ".segment";
+
+    private static final int READER_THREADS = 2;
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final ManagedLedgerFactoryMBeanImpl mbean;
+
+    // (ledgerId, entryId) -> (segmentId, payload offset << 32 | payload length)
+    private final ConcurrentLongLongPairHashMap index = ConcurrentLongLongPairHashMap.newBuilder().build();
+    private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final AtomicLong size = new AtomicLong(0);
+
+    private final ExecutorService writeExecutor;
+    private final ExecutorService readExecutor;
+    // Size of the entries queued to the writer thread, which are retained until they are written
+    private final AtomicLong pendingWriteSize = new AtomicLong(0);
+
+    // Only accessed while holding the tier monitor
+    private Segment activeSegment = null;
+    private long nextSegmentId = 0;
+    // Only updated while holding the tier monitor
+    private volatile boolean closed = false;
+
+    /**
+     * @param directory
+     *            directory holding the segment files
+     * @param maxSize
+     *            max size in bytes of all the segment files
+     * @param segmentSize
+     *            size in bytes of each segment file
+     */
+    public EntryCacheDiskTier(File directory, long maxSize, int segmentSize, ManagedLedgerFactoryMBeanImpl mbean)
+            throws IOException {
+        checkArgument(segmentSize > SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE, "Invalid segment size %s", segmentSize);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(2, maxSize / segmentSize);
+        this.mbean = mbean;
+
+        Files.createDirectories(directory.toPath());
+        recover();
+
+        this.writeExecutor = Executors.newSingleThreadExecutor(
+                new DefaultThreadFactory("bookkeeper-ml-cache-disk-tier-writer"));
+        this.readExecutor = Executors.newFixedThreadPool(READER_THREADS,
+                new DefaultThreadFactory("bookkeeper-ml-cache-disk-tier-reader"));
+    }
+
+    /**
+     * Queue the entry to be appended to the active segment by the writer thread. The entry is retained until it's
+     * written. Entries are dropped when the writer thread falls behind by more than one segment, to bound the memory
+     * held by evicted entries.
+     */
+    public void putAsync(EntryImpl entry) {
+        int length = entry.getLength();
+        if (closed || pendingWriteSize.addAndGet(length) > segmentSize) {
+            pendingWriteSize.addAndGet(-length);
+            return;
+        }
+
+        entry.retain();
+        try {
+            writeExecutor.execute(() -> {
+                try {
+                    put(entry);
+                } finally {
+                    pendingWriteSize.addAndGet(-length);
+                    entry.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingWriteSize.addAndGet(-length);
+            entry.release();
+        }
+    }
+
+    /**
+     * Append a copy of the entry to the active segment, unless it's already stored in the tier.
+     *
+     * @return whether the entry was stored
+     */
+    public synchronized boolean put(EntryImpl entry) {
+        long ledgerId = entry.getLedgerId();
+        long entryId = entry.getEntryId();
+        int length = entry.getLength();
+        int recordSize = RECORD_HEADER_SIZE + length;
+        if (closed || recordSize > segmentSize - SEGMENT_HEADER_SIZE || index.containsKey(ledgerId, entryId)) {
+            return false;
+        }
+
+        try {
+            if (activeSegment == null || activeSegment.writePosition + recordSize > segmentSize) {
+                rollSegment();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to create a new entry cache segment in {}: {}", directory, e.getMessage());
+            return false;
+        }
+
+        Segment segment = activeSegment;
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = segment.writePosition;
+        ByteBuf data = entry.getDataBuffer();
+        data.getBytes(data.readerIndex(), buffer.slice(offset + RECORD_HEADER_SIZE, length));
+        buffer.putInt(offset + RECORD_LENGTH_OFFSET, length);
+        buffer.putLong(offset + RECORD_LEDGER_ID_OFFSET, ledgerId);
+        buffer.putLong(offset + RECORD_ENTRY_ID_OFFSET, entryId);
+        buffer.putInt(offset + RECORD_CHECKSUM_OFFSET, checksum(buffer, offset, length));
+        // The magic is written last, so that a record is only considered after it's complete
+        buffer.putInt(offset, RECORD_MAGIC);
+
+        segment.writePosition += recordSize;
+        size.addAndGet(recordSize);
+        index.put(ledgerId, entryId, segment.id, location(offset + RECORD_HEADER_SIZE, length));
+        mbean.recordDiskCacheWrite();
+        return true;
+    }
+
+    /**
+     * Get the entries in the range [firstEntry, lastEntry] from a reader thread. The future is completed with null,
+     * without leaving the calling thread, when any of the entries is not stored in the tier. It is never completed
+     * exceptionally.
+     */
+    public CompletableFuture<List<EntryImpl>> getRangeAsync(long ledgerId, long firstEntry, long lastEntry) {
+        for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+            if (!index.containsKey(ledgerId, entryId)) {
+                mbean.recordDiskCacheMisses((int) (lastEntry - firstEntry) + 1);
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+
+        CompletableFuture<List<EntryImpl>> future = new CompletableFuture<>();
+        try {
+            readExecutor.execute(() -> {
+                try {
+                    future.complete(getRange(ledgerId, firstEntry, lastEntry));
+                } catch (Throwable t) {
+                    log.warn("Failed to read entries {}:{}-{} from the entry cache disk tier: {}", ledgerId,
+                            firstEntry, lastEntry, t.getMessage());
+                    future.complete(null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.complete(null);
+        }
+        return future;
+    }
+
+    /**
+     * Get the entries in the range [firstEntry, lastEntry]. The returned entries are backed by the segment files.
+     *
+     * @return the entries or null if any of them is not stored in the tier
+     */
+    public List<EntryImpl> getRange(long ledgerId, long firstEntry, long lastEntry) {
+        long startTime = System.nanoTime();
+        int entriesToRead = (int) (lastEntry - firstEntry) + 1;
+        List<EntryImpl> entries = Lists.newArrayListWithExpectedSize(entriesToRead);
+        long totalSize = 0;
+        for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+            EntryImpl entry = read(ledgerId, entryId);
+            if (entry == null) {
+                entries.forEach(EntryImpl::release);
+                mbean.recordDiskCacheMisses(entriesToRead);
+                return null;
+            }
+            entries.add(entry);
+            totalSize += entry.getLength();
+        }
+
+        mbean.recordDiskCacheHits(entriesToRead, totalSize, System.nanoTime() - startTime);
+        return entries;
+    }
+
+    private EntryImpl read(long ledgerId, long entryId) {
+        LongPair location = index.get(ledgerId, entryId);
+        // The segment might have been dropped after the index lookup
+        Segment segment = location != null ? segments.get(location.first) : null;
+        if (segment == null) {
+            return null;
+        }
+
+        // The entry holds a reference to the segment, so that a concurrent drop of the segment doesn't unmap it
+        // while the entry is in use
+        try {
+            segment.retain();
+        } catch (IllegalReferenceCountException e) {
+            // The segment was dropped and unmapped after the index lookup
+            return null;
+        }
+        ByteBuf data = new SegmentByteBuf(segment, offset(location.second), length(location.second));
+        EntryImpl entry = EntryImpl.create(ledgerId, entryId, data);
+        data.release();
+        return entry;
+    }
+
+    public long getSize() {
+        return size.get();
+    }
+
+    public long getMaxSize() {
+        return (long) maxSegments * segmentSize;
+    }
+
+    public long getNumberOfEntries() {
+        return index.size();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (activeSegment != null) {
+                activeSegment.buffer.force();
+            }
+        }
+        // The queued writes are discarded, since the tier is closed, but they still need to release their entries
+        writeExecutor.shutdown();
+        readExecutor.shutdown();
+    }
+
+    private void rollSegment() throws IOException {
+        long segmentId = nextSegmentId++;
+        File file = segmentFile(segmentId);
+        Segment segment = new Segment(segmentId, file, map(file));
+        segment.buffer.putInt(0, SEGMENT_MAGIC);
+        segment.buffer.putInt(4, SEGMENT_VERSION);
+
+        if (activeSegment != null) {
+            activeSegment.buffer.force();
+        }
+        activeSegment = segment;
+        segments.put(segmentId, segment);
+        size.addAndGet(segment.writePosition);
+
+        while (segments.size() > maxSegments) {
+            dropSegment(segments.firstEntry().getValue());
+        }
+    }
+
+    private void dropSegment(Segment segment) {
+        segments.remove(segment.id);
+        scanRecords(segment.buffer, segment.writePosition, false, (ledgerId, entryId, offset, length) ->
+                index.remove(ledgerId, entryId, segment.id, location(offset, length)));
+        size.addAndGet(-segment.writePosition);
+
+        try {
+            Files.deleteIfExists(segment.file.toPath());
+        } catch (IOException e) {
+            log.warn("Failed to delete entry cache segment {}: {}", segment.file, e.getMessage());
+        }
+        // The segment is unmapped once the entries read from it are released
+        segment.release();
+    }
+
+    /**
+     * Rebuild the index from the segment files left by a previous run. The recovered segments are read-only, new
+     * entries are always appended to a new segment.
+     */
+    private synchronized void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_FILE_SUFFIX));
+        if (files == null) {
+            throw new IOException("Failed to list the entry cache segments in " + directory);
+        }
+
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (File file : files) {
+            Segment segment = recoverSegment(file);
+            if (segment == null) {
+                log.info("Discarding invalid entry cache segment {}", file);
+                Files.deleteIfExists(file.toPath());
+                continue;
+            }
+
+            nextSegmentId = Math.max(nextSegmentId, segment.id + 1);
+            segments.put(segment.id, segment);
+            size.addAndGet(segment.writePosition);
+        }
+
+        // Leave room for the active segment
+        while (segments.size() >= maxSegments) {
+            dropSegment(segments.firstEntry().getValue());
+        }
+
+        log.info("Recovered {} entries from {} entry cache segments in {}", index.size(), segments.size(),
+                directory);
+    }
+
+    private Segment recoverSegment(File file) throws IOException {
+        String name = file.getName();
+        long segmentId;
+        try {
+            segmentId = Long.parseLong(name.substring(0, name.length() - SEGMENT_FILE_SUFFIX.length()), 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        if (file.length() != segmentSize) {
+            // The segment size was changed since the segment was written
+            return null;
+        }
+
+        MappedByteBuffer buffer = map(file);
+        if (buffer.getInt(0) != SEGMENT_MAGIC || buffer.getInt(4) != SEGMENT_VERSION) {
+            PlatformDependent.freeDirectBuffer(buffer);
+            return null;
+        }
+
+        Segment segment = new Segment(segmentId, file, buffer);
+        segment.writePosition = scanRecords(buffer, segmentSize, true, (ledgerId, entryId, offset, length) ->
+                index.put(ledgerId, entryId, segmentId, location(offset, length)));
+        return segment;
+    }
+
+    /**
+     * Iterate over the records of a segment, stopping at the first one that is incomplete or, when verifying the
+     * checksums, corrupted.
+     *
+     * @return the position following the last valid record
+     */
+    private static int scanRecords(ByteBuffer buffer, int limit, boolean verifyChecksum, RecordProcessor processor) {
+        int offset = SEGMENT_HEADER_SIZE;
+        while (offset + RECORD_HEADER_SIZE <= limit && buffer.getInt(offset) == RECORD_MAGIC) {
+            int length = buffer.getInt(offset + RECORD_LENGTH_OFFSET);
+            if (length < 0 || length > limit - offset - RECORD_HEADER_SIZE) {
+                break;
+            }
+            if (verifyChecksum && buffer.getInt(offset + RECORD_CHECKSUM_OFFSET) != checksum(buffer, offset, length)) {
+                break;
+            }
+
+            processor.process(buffer.getLong(offset + RECORD_LEDGER_ID_OFFSET),
+                    buffer.getLong(offset + RECORD_ENTRY_ID_OFFSET), offset + RECORD_HEADER_SIZE, length);
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + RECORD_LENGTH_OFFSET, RECORD_CHECKSUM_OFFSET - RECORD_LENGTH_OFFSET));
+        crc.update(buffer.slice(offset + RECORD_HEADER_SIZE, length));
+        return (int) crc.getValue();
+    }
+
+    private MappedByteBuffer map(File file) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private File segmentFile(long segmentId) {
+        return new File(directory, String.format("%016x%s", segmentId, SEGMENT_FILE_SUFFIX));
+    }
+
+    private static long location(int offset, int length) {
+        return ((long) offset << 32) | (length & 0xffffffffL);
+    }
+
+    private static int offset(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int length(long location) {
+        return (int) location;
+    }
+
+    private interface RecordProcessor {
+        void process(long ledgerId, long entryId, int offset, int length);
+    }
+
+    /**
+     * A segment file mapped in memory. The tier holds a reference until the segment is dropped and every entry read
+     * from it holds another one, the mapping is released when the last reference is released.
+     */
+    private static final class Segment extends AbstractReferenceCounted {
+        final long id;
+        final File file;
+        final MappedByteBuffer buffer;
+        int writePosition = SEGMENT_HEADER_SIZE;
+
+        Segment(long id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        @Override
+        protected void deallocate() {
+            PlatformDependent.freeDirectBuffer(buffer);
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+    }
+
+    /**
+     * Buffer wrapping the region of a record in a segment, releasing its reference to the segment when deallocated.
+     */
+    private static final class SegmentByteBuf extends UnpooledDirectByteBuf {
+        private final Segment segment;
+
+        SegmentByteBuf(Segment segment, int offset, int length) {
+            super(UnpooledByteBufAllocator.DEFAULT, segment.buffer.slice(offset, length), length);
+            this.segment = segment;
+        }
+
+        @Override
+        protected void deallocate() {
+            super.deallocate();
+            segment.release();
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(EntryCacheDiskTier.class);
+}
@@ -34,4 +34,36 @@ public interface EntryCacheEvictionPolicy {
      *            the minimum size in bytes to be freed
      */
     void doEviction(List<EntryCache> caches, long sizeToFree);
+
+    /**
+     * Notify the policy that a range of entries was read through a cache, either from the cache or from storage.
+     *
+     * @param cache
+     *            the cache used to read the entries
+     * @param ledgerId
+     *            the ledger id
+     * @param firstEntry
+     *            the first entry read (inclusive)
+     * @param lastEntry
+     *            the last entry read (inclusive)
+     * @param cacheHit
+     *            whether all the entries were found in the cache
+     */
+    default void recordAccess(EntryCache cache, long ledgerId, long firstEntry, long lastEntry, boolean cacheHit) {
+    }
+
+    /**
+     * Decide whether an entry that was read from storage should be inserted in the cache.
+     *
+     * @param cache
+     *            the cache where the entry would be inserted
+     * @param ledgerId
+     *            the ledger id
+     * @param entryId
+     *            the entry id
+     * @return true if the entry should be inserted in the cache
+     */
+    default boolean shouldAdmit(EntryCache cache, long ledgerId, long entryId) {
+        return true;
+    }
 }
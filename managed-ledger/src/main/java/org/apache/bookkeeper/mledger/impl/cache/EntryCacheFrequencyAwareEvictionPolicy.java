@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Eviction policy that takes into account how frequently the cached data is read.
+ *
+ * <p/>The policy keeps a {@link EntryCacheFrequencySketch} of the entries read through all the caches, and uses it as
+ * a TinyLFU admission filter: an entry read from storage is only inserted in the cache when it was already read
+ * before, so that a single cursor draining a large backlog cannot flush the entries that other cursors are re-reading.
+ * Entries added by producers are always admitted, since they're the ones read by tailing cursors.
+ *
+ * <p/>Reads from storage are all recorded, since they drive the admission, while only a sample of the reads served
+ * by the cache is recorded, to keep the sketch updates off most of the hot read path.
+ *
+ * <p/>On eviction, caches are ranked by the number of recent reads per cached byte. The cold entries of the coldest
+ * caches are evicted first, skipping the entries read frequently, which are only evicted when evicting all the cold
+ * entries is not enough to free the requested size.
+ */
+public class EntryCacheFrequencyAwareEvictionPolicy implements EntryCacheEvictionPolicy {
+
+    private static final int DEFAULT_SKETCH_TABLE_SIZE = 1 << 16;
+
+    /**
+     * Min estimated number of reads for an entry read from storage to be admitted in the cache.
+     */
+    private static final int ADMISSION_FREQUENCY_THRESHOLD = 2;
+
+    /**
+     * Min estimated number of reads for a cached entry to be evicted only after the cold entries of all the caches.
+     */
+    static final int PROTECTED_FREQUENCY_THRESHOLD = 4;
+
+    /**
+     * One out of this number of reads served by the cache is recorded.
+     */
+    private static final int DEFAULT_CACHE_HIT_SAMPLING_RATE = 8;
+
+    private final EntryCacheFrequencySketch sketch;
+    private final int cacheHitSamplingRate;
+    private final ConcurrentMap<String, AtomicLong> cacheReads = new ConcurrentHashMap<>();
+
+    public EntryCacheFrequencyAwareEvictionPolicy() {
+        this(DEFAULT_SKETCH_TABLE_SIZE, DEFAULT_CACHE_HIT_SAMPLING_RATE);
+    }
+
+    EntryCacheFrequencyAwareEvictionPolicy(int sketchTableSize, int cacheHitSamplingRate) {
+        checkArgument(cacheHitSamplingRate > 0);
+        this.sketch = new EntryCacheFrequencySketch(sketchTableSize);
+        this.cacheHitSamplingRate = cacheHitSamplingRate;
+    }
+
+    @Override
+    public void recordAccess(EntryCache cache, long ledgerId, long firstEntry, long lastEntry, boolean cacheHit) {
+        long weight = 1;
+        if (cacheHit && cacheHitSamplingRate > 1) {
+            if (ThreadLocalRandom.current().nextInt(cacheHitSamplingRate) != 0) {
+                return;
+            }
+            // Account for the reads that were not sampled
+            weight = cacheHitSamplingRate;
+        }
+
+        for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+            sketch.increment(ledgerId, entryId);
+        }
+
+        AtomicLong reads = cacheReads.get(cache.getName());
+        if (reads == null) {
+            reads = cacheReads.computeIfAbsent(cache.getName(), name -> new AtomicLong());
+        }
+        reads.addAndGet((lastEntry - firstEntry + 1) * weight);
+    }
+
+    @Override
+    public boolean shouldAdmit(EntryCache cache, long ledgerId, long entryId) {
+        return sketch.frequency(ledgerId, entryId) >= ADMISSION_FREQUENCY_THRESHOLD;
+    }
+
+    private boolean isFrequentlyRead(PositionImpl position) {
+        return sketch.frequency(position.getLedgerId(), position.getEntryId()) >= PROTECTED_FREQUENCY_THRESHOLD;
+    }
+
+    @Override
+    public void doEviction(List<EntryCache> caches, long sizeToFree) {
+        checkArgument(sizeToFree > 0);
+        checkArgument(!caches.isEmpty());
+
+        // Take a snapshot of sizes and reads, since they keep changing while we do the eviction
+        List<CacheRank> ranks = new ArrayList<>(caches.size());
+        Set<String> names = new HashSet<>();
+        for (EntryCache cache : caches) {
+            AtomicLong reads = cacheReads.get(cache.getName());
+            ranks.add(new CacheRank(cache, cache.getSize(), reads != null ? reads.get() : 0));
+            names.add(cache.getName());
+        }
+        ranks.sort(Comparator.comparingDouble(CacheRank::readsPerByte));
+
+        int evictedEntries = 0;
+        long evictedSize = 0;
+
+        // First evict the entries that are not read frequently, starting from the coldest caches
+        for (CacheRank rank : ranks) {
+            if (evictedSize >= sizeToFree) {
+                break;
+            }
+            if (rank.size <= 0) {
+                continue;
+            }
+
+            Pair<Integer, Long> evicted = rank.cache.evictEntries(sizeToFree - evictedSize, this::isFrequentlyRead);
+            evictedEntries += evicted.getLeft();
+            evictedSize += evicted.getRight();
+        }
+
+        // If that was not enough, evict the frequently read entries as well, again starting from the coldest caches
+        for (CacheRank rank : ranks) {
+            if (evictedSize >= sizeToFree) {
+                break;
+            }
+
+            long singleCacheSizeToFree = Math.min(rank.cache.getSize(), sizeToFree - evictedSize);
+            if (singleCacheSizeToFree <= 0) {
+                continue;
+            }
+
+            Pair<Integer, Long> evicted = rank.cache.evictEntries(singleCacheSizeToFree);
+            evictedEntries += evicted.getLeft();
+            evictedSize += evicted.getRight();
+        }
+
+        // Age the per-cache reads, and forget about the caches that were removed
+        cacheReads.keySet().retainAll(names);
+        cacheReads.values().forEach(reads -> reads.updateAndGet(value -> value / 2));
+
+        log.info("Completed cache eviction. Removed {} entries from {} caches. ({} Mb)", evictedEntries,
+                ranks.size(), evictedSize / RangeEntryCacheManagerImpl.MB);
+    }
+
+    private static class CacheRank {
+        final EntryCache cache;
+        final long size;
+        final long reads;
+
+        CacheRank(EntryCache cache, long size, long reads) {
+            this.cache = cache;
+            this.size = size;
+            this.reads = reads;
+        }
+
+        double readsPerByte() {
+            return size > 0 ? reads / (double) size : Double.MAX_VALUE;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(EntryCacheFrequencyAwareEvictionPolicy.class);
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate access frequency of entries, shared by all the entry caches.
+ *
+ * <p/>This is a count-min sketch with 4 bits counters, packed 16 per long. Every entry is mapped to 4 counters and its
+ * frequency is the minimum of them, so the estimate can only exceed the real count. When the number of recorded
+ * accesses reaches the sample size, all the counters are halved, to let the sketch forget about old accesses.
+ *
+ * <p/>Counters are updated with CAS operations, so that the sketch can be used concurrently without locks.
+ */
+class EntryCacheFrequencySketch {
+
+    static final int MAX_FREQUENCY = 15;
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L };
+
+    private final AtomicLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger(0);
+    private final AtomicBoolean resetInProgress = new AtomicBoolean(false);
+
+    /**
+     * @param tableSize
+     *            number of longs in the table, it needs to be a power of 2. Each long holds 16 counters.
+     */
+    EntryCacheFrequencySketch(int tableSize) {
+        checkArgument(tableSize > 0 && Integer.bitCount(tableSize) == 1, "Table size must be a power of 2");
+        this.table = new AtomicLongArray(tableSize);
+        this.tableMask = tableSize - 1;
+        this.sampleSize = tableSize * 10;
+    }
+
+    /**
+     * @return the estimated number of times the entry was accessed, up to {@link #MAX_FREQUENCY}
+     */
+    int frequency(long ledgerId, long entryId) {
+        long hash = hash(ledgerId, entryId);
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long value = table.get(indexOf(hash, i));
+            frequency = Math.min(frequency, (int) ((value >>> counterShift(hash, i)) & 0xfL));
+        }
+        return frequency;
+    }
+
+    void increment(long ledgerId, long entryId) {
+        long hash = hash(ledgerId, entryId);
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            added |= incrementAt(indexOf(hash, i), counterShift(hash, i));
+        }
+
+        if (added && additions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int shift) {
+        while (true) {
+            long value = table.get(index);
+            if (((value >>> shift) & 0xfL) == MAX_FREQUENCY) {
+                return false;
+            }
+
+            if (table.compareAndSet(index, value, value + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Halve all the counters. Concurrent increments might be lost while doing it, which is acceptable for an
+     * approximate structure.
+     */
+    private void reset() {
+        if (!resetInProgress.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < table.length(); i++) {
+                table.getAndUpdate(i, value -> (value >>> 1) & RESET_MASK);
+            }
+            additions.updateAndGet(value -> value / 2);
+        } finally {
+            resetInProgress.set(false);
+        }
+    }
+
+    private int indexOf(long hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private static int counterShift(long hash, int i) {
+        // Pick one of the 16 counters of the long, using different bits of the hash for each of the 4 rows
+        return (int) ((hash >>> (i << 2)) & 0xfL) << 2;
+    }
+
+    private static long hash(long ledgerId, long entryId) {
+        long h = ledgerId * 0x9e3779b97f4a7c15L + entryId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -36,4 +36,13 @@ public interface EntryCacheManager {
     void updateCacheEvictionWatermark(double cacheEvictionWatermark);
 
     double getCacheEvictionWatermark();
+
+    EntryCacheEvictionPolicy getEvictionPolicy();
+
+    /**
+     * @return the disk tier where the evicted entries are spilled, or null if it's disabled
+     */
+    default EntryCacheDiskTier getDiskTier() {
+        return null;
+    }
 }
@@ -20,6 +20,8 @@ package org.apache.bookkeeper.mledger.impl.cache;
 
 import com.google.common.annotations.VisibleForTesting;
 import io.prometheus.client.Gauge;
+import java.util.HashMap;
+import java.util.Map;
 import lombok.AllArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
@@ -40,15 +42,33 @@ public class InflightReadsLimiter {
             .register();
 
     private final long maxReadsInFlightSize;
+    private final boolean fairSharingEnabled;
     private long remainingBytes;
 
+    // The groups (namespaces) holding permits or waiting for them, when the fair sharing is enabled
+    private final Map<String, GroupState> groups = new HashMap<>();
+    private int waitingGroups;
+
     public InflightReadsLimiter(long maxReadsInFlightSize) {
+        this(maxReadsInFlightSize, false);
+    }
+
+    /**
+     * @param maxReadsInFlightSize
+     *            the maximum number of bytes in flight, 0 to disable the limiter
+     * @param fairSharingEnabled
+     *            whether to share the budget fairly across the groups of the reads: when the reads of other groups
+     *            are waiting for permits, a group that already has reads in flight can't get more than an equal
+     *            share of the budget
+     */
+    public InflightReadsLimiter(long maxReadsInFlightSize, boolean fairSharingEnabled) {
         if (maxReadsInFlightSize <= 0) {
             // set it to -1 in order to show in the metrics that the metric is not available
             PULSAR_ML_READS_BUFFER_SIZE.set(-1);
             PULSAR_ML_READS_AVAILABLE_BUFFER_SIZE.set(-1);
         }
         this.maxReadsInFlightSize = maxReadsInFlightSize;
+        this.fairSharingEnabled = fairSharingEnabled;
         this.remainingBytes = maxReadsInFlightSize;
     }
 
@@ -65,65 +85,153 @@ public class InflightReadsLimiter {
         final int trials;
 
         final long creationTime;
+
+        @ToString.Exclude
+        final GroupState group;
+
+        Handle(long acquiredPermits, boolean success, int trials, long creationTime) {
+            this(acquiredPermits, success, trials, creationTime, null);
+        }
+    }
+
+    private static class GroupState {
+        final String name;
+        long acquiredPermits;
+        int waitingHandles;
+
+        GroupState(String name) {
+            this.name = name;
+        }
     }
 
     private static final Handle DISABLED = new Handle(0, true, 0, -1);
 
     Handle acquire(long permits, Handle current) {
+        return acquire(permits, current, null);
+    }
+
+    /**
+     * Acquires the permits for a read.
+     *
+     * @param permits the estimated size of the read
+     * @param current the handle returned by the previous unsuccessful attempt, null on the first attempt
+     * @param group the group of the read, for the fair sharing of the budget, or null
+     * @return the handle to retry with when it is not successful, or to release once the read data is released
+     */
+    Handle acquire(long permits, Handle current, String group) {
         if (maxReadsInFlightSize <= 0) {
             // feature is disabled
             return DISABLED;
         }
         synchronized (this) {
             try {
+                GroupState groupState = current != null ? current.group : getGroupState(group);
+                long available = availablePermits(groupState, current);
+                Handle handle;
                 if (current == null) {
-                    if (remainingBytes == 0) {
-                        return new Handle(0, false, 1, System.currentTimeMillis());
-                    }
-                    if (remainingBytes >= permits) {
-                        remainingBytes -= permits;
-                        return new Handle(permits, true, 1, System.currentTimeMillis());
+                    if (available == 0) {
+                        handle = new Handle(0, false, 1, System.currentTimeMillis(), groupState);
+                    } else if (available >= permits) {
+                        handle = new Handle(permits, true, 1, System.currentTimeMillis(), groupState);
                     } else {
-                        long possible = remainingBytes;
-                        remainingBytes = 0;
-                        return new Handle(possible, false, 1, System.currentTimeMillis());
+                        handle = new Handle(available, false, 1, System.currentTimeMillis(), groupState);
                     }
                 } else {
                     if (current.trials >= 4 && current.acquiredPermits > 0) {
-                        remainingBytes += current.acquiredPermits;
-                        return new Handle(0, false, 1, current.creationTime);
-                    }
-                    if (remainingBytes == 0) {
-                        return new Handle(current.acquiredPermits, false, current.trials + 1,
-                                current.creationTime);
-                    }
-                    long needed = permits - current.acquiredPermits;
-                    if (remainingBytes >= needed) {
-                        remainingBytes -= needed;
-                        return new Handle(permits, true, current.trials + 1, current.creationTime);
+                        handle = new Handle(0, false, 1, current.creationTime, groupState);
+                    } else if (available == 0) {
+                        handle = new Handle(current.acquiredPermits, false, current.trials + 1,
+                                current.creationTime, groupState);
                     } else {
-                        long possible = remainingBytes;
-                        remainingBytes = 0;
-                        return new Handle(current.acquiredPermits + possible, false,
-                                current.trials + 1, current.creationTime);
+                        long needed = permits - current.acquiredPermits;
+                        if (available >= needed) {
+                            handle = new Handle(permits, true, current.trials + 1, current.creationTime,
+                                    groupState);
+                        } else {
+                            handle = new Handle(current.acquiredPermits + available, false,
+                                    current.trials + 1, current.creationTime, groupState);
+                        }
+                    }
+                }
+                long acquired = handle.acquiredPermits - (current != null ? current.acquiredPermits : 0);
+                remainingBytes -= acquired;
+                if (groupState != null) {
+                    groupState.acquiredPermits += acquired;
+                    if (current == null && !handle.success) {
+                        updateWaitingHandles(groupState, 1);
+                    } else if (current != null && handle.success) {
+                        updateWaitingHandles(groupState, -1);
                     }
+                    removeGroupIfUnused(groupState);
                 }
+                return handle;
             } finally {
                 updateMetrics();
             }
         }
     }
 
+    private GroupState getGroupState(String group) {
+        if (!fairSharingEnabled || group == null) {
+            return null;
+        }
+        return groups.computeIfAbsent(group, GroupState::new);
+    }
+
+    private long availablePermits(GroupState groupState, Handle current) {
+        if (groupState == null) {
+            return remainingBytes;
+        }
+        long heldByOtherReads = groupState.acquiredPermits - (current != null ? current.acquiredPermits : 0);
+        boolean otherGroupsWaiting = waitingGroups > (groupState.waitingHandles > 0 ? 1 : 0);
+        if (heldByOtherReads == 0 || !otherGroupsWaiting) {
+            // A group can always have a read in flight, and use the whole budget if nobody else needs it
+            return remainingBytes;
+        }
+        long fairShare = maxReadsInFlightSize / groups.size();
+        return Math.min(remainingBytes, Math.max(0, fairShare - groupState.acquiredPermits));
+    }
+
+    private void updateWaitingHandles(GroupState groupState, int delta) {
+        int waitingHandles = groupState.waitingHandles;
+        groupState.waitingHandles += delta;
+        if (waitingHandles == 0 && groupState.waitingHandles > 0) {
+            waitingGroups++;
+        } else if (waitingHandles > 0 && groupState.waitingHandles == 0) {
+            waitingGroups--;
+        }
+    }
+
+    private void removeGroupIfUnused(GroupState groupState) {
+        if (groupState.acquiredPermits == 0 && groupState.waitingHandles == 0) {
+            groups.remove(groupState.name, groupState);
+        }
+    }
+
     void release(Handle handle) {
         if (handle == DISABLED) {
             return;
         }
         synchronized (this) {
             remainingBytes += handle.acquiredPermits;
+            GroupState groupState = handle.group;
+            if (groupState != null) {
+                groupState.acquiredPermits -= handle.acquiredPermits;
+                if (!handle.success) {
+                    // The read gave up waiting for the permits
+                    updateWaitingHandles(groupState, -1);
+                }
+                removeGroupIfUnused(groupState);
+            }
             updateMetrics();
         }
     }
 
+    @VisibleForTesting
+    synchronized int getGroupsCount() {
+        return groups.size();
+    }
+
     private synchronized void updateMetrics() {
         PULSAR_ML_READS_BUFFER_SIZE.set(maxReadsInFlightSize - remainingBytes);
         PULSAR_ML_READS_AVAILABLE_BUFFER_SIZE.set(remainingBytes);
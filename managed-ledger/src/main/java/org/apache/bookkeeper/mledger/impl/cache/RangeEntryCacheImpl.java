@@ -30,6 +30,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import org.apache.bookkeeper.client.api.BKException;
 import org.apache.bookkeeper.client.api.LedgerEntry;
 import org.apache.bookkeeper.client.api.ReadHandle;
@@ -44,6 +45,8 @@ import org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl;
 import org.apache.bookkeeper.mledger.impl.PositionImpl;
 import org.apache.bookkeeper.mledger.intercept.ManagedLedgerInterceptor;
 import org.apache.bookkeeper.mledger.util.RangeCache;
+import org.apache.bookkeeper.mledger.util.RangeCacheStore;
+import org.apache.bookkeeper.mledger.util.SegmentedRangeCache;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,7 +64,7 @@ public class RangeEntryCacheImpl implements EntryCache {
     private final RangeEntryCacheManagerImpl manager;
     final ManagedLedgerImpl ml;
     private ManagedLedgerInterceptor interceptor;
-    private final RangeCache<PositionImpl, EntryImpl> entries;
+    private final RangeCacheStore<PositionImpl, EntryImpl> entries;
     private final boolean copyEntries;
     private final PendingReadsManager pendingReadsManager;
 
@@ -71,13 +74,21 @@ public class RangeEntryCacheImpl implements EntryCache {
 
     private static final double MB = 1024 * 1024;
 
-    public RangeEntryCacheImpl(RangeEntryCacheManagerImpl manager, ManagedLedgerImpl ml, boolean copyEntries) {
+    public RangeEntryCacheImpl(RangeEntryCacheManagerImpl manager, ManagedLedgerImpl ml, boolean copyEntries,
+                               boolean segmentedEntries) {
         this.manager = manager;
         this.ml = ml;
         this.pendingReadsManager = new PendingReadsManager(this);
         this.interceptor = ml.getManagedLedgerInterceptor();
         this.readEntryTimeoutMillis = getManagedLedgerConfig().getReadEntryTimeoutSeconds();
-        this.entries = new RangeCache<>(EntryImpl::getLength, EntryImpl::getTimestamp);
+        // Entries evicted from memory are spilled to the disk tier, when enabled
+        EntryCacheDiskTier diskTier = manager.getDiskTier();
+        RangeCache.EvictionListener<EntryImpl> evictionListener = diskTier != null ? diskTier::putAsync : null;
+        if (segmentedEntries) {
+            this.entries = new SegmentedRangeCache<>(EntryImpl::getLength, EntryImpl::getTimestamp, evictionListener);
+        } else {
+            this.entries = new RangeCache<>(EntryImpl::getLength, EntryImpl::getTimestamp, evictionListener);
+        }
         this.copyEntries = copyEntries;
 
         if (log.isDebugEnabled()) {
@@ -242,41 +253,62 @@ public class RangeEntryCacheImpl implements EntryCache {
             log.debug("[{}] Reading entry ledger {}: {}", ml.getName(), lh.getId(), position.getEntryId());
         }
         EntryImpl entry = entries.get(position);
+        manager.getEvictionPolicy().recordAccess(this, position.getLedgerId(), position.getEntryId(),
+                position.getEntryId(), entry != null);
         if (entry != null) {
+            if (entry.getTimestamp() < retainedEntriesMaxTimestamp()) {
+                ml.getMbean().recordCacheRetentionHits(1);
+            }
             EntryImpl cachedEntry = EntryImpl.create(entry);
             entry.release();
             manager.mlFactoryMBean.recordCacheHit(cachedEntry.getLength());
             callback.readEntryComplete(cachedEntry, ctx);
         } else {
-            lh.readAsync(position.getEntryId(), position.getEntryId()).thenAcceptAsync(
-                    ledgerEntries -> {
-                        try {
-                            Iterator<LedgerEntry> iterator = ledgerEntries.iterator();
-                            if (iterator.hasNext()) {
-                                LedgerEntry ledgerEntry = iterator.next();
-                                EntryImpl returnEntry = RangeEntryCacheManagerImpl.create(ledgerEntry, interceptor);
-
-                                ml.getMbean().recordReadEntriesOpsCacheMisses(1, returnEntry.getLength());
-                                manager.mlFactoryMBean.recordCacheMiss(1, returnEntry.getLength());
-                                ml.getMbean().addReadEntriesSample(1, returnEntry.getLength());
-                                callback.readEntryComplete(returnEntry, ctx);
-                            } else {
-                                // got an empty sequence
-                                callback.readEntryFailed(new ManagedLedgerException("Could not read given position"),
-                                                         ctx);
-                            }
-                        } finally {
-                            ledgerEntries.close();
+            readFromDiskTier(position.getLedgerId(), position.getEntryId(), position.getEntryId())
+                    .thenAccept(diskEntries -> {
+                        if (diskEntries != null) {
+                            callback.readEntryComplete(diskEntries.get(0), ctx);
+                        } else {
+                            readEntryFromStorage(lh, position, callback, ctx);
                         }
-                    }, ml.getExecutor()).exceptionally(exception -> {
-                        ml.invalidateLedgerHandle(lh);
-                        pendingReadsManager.invalidateLedger(lh.getId());
-                        callback.readEntryFailed(createManagedLedgerException(exception), ctx);
+                    }).exceptionally(t -> {
+                        log.warn("failed to read entries for {}-{}", lh.getId(), position, t);
+                        callback.readEntryFailed(createManagedLedgerException(t), ctx);
                         return null;
-            });
+                    });
         }
     }
 
+    private void readEntryFromStorage(ReadHandle lh, PositionImpl position, final ReadEntryCallback callback,
+            final Object ctx) {
+        lh.readAsync(position.getEntryId(), position.getEntryId()).thenAcceptAsync(
+                ledgerEntries -> {
+                    try {
+                        Iterator<LedgerEntry> iterator = ledgerEntries.iterator();
+                        if (iterator.hasNext()) {
+                            LedgerEntry ledgerEntry = iterator.next();
+                            EntryImpl returnEntry = RangeEntryCacheManagerImpl.create(ledgerEntry, interceptor);
+
+                            ml.getMbean().recordReadEntriesOpsCacheMisses(1, returnEntry.getLength());
+                            manager.mlFactoryMBean.recordCacheMiss(1, returnEntry.getLength());
+                            ml.getMbean().addReadEntriesSample(1, returnEntry.getLength());
+                            callback.readEntryComplete(returnEntry, ctx);
+                        } else {
+                            // got an empty sequence
+                            callback.readEntryFailed(new ManagedLedgerException("Could not read given position"),
+                                                     ctx);
+                        }
+                    } finally {
+                        ledgerEntries.close();
+                    }
+                }, ml.getExecutor()).exceptionally(exception -> {
+                    ml.invalidateLedgerHandle(lh);
+                    pendingReadsManager.invalidateLedger(lh.getId());
+                    callback.readEntryFailed(createManagedLedgerException(exception), ctx);
+                    return null;
+        });
+    }
+
     @Override
     public void asyncReadEntry(ReadHandle lh, long firstEntry, long lastEntry, boolean shouldCacheEntry,
             final ReadEntriesCallback callback, Object ctx) {
@@ -318,19 +350,29 @@ public class RangeEntryCacheImpl implements EntryCache {
         }
 
         Collection<EntryImpl> cachedEntries = entries.getRange(firstPosition, lastPosition);
+        manager.getEvictionPolicy().recordAccess(this, ledgerId, firstEntry, lastEntry,
+                cachedEntries.size() == entriesToRead);
 
         if (cachedEntries.size() == entriesToRead) {
             long totalCachedSize = 0;
+            int retainedEntries = 0;
+            final long retainedEntriesMaxTimestamp = retainedEntriesMaxTimestamp();
             final List<EntryImpl> entriesToReturn = Lists.newArrayListWithExpectedSize(entriesToRead);
 
             // All entries found in cache
             for (EntryImpl entry : cachedEntries) {
                 entriesToReturn.add(EntryImpl.create(entry));
                 totalCachedSize += entry.getLength();
+                if (entry.getTimestamp() < retainedEntriesMaxTimestamp) {
+                    retainedEntries++;
+                }
                 entry.release();
             }
 
             manager.mlFactoryMBean.recordCacheHits(entriesToReturn.size(), totalCachedSize);
+            if (retainedEntries > 0) {
+                ml.getMbean().recordCacheRetentionHits(retainedEntries);
+            }
             if (log.isDebugEnabled()) {
                 log.debug("[{}] Ledger {} -- Found in cache entries: {}-{}", ml.getName(), ledgerId, firstEntry,
                         lastEntry);
@@ -350,6 +392,17 @@ public class RangeEntryCacheImpl implements EntryCache {
         }
     }
 
+    /**
+     * With the cache retention by active cursors, entries inserted before the returned timestamp would have already
+     * been evicted by time: every read served from them is a read that didn't go to the bookies.
+     */
+    private long retainedEntriesMaxTimestamp() {
+        if (!getManagedLedgerConfig().isCacheRetentionByActiveCursors()) {
+            return Long.MIN_VALUE;
+        }
+        return System.nanoTime() - ml.getFactory().getCacheEvictionTimeThreshold();
+    }
+
     private AsyncCallbacks.ReadEntriesCallback handlePendingReadsLimits(ReadHandle lh,
                                                                 long firstEntry, long lastEntry,
                                                                 boolean shouldCacheEntry,
@@ -362,7 +415,8 @@ public class RangeEntryCacheImpl implements EntryCache {
         long estimatedReadSize = (1 + lastEntry - firstEntry)
                 * (estimatedEntrySize + BOOKKEEPER_READ_OVERHEAD_PER_ENTRY);
         final AsyncCallbacks.ReadEntriesCallback callback;
-        InflightReadsLimiter.Handle newHandle = pendingReadsLimiter.acquire(estimatedReadSize, handle);
+        InflightReadsLimiter.Handle newHandle = pendingReadsLimiter.acquire(estimatedReadSize, handle,
+                getManagedLedgerConfig().getReadsInFlightGroup());
         if (!newHandle.success) {
             long now = System.currentTimeMillis();
             if (now - newHandle.creationTime > readEntryTimeoutMillis) {
@@ -427,6 +481,14 @@ public class RangeEntryCacheImpl implements EntryCache {
      */
     CompletableFuture<List<EntryImpl>> readFromStorage(ReadHandle lh,
                                                        long firstEntry, long lastEntry, boolean shouldCacheEntry) {
+        return readFromDiskTier(lh.getId(), firstEntry, lastEntry).thenCompose(diskEntries -> diskEntries != null
+                ? CompletableFuture.completedFuture(diskEntries)
+                : readFromBookies(lh, firstEntry, lastEntry, shouldCacheEntry));
+    }
+
+    private CompletableFuture<List<EntryImpl>> readFromBookies(ReadHandle lh,
+                                                               long firstEntry, long lastEntry,
+                                                               boolean shouldCacheEntry) {
         final int entriesToRead = (int) (lastEntry - firstEntry) + 1;
         CompletableFuture<List<EntryImpl>> readResult = lh.readAsync(firstEntry, lastEntry)
                 .thenApply(
@@ -437,6 +499,7 @@ public class RangeEntryCacheImpl implements EntryCache {
                             try {
                                 // We got the entries, we need to transform them to a List<> type
                                 long totalSize = 0;
+                                int rejectedEntries = 0;
                                 final List<EntryImpl> entriesToReturn =
                                         Lists.newArrayListWithExpectedSize(entriesToRead);
                                 for (LedgerEntry e : ledgerEntries) {
@@ -444,12 +507,21 @@ public class RangeEntryCacheImpl implements EntryCache {
                                     entriesToReturn.add(entry);
                                     totalSize += entry.getLength();
                                     if (shouldCacheEntry) {
-                                        EntryImpl cacheEntry = EntryImpl.create(entry);
-                                        insert(cacheEntry);
-                                        cacheEntry.release();
+                                        if (manager.getEvictionPolicy().shouldAdmit(this, entry.getLedgerId(),
+                                                entry.getEntryId())) {
+                                            EntryImpl cacheEntry = EntryImpl.create(entry);
+                                            insert(cacheEntry);
+                                            cacheEntry.release();
+                                        } else {
+                                            rejectedEntries++;
+                                        }
                                     }
                                 }
 
+                                if (rejectedEntries > 0) {
+                                    manager.mlFactoryMBean.recordCacheAdmissionRejected(rejectedEntries);
+                                }
+
                                 ml.getMbean().recordReadEntriesOpsCacheMisses(entriesToReturn.size(), totalSize);
                                 manager.mlFactoryMBean.recordCacheMiss(entriesToReturn.size(), totalSize);
                                 ml.getMbean().addReadEntriesSample(entriesToReturn.size(), totalSize);
@@ -472,6 +544,43 @@ public class RangeEntryCacheImpl implements EntryCache {
         return readResult;
     }
 
+    /**
+     * Reads the entries from the disk tier, before falling back to the storage. The entries are not inserted back in
+     * memory, since catch-up reads would keep evicting each other.
+     *
+     * <p/>The mapped regions are read on the disk tier threads, so that page faults don't block the caller.
+     *
+     * @return a future with the entries, or with null if the disk tier is disabled or doesn't have all the entries in
+     *         the range
+     */
+    private CompletableFuture<List<EntryImpl>> readFromDiskTier(long ledgerId, long firstEntry, long lastEntry) {
+        EntryCacheDiskTier diskTier = manager.getDiskTier();
+        if (diskTier == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return diskTier.getRangeAsync(ledgerId, firstEntry, lastEntry).thenApply(diskEntries -> {
+            if (diskEntries != null) {
+                recordDiskTierHits(ledgerId, firstEntry, lastEntry, diskEntries);
+            }
+            return diskEntries;
+        });
+    }
+
+    private void recordDiskTierHits(long ledgerId, long firstEntry, long lastEntry, List<EntryImpl> diskEntries) {
+        long totalSize = 0;
+        for (EntryImpl entry : diskEntries) {
+            totalSize += entry.getLength();
+        }
+        ml.getMbean().recordReadEntriesOpsCacheMisses(diskEntries.size(), totalSize);
+        manager.mlFactoryMBean.recordCacheMiss(diskEntries.size(), totalSize);
+        ml.getMbean().addReadEntriesSample(diskEntries.size(), totalSize);
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Ledger {} -- Found in disk tier entries: {}-{}", ml.getName(), ledgerId, firstEntry,
+                    lastEntry);
+        }
+    }
+
     @Override
     public void clear() {
         Pair<Integer, Long> removedPair = entries.clear();
@@ -479,6 +588,53 @@ public class RangeEntryCacheImpl implements EntryCache {
         pendingReadsManager.clear();
     }
 
+    @Override
+    public long prefetchEntries(ReadHandle lh, long firstEntry, long lastEntry) {
+        long entrySize = estimatedEntrySize;
+        long maxEntries = (manager.getMaxSize() - manager.getSize()) / Math.max(entrySize, 1);
+        InflightReadsLimiter pendingReadsLimiter = getPendingReadsLimiter();
+        if (!pendingReadsLimiter.isDisabled()) {
+            // Leave at least half of the reads buffer to the reads of the consumers
+            maxEntries = Math.min(maxEntries, pendingReadsLimiter.getRemainingBytes() / 2
+                    / (entrySize + BOOKKEEPER_READ_OVERHEAD_PER_ENTRY));
+        }
+
+        long lastEntryToLoad = Math.min(lastEntry, firstEntry + maxEntries - 1);
+        if (lastEntryToLoad < firstEntry) {
+            return firstEntry - 1;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Prefetching entries range ledger {}: {} to {}", ml.getName(), lh.getId(), firstEntry,
+                    lastEntryToLoad);
+        }
+        // The entries are inserted once read, rather than through the admission of the storage reads
+        asyncReadEntry(lh, firstEntry, lastEntryToLoad, false, new ReadEntriesCallback() {
+            @Override
+            public void readEntriesComplete(List<Entry> entries, Object ctx) {
+                for (Entry entry : entries) {
+                    insert((EntryImpl) entry);
+                    entry.release();
+                }
+            }
+
+            @Override
+            public void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] Failed to prefetch entries of ledger {}: {}", ml.getName(), lh.getId(),
+                            exception.getMessage());
+                }
+            }
+        }, null);
+        return lastEntryToLoad;
+    }
+
+    @Override
+    public int getNumberOfCachedEntries(long ledgerId, long firstEntry, long lastEntry) {
+        return entries.getNumberOfEntries(PositionImpl.get(ledgerId, firstEntry),
+                PositionImpl.get(ledgerId, lastEntry));
+    }
+
     @Override
     public long getSize() {
         return entries.getSize();
@@ -492,7 +648,22 @@ public class RangeEntryCacheImpl implements EntryCache {
     @Override
     public Pair<Integer, Long> evictEntries(long sizeToFree) {
         checkArgument(sizeToFree > 0);
-        Pair<Integer, Long> evicted = entries.evictLeastAccessedEntries(sizeToFree);
+        return entriesEvicted(sizeToFree, entries.evictLeastAccessedEntries(sizeToFree));
+    }
+
+    @Override
+    public Pair<Integer, Long> evictEntries(long sizeToFree, Predicate<PositionImpl> retain) {
+        checkArgument(sizeToFree > 0);
+        return entriesEvicted(sizeToFree, entries.evictLeastAccessedEntries(sizeToFree, retain));
+    }
+
+    @Override
+    public Pair<Integer, Long> evictNewestEntries(long sizeToFree) {
+        checkArgument(sizeToFree > 0);
+        return entriesEvicted(sizeToFree, entries.evictNewestEntries(sizeToFree));
+    }
+
+    private Pair<Integer, Long> entriesEvicted(long sizeToFree, Pair<Integer, Long> evicted) {
         int evictedEntries = evicted.getLeft();
         long evictedSize = evicted.getRight();
         if (log.isDebugEnabled()) {
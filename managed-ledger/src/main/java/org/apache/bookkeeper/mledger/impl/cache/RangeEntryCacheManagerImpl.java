@@ -20,6 +20,8 @@ package org.apache.bookkeeper.mledger.impl.cache;
 
 import com.google.common.collect.Lists;
 import io.netty.buffer.ByteBuf;
+import java.io.File;
+import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
@@ -33,6 +35,7 @@ import org.apache.bookkeeper.mledger.impl.ManagedLedgerFactoryImpl;
 import org.apache.bookkeeper.mledger.impl.ManagedLedgerFactoryMBeanImpl;
 import org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl;
 import org.apache.bookkeeper.mledger.intercept.ManagedLedgerInterceptor;
+import org.apache.pulsar.common.util.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +48,7 @@ public class RangeEntryCacheManagerImpl implements EntryCacheManager {
     private final AtomicLong currentSize = new AtomicLong(0);
     private final ConcurrentMap<String, EntryCache> caches = new ConcurrentHashMap();
     private final EntryCacheEvictionPolicy evictionPolicy;
+    private final EntryCacheDiskTier diskTier;
 
     private final AtomicBoolean evictionInProgress = new AtomicBoolean(false);
 
@@ -59,14 +63,38 @@ public class RangeEntryCacheManagerImpl implements EntryCacheManager {
     public RangeEntryCacheManagerImpl(ManagedLedgerFactoryImpl factory) {
         this.maxSize = factory.getConfig().getMaxCacheSize();
         this.inflightReadsLimiter = new InflightReadsLimiter(
-                factory.getConfig().getManagedLedgerMaxReadsInFlightSize());
+                factory.getConfig().getManagedLedgerMaxReadsInFlightSize(),
+                factory.getConfig().isManagedLedgerReadsInFlightFairSharingEnabled());
         this.evictionTriggerThreshold = (long) (maxSize * evictionTriggerThresholdPercent);
         this.cacheEvictionWatermark = factory.getConfig().getCacheEvictionWatermark();
-        this.evictionPolicy = new EntryCacheDefaultEvictionPolicy();
+        this.evictionPolicy = Reflections.createInstance(factory.getConfig().getCacheEvictionPolicyClassName(),
+                EntryCacheEvictionPolicy.class, Thread.currentThread().getContextClassLoader());
         this.mlFactory = factory;
         this.mlFactoryMBean = factory.getMbean();
+        this.diskTier = createDiskTier(factory);
 
-        log.info("Initialized managed-ledger entry cache of {} Mb", maxSize / MB);
+        log.info("Initialized managed-ledger entry cache of {} Mb with eviction policy {}", maxSize / MB,
+                evictionPolicy.getClass().getName());
+    }
+
+    private EntryCacheDiskTier createDiskTier(ManagedLedgerFactoryImpl factory) {
+        String directory = factory.getConfig().getDiskCacheDirectory();
+        long diskCacheMaxSize = factory.getConfig().getDiskCacheMaxSize();
+        if (directory == null || directory.isEmpty() || diskCacheMaxSize <= 0) {
+            return null;
+        }
+
+        try {
+            EntryCacheDiskTier diskTier = new EntryCacheDiskTier(new File(directory), diskCacheMaxSize,
+                    factory.getConfig().getDiskCacheSegmentSize(), factory.getMbean());
+            log.info("Initialized managed-ledger entry cache disk tier of {} Mb in {}", diskTier.getMaxSize() / MB,
+                    directory);
+            return diskTier;
+        } catch (IOException e) {
+            // The disk tier is an optimization, keep serving the reads from memory and storage
+            log.warn("Failed to initialize the managed-ledger entry cache disk tier in {}", directory, e);
+            return null;
+        }
     }
 
     public EntryCache getEntryCache(ManagedLedgerImpl ml) {
@@ -75,7 +103,8 @@ public class RangeEntryCacheManagerImpl implements EntryCacheManager {
             return new EntryCacheDisabled(ml);
         }
 
-        EntryCache newEntryCache = new RangeEntryCacheImpl(this, ml, mlFactory.getConfig().isCopyEntriesInCache());
+        EntryCache newEntryCache = new RangeEntryCacheImpl(this, ml, mlFactory.getConfig().isCopyEntriesInCache(),
+                mlFactory.getConfig().isSegmentedEntryCacheEnabled());
         EntryCache currentEntryCache = caches.putIfAbsent(ml.getName(), newEntryCache);
         if (currentEntryCache != null) {
             return currentEntryCache;
@@ -141,6 +170,16 @@ public class RangeEntryCacheManagerImpl implements EntryCacheManager {
         return currentSize < maxSize;
     }
 
+    @Override
+    public EntryCacheEvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    @Override
+    public EntryCacheDiskTier getDiskTier() {
+        return diskTier;
+    }
+
     void entryAdded(long size) {
         mlFactoryMBean.recordCacheInsertion();
         currentSize.addAndGet(size);
@@ -169,6 +208,9 @@ public class RangeEntryCacheManagerImpl implements EntryCacheManager {
     @Override
     public void clear() {
         caches.values().forEach(EntryCache::clear);
+        if (diskTier != null) {
+            diskTier.close();
+        }
     }
 
     public static Entry create(long ledgerId, long entryId, ByteBuf data) {
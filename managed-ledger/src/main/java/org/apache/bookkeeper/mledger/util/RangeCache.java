@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import org.apache.commons.lang3.tuple.Pair;
 
 /**
@@ -37,12 +38,14 @@ import org.apache.commons.lang3.tuple.Pair;
  * @param <Value>
  *            Cache value
  */
-public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCounted> {
+public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCounted>
+        implements RangeCacheStore<Key, Value> {
     // Map from key to nodes inside the linked list
     private final ConcurrentNavigableMap<Key, Value> entries;
     private AtomicLong size; // Total size of values stored in cache
     private final Weighter<Value> weighter; // Weighter object used to extract the size from values
     private final TimestampExtractor<Value> timestampExtractor; // Extract the timestamp associated with a value
+    private final EvictionListener<Value> evictionListener; // Notified of the values evicted by size or time
 
     /**
      * Construct a new RangeLruCache with default Weighter.
@@ -58,10 +61,25 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
      *            a custom weighter to compute the size of each stored value
      */
     public RangeCache(Weighter<Value> weighter, TimestampExtractor<Value> timestampExtractor) {
+        this(weighter, timestampExtractor, null);
+    }
+
+    /**
+     * Construct a new RangeLruCache.
+     *
+     * @param weighter
+     *            a custom weighter to compute the size of each stored value
+     * @param evictionListener
+     *            listener invoked, before the value is released, for every value evicted by size or time. It can be
+     *            null
+     */
+    public RangeCache(Weighter<Value> weighter, TimestampExtractor<Value> timestampExtractor,
+                      EvictionListener<Value> evictionListener) {
         this.size = new AtomicLong(0);
         this.entries = new ConcurrentSkipListMap<>();
         this.weighter = weighter;
         this.timestampExtractor = timestampExtractor;
+        this.evictionListener = evictionListener;
     }
 
     /**
@@ -72,6 +90,7 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
      *            ref counted value with at least 1 ref to pass on the cache
      * @return whether the entry was inserted in the cache
      */
+    @Override
     public boolean put(Key key, Value value) {
         // retain value so that it's not released before we put it in the cache and calculate the weight
         value.retain();
@@ -87,10 +106,12 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
         }
     }
 
+    @Override
     public boolean exists(Key key) {
         return key != null ? entries.containsKey(key) : true;
     }
 
+    @Override
     public Value get(Key key) {
         Value value = entries.get(key);
         if (value == null) {
@@ -114,6 +135,7 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
      *            the last key in the range (inclusive)
      * @return a collections of the value found in cache
      */
+    @Override
     public Collection<Value> getRange(Key first, Key last) {
         List<Value> values = new ArrayList();
 
@@ -130,6 +152,11 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
         return values;
     }
 
+    @Override
+    public int getNumberOfEntries(Key first, Key last) {
+        return entries.subMap(first, true, last, true).size();
+    }
+
     /**
      *
      * @param first
@@ -137,6 +164,7 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
      * @param lastInclusive
      * @return an pair of ints, containing the number of removed entries and the total size
      */
+    @Override
     public Pair<Integer, Long> removeRange(Key first, Key last, boolean lastInclusive) {
         Map<Key, Value> subMap = entries.subMap(first, true, last, lastInclusive);
 
@@ -164,6 +192,7 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
      * @param minSize
      * @return a pair containing the number of entries evicted and their total size
      */
+    @Override
     public Pair<Integer, Long> evictLeastAccessedEntries(long minSize) {
         checkArgument(minSize > 0);
 
@@ -179,6 +208,64 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
             Value value = entry.getValue();
             ++removedEntries;
             removedSize += weighter.getSize(value);
+            if (evictionListener != null) {
+                evictionListener.onEvicted(value);
+            }
+            value.release();
+        }
+
+        size.addAndGet(-removedSize);
+        return Pair.of(removedEntries, removedSize);
+    }
+
+    @Override
+    public Pair<Integer, Long> evictLeastAccessedEntries(long minSize, Predicate<Key> retain) {
+        checkArgument(minSize > 0);
+
+        long removedSize = 0;
+        int removedEntries = 0;
+
+        for (Map.Entry<Key, Value> entry : entries.entrySet()) {
+            if (removedSize >= minSize) {
+                break;
+            }
+
+            Value value = entry.getValue();
+            if (retain.test(entry.getKey()) || !entries.remove(entry.getKey(), value)) {
+                continue;
+            }
+
+            ++removedEntries;
+            removedSize += weighter.getSize(value);
+            if (evictionListener != null) {
+                evictionListener.onEvicted(value);
+            }
+            value.release();
+        }
+
+        size.addAndGet(-removedSize);
+        return Pair.of(removedEntries, removedSize);
+    }
+
+    @Override
+    public Pair<Integer, Long> evictNewestEntries(long minSize) {
+        checkArgument(minSize > 0);
+
+        long removedSize = 0;
+        int removedEntries = 0;
+
+        while (removedSize < minSize) {
+            Map.Entry<Key, Value> entry = entries.pollLastEntry();
+            if (entry == null) {
+                break;
+            }
+
+            Value value = entry.getValue();
+            ++removedEntries;
+            removedSize += weighter.getSize(value);
+            if (evictionListener != null) {
+                evictionListener.onEvicted(value);
+            }
             value.release();
         }
 
@@ -191,6 +278,7 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
     * @param maxTimestamp the max timestamp of the entries to be evicted
     * @return the tota
     */
+   @Override
    public Pair<Integer, Long> evictLEntriesBeforeTimestamp(long maxTimestamp) {
        long removedSize = 0;
        int removedCount = 0;
@@ -208,6 +296,9 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
 
            removedSize += weighter.getSize(value);
            removedCount++;
+           if (evictionListener != null) {
+               evictionListener.onEvicted(value);
+           }
            value.release();
        }
 
@@ -222,6 +313,7 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
         return entries.size();
     }
 
+    @Override
     public long getSize() {
         return size.get();
     }
@@ -231,6 +323,7 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
      *
      * @return size of removed entries
      */
+    @Override
     public synchronized Pair<Integer, Long> clear() {
         long removedSize = 0;
         int removedCount = 0;
@@ -268,6 +361,15 @@ public class RangeCache<Key extends Comparable<Key>, Value extends ReferenceCoun
         long getTimestamp(ValueT value);
     }
 
+    /**
+     * Interface of a object that is notified of the values evicted from the cache, while they are still retained.
+     *
+     * @param <ValueT>
+     */
+    public interface EvictionListener<ValueT> {
+        void onEvicted(ValueT value);
+    }
+
     /**
      * Default cache weighter, every value is assumed the same cost.
      *
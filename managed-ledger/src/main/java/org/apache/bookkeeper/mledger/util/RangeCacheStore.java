@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.util;
+
+import io.netty.util.ReferenceCounted;
+import java.util.Collection;
+import java.util.function.Predicate;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Storage contract for caches where get() and delete() operations can be done over a range of keys.
+ *
+ * <p/>All the returned values are retained and need to be released by the caller.
+ *
+ * @param <K>
+ *            Cache key
+ * @param <V>
+ *            Cache value
+ */
+public interface RangeCacheStore<K, V extends ReferenceCounted> {
+
+    /**
+     * Insert.
+     *
+     * @param key
+     * @param value
+     *            ref counted value with at least 1 ref to pass on the cache
+     * @return whether the entry was inserted in the cache
+     */
+    boolean put(K key, V value);
+
+    boolean exists(K key);
+
+    V get(K key);
+
+    /**
+     * Get the values stored for a range of keys.
+     *
+     * @param first
+     *            the first key in the range
+     * @param last
+     *            the last key in the range (inclusive)
+     * @return a collection of the values found in the cache
+     */
+    Collection<V> getRange(K first, K last);
+
+    /**
+     * Count the values stored for a range of keys, without retaining them.
+     *
+     * @param first
+     *            the first key in the range
+     * @param last
+     *            the last key in the range (inclusive)
+     * @return the number of values found in the cache
+     */
+    int getNumberOfEntries(K first, K last);
+
+    /**
+     * Remove the values stored for a range of keys.
+     *
+     * @param first
+     *            the first key in the range
+     * @param last
+     *            the last key in the range
+     * @param lastInclusive
+     *            whether the last key is removed too
+     * @return a pair containing the number of removed entries and their total size
+     */
+    Pair<Integer, Long> removeRange(K first, K last, boolean lastInclusive);
+
+    /**
+     * Evict the least accessed entries until at least the given size is freed.
+     *
+     * @param minSize
+     *            the minimum size to free
+     * @return a pair containing the number of entries evicted and their total size
+     */
+    Pair<Integer, Long> evictLeastAccessedEntries(long minSize);
+
+    /**
+     * Evict the least accessed entries until at least the given size is freed, skipping the entries to retain.
+     *
+     * @param minSize
+     *            the minimum size to free
+     * @param retain
+     *            tells whether the entry of a key has to be kept in the cache
+     * @return a pair containing the number of entries evicted and their total size
+     */
+    Pair<Integer, Long> evictLeastAccessedEntries(long minSize, Predicate<K> retain);
+
+    /**
+     * Evict the entries with the highest keys until at least the given size is freed.
+     *
+     * @param minSize
+     *            the minimum size to free
+     * @return a pair containing the number of entries evicted and their total size
+     */
+    Pair<Integer, Long> evictNewestEntries(long minSize);
+
+    /**
+     * Evict the entries inserted before the given timestamp.
+     *
+     * @param maxTimestamp the max timestamp of the entries to be evicted
+     * @return a pair containing the number of entries evicted and their total size
+     */
+    Pair<Integer, Long> evictLEntriesBeforeTimestamp(long maxTimestamp);
+
+    long getSize();
+
+    /**
+     * Remove all the entries from the cache.
+     *
+     * @return a pair containing the number of entries removed and their total size
+     */
+    Pair<Integer, Long> clear();
+}
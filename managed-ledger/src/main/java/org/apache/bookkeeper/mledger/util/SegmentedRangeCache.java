@@ -0,0 +1,618 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import io.netty.util.ReferenceCounted;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.bookkeeper.mledger.util.RangeCache.EvictionListener;
+import org.apache.bookkeeper.mledger.util.RangeCache.TimestampExtractor;
+import org.apache.bookkeeper.mledger.util.RangeCache.Weighter;
+import org.apache.commons.lang3.mutable.MutableInt;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Range cache specialized for managed ledger positions.
+ *
+ * <p/>Entry ids inside a ledger are dense and monotonically increasing, so instead of keeping a skip-list node for
+ * every cached entry, the values of each ledger are stored in fixed-size array segments. A lookup is a couple of
+ * array accesses, a range scan walks the segments sequentially and the eviction drops entries in key order, detaching
+ * the segments once they are drained.
+ *
+ * <p/>Reads are lock-free. Mutations are serialized per ledger.
+ *
+ * @param <Value>
+ *            Cache value
+ */
+public class SegmentedRangeCache<Value extends ReferenceCounted> implements RangeCacheStore<PositionImpl, Value> {
+
+    static final int SEGMENT_SHIFT = 10;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /**
+     * Max number of segments that can be spanned by a single ledger. It protects from allocating a huge segment table
+     * when sparse entries very far apart from each other are inserted in the same ledger.
+     */
+    static final int MAX_SEGMENTS_PER_LEDGER = 1 << 16;
+
+    // Ledgers sorted by ledger id. The array is replaced on every ledger addition/removal
+    private volatile Ledger<Value>[] ledgers;
+    private final AtomicLong size; // Total size of values stored in cache
+    private final AtomicLong numberOfEntries;
+    private final Weighter<Value> weighter; // Weighter object used to extract the size from values
+    private final TimestampExtractor<Value> timestampExtractor; // Extract the timestamp associated with a value
+    private final EvictionListener<Value> evictionListener; // Notified of the values evicted by size or time
+
+    public SegmentedRangeCache(Weighter<Value> weighter, TimestampExtractor<Value> timestampExtractor) {
+        this(weighter, timestampExtractor, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public SegmentedRangeCache(Weighter<Value> weighter, TimestampExtractor<Value> timestampExtractor,
+                               EvictionListener<Value> evictionListener) {
+        this.ledgers = (Ledger<Value>[]) new Ledger[0];
+        this.size = new AtomicLong(0);
+        this.numberOfEntries = new AtomicLong(0);
+        this.weighter = weighter;
+        this.timestampExtractor = timestampExtractor;
+        this.evictionListener = evictionListener;
+    }
+
+    @Override
+    public boolean put(PositionImpl key, Value value) {
+        if (key.getEntryId() < 0) {
+            return false;
+        }
+
+        // retain value so that it's not released before we put it in the cache and calculate the weight
+        value.retain();
+        try {
+            while (true) {
+                Ledger<Value> ledger = getOrCreateLedger(key.getLedgerId());
+                synchronized (ledger) {
+                    if (ledger.removed) {
+                        // The ledger was drained concurrently, retry on a new one
+                        continue;
+                    }
+
+                    Segment<Value> segment = ledger.getOrCreateSegment(key.getEntryId() >>> SEGMENT_SHIFT);
+                    if (segment == null) {
+                        // Don't leave behind a ledger created for this insertion only
+                        if (ledger.table.segments.length == 0) {
+                            ledger.removed = true;
+                            removeLedger(ledger);
+                        }
+                        return false;
+                    }
+
+                    int slot = (int) (key.getEntryId() & SEGMENT_MASK);
+                    if (segment.values.get(slot) != null) {
+                        return false;
+                    }
+
+                    long valueSize = weighter.getSize(value);
+                    segment.values.set(slot, value);
+                    segment.count++;
+                    segment.maxTimestamp = Math.max(segment.maxTimestamp, timestampExtractor.getTimestamp(value));
+                    size.addAndGet(valueSize);
+                    numberOfEntries.incrementAndGet();
+                    return true;
+                }
+            }
+        } finally {
+            value.release();
+        }
+    }
+
+    @Override
+    public boolean exists(PositionImpl key) {
+        return key != null ? peek(key) != null : true;
+    }
+
+    @Override
+    public Value get(PositionImpl key) {
+        Value value = peek(key);
+        if (value == null) {
+            return null;
+        } else {
+            try {
+                value.retain();
+                return value;
+            } catch (Throwable t) {
+                // Value was already destroyed between get() and retain()
+                return null;
+            }
+        }
+    }
+
+    private Value peek(PositionImpl key) {
+        if (key.getEntryId() < 0) {
+            return null;
+        }
+
+        Ledger<Value> ledger = findLedger(key.getLedgerId());
+        if (ledger == null) {
+            return null;
+        }
+
+        Segment<Value> segment = ledger.table.get(key.getEntryId() >>> SEGMENT_SHIFT);
+        return segment != null ? segment.values.get((int) (key.getEntryId() & SEGMENT_MASK)) : null;
+    }
+
+    @Override
+    public Collection<Value> getRange(PositionImpl first, PositionImpl last) {
+        List<Value> values = new ArrayList<>();
+        forEachInRange(first, last, value -> {
+            try {
+                value.retain();
+                values.add(value);
+            } catch (Throwable t) {
+                // Value was already destroyed between get() and retain()
+            }
+        });
+        return values;
+    }
+
+    @Override
+    public int getNumberOfEntries(PositionImpl first, PositionImpl last) {
+        MutableInt count = new MutableInt();
+        forEachInRange(first, last, value -> count.increment());
+        return count.intValue();
+    }
+
+    private void forEachInRange(PositionImpl first, PositionImpl last, Consumer<Value> consumer) {
+        for (Ledger<Value> ledger : ledgers) {
+            if (ledger.ledgerId < first.getLedgerId()) {
+                continue;
+            } else if (ledger.ledgerId > last.getLedgerId()) {
+                break;
+            }
+
+            long fromEntry = ledger.ledgerId == first.getLedgerId() ? Math.max(first.getEntryId(), 0) : 0;
+            long toEntry = ledger.ledgerId == last.getLedgerId() ? last.getEntryId() : Long.MAX_VALUE;
+            if (fromEntry > toEntry) {
+                continue;
+            }
+
+            SegmentTable<Value> table = ledger.table;
+            long firstSegment = Math.max(fromEntry >>> SEGMENT_SHIFT, table.firstSegment);
+            long lastSegment = Math.min(toEntry >>> SEGMENT_SHIFT, table.lastSegment());
+            for (long segmentIdx = firstSegment; segmentIdx <= lastSegment; segmentIdx++) {
+                Segment<Value> segment = table.get(segmentIdx);
+                if (segment == null) {
+                    continue;
+                }
+
+                int firstSlot = segmentIdx == (fromEntry >>> SEGMENT_SHIFT) ? (int) (fromEntry & SEGMENT_MASK) : 0;
+                int lastSlot = segmentIdx == (toEntry >>> SEGMENT_SHIFT) ? (int) (toEntry & SEGMENT_MASK)
+                        : SEGMENT_MASK;
+                for (int slot = firstSlot; slot <= lastSlot; slot++) {
+                    Value value = segment.values.get(slot);
+                    if (value != null) {
+                        consumer.accept(value);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Pair<Integer, Long> removeRange(PositionImpl first, PositionImpl last, boolean lastInclusive) {
+        Removal removal = new Removal(Long.MAX_VALUE, Long.MAX_VALUE, false);
+
+        for (Ledger<Value> ledger : ledgers) {
+            if (ledger.ledgerId < first.getLedgerId()) {
+                continue;
+            } else if (ledger.ledgerId > last.getLedgerId()) {
+                break;
+            }
+
+            long fromEntry = ledger.ledgerId == first.getLedgerId() ? Math.max(first.getEntryId(), 0) : 0;
+            long toEntry = Long.MAX_VALUE;
+            if (ledger.ledgerId == last.getLedgerId()) {
+                toEntry = lastInclusive ? last.getEntryId() : last.getEntryId() - 1;
+            }
+
+            if (fromEntry <= toEntry) {
+                removeFromLedger(ledger, fromEntry, toEntry, removal);
+            }
+        }
+
+        return removal.complete();
+    }
+
+    @Override
+    public Pair<Integer, Long> evictLeastAccessedEntries(long minSize) {
+        checkArgument(minSize > 0);
+        Removal removal = new Removal(minSize, Long.MAX_VALUE, true);
+
+        for (Ledger<Value> ledger : ledgers) {
+            if (removeFromLedger(ledger, 0, Long.MAX_VALUE, removal)) {
+                break;
+            }
+        }
+
+        return removal.complete();
+    }
+
+    @Override
+    public Pair<Integer, Long> evictLeastAccessedEntries(long minSize, Predicate<PositionImpl> retain) {
+        checkArgument(minSize > 0);
+        Removal removal = new Removal(minSize, Long.MAX_VALUE, true, retain, false);
+
+        for (Ledger<Value> ledger : ledgers) {
+            if (removeFromLedger(ledger, 0, Long.MAX_VALUE, removal)) {
+                break;
+            }
+        }
+
+        return removal.complete();
+    }
+
+    @Override
+    public Pair<Integer, Long> evictNewestEntries(long minSize) {
+        checkArgument(minSize > 0);
+        Removal removal = new Removal(minSize, Long.MAX_VALUE, true, null, true);
+
+        Ledger<Value>[] current = ledgers;
+        for (int i = current.length - 1; i >= 0; i--) {
+            if (removeFromLedger(current[i], 0, Long.MAX_VALUE, removal)) {
+                break;
+            }
+        }
+
+        return removal.complete();
+    }
+
+    @Override
+    public Pair<Integer, Long> evictLEntriesBeforeTimestamp(long maxTimestamp) {
+        Removal removal = new Removal(Long.MAX_VALUE, maxTimestamp, true);
+
+        for (Ledger<Value> ledger : ledgers) {
+            if (removeFromLedger(ledger, 0, Long.MAX_VALUE, removal)) {
+                break;
+            }
+        }
+
+        return removal.complete();
+    }
+
+    /**
+     * Just for testing.
+     */
+    protected long getNumberOfEntries() {
+        return numberOfEntries.get();
+    }
+
+    /**
+     * Just for testing.
+     */
+    protected int getNumberOfSegments() {
+        int segments = 0;
+        for (Ledger<Value> ledger : ledgers) {
+            for (Segment<Value> segment : ledger.table.segments) {
+                if (segment != null) {
+                    segments++;
+                }
+            }
+        }
+        return segments;
+    }
+
+    @Override
+    public long getSize() {
+        return size.get();
+    }
+
+    @Override
+    public Pair<Integer, Long> clear() {
+        Removal removal = new Removal(Long.MAX_VALUE, Long.MAX_VALUE, false);
+
+        for (Ledger<Value> ledger : ledgers) {
+            removeFromLedger(ledger, 0, Long.MAX_VALUE, removal);
+        }
+
+        return removal.complete();
+    }
+
+    /**
+     * Remove, in key order or in reverse key order, the values of the ledger in the range [fromEntry, toEntry], until
+     * the removal limits are reached. Segments that are left empty are detached from the ledger.
+     *
+     * @return true if the removal was stopped because one of its limits was reached
+     */
+    private boolean removeFromLedger(Ledger<Value> ledger, long fromEntry, long toEntry, Removal removal) {
+        synchronized (ledger) {
+            if (ledger.removed) {
+                return false;
+            }
+
+            SegmentTable<Value> table = ledger.table;
+            long firstSegment = Math.max(fromEntry >>> SEGMENT_SHIFT, table.firstSegment);
+            long lastSegment = Math.min(toEntry >>> SEGMENT_SHIFT, table.lastSegment());
+            boolean stopped = false;
+
+            for (long i = 0; i <= lastSegment - firstSegment && !stopped; i++) {
+                long segmentIdx = removal.newestFirst ? lastSegment - i : firstSegment + i;
+                Segment<Value> segment = table.get(segmentIdx);
+                if (segment == null) {
+                    continue;
+                }
+
+                // When the whole segment is older than the timestamp limit, there's no need to check each value
+                boolean checkTimestamp = segment.maxTimestamp > removal.maxTimestamp;
+                int firstSlot = segmentIdx == (fromEntry >>> SEGMENT_SHIFT) ? (int) (fromEntry & SEGMENT_MASK) : 0;
+                int lastSlot = segmentIdx == (toEntry >>> SEGMENT_SHIFT) ? (int) (toEntry & SEGMENT_MASK)
+                        : SEGMENT_MASK;
+                for (int j = 0; j <= lastSlot - firstSlot && segment.count > 0; j++) {
+                    int slot = removal.newestFirst ? lastSlot - j : firstSlot + j;
+                    Value value = segment.values.get(slot);
+                    if (value == null) {
+                        continue;
+                    }
+
+                    if (removal.removedSize >= removal.sizeLimit
+                            || (checkTimestamp && timestampExtractor.getTimestamp(value) > removal.maxTimestamp)) {
+                        stopped = true;
+                        break;
+                    }
+
+                    if (removal.retain != null && removal.retain.test(
+                            PositionImpl.get(ledger.ledgerId, (segmentIdx << SEGMENT_SHIFT) + slot))) {
+                        continue;
+                    }
+
+                    segment.values.set(slot, null);
+                    segment.count--;
+                    removal.removedSize += weighter.getSize(value);
+                    removal.removedEntries++;
+                    if (removal.eviction && evictionListener != null) {
+                        evictionListener.onEvicted(value);
+                    }
+                    value.release();
+                }
+            }
+
+            ledger.compact();
+            if (ledger.removed) {
+                removeLedger(ledger);
+            }
+            return stopped;
+        }
+    }
+
+    private Ledger<Value> findLedger(long ledgerId) {
+        Ledger<Value>[] current = ledgers;
+        int idx = indexOf(current, ledgerId);
+        return idx >= 0 ? current[idx] : null;
+    }
+
+    private Ledger<Value> getOrCreateLedger(long ledgerId) {
+        Ledger<Value> ledger = findLedger(ledgerId);
+        if (ledger != null) {
+            return ledger;
+        }
+
+        synchronized (this) {
+            Ledger<Value>[] current = ledgers;
+            int idx = indexOf(current, ledgerId);
+            if (idx >= 0) {
+                return current[idx];
+            }
+
+            int insertionPoint = -(idx + 1);
+            Ledger<Value>[] updated = Arrays.copyOf(current, current.length + 1);
+            System.arraycopy(current, insertionPoint, updated, insertionPoint + 1, current.length - insertionPoint);
+            ledger = new Ledger<>(ledgerId);
+            updated[insertionPoint] = ledger;
+            ledgers = updated;
+            return ledger;
+        }
+    }
+
+    private synchronized void removeLedger(Ledger<Value> ledger) {
+        Ledger<Value>[] current = ledgers;
+        int idx = indexOf(current, ledger.ledgerId);
+        if (idx < 0 || current[idx] != ledger) {
+            return;
+        }
+
+        Ledger<Value>[] updated = Arrays.copyOf(current, current.length - 1);
+        System.arraycopy(current, idx + 1, updated, idx, current.length - idx - 1);
+        ledgers = updated;
+    }
+
+    private static int indexOf(Ledger<?>[] ledgers, long ledgerId) {
+        int low = 0;
+        int high = ledgers.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midLedgerId = ledgers[mid].ledgerId;
+            if (midLedgerId < ledgerId) {
+                low = mid + 1;
+            } else if (midLedgerId > ledgerId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Accumulates the result of a removal and holds the conditions that stop it.
+     */
+    private class Removal {
+        final long sizeLimit;
+        final long maxTimestamp;
+        final boolean eviction; // Whether the removed values are notified to the eviction listener
+        final Predicate<PositionImpl> retain; // Values to skip, it can be null
+        final boolean newestFirst; // Whether the values are removed in reverse key order
+        long removedSize = 0;
+        int removedEntries = 0;
+
+        Removal(long sizeLimit, long maxTimestamp, boolean eviction) {
+            this(sizeLimit, maxTimestamp, eviction, null, false);
+        }
+
+        Removal(long sizeLimit, long maxTimestamp, boolean eviction, Predicate<PositionImpl> retain,
+                boolean newestFirst) {
+            this.sizeLimit = sizeLimit;
+            this.maxTimestamp = maxTimestamp;
+            this.eviction = eviction;
+            this.retain = retain;
+            this.newestFirst = newestFirst;
+        }
+
+        Pair<Integer, Long> complete() {
+            size.addAndGet(-removedSize);
+            numberOfEntries.addAndGet(-removedEntries);
+            return Pair.of(removedEntries, removedSize);
+        }
+    }
+
+    /**
+     * The cached values of a single ledger. Mutations are done while holding the ledger monitor.
+     */
+    private static final class Ledger<V> {
+        final long ledgerId;
+        volatile SegmentTable<V> table = SegmentTable.empty();
+        boolean removed = false;
+
+        Ledger(long ledgerId) {
+            this.ledgerId = ledgerId;
+        }
+
+        Segment<V> getOrCreateSegment(long segmentIdx) {
+            SegmentTable<V> current = table;
+            Segment<V> segment = current.get(segmentIdx);
+            if (segment != null) {
+                return segment;
+            }
+
+            long firstSegment = segmentIdx;
+            long lastSegment = segmentIdx;
+            if (current.segments.length > 0) {
+                firstSegment = Math.min(current.firstSegment, segmentIdx);
+                lastSegment = Math.max(current.lastSegment(), segmentIdx);
+            }
+            if (lastSegment - firstSegment + 1 > MAX_SEGMENTS_PER_LEDGER) {
+                return null;
+            }
+
+            Segment<V>[] segments = SegmentTable.newArray((int) (lastSegment - firstSegment + 1));
+            System.arraycopy(current.segments, 0, segments, (int) (current.firstSegment - firstSegment),
+                    current.segments.length);
+            segment = new Segment<>();
+            segments[(int) (segmentIdx - firstSegment)] = segment;
+            table = new SegmentTable<>(firstSegment, segments);
+            return segment;
+        }
+
+        /**
+         * Detach the empty segments, marking the ledger as removed when no segment is left.
+         */
+        void compact() {
+            SegmentTable<V> current = table;
+            Segment<V>[] segments = current.segments;
+            int first = 0;
+            int last = segments.length - 1;
+            while (first <= last && isEmpty(segments[first])) {
+                first++;
+            }
+            while (last >= first && isEmpty(segments[last])) {
+                last--;
+            }
+
+            if (first > last) {
+                table = SegmentTable.empty();
+                removed = true;
+                return;
+            }
+
+            boolean changed = first > 0 || last < segments.length - 1;
+            for (int i = first + 1; i < last && !changed; i++) {
+                changed = segments[i] != null && segments[i].count == 0;
+            }
+            if (!changed) {
+                return;
+            }
+
+            Segment<V>[] compacted = Arrays.copyOfRange(segments, first, last + 1);
+            for (int i = 0; i < compacted.length; i++) {
+                if (isEmpty(compacted[i])) {
+                    compacted[i] = null;
+                }
+            }
+            table = new SegmentTable<>(current.firstSegment + first, compacted);
+        }
+
+        private static boolean isEmpty(Segment<?> segment) {
+            return segment == null || segment.count == 0;
+        }
+    }
+
+    /**
+     * Immutable view over the segments of a ledger. Segment i holds the entries from
+     * (firstSegment + i) * SEGMENT_SIZE, and it's null when none of those entries is cached.
+     */
+    private static final class SegmentTable<V> {
+        final long firstSegment;
+        final Segment<V>[] segments;
+
+        SegmentTable(long firstSegment, Segment<V>[] segments) {
+            this.firstSegment = firstSegment;
+            this.segments = segments;
+        }
+
+        Segment<V> get(long segmentIdx) {
+            long idx = segmentIdx - firstSegment;
+            return idx >= 0 && idx < segments.length ? segments[(int) idx] : null;
+        }
+
+        long lastSegment() {
+            return firstSegment + segments.length - 1;
+        }
+
+        static <V> SegmentTable<V> empty() {
+            return new SegmentTable<>(0, newArray(0));
+        }
+
+        @SuppressWarnings("unchecked")
+        static <V> Segment<V>[] newArray(int length) {
+            return (Segment<V>[]) new Segment[length];
+        }
+    }
+
+    private static final class Segment<V> {
+        final AtomicReferenceArray<V> values = new AtomicReferenceArray<>(SEGMENT_SIZE);
+        // Guarded by the ledger monitor
+        int count = 0;
+        long maxTimestamp = Long.MIN_VALUE;
+    }
+}
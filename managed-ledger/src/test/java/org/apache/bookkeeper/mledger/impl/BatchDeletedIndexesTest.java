@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.apache.pulsar.common.util.collections.BitSetRecyclable;
+import org.testng.annotations.Test;
+
+public class BatchDeletedIndexesTest {
+
+    private static long[] ackSet(int batchSize, int... deletedIndexes) {
+        BitSetRecyclable bitSet = BitSetRecyclable.create();
+        bitSet.set(0, batchSize);
+        for (int index : deletedIndexes) {
+            bitSet.clear(index);
+        }
+        long[] words = bitSet.toLongArray();
+        bitSet.recycle();
+        return words;
+    }
+
+    @Test
+    public void testPutAndGet() {
+        BatchDeletedIndexes indexes = new BatchDeletedIndexes();
+        assertTrue(indexes.isEmpty());
+        assertNull(indexes.get(1, 1));
+
+        indexes.put(1, 1, ackSet(10, 0));
+        // Ack sets that don't fit inline
+        indexes.put(1, 2, ackSet(1000, 0, 999));
+        assertEquals(indexes.size(), 2);
+        assertEquals(indexes.get(1, 1), ackSet(10, 0));
+        assertEquals(indexes.get(1, 2), ackSet(1000, 0, 999));
+
+        // The returned ack sets are copies
+        indexes.get(1, 1)[0] = 0;
+        indexes.get(1, 2)[0] = 0;
+        assertEquals(indexes.get(1, 1), ackSet(10, 0));
+        assertEquals(indexes.get(1, 2), ackSet(1000, 0, 999));
+
+        indexes.put(1, 2, ackSet(10, 1));
+        assertEquals(indexes.get(1, 2), ackSet(10, 1));
+        assertEquals(indexes.size(), 2);
+
+        assertTrue(indexes.remove(1, 1));
+        assertFalse(indexes.remove(1, 1));
+        assertNull(indexes.get(1, 1));
+        assertEquals(indexes.size(), 1);
+
+        indexes.clear();
+        assertTrue(indexes.isEmpty());
+        assertNull(indexes.get(1, 2));
+    }
+
+    @Test
+    public void testAnd() {
+        BatchDeletedIndexes indexes = new BatchDeletedIndexes();
+        assertFalse(indexes.and(1, 1, ackSet(3, 0)));
+        assertFalse(indexes.and(1, 1, ackSet(3, 1)));
+        assertEquals(indexes.get(1, 1), ackSet(3, 0, 1));
+        assertTrue(indexes.and(1, 1, ackSet(3, 2)));
+        assertNull(indexes.get(1, 1));
+        assertTrue(indexes.isEmpty());
+
+        // Ack sets that shrink from overflow to inline
+        assertFalse(indexes.and(1, 2, ackSet(1000, 0)));
+        assertFalse(indexes.and(1, 2, ackSet(1000, 200)));
+        for (int i = 999; i >= 64; i--) {
+            assertFalse(indexes.and(1, 2, ackSet(1000, i)));
+        }
+        assertEquals(indexes.get(1, 2), ackSet(64, 0));
+        for (int i = 1; i < 63; i++) {
+            assertFalse(indexes.and(1, 2, ackSet(1000, i)));
+        }
+        assertTrue(indexes.and(1, 2, ackSet(1000, 63)));
+        assertTrue(indexes.isEmpty());
+    }
+
+    @Test
+    public void testPutIfAdvanced() {
+        BatchDeletedIndexes indexes = new BatchDeletedIndexes();
+        indexes.putIfAdvanced(1, 1, ackSet(10, 0, 1));
+        assertEquals(indexes.get(1, 1), ackSet(10, 0, 1));
+
+        // Never roll back the state of a batch
+        indexes.putIfAdvanced(1, 1, ackSet(10, 0));
+        assertEquals(indexes.get(1, 1), ackSet(10, 0, 1));
+
+        indexes.putIfAdvanced(1, 1, ackSet(10, 0, 1, 2));
+        assertEquals(indexes.get(1, 1), ackSet(10, 0, 1, 2));
+    }
+
+    @Test
+    public void testRemoveUpTo() {
+        BatchDeletedIndexes indexes = new BatchDeletedIndexes();
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            for (long entryId = 0; entryId < 100; entryId++) {
+                indexes.put(ledgerId, entryId, ackSet(10, 0));
+            }
+        }
+        assertEquals(indexes.size(), 300);
+
+        indexes.removeUpTo(2, 50, false);
+        assertEquals(indexes.size(), 150);
+        assertNull(indexes.get(1, 99));
+        assertNull(indexes.get(2, 49));
+        assertEquals(indexes.get(2, 50), ackSet(10, 0));
+
+        indexes.removeUpTo(2, 50, true);
+        assertEquals(indexes.size(), 149);
+        assertNull(indexes.get(2, 50));
+
+        indexes.removeUpTo(3, 99, true);
+        assertTrue(indexes.isEmpty());
+    }
+
+    @Test
+    public void testForEachIsSorted() {
+        BatchDeletedIndexes indexes = new BatchDeletedIndexes();
+        indexes.put(3, 1, ackSet(10, 0));
+        indexes.put(1, 5, ackSet(10, 1));
+        indexes.put(1, 2, ackSet(10, 2));
+        indexes.put(2, 0, ackSet(10, 3));
+        indexes.remove(1, 5);
+
+        List<String> batches = new ArrayList<>();
+        indexes.forEach((ledgerId, entryId, ackSet) -> {
+            batches.add(ledgerId + ":" + entryId);
+            return true;
+        });
+        assertEquals(batches, List.of("1:2", "2:0", "3:1"));
+
+        batches.clear();
+        indexes.forEach((ledgerId, entryId, ackSet) -> {
+            batches.add(ledgerId + ":" + entryId);
+            return batches.size() < 2;
+        });
+        assertEquals(batches, List.of("1:2", "2:0"));
+    }
+
+    @Test
+    public void testSameStateAsSortedMap() {
+        BatchDeletedIndexes indexes = new BatchDeletedIndexes();
+        TreeMap<PositionImpl, long[]> expected = new TreeMap<>();
+        Random random = new Random(0);
+        long markDeleteEntryId = 0;
+        for (int i = 0; i < 100000; i++) {
+            long entryId = markDeleteEntryId + random.nextInt(1000);
+            PositionImpl position = PositionImpl.get(1, entryId);
+            int action = random.nextInt(10);
+            if (action < 7) {
+                long[] ackSet = ackSet(200, random.nextInt(200));
+                long[] current = expected.get(position);
+                if (current == null) {
+                    current = ackSet(200);
+                }
+                for (int w = 0; w < current.length; w++) {
+                    current[w] &= ackSet[w];
+                }
+                boolean empty = BitSetRecyclable.valueOf(current).isEmpty();
+                if (empty) {
+                    expected.remove(position);
+                } else {
+                    expected.put(position, current);
+                }
+                assertEquals(indexes.and(1, entryId, ackSet), empty);
+            } else if (action < 9) {
+                assertEquals(indexes.remove(1, entryId), expected.remove(position) != null);
+            } else {
+                markDeleteEntryId += random.nextInt(50);
+                expected.headMap(PositionImpl.get(1, markDeleteEntryId), true).clear();
+                indexes.removeUpTo(1, markDeleteEntryId, true);
+            }
+        }
+
+        assertEquals(indexes.size(), expected.size());
+        List<PositionImpl> positions = new ArrayList<>();
+        indexes.forEach((ledgerId, entryId, ackSet) -> {
+            PositionImpl position = PositionImpl.get(ledgerId, entryId);
+            positions.add(position);
+            assertEquals(BitSetRecyclable.valueOf(ackSet), BitSetRecyclable.valueOf(expected.get(position)));
+            return true;
+        });
+        assertEquals(positions, new ArrayList<>(expected.keySet()));
+        for (Map.Entry<PositionImpl, long[]> entry : expected.entrySet()) {
+            assertEquals(BitSetRecyclable.valueOf(indexes.get(1, entry.getKey().getEntryId())),
+                    BitSetRecyclable.valueOf(entry.getValue()));
+        }
+    }
+}
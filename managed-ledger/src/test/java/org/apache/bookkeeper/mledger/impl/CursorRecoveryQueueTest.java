@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.testng.Assert.assertEquals;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.testng.annotations.Test;
+
+public class CursorRecoveryQueueTest {
+
+    @Test
+    public void testMaxConcurrentRecoveries() {
+        CursorRecoveryQueue queue = new CursorRecoveryQueue(2);
+        Map<String, Runnable> started = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            String cursorName = "cursor-" + i;
+            queue.add(cursorName, onComplete -> started.put(cursorName, onComplete));
+        }
+
+        queue.start();
+        assertEquals(List.copyOf(started.keySet()), List.of("cursor-0", "cursor-1"));
+        assertEquals(queue.getQueuedRecoveries(), 3);
+
+        // The next recovery starts when one completes
+        started.get("cursor-1").run();
+        assertEquals(List.copyOf(started.keySet()), List.of("cursor-0", "cursor-1", "cursor-2"));
+
+        // A recovery needed right away doesn't wait for its turn
+        queue.startNow("cursor-4");
+        assertEquals(List.copyOf(started.keySet()), List.of("cursor-0", "cursor-1", "cursor-2", "cursor-4"));
+        queue.startNow("cursor-4");
+        assertEquals(started.size(), 4);
+
+        // Over the limit, so completing a recovery doesn't start a new one yet
+        started.get("cursor-0").run();
+        assertEquals(started.size(), 4);
+        started.get("cursor-2").run();
+        assertEquals(List.copyOf(started.keySet()),
+                List.of("cursor-0", "cursor-1", "cursor-2", "cursor-4", "cursor-3"));
+        assertEquals(queue.getQueuedRecoveries(), 0);
+    }
+
+    @Test
+    public void testNoLimit() {
+        CursorRecoveryQueue queue = new CursorRecoveryQueue(0);
+        Map<String, Runnable> started = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            String cursorName = "cursor-" + i;
+            queue.add(cursorName, onComplete -> started.put(cursorName, onComplete));
+        }
+        queue.start();
+        assertEquals(started.size(), 5);
+    }
+
+    @Test
+    public void testClear() {
+        CursorRecoveryQueue queue = new CursorRecoveryQueue(1);
+        Map<String, Runnable> started = new LinkedHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            String cursorName = "cursor-" + i;
+            queue.add(cursorName, onComplete -> started.put(cursorName, onComplete));
+        }
+        queue.start();
+        queue.clear();
+        started.get("cursor-0").run();
+        assertEquals(started.size(), 1);
+        assertEquals(queue.getQueuedRecoveries(), 0);
+    }
+}
@@ -45,6 +45,7 @@ import org.apache.bookkeeper.mledger.impl.cache.EntryCacheDisabled;
 import org.apache.bookkeeper.mledger.impl.cache.EntryCacheManager;
 import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 public class EntryCacheManagerTest extends MockedBookKeeperTestCase {
@@ -68,11 +69,17 @@ public class EntryCacheManagerTest extends MockedBookKeeperTestCase {
         when(ml2.getConfig()).thenReturn(new ManagedLedgerConfig());
     }
 
-    @Test
-    public void simple() throws Exception {
+    @DataProvider(name = "segmentedEntryCache")
+    public static Object[][] segmentedEntryCache() {
+        return new Object[][] { { false }, { true } };
+    }
+
+    @Test(dataProvider = "segmentedEntryCache")
+    public void simple(boolean segmentedEntryCache) throws Exception {
         ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
         config.setMaxCacheSize(10);
         config.setCacheEvictionWatermark(0.8);
+        config.setSegmentedEntryCacheEnabled(segmentedEntryCache);
 
         @Cleanup("shutdown")
         ManagedLedgerFactoryImpl factory2 = new ManagedLedgerFactoryImpl(metadataStore, bkc, config);
@@ -28,10 +28,13 @@ import static org.testng.Assert.assertEquals;
 
 import io.netty.buffer.Unpooled;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import lombok.Cleanup;
 import org.apache.bookkeeper.client.BKException.BKNoSuchLedgerExistsException;
@@ -43,9 +46,12 @@ import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.mledger.Entry;
 import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
 import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
 import org.apache.bookkeeper.mledger.impl.cache.EntryCache;
 import org.apache.bookkeeper.mledger.impl.cache.EntryCacheManager;
 import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.apache.commons.io.FileUtils;
+import org.awaitility.Awaitility;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -95,6 +101,53 @@ public class EntryCacheTest extends MockedBookKeeperTestCase {
         verify(lh, never()).readAsync(anyLong(), anyLong());
     }
 
+    @Test(timeOut = 5000)
+    public void testReadFromDiskTier() throws Exception {
+        ReadHandle lh = getLedgerHandle();
+        when(lh.getId()).thenReturn((long) 0);
+
+        File diskCacheDirectory = Files.createTempDirectory("entry-cache-disk-tier").toFile();
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setDiskCacheDirectory(diskCacheDirectory.getAbsolutePath());
+        config.setDiskCacheMaxSize(10 * 1024 * 1024);
+        config.setDiskCacheSegmentSize(1024 * 1024);
+        @Cleanup("shutdown")
+        ManagedLedgerFactoryImpl factory2 = new ManagedLedgerFactoryImpl(metadataStore, bkc, config);
+
+        EntryCache entryCache = factory2.getEntryCacheManager().getEntryCache(ml);
+        byte[] data = new byte[10];
+        for (int i = 0; i < 10; i++) {
+            entryCache.insert(EntryImpl.create(0, i, data));
+        }
+
+        // Evicted entries are spilled to the disk tier
+        entryCache.evictEntries(1024);
+        assertEquals(entryCache.getSize(), 0);
+        Awaitility.await().untilAsserted(() ->
+                assertEquals(factory2.getMbean().getDiskCacheWrittenEntriesCount(), 10));
+
+        final CountDownLatch counter = new CountDownLatch(1);
+        entryCache.asyncReadEntry(lh, 0, 9, false, new ReadEntriesCallback() {
+            public void readEntriesComplete(List<Entry> entries, Object ctx) {
+                assertEquals(entries.size(), 10);
+                entries.forEach(Entry::release);
+                counter.countDown();
+            }
+
+            public void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
+                Assert.fail("should not have failed");
+            }
+        }, null);
+        counter.await();
+
+        // Verify no entries were read from bookkeeper
+        verify(lh, never()).readAsync(anyLong(), anyLong());
+        factory2.getMbean().refreshStats(1, TimeUnit.SECONDS);
+        assertEquals(factory2.getMbean().getDiskCacheHitsRate(), 10.0);
+        entryCache.clear();
+        FileUtils.deleteDirectory(diskCacheDirectory);
+    }
+
     @Test(timeOut = 5000)
     public void testReadMissingBefore() throws Exception {
         ReadHandle lh = getLedgerHandle();
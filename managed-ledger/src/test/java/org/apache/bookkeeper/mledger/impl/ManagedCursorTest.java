@@ -35,7 +35,9 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Range;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
@@ -94,8 +96,10 @@ import org.apache.bookkeeper.mledger.ScanOutcome;
 import org.apache.bookkeeper.mledger.impl.ManagedCursorImpl.VoidCallback;
 import org.apache.bookkeeper.mledger.impl.MetaStore.MetaStoreCallback;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.EntryTimestamp;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedCursorInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.PositionInfo;
+import org.apache.bookkeeper.mledger.util.MockClock;
 import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
 import org.apache.pulsar.common.api.proto.CommandSubscribe;
 import org.apache.pulsar.common.api.proto.IntRange;
@@ -3103,6 +3107,63 @@ public class ManagedCursorTest extends MockedBookKeeperTestCase {
         assertFalse(c1.hasMoreEntries());
     }
 
+    @Test(timeOut = 20000)
+    public void testIncrementalUnackedRangesPersistenceAfterCrash() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setUnackedRangesRoaringBitmapEnabled(true);
+        config.setPersistentUnackedRangesIncrementalEnabled(true);
+        config.setPersistentUnackedRangesCompactionThreshold(3);
+        // Only applies to the full ranges, the bitmaps are persisted regardless
+        config.setMaxUnackedRangesToPersist(5);
+        ManagedLedger ledger = factory.open("my_test_ledger", config);
+
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+        List<Position> addedPositions = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            addedPositions.add(ledger.addEntry(("dummy-entry-" + i).getBytes(Encoding)));
+        }
+
+        // Acknowledge every other message, each one is persisted as an incremental update or a snapshot
+        for (int i = 1; i < 40; i += 2) {
+            c1.delete(addedPositions.get(i));
+        }
+        // Move the mark-delete position past some of the persisted holes
+        c1.delete(addedPositions.get(0));
+        c1.delete(addedPositions.get(2));
+        assertEquals(c1.getMarkDeletedPosition(), addedPositions.get(3));
+        assertEquals(c1.getTotalNonContiguousDeletedMessagesRange(), 18);
+        assertTrue(c1.isCursorDataFullyPersistable());
+
+        // Re-Open without closing the cursor
+        @Cleanup("shutdown")
+        ManagedLedgerFactory factory2 = new ManagedLedgerFactoryImpl(metadataStore, bkc);
+        ledger = factory2.open("my_test_ledger", config);
+        c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+        assertEquals(c1.getMarkDeletedPosition(), addedPositions.get(3));
+        assertEquals(c1.getTotalNonContiguousDeletedMessagesRange(), 18);
+        assertEquals(c1.getNumberOfEntriesInBacklog(false), 40 - 22);
+
+        List<Entry> entries = c1.readEntries(40);
+        List<String> entriesStr = entries.stream().map(e -> new String(e.getDataAndRelease(), Encoding))
+                .collect(Collectors.toList());
+        List<String> expected = new ArrayList<>();
+        for (int i = 4; i < 40; i += 2) {
+            expected.add("dummy-entry-" + i);
+        }
+        assertEquals(entriesStr, expected);
+
+        // Resetting the cursor discards the previous acks, they must not be replayed on recovery
+        c1.resetCursor(addedPositions.get(0));
+        c1.delete(addedPositions.get(10));
+
+        @Cleanup("shutdown")
+        ManagedLedgerFactory factory3 = new ManagedLedgerFactoryImpl(metadataStore, bkc);
+        ledger = factory3.open("my_test_ledger", config);
+        c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+        assertEquals(c1.getNumberOfEntriesInBacklog(false), 40 - 1);
+        assertEquals(c1.getTotalNonContiguousDeletedMessagesRange(), 1);
+    }
+
     /**
      * <pre>
      * Verifies that {@link ManagedCursorImpl#createNewMetadataLedger()} cleans up orphan ledgers if fails to switch new
@@ -4756,5 +4817,322 @@ public class ManagedCursorTest extends MockedBookKeeperTestCase {
         assertEquals(cursor.getReadPosition(), markDeletedPosition.getNext());
     }
 
+    @Test(timeOut = 20000)
+    public void testTailFanOut() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setTailFanOutEnabled(true);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("testTailFanOut", config);
+        ManagedCursor c1 = ledger.openCursor("c1");
+        ManagedCursor c2 = ledger.openCursor("c2");
+
+        // Both cursors are caught up and get the added entry without reading it
+        CompletableFuture<List<Entry>> read1 = readEntriesOrWait(c1);
+        CompletableFuture<List<Entry>> read2 = readEntriesOrWait(c2);
+        Awaitility.await().untilAsserted(() -> assertEquals(ledger.waitingCursors.size(), 2));
+        Position position = ledger.addEntry("entry-1".getBytes(Encoding));
+
+        for (CompletableFuture<List<Entry>> read : List.of(read1, read2)) {
+            List<Entry> entries = read.get();
+            assertEquals(entries.size(), 1);
+            assertEquals(entries.get(0).getPosition(), position);
+            assertEquals(new String(entries.get(0).getDataAndRelease(), Encoding), "entry-1");
+        }
+        assertEquals(ledger.getMbean().getTailFanOutEntries(), 2);
+        assertEquals(c1.getReadPosition(), ((PositionImpl) position).getNext());
+        assertEquals(c2.getReadPosition(), ((PositionImpl) position).getNext());
+
+        // A lagging cursor reads its backlog from the ledger
+        ledger.addEntry("entry-2".getBytes(Encoding));
+        c1.rewind();
+        CompletableFuture<List<Entry>> read = readEntriesOrWait(c1);
+        List<Entry> entries = read.get();
+        assertEquals(entries.size(), 2);
+        assertEquals(new String(entries.get(0).getDataAndRelease(), Encoding), "entry-1");
+        assertEquals(new String(entries.get(1).getDataAndRelease(), Encoding), "entry-2");
+        assertEquals(ledger.getMbean().getTailFanOutEntries(), 2);
+    }
+
+    @Test(timeOut = 20000)
+    public void testTailFanOutDisabled() throws Exception {
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("testTailFanOutDisabled");
+        ManagedCursor c1 = ledger.openCursor("c1");
+
+        CompletableFuture<List<Entry>> read = readEntriesOrWait(c1);
+        Awaitility.await().untilAsserted(() -> assertEquals(ledger.waitingCursors.size(), 1));
+        ledger.addEntry("entry-1".getBytes(Encoding));
+
+        List<Entry> entries = read.get();
+        assertEquals(entries.size(), 1);
+        assertEquals(new String(entries.get(0).getDataAndRelease(), Encoding), "entry-1");
+        assertEquals(ledger.getMbean().getTailFanOutEntries(), 0);
+    }
+
+    @Test
+    public void testFindNewestMatchingWithTimestampIndex() throws Exception {
+        MockClock clock = new MockClock();
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(10).setClock(clock);
+        config.setTimestampIndexIntervalMillis(50);
+        config.setEntryTimestampExtractor(data -> data.getLong(data.readerIndex()));
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("testFindNewestMatchingWithTimestampIndex", config);
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+
+        // The entry i is published at time i * 10, one entry out of 5 is sampled in the index
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            clock.advance(10, TimeUnit.MILLISECONDS);
+            positions.add(ledger.addEntry(ByteBuffer.allocate(8).putLong(i * 10L).array()));
+        }
+        assertEquals(ledger.getLedgersInfo().firstEntry().getValue().getTimestampIndexCount(), 2);
+
+        AtomicInteger readEntries = new AtomicInteger();
+        assertEquals(findNewestPublishedBefore(c1, 125, readEntries, false), positions.get(12));
+        int readEntriesWithoutIndex = readEntries.getAndSet(0);
+        assertEquals(findNewestPublishedBefore(c1, 125, readEntries, true), positions.get(12));
+        assertTrue(readEntries.get() < readEntriesWithoutIndex);
+
+        assertNull(findNewestPublishedBefore(c1, 0, readEntries, true));
+        assertEquals(findNewestPublishedBefore(c1, 5, readEntries, true), positions.get(0));
+        assertEquals(findNewestPublishedBefore(c1, 1000, readEntries, true), positions.get(24));
+        // The index of the current ledger is only kept in memory
+        assertEquals(findNewestPublishedBefore(c1, 235, readEntries, true), positions.get(23));
+
+        // The index of the closed ledgers is recovered with the ledger
+        ledger.close();
+        ledger = (ManagedLedgerImpl) factory.open("testFindNewestMatchingWithTimestampIndex", config);
+        c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+        for (int timestamp = 0; timestamp <= 250; timestamp += 5) {
+            assertEquals(findNewestPublishedBefore(c1, timestamp, readEntries, true),
+                    findNewestPublishedBefore(c1, timestamp, readEntries, false), "timestamp " + timestamp);
+        }
+    }
+
+    @Test
+    public void testTimestampIndexIsDownsampled() throws Exception {
+        MockClock clock = new MockClock();
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setClock(clock);
+        config.setTimestampIndexIntervalMillis(10);
+        config.setEntryTimestampExtractor(data -> data.getLong(data.readerIndex()));
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("testTimestampIndexIsDownsampled", config);
+        long ledgerId = ledger.currentLedger.getId();
+
+        // Every entry is sampled until the index is full
+        int entries = ManagedLedgerImpl.MAX_TIMESTAMP_INDEX_SIZE * 3;
+        for (int i = 0; i < entries; i++) {
+            clock.advance(10, TimeUnit.MILLISECONDS);
+            ledger.addToTimestampIndex(ledgerId, i, Unpooled.copyLong(i * 10L));
+        }
+        List<EntryTimestamp> index = ledger.getTimestampIndex(ledgerId);
+        assertTrue(index.size() <= ManagedLedgerImpl.MAX_TIMESTAMP_INDEX_SIZE);
+        assertTrue(index.size() > ManagedLedgerImpl.MAX_TIMESTAMP_INDEX_SIZE / 2);
+        assertEquals(index.get(0).getEntryId(), 0);
+        for (int i = 1; i < index.size(); i++) {
+            assertTrue(index.get(i).getEntryId() > index.get(i - 1).getEntryId());
+        }
+        // The samples still span the whole ledger
+        assertTrue(index.get(index.size() - 1).getEntryId() >= entries - 8);
+    }
+
+    @Test
+    public void testFindNewestMatchingWithoutTimestampIndex() throws Exception {
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("testFindNewestMatchingWithoutTimestampIndex",
+                new ManagedLedgerConfig().setMaxEntriesPerLedger(10));
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            positions.add(ledger.addEntry(ByteBuffer.allocate(8).putLong(i * 10L).array()));
+        }
+        assertNull(ledger.getTimestampIndexRange(125));
+        assertEquals(findNewestPublishedBefore(c1, 125, new AtomicInteger(), true), positions.get(12));
+    }
+
+    @Test(dataProvider = "useOpenRangeSet")
+    public void testIncrementalBacklogCount(boolean useOpenRangeSet) throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(5)
+                .setUnackedRangesOpenCacheSetEnabled(useOpenRangeSet);
+        config.setBacklogConsistencyCheckEnabled(true);
+        ManagedLedger ledger = factory.open("testIncrementalBacklogCount", config);
+        ManagedCursor c1 = ledger.openCursor("c1");
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            positions.add(ledger.addEntry(("entry-" + i).getBytes(Encoding)));
+        }
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 20);
+
+        // Holes spread over several ledgers
+        c1.delete(List.of(positions.get(2), positions.get(3), positions.get(7), positions.get(12), positions.get(19)));
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 15);
+
+        // Deleting a position twice doesn't change the backlog
+        c1.delete(positions.get(7));
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 15);
+
+        // Filling the gap before the first hole moves the mark-delete position past it
+        c1.delete(List.of(positions.get(0), positions.get(1)));
+        assertEquals(c1.getMarkDeletedPosition(), positions.get(3));
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 13);
+
+        // Mark-deleting over some of the holes
+        c1.markDelete(positions.get(10));
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 7);
+
+        for (int i = 20; i < 25; i++) {
+            positions.add(ledger.addEntry(("entry-" + i).getBytes(Encoding)));
+        }
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 12);
+        c1.delete(positions.get(11));
+        assertEquals(c1.getMarkDeletedPosition(), positions.get(12));
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 11);
+        assertEquals(c1.getNumberOfEntriesInBacklog(false), 11);
+
+        // Resetting the cursor drops the holes, the first two ledgers were already trimmed
+        c1.resetCursor(positions.get(10));
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 15);
+        c1.delete(positions.get(19));
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 14);
+
+        // Reading doesn't change the backlog
+        List<Entry> entries = c1.readEntries(10);
+        entries.forEach(Entry::release);
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 14);
+    }
+
+    @Test
+    public void testIncrementalBacklogCountAfterRecovery() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(5);
+        config.setBacklogConsistencyCheckEnabled(true);
+        ManagedLedger ledger = factory.open("testIncrementalBacklogCountAfterRecovery", config);
+        ManagedCursor c1 = ledger.openCursor("c1");
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            positions.add(ledger.addEntry(("entry-" + i).getBytes(Encoding)));
+        }
+        c1.delete(List.of(positions.get(3), positions.get(6), positions.get(9), positions.get(13)));
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 11);
+
+        // A duplicated cursor counts the copied holes
+        ManagedCursor c2 = ((ManagedCursorImpl) c1).duplicateNonDurableCursor("c2");
+        assertEquals(c2.getNumberOfEntriesInBacklog(true), 11);
+        ledger.close();
+
+        @Cleanup("shutdown")
+        ManagedLedgerFactory factory2 = new ManagedLedgerFactoryImpl(metadataStore, bkc);
+        ledger = factory2.open("testIncrementalBacklogCountAfterRecovery", config);
+        c1 = ledger.openCursor("c1");
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 11);
+
+        // The recovered count is kept up to date afterwards
+        c1.delete(List.of(positions.get(0), positions.get(1), positions.get(2), positions.get(10)));
+        assertEquals(c1.getMarkDeletedPosition(), positions.get(3));
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 7);
+        ledger.addEntry("entry-15".getBytes(Encoding));
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 8);
+    }
+
+    @Test
+    public void testIncrementalBacklogCountAfterTrimming() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(5);
+        config.setBacklogConsistencyCheckEnabled(true);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("testIncrementalBacklogCountAfterTrimming",
+                config);
+        ManagedCursor c1 = ledger.newNonDurableCursor(PositionImpl.EARLIEST);
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 17; i++) {
+            positions.add(ledger.addEntry(("entry-" + i).getBytes(Encoding)));
+        }
+        Set<Position> deleted = Set.of(positions.get(4), positions.get(7), positions.get(11), positions.get(16));
+        c1.delete(deleted);
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 13);
+
+        // The non-durable cursor is moved past the trimmed ledgers, together with its holes
+        CompletableFuture<Void> trimFuture = new CompletableFuture<>();
+        ledger.trimConsumedLedgersInBackground(trimFuture);
+        trimFuture.get();
+        assertTrue(ledger.getLedgersInfo().firstKey() > positions.get(0).getLedgerId());
+        Position markDeletePosition = c1.getMarkDeletedPosition();
+        long expectedBacklog = positions.stream()
+                .filter(position -> ((PositionImpl) position).compareTo((PositionImpl) markDeletePosition) > 0)
+                .filter(position -> !deleted.contains(position))
+                .count();
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), expectedBacklog);
+    }
+
+    @Test
+    public void testBacklogConsistencyCheck() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setBacklogConsistencyCheckEnabled(true);
+        ManagedLedger ledger = factory.open("testBacklogConsistencyCheck", config);
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            positions.add(ledger.addEntry(("entry-" + i).getBytes(Encoding)));
+        }
+        c1.delete(positions.get(2));
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 4);
+
+        Field field = ManagedCursorImpl.class.getDeclaredField("deletedEntriesAfterMarkDelete");
+        field.setAccessible(true);
+        field.set(c1, 0L);
+        try {
+            c1.getNumberOfEntriesInBacklog(true);
+            fail("Should have detected the inconsistent backlog");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        // An invalidated count is recomputed
+        c1.invalidateDeletedEntriesAfterMarkDelete();
+        assertEquals(c1.getNumberOfEntriesInBacklog(true), 4);
+        assertEquals(field.get(c1), 1L);
+    }
+
+    private static Position findNewestPublishedBefore(ManagedCursor cursor, long timestamp,
+                                                      AtomicInteger readEntries, boolean useIndex) throws Exception {
+        Predicate<Entry> condition = entry -> {
+            readEntries.incrementAndGet();
+            try {
+                return entry.getDataBuffer().getLong(0) < timestamp;
+            } finally {
+                entry.release();
+            }
+        };
+        CompletableFuture<Position> future = new CompletableFuture<>();
+        AsyncCallbacks.FindEntryCallback callback = new AsyncCallbacks.FindEntryCallback() {
+            @Override
+            public void findEntryComplete(Position position, Object ctx) {
+                future.complete(position);
+            }
+
+            @Override
+            public void findEntryFailed(ManagedLedgerException exception, Optional<Position> failedReadPosition,
+                                        Object ctx) {
+                future.completeExceptionally(exception);
+            }
+        };
+        if (useIndex) {
+            cursor.asyncFindNewestMatching(ManagedCursor.FindPositionConstraint.SearchAllAvailableEntries, condition,
+                    timestamp, callback, null, true);
+        } else {
+            cursor.asyncFindNewestMatching(ManagedCursor.FindPositionConstraint.SearchAllAvailableEntries, condition,
+                    callback, null, true);
+        }
+        return future.get();
+    }
+
+    private static CompletableFuture<List<Entry>> readEntriesOrWait(ManagedCursor cursor) {
+        CompletableFuture<List<Entry>> future = new CompletableFuture<>();
+        cursor.asyncReadEntriesOrWait(10, new ReadEntriesCallback() {
+            @Override
+            public void readEntriesComplete(List<Entry> entries, Object ctx) {
+                future.complete(entries);
+            }
+
+            @Override
+            public void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
+                future.completeExceptionally(exception);
+            }
+        }, null, PositionImpl.LATEST);
+        return future;
+    }
+
     private static final Logger log = LoggerFactory.getLogger(ManagedCursorTest.class);
 }
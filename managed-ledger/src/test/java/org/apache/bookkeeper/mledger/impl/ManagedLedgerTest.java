@@ -42,6 +42,7 @@ import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
@@ -480,6 +481,154 @@ public class ManagedLedgerTest extends MockedBookKeeperTestCase {
         ledger.close();
     }
 
+    @Test
+    public void shouldRetainEntriesInCacheForActiveCursors() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setCacheRetentionByActiveCursors(true);
+        factory.updateCacheEvictionTimeThreshold(TimeUnit.MILLISECONDS.toNanos(10));
+
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open(
+                "test_ledger_for_shouldRetainEntriesInCacheForActiveCursors", config);
+        ManagedCursor fastCursor = ledger.openCursor("fast");
+        ManagedCursor slowCursor = ledger.openCursor("slow");
+
+        for (int i = 0; i < 20; i++) {
+            ledger.addEntry(("entry-" + i).getBytes());
+        }
+
+        ManagedLedgerFactoryMXBean cacheStats = factory.getCacheStats();
+        long evictedEntriesCountBefore = cacheStats.getCacheEvictedEntriesCount();
+
+        fastCursor.readEntries(20).forEach(Entry::release);
+        slowCursor.readEntries(5).forEach(Entry::release);
+        long retentionHitsBefore = ledger.getStats().getCacheRetentionHits();
+
+        // Entries are older than the eviction time threshold, but only the ones read by all the cursors are evicted
+        Awaitility.await().untilAsserted(() ->
+                assertEquals(cacheStats.getCacheEvictedEntriesCount() - evictedEntriesCountBefore, 5));
+
+        // The slow cursor reads the retained entries from the cache
+        slowCursor.readEntries(5).forEach(Entry::release);
+        assertEquals(ledger.getStats().getCacheRetentionHits() - retentionHitsBefore, 5);
+
+        // Going over the retention budget evicts the entries furthest ahead of the slow cursor, the 10 entries left
+        // have all the same size
+        long retainedSize = ledger.getCacheSize();
+        config.setCacheRetentionMaxSizeBytes(retainedSize / 2);
+        Awaitility.await().untilAsserted(() -> assertEquals(ledger.getCacheSize(), retainedSize / 2));
+
+        // The entries the slow cursor reads next are still in the cache
+        slowCursor.readEntries(5).forEach(Entry::release);
+        assertEquals(ledger.getStats().getCacheRetentionHits() - retentionHitsBefore, 10);
+
+        ledger.close();
+    }
+
+    @Test
+    public void testReadAheadForBackloggedCursor() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setReadAheadEnabled(true);
+        config.setReadAheadMaxEntries(30);
+
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("test_ledger_for_read_ahead", config);
+        // No cursors yet, so the entries are not cached when they're added
+        for (int i = 0; i < 100; i++) {
+            ledger.addEntry(("entry-" + i).getBytes());
+        }
+        assertEquals(ledger.getCacheSize(), 0);
+
+        ManagedCursor cursor = ledger.openCursor("c1", InitialPosition.Earliest);
+        for (int i = 0; i < CursorReadAhead.MIN_SEQUENTIAL_READS; i++) {
+            cursor.readEntries(10).forEach(Entry::release);
+        }
+        assertEquals(ledger.getStats().getReadAheadPrefetchedEntries(), 0);
+
+        // The next sequential read makes the cursor prefetch the following entries
+        cursor.readEntries(10).forEach(Entry::release);
+        Awaitility.await().untilAsserted(() -> {
+            assertTrue(ledger.getStats().getReadAheadPrefetchedEntries() > 0);
+            assertTrue(ledger.getCacheSize() > 0);
+        });
+
+        cursor.readEntries(10).forEach(Entry::release);
+        assertEquals(ledger.getStats().getReadAheadConsumedEntries(), 10);
+        assertTrue(ledger.getStats().getReadAheadPrefetchedEntries() <= config.getReadAheadMaxEntries());
+
+        // Moving the cursor resets the read-ahead
+        long prefetchedEntries = ledger.getStats().getReadAheadPrefetchedEntries();
+        cursor.seek(ledger.getFirstPosition().getNext());
+        cursor.readEntries(10).forEach(Entry::release);
+        assertEquals(ledger.getStats().getReadAheadPrefetchedEntries(), prefetchedEntries);
+
+        ledger.close();
+    }
+
+    @Test
+    public void testReadAheadIsKeptWhenTailingCursorMoves() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setReadAheadEnabled(true);
+        config.setReadAheadMaxEntries(30);
+
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("test_ledger_for_read_ahead_anchor", config);
+        for (int i = 0; i < 100; i++) {
+            ledger.addEntry(("entry-" + i).getBytes());
+        }
+
+        // The backlogged cursor is not active, so only the tailing cursor drives the invalidation of the cache
+        ManagedCursor backloggedCursor = ledger.openCursor("backlogged", InitialPosition.Earliest);
+        backloggedCursor.setInactive();
+        ManagedCursor tailingCursor = ledger.openCursor("tailing", InitialPosition.Latest);
+
+        for (int i = 0; i <= CursorReadAhead.MIN_SEQUENTIAL_READS; i++) {
+            backloggedCursor.readEntries(10).forEach(Entry::release);
+        }
+        Awaitility.await().untilAsserted(() -> assertTrue(ledger.getCacheSize() > 0));
+        long prefetchedSize = ledger.getCacheSize();
+
+        // Moving the tailing cursor invalidates the entries before it, except the prefetched ones and the following
+        ledger.addEntry("tail".getBytes());
+        tailingCursor.readEntries(1).forEach(Entry::release);
+        assertEquals(ledger.getCacheSize(), prefetchedSize + "tail".length());
+
+        backloggedCursor.readEntries(10).forEach(Entry::release);
+        assertEquals(ledger.getStats().getReadAheadConsumedEntries(), 10);
+
+        // Once the backlogged cursor is deleted, its prefetched entries are invalidated too
+        ledger.deleteCursor("backlogged");
+        ledger.addEntry("tail".getBytes());
+        tailingCursor.readEntries(1).forEach(Entry::release);
+        assertEquals(ledger.getCacheSize(), 0);
+
+        ledger.close();
+    }
+
+    @Test
+    public void testReadAheadOnlyForCachedCursorsWithBacklogCaching() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setReadAheadEnabled(true);
+        config.setReadAheadMaxEntries(30);
+        config.setMinimumBacklogCursorsForCaching(1);
+
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("test_ledger_for_read_ahead_caching", config);
+        for (int i = 0; i < 100; i++) {
+            ledger.addEntry(("entry-" + i).getBytes());
+        }
+
+        ManagedCursorImpl cursor = (ManagedCursorImpl) ledger.openCursor("c1", InitialPosition.Earliest);
+        for (int i = 0; i <= CursorReadAhead.MIN_SEQUENTIAL_READS; i++) {
+            cursor.readEntries(10).forEach(Entry::release);
+        }
+        assertEquals(ledger.getStats().getReadAheadPrefetchedEntries(), 0);
+
+        cursor.setCacheReadEntry(true);
+        for (int i = 0; i <= CursorReadAhead.MIN_SEQUENTIAL_READS; i++) {
+            cursor.readEntries(10).forEach(Entry::release);
+        }
+        Awaitility.await().untilAsserted(() -> assertTrue(ledger.getStats().getReadAheadPrefetchedEntries() > 0));
+
+        ledger.close();
+    }
+
     @Test
     public void shouldKeepEntriesInCacheByEarliestMarkDeletePosition() throws ManagedLedgerException, InterruptedException {
         // This test case reproduces issue #16054
@@ -2901,6 +3050,286 @@ public class ManagedLedgerTest extends MockedBookKeeperTestCase {
         assertEquals(cursor.getMarkDeletedPosition(), p1);
     }
 
+    @Test
+    public void testLazyRecoverCursorKeepsLedgers() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(1);
+        ManagedLedger ledger = factory.open("testLazyRecoverCursorKeepsLedgers", config);
+        ManagedCursor cursor = ledger.openCursor("testCursor");
+        Position markDeletePosition = cursor.getMarkDeletedPosition();
+        Position lastPosition = null;
+        for (int i = 0; i < 5; i++) {
+            lastPosition = ledger.addEntry(("entry-" + i).getBytes());
+        }
+        // Wait for the rollover to the next ledger
+        Awaitility.await().untilAsserted(() ->
+                assertEquals(((ManagedLedgerImpl) ledger).getState(), ManagedLedgerImpl.State.LedgerOpened));
+
+        // Re-open from a different factory trigger recovery.
+        @Cleanup("shutdown")
+        ManagedLedgerFactory factory2 = new ManagedLedgerFactoryImpl(metadataStore, bkc);
+        config.setLazyCursorRecovery(true);
+        ManagedLedgerImpl ledger2 = (ManagedLedgerImpl) factory2.open("testLazyRecoverCursorKeepsLedgers", config);
+
+        // Check cursor recovered successfully.
+        cursor = ledger2.openCursor("testCursor");
+        assertEquals(cursor.getMarkDeletedPosition(), markDeletePosition);
+        assertTrue(ledger2.recoveringCursorsMarkDeletePositions.isEmpty());
+        int ledgersCount = ledger2.getLedgersInfoAsList().size();
+        assertTrue(ledgersCount > 1);
+
+        // The ledgers are not trimmed past the mark delete position of a cursor being recovered
+        ledger2.recoveringCursorsMarkDeletePositions.put("recoveringCursor", (PositionImpl) markDeletePosition);
+        cursor.markDelete(lastPosition);
+        CompletableFuture<Void> trimFuture = new CompletableFuture<>();
+        ledger2.trimConsumedLedgersInBackground(trimFuture);
+        trimFuture.get();
+        assertEquals(ledger2.getLedgersInfoAsList().size(), ledgersCount);
+
+        ledger2.recoveringCursorsMarkDeletePositions.remove("recoveringCursor");
+        CompletableFuture<Void> trimFuture2 = new CompletableFuture<>();
+        ledger2.trimConsumedLedgersInBackground(trimFuture2);
+        trimFuture2.get();
+        assertTrue(ledger2.getLedgersInfoAsList().size() < ledgersCount);
+    }
+
+    @Test
+    public void testLazyRecoverCursorWhenCursorInfoReadFails() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(1);
+        ManagedLedger ledger = factory.open("testLazyRecoverCursorWhenCursorInfoReadFails", config);
+        ManagedCursor cursor = ledger.openCursor("failedCursor");
+        Position markDeletePosition = ledger.addEntry("entry-0".getBytes());
+        for (int i = 1; i < 5; i++) {
+            ledger.addEntry(("entry-" + i).getBytes());
+        }
+        // The cursor persists its position in its own ledger
+        cursor.markDelete(markDeletePosition);
+        // Wait for the rollover to the next ledger
+        Awaitility.await().untilAsserted(() ->
+                assertEquals(((ManagedLedgerImpl) ledger).getState(), ManagedLedgerImpl.State.LedgerOpened));
+
+        // The first read of the cursor meta-data fails
+        metadataStore.failConditional(new MetadataStoreException("error"), (op, path) ->
+                path.equals("/managed-ledgers/testLazyRecoverCursorWhenCursorInfoReadFails/failedCursor")
+                        && op == FaultInjectionMetadataStore.OperationType.GET);
+        // Hold the recovery of the cursor, when reading its ledger
+        CompletableFuture<Void> recoveryPromise = bkc.promiseAfter(2);
+
+        // Re-open from a different factory trigger recovery.
+        @Cleanup("shutdown")
+        ManagedLedgerFactory factory2 = new ManagedLedgerFactoryImpl(metadataStore, bkc);
+        config.setLazyCursorRecovery(true);
+        ManagedLedgerImpl ledger2 =
+                (ManagedLedgerImpl) factory2.open("testLazyRecoverCursorWhenCursorInfoReadFails", config);
+
+        // The managed ledger is opened, and the ledgers are kept until the cursor is recovered
+        assertEquals(ledger2.recoveringCursorsMarkDeletePositions.get("failedCursor"), PositionImpl.EARLIEST);
+        int ledgersCount = ledger2.getLedgersInfoAsList().size();
+        assertTrue(ledgersCount > 1);
+        CompletableFuture<Void> trimFuture = new CompletableFuture<>();
+        ledger2.trimConsumedLedgersInBackground(trimFuture);
+        trimFuture.get();
+        assertEquals(ledger2.getLedgersInfoAsList().size(), ledgersCount);
+
+        // The cursor is recovered by reading its meta-data again
+        recoveryPromise.complete(null);
+        cursor = ledger2.openCursor("failedCursor");
+        assertEquals(cursor.getMarkDeletedPosition(), markDeletePosition);
+        assertTrue(ledger2.recoveringCursorsMarkDeletePositions.isEmpty());
+    }
+
+    @Test
+    public void testMaxConcurrentCursorRecoveries() throws Exception {
+        ManagedLedger ledger = factory.open("testMaxConcurrentCursorRecoveries");
+        List<ManagedCursor> cursors = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            cursors.add(ledger.openCursor("cursor-" + i));
+        }
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            positions.add(ledger.addEntry(("entry-" + i).getBytes()));
+        }
+        for (int i = 0; i < 5; i++) {
+            cursors.get(i).markDelete(positions.get(i));
+        }
+
+        // Re-open from a different factory trigger recovery.
+        @Cleanup("shutdown")
+        ManagedLedgerFactory factory2 = new ManagedLedgerFactoryImpl(metadataStore, bkc);
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxConcurrentCursorRecoveries(2);
+        ManagedLedgerImpl ledger2 = (ManagedLedgerImpl) factory2.open("testMaxConcurrentCursorRecoveries", config);
+
+        // All the cursors are recovered before the managed ledger is ready
+        assertEquals(Iterables.size(ledger2.getCursors()), 5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(ledger2.getCursors().get("cursor-" + i).getMarkDeletedPosition(), positions.get(i));
+        }
+        assertTrue(ledger2.getStats().getLedgersRecoveryTimeMillis() >= 0);
+    }
+
+    @Test
+    public void testStandbyLedger() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(10);
+        config.setStandbyLedgerThreshold(0.5);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("testStandbyLedger", config);
+        ManagedCursor cursor = ledger.openCursor("c1");
+        for (int i = 0; i < 6; i++) {
+            ledger.addEntry(("entry-" + i).getBytes(Encoding));
+        }
+        long firstLedgerId = ledger.currentLedger.getId();
+
+        // The standby ledger is registered ahead of the rollover
+        Awaitility.await().untilAsserted(() -> assertNotNull(ledger.standbyLedger));
+        long standbyLedgerId = ledger.standbyLedger.getId();
+        assertEquals(ledger.getLedgersInfoAsList().size(), 1);
+        assertEquals(getStoredLedgerIds("testStandbyLedger"), List.of(firstLedgerId, standbyLedgerId));
+
+        // The entries added while the current ledger is closed are written into the standby ledger
+        List<CompletableFuture<Position>> futures = new ArrayList<>();
+        for (int i = 6; i < 12; i++) {
+            futures.add(addEntryAsync(ledger, "entry-" + i));
+        }
+        FutureUtil.waitForAll(futures).get();
+        assertEquals(futures.get(5).get(), PositionImpl.get(standbyLedgerId, 1));
+        assertEquals(ledger.currentLedger.getId(), standbyLedgerId);
+        assertNull(ledger.standbyLedger);
+        assertEquals(ledger.getLedgersInfo().get(firstLedgerId).getEntries(), 10);
+
+        List<Entry> entries = new ArrayList<>();
+        while (entries.size() < 12) {
+            entries.addAll(cursor.readEntries(12 - entries.size()));
+        }
+        for (int i = 0; i < 12; i++) {
+            assertEquals(new String(entries.get(i).getDataAndRelease(), Encoding), "entry-" + i);
+        }
+
+        // The entries added during the rollover waited once
+        ledger.getMbean().refreshStats(1, TimeUnit.SECONDS);
+        assertEquals(Arrays.stream(ledger.getMbean().getLedgerRolloverStallBuckets()).sum(), 1);
+
+        // The stats of the closed ledger are stored in the background
+        Awaitility.await().untilAsserted(() -> assertEquals(
+                factory.getManagedLedgerInfo("testStandbyLedger").ledgers.get(0).entries, Long.valueOf(10)));
+    }
+
+    @Test
+    public void testStandbyLedgerDroppedOnReopen() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(10);
+        config.setStandbyLedgerThreshold(0.5);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("testStandbyLedgerDroppedOnReopen", config);
+        for (int i = 0; i < 6; i++) {
+            ledger.addEntry(("entry-" + i).getBytes(Encoding));
+        }
+        Awaitility.await().untilAsserted(() -> assertNotNull(ledger.standbyLedger));
+        long standbyLedgerId = ledger.standbyLedger.getId();
+        ledger.close();
+
+        @Cleanup("shutdown")
+        ManagedLedgerFactory factory2 = new ManagedLedgerFactoryImpl(metadataStore, bkc);
+        ManagedLedgerImpl ledger2 = (ManagedLedgerImpl) factory2.open("testStandbyLedgerDroppedOnReopen", config);
+        assertEquals(ledger2.getNumberOfEntries(), 6);
+        assertFalse(ledger2.getLedgersInfo().containsKey(standbyLedgerId));
+        Awaitility.await().untilAsserted(() -> assertFalse(bkc.getLedgers().contains(standbyLedgerId)));
+    }
+
+    @Test
+    public void testStandbyLedgerRecoveryWithoutStoredStats() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(10);
+        config.setStandbyLedgerThreshold(0.5);
+        String mlName = "testStandbyLedgerRecoveryWithoutStoredStats";
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open(mlName, config);
+        ledger.openCursor("c1");
+        for (int i = 0; i < 6; i++) {
+            ledger.addEntry(("entry-" + i).getBytes(Encoding));
+        }
+        long firstLedgerId = ledger.currentLedger.getId();
+        Awaitility.await().untilAsserted(() -> assertNotNull(ledger.standbyLedger));
+        long standbyLedgerId = ledger.standbyLedger.getId();
+
+        // Fail to store the stats of the ledger closed by the rollover
+        metadataStore.failConditional(new MetadataStoreException("error"), (op, path) ->
+                path.equals("/managed-ledgers/" + mlName) && op == FaultInjectionMetadataStore.OperationType.PUT);
+        for (int i = 6; i < 12; i++) {
+            ledger.addEntry(("entry-" + i).getBytes(Encoding));
+        }
+        assertEquals(ledger.currentLedger.getId(), standbyLedgerId);
+        assertNull(factory.getManagedLedgerInfo(mlName).ledgers.get(0).entries);
+
+        // The stats of both ledgers are recovered from BookKeeper
+        @Cleanup("shutdown")
+        ManagedLedgerFactory factory2 = new ManagedLedgerFactoryImpl(metadataStore, bkc);
+        ManagedLedgerImpl ledger2 = (ManagedLedgerImpl) factory2.open(mlName, config);
+        assertEquals(ledger2.getNumberOfEntries(), 12);
+        assertEquals(ledger2.getLedgersInfo().get(firstLedgerId).getEntries(), 10);
+        assertEquals(ledger2.getLedgersInfo().get(standbyLedgerId).getEntries(), 2);
+        ManagedCursor cursor = ledger2.openCursor("c2", InitialPosition.Earliest);
+        List<Entry> entries = new ArrayList<>();
+        while (entries.size() < 12) {
+            entries.addAll(cursor.readEntries(12 - entries.size()));
+        }
+        for (int i = 0; i < 12; i++) {
+            assertEquals(new String(entries.get(i).getDataAndRelease(), Encoding), "entry-" + i);
+        }
+    }
+
+    private List<Long> getStoredLedgerIds(String mlName) throws Exception {
+        return factory.getManagedLedgerInfo(mlName).ledgers.stream().map(li -> li.ledgerId).toList();
+    }
+
+    private static CompletableFuture<Position> addEntryAsync(ManagedLedger ledger, String data) {
+        CompletableFuture<Position> future = new CompletableFuture<>();
+        ledger.asyncAddEntry(data.getBytes(Encoding), new AddEntryCallback() {
+            @Override
+            public void addComplete(Position position, ByteBuf entryData, Object ctx) {
+                future.complete(position);
+            }
+
+            @Override
+            public void addFailed(ManagedLedgerException exception, Object ctx) {
+                future.completeExceptionally(exception);
+            }
+        }, null);
+        return future;
+    }
+
+    @Test
+    public void testPagedLedgersList() throws Exception {
+        ManagedLedgerFactoryConfig factoryConf = new ManagedLedgerFactoryConfig();
+        factoryConf.setManagedLedgerInfoPageSize(2);
+        @Cleanup("shutdown")
+        ManagedLedgerFactory factory2 = new ManagedLedgerFactoryImpl(metadataStore, bkc, factoryConf);
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(1);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory2.open("testPagedLedgersList", config);
+        ManagedCursor cursor = ledger.openCursor("c1");
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            positions.add(ledger.addEntry(("entry-" + i).getBytes(Encoding)));
+        }
+        List<Long> ledgerIds = new ArrayList<>(ledger.getLedgersInfo().keySet());
+        ManagedLedgerInfo head = ManagedLedgerInfo.parseFrom(
+                metadataStore.get("/managed-ledgers/testPagedLedgersList").join().get().getValue());
+        assertTrue(head.getLedgerInfoCount() <= 2);
+        assertTrue(head.getLedgerInfoPageCount() >= 4);
+
+        // Trimming the consumed ledgers replaces or drops the oldest pages
+        cursor.markDelete(positions.get(4));
+        CompletableFuture<Void> trimFuture = new CompletableFuture<>();
+        ledger.trimConsumedLedgersInBackground(trimFuture);
+        trimFuture.get();
+        assertEquals(ledger.getLedgersInfo().firstKey(), ledgerIds.get(5));
+        ledger.close();
+
+        // The paged list can be read whatever the page size
+        ManagedLedgerImpl ledger2 = (ManagedLedgerImpl) factory.open("testPagedLedgersList", config);
+        assertEquals(ledger2.getNumberOfEntries(), 5);
+        assertEquals(ledger2.getLedgersInfo().firstKey(), ledgerIds.get(5));
+        ManagedCursor cursor2 = ledger2.openCursor("c1");
+        List<Entry> entries = cursor2.readEntries(10);
+        assertEquals(entries.size(), 5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(new String(entries.get(i).getDataAndRelease(), Encoding), "entry-" + (i + 5));
+        }
+    }
+
     @Test
     public void testConcurrentOpenCursor() throws Exception {
         ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("testConcurrentOpenCursor");
@@ -18,27 +18,38 @@
  */
 package org.apache.bookkeeper.mledger.impl;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
 import org.apache.bookkeeper.mledger.ManagedLedgerException.MetaStoreException;
+import org.apache.bookkeeper.mledger.MetadataCompressionConfig;
 import org.apache.bookkeeper.mledger.impl.MetaStore.MetaStoreCallback;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedCursorInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfo;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfoPage;
 import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.pulsar.metadata.impl.FaultInjectionMetadataStore;
 import org.apache.pulsar.metadata.api.MetadataCache;
 import org.apache.pulsar.metadata.api.MetadataStoreException;
 import org.apache.pulsar.metadata.api.Stat;
+import org.awaitility.Awaitility;
 import org.testng.annotations.Test;
 
 public class MetaStoreImplTest extends MockedBookKeeperTestCase {
@@ -234,6 +245,172 @@ public class MetaStoreImplTest extends MockedBookKeeperTestCase {
         promise.get();
     }
 
+    @Test(timeOut = 20000)
+    void pagedLedgersList() throws Exception {
+        MetaStore store = new MetaStoreImpl(metadataStore, executor, MetadataCompressionConfig.noCompression,
+                MetadataCompressionConfig.noCompression, 3);
+        Stat stat = getManagedLedgerInfo(store, "my_test", true).getRight();
+
+        // The oldest ledgers are sealed in pages of 3 ledgers
+        stat = updateLedgerIds(store, "my_test", buildManagedLedgerInfo(1, 8), stat);
+        ManagedLedgerInfo head = readHead("my_test");
+        assertEquals(getLedgerIds(head), List.of(7L, 8L));
+        assertEquals(head.getLedgerInfoPageCount(), 2);
+        assertEquals(head.getLedgerInfoPage(0).getFirstLedgerId(), 1);
+        assertEquals(head.getLedgerInfoPage(0).getLastLedgerId(), 3);
+        assertEquals(head.getLedgerInfoPage(1).getFirstLedgerId(), 4);
+        assertEquals(head.getLedgerInfoPage(1).getLastLedgerId(), 6);
+        assertEquals(getPageIds("my_test"), getPageIds(head));
+
+        Pair<ManagedLedgerInfo, Stat> result = getManagedLedgerInfo(store, "my_test", false);
+        assertEquals(result.getLeft(), buildManagedLedgerInfo(1, 8));
+        assertEquals(result.getRight().getVersion(), stat.getVersion());
+
+        // Updating the newest ledgers doesn't touch the pages
+        Set<Long> pageIds = getPageIds(head);
+        stat = updateLedgerIds(store, "my_test", buildManagedLedgerInfo(1, 9), result.getRight());
+        head = readHead("my_test");
+        assertEquals(getLedgerIds(head), List.of(7L, 8L, 9L));
+        assertEquals(getPageIds(head), pageIds);
+
+        // Trimming the oldest ledgers replaces the first page
+        stat = updateLedgerIds(store, "my_test", buildManagedLedgerInfo(3, 10), stat);
+        head = readHead("my_test");
+        assertEquals(getLedgerIds(head), List.of(10L));
+        assertEquals(head.getLedgerInfoPageCount(), 3);
+        assertEquals(head.getLedgerInfoPage(0).getFirstLedgerId(), 3);
+        assertEquals(head.getLedgerInfoPage(0).getLastLedgerId(), 3);
+        assertFalse(pageIds.contains(head.getLedgerInfoPage(0).getPageId()));
+        assertTrue(pageIds.contains(head.getLedgerInfoPage(1).getPageId()));
+        assertEquals(head.getLedgerInfoPage(2).getFirstLedgerId(), 7);
+        ManagedLedgerInfo finalHead = head;
+        Awaitility.await().untilAsserted(() -> assertEquals(getPageIds("my_test"), getPageIds(finalHead)));
+        assertEquals(getManagedLedgerInfo(store, "my_test", false).getLeft(), buildManagedLedgerInfo(3, 10));
+
+        // The pages are merged back in the managed ledger node once the paging is disabled
+        MetaStore unpagedStore = new MetaStoreImpl(metadataStore, executor);
+        result = getManagedLedgerInfo(unpagedStore, "my_test", false);
+        updateLedgerIds(unpagedStore, "my_test", result.getLeft(), result.getRight());
+        head = readHead("my_test");
+        assertEquals(head, buildManagedLedgerInfo(3, 10));
+        Awaitility.await().untilAsserted(() -> assertTrue(getPageIds("my_test").isEmpty()));
+    }
+
+    @Test(timeOut = 20000)
+    void pagedLedgersListFailedUpdate() throws Exception {
+        MetaStore store = new MetaStoreImpl(metadataStore, executor, MetadataCompressionConfig.noCompression,
+                MetadataCompressionConfig.noCompression, 3);
+        Stat stat = getManagedLedgerInfo(store, "my_test", true).getRight();
+        stat = updateLedgerIds(store, "my_test", buildManagedLedgerInfo(1, 4), stat);
+        Set<Long> pageIds = getPageIds("my_test");
+        assertEquals(pageIds.size(), 1);
+
+        // The pages written by an update that lost the race are dropped, the current pages are kept
+        metadataStore.failConditional(new MetadataStoreException.BadVersionException("error"), (op, path) ->
+                op == FaultInjectionMetadataStore.OperationType.PUT && path.equals("/managed-ledgers/my_test"));
+        try {
+            updateLedgerIds(store, "my_test", buildManagedLedgerInfo(2, 10), stat);
+            fail("should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ManagedLedgerException.BadVersionException);
+        }
+        Awaitility.await().untilAsserted(() -> assertEquals(getPageIds("my_test"), pageIds));
+        assertEquals(getManagedLedgerInfo(store, "my_test", false).getLeft(), buildManagedLedgerInfo(1, 4));
+
+        // The pages node is neither listed as a cursor nor left behind when the managed ledger is removed
+        metadataStore.put("/managed-ledgers/my_test/c1", new byte[0], Optional.empty()).join();
+        CompletableFuture<List<String>> cursors = new CompletableFuture<>();
+        store.getCursors("my_test", new MetaStoreCallback<>() {
+            @Override
+            public void operationComplete(List<String> result, Stat stat) {
+                cursors.complete(result);
+            }
+
+            @Override
+            public void operationFailed(MetaStoreException e) {
+                cursors.completeExceptionally(e);
+            }
+        });
+        assertEquals(cursors.get(), List.of("c1"));
+        metadataStore.delete("/managed-ledgers/my_test/c1", Optional.empty()).join();
+
+        CompletableFuture<Void> removed = new CompletableFuture<>();
+        store.removeManagedLedger("my_test", new MetaStoreCallback<>() {
+            @Override
+            public void operationComplete(Void result, Stat stat) {
+                removed.complete(null);
+            }
+
+            @Override
+            public void operationFailed(MetaStoreException e) {
+                removed.completeExceptionally(e);
+            }
+        });
+        removed.get();
+        assertFalse(metadataStore.exists("/managed-ledgers/my_test").join());
+    }
+
+    private static ManagedLedgerInfo buildManagedLedgerInfo(long firstLedgerId, long lastLedgerId) {
+        ManagedLedgerInfo.Builder builder = ManagedLedgerInfo.newBuilder();
+        for (long ledgerId = firstLedgerId; ledgerId <= lastLedgerId; ledgerId++) {
+            builder.addLedgerInfo(LedgerInfo.newBuilder().setLedgerId(ledgerId).setEntries(ledgerId * 10)
+                    .setSize(ledgerId * 100).setTimestamp(ledgerId).build());
+        }
+        return builder.build();
+    }
+
+    private static List<Long> getLedgerIds(ManagedLedgerInfo info) {
+        return info.getLedgerInfoList().stream().map(LedgerInfo::getLedgerId).collect(Collectors.toList());
+    }
+
+    private static Set<Long> getPageIds(ManagedLedgerInfo head) {
+        return head.getLedgerInfoPageList().stream().map(LedgerInfoPage::getPageId).collect(Collectors.toSet());
+    }
+
+    private Set<Long> getPageIds(String ledgerName) {
+        return metadataStore.getChildren("/managed-ledgers/" + ledgerName + "/"
+                        + MetaStoreImpl.LEDGER_INFO_PAGES_NODE).join()
+                .stream().map(Long::parseLong).collect(Collectors.toSet());
+    }
+
+    private ManagedLedgerInfo readHead(String ledgerName) throws Exception {
+        return ManagedLedgerInfo.parseFrom(metadataStore.get("/managed-ledgers/" + ledgerName).join().get().getValue());
+    }
+
+    private static Pair<ManagedLedgerInfo, Stat> getManagedLedgerInfo(MetaStore store, String ledgerName,
+                                                                      boolean createIfMissing) throws Exception {
+        CompletableFuture<Pair<ManagedLedgerInfo, Stat>> future = new CompletableFuture<>();
+        store.getManagedLedgerInfo(ledgerName, createIfMissing, new MetaStoreCallback<>() {
+            @Override
+            public void operationComplete(ManagedLedgerInfo result, Stat stat) {
+                future.complete(Pair.of(result, stat));
+            }
+
+            @Override
+            public void operationFailed(MetaStoreException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future.get();
+    }
+
+    private static Stat updateLedgerIds(MetaStore store, String ledgerName, ManagedLedgerInfo info, Stat stat)
+            throws Exception {
+        CompletableFuture<Stat> future = new CompletableFuture<>();
+        store.asyncUpdateLedgerIds(ledgerName, info, stat, new MetaStoreCallback<>() {
+            @Override
+            public void operationComplete(Void result, Stat stat) {
+                future.complete(stat);
+            }
+
+            @Override
+            public void operationFailed(MetaStoreException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future.get();
+    }
+
     @Test
     public void testGetChildrenWatch() throws Exception {
         MetadataCache<MyClass> objCache1 = metadataStore.getMetadataCache(MyClass.class);
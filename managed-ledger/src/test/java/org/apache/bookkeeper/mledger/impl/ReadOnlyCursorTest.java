@@ -20,6 +20,7 @@ package org.apache.bookkeeper.mledger.impl;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -33,6 +34,7 @@ import org.apache.bookkeeper.mledger.ManagedLedgerException.ManagedLedgerNotFoun
 import org.apache.bookkeeper.mledger.Position;
 import org.apache.bookkeeper.mledger.ReadOnlyCursor;
 import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.awaitility.Awaitility;
 import org.testng.annotations.Test;
 
 public class ReadOnlyCursorTest extends MockedBookKeeperTestCase {
@@ -100,6 +102,38 @@ public class ReadOnlyCursorTest extends MockedBookKeeperTestCase {
         cursor.close();
     }
 
+    @Test
+    void withStandbyLedger() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(10)
+                .setRetentionTime(1, TimeUnit.HOURS).setRetentionSizeInMB(-1);
+        config.setStandbyLedgerThreshold(0.5);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("withStandbyLedger", config);
+
+        int N = 16;
+
+        for (int i = 0; i < N; i++) {
+            ledger.addEntry(("entry-" + i).getBytes());
+        }
+        // The standby ledger is registered after the ledger being written to
+        Awaitility.await().untilAsserted(() -> assertNotNull(ledger.standbyLedger));
+        assertEquals(ledger.getLedgersInfoAsList().size(), 2);
+
+        ReadOnlyCursor cursor = factory.openReadOnlyCursor("withStandbyLedger", PositionImpl.EARLIEST,
+                new ManagedLedgerConfig());
+
+        assertEquals(cursor.getNumberOfEntries(), N);
+        assertTrue(cursor.hasMoreEntries());
+
+        List<Entry> entries = cursor.readEntries(N);
+        assertEquals(entries.size(), N);
+        assertEquals(new String(entries.get(N - 1).getData()), "entry-" + (N - 1));
+
+        assertEquals(cursor.getNumberOfEntries(), 0);
+        assertFalse(cursor.hasMoreEntries());
+        entries.forEach(Entry::release);
+        cursor.close();
+    }
+
     @Test
     void skip() throws Exception {
         ManagedLedger ledger = factory.open("skip",
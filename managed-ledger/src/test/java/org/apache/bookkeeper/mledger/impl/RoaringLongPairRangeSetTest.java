@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+import com.google.common.collect.Range;
+import java.util.Random;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.PositionInfo;
+import org.apache.pulsar.common.util.collections.ConcurrentOpenLongPairRangeSet;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet.LongPair;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet.LongPairConsumer;
+import org.testng.annotations.Test;
+
+public class RoaringLongPairRangeSetTest {
+
+    static final LongPairConsumer<LongPair> consumer = LongPair::new;
+
+    @Test
+    public void testAddAndContains() {
+        RoaringLongPairRangeSet<LongPair> set = new RoaringLongPairRangeSet<>(consumer);
+        assertTrue(set.isEmpty());
+        assertNull(set.firstRange());
+        assertNull(set.span());
+
+        set.addOpenClosed(1, 0, 1, 5);
+        set.addOpenClosed(1, 9, 1, 10);
+        set.addOpenClosed(2, -1, 2, 3);
+        assertFalse(set.isEmpty());
+        assertEquals(set.size(), 3);
+
+        assertFalse(set.contains(1, 0));
+        assertTrue(set.contains(1, 1));
+        assertTrue(set.contains(1, 5));
+        assertFalse(set.contains(1, 6));
+        assertTrue(set.contains(2, 0));
+        assertFalse(set.contains(3, 0));
+
+        assertEquals(set.rangeContaining(1, 3), Range.closed(new LongPair(1, 1), new LongPair(1, 5)));
+        assertNull(set.rangeContaining(1, 7));
+        assertEquals(set.firstRange(), Range.openClosed(new LongPair(1, 0), new LongPair(1, 5)));
+        assertEquals(set.lastRange(), Range.openClosed(new LongPair(2, -1), new LongPair(2, 3)));
+        assertEquals(set.span(), Range.openClosed(new LongPair(1, 0), new LongPair(2, 3)));
+        assertEquals(set.cardinality(1, 2, 2, 1), 4 + 1 + 2);
+
+        // Adjacent ranges are merged
+        set.addOpenClosed(1, 5, 1, 9);
+        assertEquals(set.size(), 2);
+        assertEquals(set.firstRange(), Range.openClosed(new LongPair(1, 0), new LongPair(1, 10)));
+    }
+
+    @Test
+    public void testRemoveAtMost() {
+        RoaringLongPairRangeSet<LongPair> set = new RoaringLongPairRangeSet<>(consumer);
+        set.addOpenClosed(1, 0, 1, 5);
+        set.addOpenClosed(2, 0, 2, 5);
+        set.addOpenClosed(2, 7, 2, 9);
+
+        set.removeAtMost(2, 3);
+        assertEquals(set.size(), 2);
+        assertFalse(set.contains(1, 3));
+        assertFalse(set.contains(2, 3));
+        assertEquals(set.firstRange(), Range.openClosed(new LongPair(2, 3), new LongPair(2, 5)));
+
+        set.removeAtMost(2, 9);
+        assertTrue(set.isEmpty());
+        assertEquals(set.size(), 0);
+    }
+
+    @Test
+    public void testSameRangesAsOpenRangeSet() {
+        RoaringLongPairRangeSet<LongPair> set = new RoaringLongPairRangeSet<>(consumer);
+        ConcurrentOpenLongPairRangeSet<LongPair> expected = new ConcurrentOpenLongPairRangeSet<>(consumer);
+        Random random = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            long key = random.nextInt(5);
+            long value = random.nextInt(5000);
+            set.addOpenClosed(key, value - 1, key, value);
+            expected.addOpenClosed(key, value - 1, key, value);
+            if (i % 1000 == 999) {
+                set.removeAtMost(key, value);
+                expected.removeAtMost(key, value);
+            }
+        }
+
+        assertEquals(set.size(), expected.size());
+        assertEquals(set.asRanges(), expected.asRanges());
+        assertEquals(set.firstRange(), expected.firstRange());
+        assertEquals(set.lastRange(), expected.lastRange());
+        assertEquals(set.cardinality(0, 100, 3, 100), expected.cardinality(0, 100, 3, 100));
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        RoaringLongPairRangeSet<LongPair> set = new RoaringLongPairRangeSet<>(consumer);
+        UnackedRangesDeltaTracker tracker = new UnackedRangesDeltaTracker(2);
+        set.addOpenClosed(1, 0, 1, 5);
+        set.addOpenClosed(2, 0, 2, 5);
+
+        // The first update on a ledger is always a snapshot
+        PositionInfo.Builder builder = PositionInfo.newBuilder().setLedgerId(1).setEntryId(0);
+        long sequence = tracker.buildUpdate(10, set, builder);
+        assertTrue(sequence >= 0);
+        PositionInfo snapshot = builder.build();
+        assertFalse(snapshot.hasSnapshotEntryId());
+        assertEquals(snapshot.getIndividualDeletedEntriesCount(), 2);
+        tracker.snapshotPersisted(10, 0, sequence);
+
+        set.addOpenClosed(2, 6, 2, 7);
+        tracker.recordDeletedEntry(2, 7);
+        builder = PositionInfo.newBuilder().setLedgerId(1).setEntryId(0);
+        assertEquals(tracker.buildUpdate(10, set, builder), -1);
+        PositionInfo delta = builder.build();
+        assertEquals(delta.getSnapshotEntryId(), 0);
+        assertEquals(delta.getIndividualDeletedEntriesCount(), 1);
+
+        RoaringLongPairRangeSet<LongPair> recovered = new RoaringLongPairRangeSet<>(consumer);
+        UnackedRangesDeltaTracker.recoverDeletedEntries(snapshot, recovered);
+        UnackedRangesDeltaTracker.recoverDeletedEntries(delta, recovered);
+        assertEquals(recovered.asRanges(), set.asRanges());
+
+        // After the compaction threshold or on a new ledger, the update is a snapshot again
+        assertEquals(tracker.buildUpdate(10, set, PositionInfo.newBuilder()), -1);
+        assertTrue(tracker.buildUpdate(10, set, PositionInfo.newBuilder()) >= 0);
+        tracker.snapshotPersisted(10, 3, sequence + 1);
+        assertTrue(tracker.buildUpdate(11, set, PositionInfo.newBuilder()) >= 0);
+    }
+
+    @Test
+    public void testValuesOutOf32BitsRange() {
+        RoaringLongPairRangeSet<LongPair> set = new RoaringLongPairRangeSet<>(consumer);
+        set.addOpenClosed(1, RoaringLongPairRangeSet.MAX_VALUE - 2, 1, RoaringLongPairRangeSet.MAX_VALUE - 1);
+        assertTrue(set.contains(1, RoaringLongPairRangeSet.MAX_VALUE - 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> set.addOpenClosed(1, 0, 1, RoaringLongPairRangeSet.MAX_VALUE));
+        assertFalse(set.contains(1, 1));
+    }
+
+    @Test
+    public void testIncrementalUpdatesWithLargeEntryIds() {
+        LongPairRangeSet<LongPair> set = new LongPairRangeSet.DefaultRangeSet<>(consumer, pair -> pair);
+        UnackedRangesDeltaTracker tracker = new UnackedRangesDeltaTracker(10);
+        set.addOpenClosed(1, 0, 1, 5);
+        long sequence = tracker.buildUpdate(10, set, PositionInfo.newBuilder());
+        tracker.snapshotPersisted(10, 0, sequence);
+
+        // An entry id beyond 32 bits can't be part of an incremental update, so a new snapshot is written
+        long largeEntryId = UnackedRangesDeltaTracker.MAX_ENTRY_ID + 10;
+        set.addOpenClosed(1, largeEntryId - 1, 1, largeEntryId);
+        tracker.recordDeletedEntry(1, largeEntryId);
+        PositionInfo.Builder builder = PositionInfo.newBuilder().setLedgerId(1).setEntryId(0);
+        assertTrue(tracker.buildUpdate(10, set, builder) >= 0);
+        PositionInfo snapshot = builder.build();
+        assertEquals(snapshot.getIndividualDeletedEntriesCount(), 1);
+        assertEquals(snapshot.getIndividualDeletedMessagesCount(), 1);
+        assertEquals(snapshot.getIndividualDeletedMessages(0).getUpperEndpoint().getEntryId(), largeEntryId);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.mledger.impl.EntryImpl;
+import org.apache.bookkeeper.mledger.impl.ManagedLedgerFactoryMBeanImpl;
+import org.apache.commons.io.FileUtils;
+import org.awaitility.Awaitility;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class EntryCacheDiskTierTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    private File directory;
+    private ManagedLedgerFactoryMBeanImpl mbean;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("entry-cache-disk-tier").toFile();
+        mbean = new ManagedLedgerFactoryMBeanImpl(null);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void cleanup() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        EntryCacheDiskTier diskTier = new EntryCacheDiskTier(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE, mbean);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(put(diskTier, 1, i));
+        }
+        // Already stored
+        assertFalse(put(diskTier, 1, 0));
+        assertEquals(diskTier.getNumberOfEntries(), 5);
+        assertEquals(mbean.getDiskCacheWrittenEntriesCount(), 5);
+
+        List<EntryImpl> entries = diskTier.getRange(1, 1, 3);
+        assertNotNull(entries);
+        assertEquals(entries.size(), 3);
+        for (int i = 0; i < 3; i++) {
+            EntryImpl entry = entries.get(i);
+            assertEquals(entry.getLedgerId(), 1);
+            assertEquals(entry.getEntryId(), i + 1);
+            assertEquals(new String(entry.getData(), StandardCharsets.UTF_8), payload(1, i + 1));
+            entry.release();
+        }
+
+        // A range with a missing entry is a miss
+        assertNull(diskTier.getRange(1, 3, 5));
+        assertNull(diskTier.getRange(2, 0, 0));
+        diskTier.close();
+    }
+
+    @Test
+    public void testDropOldestSegment() throws Exception {
+        EntryCacheDiskTier diskTier = new EntryCacheDiskTier(directory, 2 * SEGMENT_SIZE, SEGMENT_SIZE, mbean);
+        // Each segment holds ~20 entries
+        int entries = 200;
+        for (int i = 0; i < entries; i++) {
+            assertTrue(put(diskTier, 1, i));
+            assertTrue(countSegmentFiles() <= 2);
+        }
+
+        assertTrue(diskTier.getSize() <= diskTier.getMaxSize());
+        // The first entries went away with the oldest segments, the last ones are still readable
+        assertNull(diskTier.getRange(1, 0, 0));
+        List<EntryImpl> lastEntry = diskTier.getRange(1, entries - 1, entries - 1);
+        assertNotNull(lastEntry);
+        lastEntry.forEach(EntryImpl::release);
+        diskTier.close();
+    }
+
+    @Test
+    public void testEntryOutlivesDroppedSegment() throws Exception {
+        EntryCacheDiskTier diskTier = new EntryCacheDiskTier(directory, 2 * SEGMENT_SIZE, SEGMENT_SIZE, mbean);
+        assertTrue(put(diskTier, 1, 0));
+        List<EntryImpl> firstEntry = diskTier.getRange(1, 0, 0);
+        assertNotNull(firstEntry);
+
+        // The segment of the entry is dropped, but it stays mapped until the entry is released
+        for (int i = 1; i < 200; i++) {
+            assertTrue(put(diskTier, 1, i));
+        }
+        assertNull(diskTier.getRange(1, 0, 0));
+        assertEquals(new String(firstEntry.get(0).getData(), StandardCharsets.UTF_8), payload(1, 0));
+        firstEntry.forEach(EntryImpl::release);
+        diskTier.close();
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        EntryCacheDiskTier diskTier = new EntryCacheDiskTier(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE, mbean);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(put(diskTier, 1, i));
+        }
+        diskTier.close();
+
+        diskTier = new EntryCacheDiskTier(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE, mbean);
+        assertEquals(diskTier.getNumberOfEntries(), 10);
+        List<EntryImpl> entries = diskTier.getRange(1, 0, 9);
+        assertNotNull(entries);
+        assertEquals(new String(entries.get(9).getData(), StandardCharsets.UTF_8), payload(1, 9));
+        entries.forEach(EntryImpl::release);
+
+        // New entries go to a new segment
+        assertTrue(put(diskTier, 2, 0));
+        assertEquals(countSegmentFiles(), 2);
+        diskTier.close();
+    }
+
+    @Test
+    public void testRecoveryDiscardsCorruptedRecords() throws Exception {
+        EntryCacheDiskTier diskTier = new EntryCacheDiskTier(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE, mbean);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(put(diskTier, 1, i));
+        }
+        diskTier.close();
+
+        // Corrupt the payload of the second record, as a torn write would
+        File segment = directory.listFiles()[0];
+        int recordSize = EntryCacheDiskTier.RECORD_HEADER_SIZE + payload(1, 0).length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(EntryCacheDiskTier.SEGMENT_HEADER_SIZE + recordSize + EntryCacheDiskTier.RECORD_HEADER_SIZE);
+            file.write('x');
+        }
+
+        // A file with an unknown format is discarded
+        File invalid = new File(directory, String.format("%016x.segment", 10));
+        FileUtils.writeByteArrayToFile(invalid, new byte[SEGMENT_SIZE]);
+
+        diskTier = new EntryCacheDiskTier(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE, mbean);
+        assertEquals(diskTier.getNumberOfEntries(), 1);
+        List<EntryImpl> entries = diskTier.getRange(1, 0, 0);
+        assertNotNull(entries);
+        entries.forEach(EntryImpl::release);
+        assertNull(diskTier.getRange(1, 1, 1));
+        assertFalse(invalid.exists());
+        diskTier.close();
+    }
+
+    @Test
+    public void testEntryLargerThanSegment() throws Exception {
+        EntryCacheDiskTier diskTier = new EntryCacheDiskTier(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE, mbean);
+        EntryImpl entry = EntryImpl.create(1, 0, new byte[SEGMENT_SIZE]);
+        assertFalse(diskTier.put(entry));
+        entry.release();
+        assertEquals(diskTier.getNumberOfEntries(), 0);
+        diskTier.close();
+    }
+
+    @Test
+    public void testAsyncPutAndGet() throws Exception {
+        EntryCacheDiskTier diskTier = new EntryCacheDiskTier(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE, mbean);
+        EntryImpl entry = EntryImpl.create(1, 0, payload(1, 0).getBytes(StandardCharsets.UTF_8));
+        diskTier.putAsync(entry);
+        // The entry is retained until the writer thread has stored it
+        entry.release();
+        Awaitility.await().untilAsserted(() -> assertEquals(diskTier.getNumberOfEntries(), 1));
+        assertEquals(entry.refCnt(), 0);
+
+        List<EntryImpl> entries = diskTier.getRangeAsync(1, 0, 0).get();
+        assertNotNull(entries);
+        assertEquals(new String(entries.get(0).getData(), StandardCharsets.UTF_8), payload(1, 0));
+        entries.forEach(EntryImpl::release);
+
+        // Missing entries are reported without going through the reader threads
+        CompletableFuture<List<EntryImpl>> missing = diskTier.getRangeAsync(1, 0, 1);
+        assertTrue(missing.isDone());
+        assertNull(missing.get());
+
+        diskTier.close();
+        entry = EntryImpl.create(1, 1, payload(1, 1).getBytes(StandardCharsets.UTF_8));
+        diskTier.putAsync(entry);
+        entry.release();
+        assertEquals(entry.refCnt(), 0);
+        assertNull(diskTier.getRangeAsync(1, 1, 1).get());
+    }
+
+    private static boolean put(EntryCacheDiskTier diskTier, long ledgerId, long entryId) {
+        EntryImpl entry = EntryImpl.create(ledgerId, entryId,
+                payload(ledgerId, entryId).getBytes(StandardCharsets.UTF_8));
+        try {
+            return diskTier.put(entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    private static String payload(long ledgerId, long entryId) {
+        return String.format("entry-%04d-%04d", ledgerId, entryId);
+    }
+
+    private int countSegmentFiles() {
+        return directory.listFiles((dir, name) -> name.endsWith(".segment")).length;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl.cache;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import com.google.common.collect.Lists;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.commons.lang3.tuple.Pair;
+import org.testng.annotations.Test;
+
+public class EntryCacheFrequencyAwareEvictionPolicyTest {
+
+    @Test
+    public void testFrequencySketch() {
+        EntryCacheFrequencySketch sketch = new EntryCacheFrequencySketch(1024);
+        assertEquals(sketch.frequency(1, 1), 0);
+
+        sketch.increment(1, 1);
+        sketch.increment(1, 1);
+        sketch.increment(1, 2);
+        assertEquals(sketch.frequency(1, 1), 2);
+        assertEquals(sketch.frequency(1, 2), 1);
+
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(1, 3);
+        }
+        assertEquals(sketch.frequency(1, 3), EntryCacheFrequencySketch.MAX_FREQUENCY);
+    }
+
+    @Test
+    public void testFrequencySketchAging() {
+        EntryCacheFrequencySketch sketch = new EntryCacheFrequencySketch(16);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment(1, 1);
+        }
+        assertEquals(sketch.frequency(1, 1), 8);
+
+        // Reaching the sample size halves all the counters
+        for (int i = 0; i < 16 * 10; i++) {
+            sketch.increment(2, i);
+        }
+        assertTrue(sketch.frequency(1, 1) < 8);
+    }
+
+    @Test
+    public void testAdmission() {
+        EntryCacheFrequencyAwareEvictionPolicy policy = new EntryCacheFrequencyAwareEvictionPolicy(1024, 1);
+        EntryCache cache = mockCache("cache", 1, 0);
+
+        // First read of a range coming from a backlog drain: not admitted
+        policy.recordAccess(cache, 1, 0, 9, false);
+        for (int i = 0; i < 10; i++) {
+            assertFalse(policy.shouldAdmit(cache, 1, i));
+        }
+
+        // Another cursor reading the same entries makes them worth caching
+        policy.recordAccess(cache, 1, 0, 4, false);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(policy.shouldAdmit(cache, 1, i));
+        }
+        assertFalse(policy.shouldAdmit(cache, 1, 5));
+    }
+
+    @Test
+    public void testCacheHitsSampling() {
+        EntryCacheFrequencyAwareEvictionPolicy policy = new EntryCacheFrequencyAwareEvictionPolicy(1024, 1_000_000);
+        EntryCache cache = mockCache("cache", 1, 0);
+
+        // Reads served by the cache are only sampled
+        for (int i = 0; i < 10; i++) {
+            policy.recordAccess(cache, 1, 0, 0, true);
+        }
+        assertFalse(policy.shouldAdmit(cache, 1, 0));
+
+        // Reads from storage are always recorded
+        policy.recordAccess(cache, 1, 0, 0, false);
+        policy.recordAccess(cache, 1, 0, 0, false);
+        assertTrue(policy.shouldAdmit(cache, 1, 0));
+    }
+
+    @Test
+    public void testEvictFromColdestCachesFirst() {
+        EntryCacheFrequencyAwareEvictionPolicy policy = new EntryCacheFrequencyAwareEvictionPolicy(1024, 1);
+        EntryCache hot = mockCache("hot", 1, 100);
+        EntryCache cold = mockCache("cold", 2, 100);
+
+        policy.recordAccess(hot, 1, 0, 99, true);
+        policy.recordAccess(cold, 2, 0, 9, true);
+
+        // The cold cache is enough
+        policy.doEviction(Lists.newArrayList(hot, cold), 50);
+        verify(hot, never()).evictEntries(anyLong(), any());
+        verify(hot, never()).evictEntries(anyLong());
+        assertEquals(cold.getSize(), 50);
+        assertEquals(hot.getSize(), 100);
+    }
+
+    @Test
+    public void testFrequentlyReadEntriesAreEvictedLast() {
+        EntryCacheFrequencyAwareEvictionPolicy policy = new EntryCacheFrequencyAwareEvictionPolicy(1024, 1);
+        EntryCache hot = mockCache("hot", 1, 100);
+        EntryCache cold = mockCache("cold", 2, 100);
+
+        // The oldest entries of each cache are the ones read frequently
+        for (int i = 0; i < 20; i++) {
+            policy.recordAccess(hot, 1, 0, 49, true);
+        }
+        for (int i = 0; i < EntryCacheFrequencyAwareEvictionPolicy.PROTECTED_FREQUENCY_THRESHOLD; i++) {
+            policy.recordAccess(cold, 2, 0, 9, true);
+        }
+
+        // The cold entries of both caches are evicted first, skipping the frequently read ones
+        policy.doEviction(Lists.newArrayList(hot, cold), 120);
+        assertEquals(cold.getSize(), 10);
+        assertEquals(hot.getSize(), 70);
+        verify(cold, never()).evictEntries(anyLong());
+        verify(hot, never()).evictEntries(anyLong());
+
+        // Then the frequently read entries, once there are no cold entries left
+        policy.doEviction(Lists.newArrayList(hot, cold), 40);
+        assertEquals(cold.getSize(), 0);
+        assertEquals(hot.getSize(), 40);
+        verify(cold).evictEntries(10);
+        verify(hot).evictEntries(10);
+    }
+
+    /**
+     * Mock a cache holding the entries [0, initialSize) of a ledger, each with a size of 1.
+     */
+    private static EntryCache mockCache(String name, long ledgerId, int initialSize) {
+        NavigableSet<Long> entries = new ConcurrentSkipListSet<>();
+        for (long i = 0; i < initialSize; i++) {
+            entries.add(i);
+        }
+        EntryCache cache = mock(EntryCache.class);
+        when(cache.getName()).thenReturn(name);
+        when(cache.getSize()).thenAnswer(invocation -> (long) entries.size());
+        when(cache.evictEntries(anyLong())).thenAnswer(
+                invocation -> evict(entries, ledgerId, invocation.getArgument(0), position -> false));
+        when(cache.evictEntries(anyLong(), any())).thenAnswer(
+                invocation -> evict(entries, ledgerId, invocation.getArgument(0), invocation.getArgument(1)));
+        return cache;
+    }
+
+    private static Pair<Integer, Long> evict(NavigableSet<Long> entries, long ledgerId, long sizeToFree,
+                                             Predicate<PositionImpl> retain) {
+        int evicted = 0;
+        Iterator<Long> iterator = entries.iterator();
+        while (evicted < sizeToFree && iterator.hasNext()) {
+            if (!retain.test(PositionImpl.get(ledgerId, iterator.next()))) {
+                iterator.remove();
+                evicted++;
+            }
+        }
+        return Pair.of(evicted, (long) evicted);
+    }
+}
@@ -169,4 +169,74 @@ public class InflightReadsLimiterTest {
 
     }
 
+    @Test
+    public void testFairSharingAcrossGroups() throws Exception {
+        InflightReadsLimiter limiter = new InflightReadsLimiter(100, true);
+
+        InflightReadsLimiter.Handle handleA1 = limiter.acquire(40, null, "a");
+        InflightReadsLimiter.Handle handleA2 = limiter.acquire(40, null, "a");
+        assertTrue(handleA1.success);
+        assertTrue(handleA2.success);
+        assertEquals(20, limiter.getRemainingBytes());
+
+        InflightReadsLimiter.Handle handleB = limiter.acquire(50, null, "b");
+        assertFalse(handleB.success);
+        assertEquals(handleB.acquiredPermits, 20);
+        assertEquals(0, limiter.getRemainingBytes());
+
+        limiter.release(handleA1);
+        assertEquals(40, limiter.getRemainingBytes());
+
+        // "b" is waiting, so "a" can't get more than its fair share while it has a read in flight
+        InflightReadsLimiter.Handle handleA3 = limiter.acquire(30, null, "a");
+        assertFalse(handleA3.success);
+        assertEquals(handleA3.acquiredPermits, 10);
+        assertEquals(30, limiter.getRemainingBytes());
+
+        // "b" has no other read in flight, so it gets what it needs
+        handleB = limiter.acquire(50, handleB, "b");
+        assertTrue(handleB.success);
+        assertEquals(handleB.acquiredPermits, 50);
+        assertEquals(0, limiter.getRemainingBytes());
+
+        limiter.release(handleA2);
+        // Nobody else is waiting anymore
+        handleA3 = limiter.acquire(30, handleA3, "a");
+        assertTrue(handleA3.success);
+        assertEquals(handleA3.acquiredPermits, 30);
+        assertEquals(20, limiter.getRemainingBytes());
+
+        limiter.release(handleA3);
+        limiter.release(handleB);
+        assertEquals(100, limiter.getRemainingBytes());
+        assertEquals(0, limiter.getGroupsCount());
+    }
+
+    @Test
+    public void testFairSharingGroupGivingUp() throws Exception {
+        InflightReadsLimiter limiter = new InflightReadsLimiter(100, true);
+
+        InflightReadsLimiter.Handle handleA = limiter.acquire(100, null, "a");
+        assertTrue(handleA.success);
+        InflightReadsLimiter.Handle handleB = limiter.acquire(50, null, "b");
+        assertFalse(handleB.success);
+        assertEquals(2, limiter.getGroupsCount());
+
+        // The read of "b" times out
+        limiter.release(handleB);
+        assertEquals(1, limiter.getGroupsCount());
+
+        // Nobody else is waiting, "a" can use the whole budget
+        limiter.release(handleA);
+        handleA = limiter.acquire(60, null, "a");
+        InflightReadsLimiter.Handle handleA2 = limiter.acquire(40, null, "a");
+        assertTrue(handleA.success);
+        assertTrue(handleA2.success);
+        assertEquals(0, limiter.getRemainingBytes());
+
+        limiter.release(handleA);
+        limiter.release(handleA2);
+        assertEquals(100, limiter.getRemainingBytes());
+        assertEquals(0, limiter.getGroupsCount());
+    }
 }
@@ -191,6 +191,8 @@ public class RangeCacheTest {
         cache.put(8, new RefString("8"));
         assertEquals(cache.getRange(1, 8),
                 Lists.newArrayList(new RefString("1"), new RefString("3"), new RefString("5"), new RefString("8")));
+        assertEquals(cache.getNumberOfEntries(1, 8), 4);
+        assertEquals(cache.getNumberOfEntries(2, 4), 1);
 
         cache.clear();
         assertEquals(cache.getSize(), 0);
@@ -239,6 +241,47 @@ public class RangeCacheTest {
         }
     }
 
+    @Test
+    public void evictionWithRetainedEntries() {
+        RangeCache<Integer, RefString> cache = new RangeCache<>(value -> value.s.length(), x -> 0);
+
+        cache.put(0, new RefString("zero"));
+        cache.put(1, new RefString("one"));
+        cache.put(2, new RefString("two"));
+        cache.put(3, new RefString("three"));
+
+        // The oldest entry is retained, so 1 and 2 are evicted instead
+        assertEquals(cache.evictLeastAccessedEntries(5, key -> key == 0), Pair.of(2, (long) 6));
+        assertEquals(cache.getNumberOfEntries(), 2);
+        assertEquals(cache.getSize(), 9);
+        assertEquals(cache.get(0).s, "zero");
+        assertNull(cache.get(1));
+        assertNull(cache.get(2));
+
+        // Nothing is evicted when all the entries are retained
+        assertEquals(cache.evictLeastAccessedEntries(100, key -> true), Pair.of(0, (long) 0));
+        assertEquals(cache.getSize(), 9);
+    }
+
+    @Test
+    public void evictionOfNewestEntries() {
+        RangeCache<Integer, RefString> cache = new RangeCache<>(value -> value.s.length(), x -> 0);
+
+        cache.put(0, new RefString("zero"));
+        cache.put(1, new RefString("one"));
+        cache.put(2, new RefString("two"));
+        cache.put(3, new RefString("three"));
+
+        // This should remove the newest entries: 3, 2 whose combined size is 8
+        assertEquals(cache.evictNewestEntries(6), Pair.of(2, (long) 8));
+        assertEquals(cache.getNumberOfEntries(), 2);
+        assertEquals(cache.getSize(), 7);
+        assertEquals(cache.get(0).s, "zero");
+        assertEquals(cache.get(1).s, "one");
+        assertNull(cache.get(2));
+        assertNull(cache.get(3));
+    }
+
     @Test
     public void evictions() {
         RangeCache<Integer, RefString> cache = new RangeCache<>();
@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import com.google.common.collect.Lists;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCounted;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.commons.lang3.tuple.Pair;
+import org.testng.annotations.Test;
+
+public class SegmentedRangeCacheTest {
+
+    class RefString extends AbstractReferenceCounted implements ReferenceCounted {
+        String s;
+
+        RefString(String s) {
+            super();
+            this.s = s;
+            setRefCnt(1);
+        }
+
+        @Override
+        protected void deallocate() {
+            s = null;
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof RefString) {
+                return this.s.equals(((RefString) obj).s);
+            } else if (obj instanceof String) {
+                return this.s.equals((String) obj);
+            }
+
+            return false;
+        }
+    }
+
+    private static PositionImpl pos(long ledgerId, long entryId) {
+        return PositionImpl.get(ledgerId, entryId);
+    }
+
+    private SegmentedRangeCache<RefString> newCache() {
+        return new SegmentedRangeCache<>(value -> 1, x -> 0);
+    }
+
+    @Test
+    public void simple() {
+        SegmentedRangeCache<RefString> cache = newCache();
+
+        cache.put(pos(1, 0), new RefString("0"));
+        cache.put(pos(1, 1), new RefString("1"));
+
+        assertEquals(cache.getSize(), 2);
+        assertEquals(cache.getNumberOfEntries(), 2);
+
+        RefString s = cache.get(pos(1, 0));
+        assertEquals(s.s, "0");
+        assertEquals(s.refCnt(), 2);
+        s.release();
+
+        assertNull(cache.get(pos(1, 2)));
+        assertNull(cache.get(pos(2, 0)));
+        assertNull(cache.get(pos(1, -1)));
+
+        cache.put(pos(1, 2), new RefString("2"));
+        cache.put(pos(1, 8), new RefString("8"));
+        cache.put(pos(1, 11), new RefString("11"));
+
+        assertEquals(cache.getSize(), 5);
+        assertEquals(cache.getNumberOfEntries(), 5);
+
+        cache.removeRange(pos(1, 1), pos(1, 5), true);
+        assertEquals(cache.getSize(), 3);
+        assertEquals(cache.getNumberOfEntries(), 3);
+
+        cache.removeRange(pos(1, 2), pos(1, 8), false);
+        assertEquals(cache.getSize(), 3);
+        assertEquals(cache.getNumberOfEntries(), 3);
+
+        cache.removeRange(pos(1, 0), pos(1, 100), false);
+        assertEquals(cache.getSize(), 0);
+        assertEquals(cache.getNumberOfEntries(), 0);
+        assertEquals(cache.getNumberOfSegments(), 0);
+    }
+
+    @Test
+    public void doubleInsert() {
+        SegmentedRangeCache<RefString> cache = newCache();
+
+        RefString s0 = new RefString("zero");
+        assertTrue(cache.put(pos(1, 0), s0));
+        assertEquals(s0.refCnt(), 1);
+        assertFalse(cache.put(pos(1, 0), s0));
+
+        RefString s1 = new RefString("uno");
+        assertFalse(cache.put(pos(1, 0), s1));
+        assertEquals(s1.refCnt(), 1);
+        s1.release();
+
+        assertEquals(cache.getSize(), 1);
+        assertEquals(cache.get(pos(1, 0)).s, "zero");
+        assertTrue(cache.exists(pos(1, 0)));
+        assertFalse(cache.exists(pos(1, 1)));
+    }
+
+    @Test
+    public void getRangeAcrossSegmentsAndLedgers() {
+        SegmentedRangeCache<RefString> cache = newCache();
+
+        cache.put(pos(1, 1), new RefString("1:1"));
+        cache.put(pos(1, SegmentedRangeCache.SEGMENT_SIZE + 5), new RefString("1:x"));
+        cache.put(pos(3, 0), new RefString("3:0"));
+        cache.put(pos(2, 7), new RefString("2:7"));
+
+        assertEquals(cache.getNumberOfSegments(), 4);
+
+        Collection<RefString> values = cache.getRange(pos(1, 0), pos(3, 0));
+        assertEquals(values,
+                Lists.newArrayList(new RefString("1:1"), new RefString("1:x"), new RefString("2:7"),
+                        new RefString("3:0")));
+        values.forEach(RefString::release);
+
+        values = cache.getRange(pos(1, 2), pos(2, 6));
+        assertEquals(values, Lists.newArrayList(new RefString("1:x")));
+        values.forEach(RefString::release);
+        assertEquals(cache.getNumberOfEntries(pos(1, 0), pos(3, 0)), 4);
+        assertEquals(cache.getNumberOfEntries(pos(1, 2), pos(2, 6)), 1);
+
+        // Invalidate a whole ledger
+        assertEquals(cache.removeRange(pos(1, 0), pos(2, 0), false), Pair.of(2, 2L));
+        assertEquals(cache.getNumberOfSegments(), 2);
+
+        cache.clear();
+        assertEquals(cache.getSize(), 0);
+        assertEquals(cache.getNumberOfEntries(), 0);
+        assertEquals(cache.getNumberOfSegments(), 0);
+    }
+
+    @Test
+    public void eviction() {
+        SegmentedRangeCache<RefString> cache = new SegmentedRangeCache<>(value -> value.s.length(), x -> 0);
+
+        cache.put(pos(1, 0), new RefString("zero"));
+        cache.put(pos(1, 1), new RefString("one"));
+        cache.put(pos(2, 0), new RefString("two"));
+        cache.put(pos(2, 1), new RefString("three"));
+
+        // This should remove the oldest entries: 0, 1 whose combined size is 7
+        assertEquals(cache.evictLeastAccessedEntries(5), Pair.of(2, (long) 7));
+
+        assertEquals(cache.getNumberOfEntries(), 2);
+        assertEquals(cache.getSize(), 8);
+        assertNull(cache.get(pos(1, 0)));
+        assertNull(cache.get(pos(1, 1)));
+        assertEquals(cache.get(pos(2, 0)).s, "two");
+        assertEquals(cache.get(pos(2, 1)).s, "three");
+
+        assertEquals(cache.evictLeastAccessedEntries(100), Pair.of(2, (long) 8));
+        assertEquals(cache.getNumberOfEntries(), 0);
+        assertEquals(cache.getSize(), 0);
+        assertEquals(cache.getNumberOfSegments(), 0);
+
+        try {
+            cache.evictLeastAccessedEntries(0);
+            fail("should throw exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void evictionWithRetainedEntries() {
+        SegmentedRangeCache<RefString> cache = new SegmentedRangeCache<>(value -> value.s.length(), x -> 0);
+
+        cache.put(pos(1, 0), new RefString("zero"));
+        cache.put(pos(1, 1), new RefString("one"));
+        cache.put(pos(2, 0), new RefString("two"));
+        cache.put(pos(2, 1), new RefString("three"));
+
+        // The oldest entry is retained, so 1:1 and 2:0 are evicted instead
+        assertEquals(cache.evictLeastAccessedEntries(5, position -> position.equals(pos(1, 0))),
+                Pair.of(2, (long) 6));
+        assertEquals(cache.getNumberOfEntries(), 2);
+        assertEquals(cache.getSize(), 9);
+        assertEquals(cache.get(pos(1, 0)).s, "zero");
+        assertNull(cache.get(pos(1, 1)));
+        assertNull(cache.get(pos(2, 0)));
+
+        // Nothing is evicted when all the entries are retained
+        assertEquals(cache.evictLeastAccessedEntries(100, position -> true), Pair.of(0, (long) 0));
+        assertEquals(cache.getSize(), 9);
+    }
+
+    @Test
+    public void evictionOfNewestEntries() {
+        SegmentedRangeCache<RefString> cache = new SegmentedRangeCache<>(value -> value.s.length(), x -> 0);
+
+        cache.put(pos(1, 0), new RefString("zero"));
+        cache.put(pos(1, 1), new RefString("one"));
+        cache.put(pos(2, 0), new RefString("two"));
+        cache.put(pos(2, 1), new RefString("three"));
+        cache.put(pos(2, SegmentedRangeCache.SEGMENT_SIZE), new RefString("four"));
+
+        // This should remove the newest entries: 2:1024, 2:1 whose combined size is 9
+        assertEquals(cache.evictNewestEntries(6), Pair.of(2, (long) 9));
+        assertEquals(cache.getNumberOfEntries(), 3);
+        assertEquals(cache.getSize(), 10);
+        assertEquals(cache.getNumberOfSegments(), 2);
+        assertEquals(cache.get(pos(2, 0)).s, "two");
+        assertNull(cache.get(pos(2, 1)));
+
+        // Then the previous ledgers
+        assertEquals(cache.evictNewestEntries(4), Pair.of(2, (long) 6));
+        assertEquals(cache.get(pos(1, 0)).s, "zero");
+        assertNull(cache.get(pos(1, 1)));
+    }
+
+    @Test
+    public void evictionDrainsWholeSegments() {
+        SegmentedRangeCache<RefString> cache = newCache();
+        int entries = SegmentedRangeCache.SEGMENT_SIZE * 3;
+        for (int i = 0; i < entries; i++) {
+            cache.put(pos(1, i), new RefString(Integer.toString(i)));
+        }
+
+        assertEquals(cache.getNumberOfSegments(), 3);
+        Pair<Integer, Long> res = cache.evictLeastAccessedEntries(SegmentedRangeCache.SEGMENT_SIZE + 1);
+        assertEquals((int) res.getLeft(), SegmentedRangeCache.SEGMENT_SIZE + 1);
+        assertEquals(cache.getNumberOfSegments(), 2);
+        assertNull(cache.get(pos(1, SegmentedRangeCache.SEGMENT_SIZE)));
+        assertEquals(cache.get(pos(1, SegmentedRangeCache.SEGMENT_SIZE + 1)).s,
+                Integer.toString(SegmentedRangeCache.SEGMENT_SIZE + 1));
+
+        // Inserting before the first segment extends the segment table backwards
+        assertTrue(cache.put(pos(1, 0), new RefString("0")));
+        assertEquals(cache.getNumberOfSegments(), 3);
+        assertEquals(cache.get(pos(1, 0)).s, "0");
+    }
+
+    @Test
+    public void sparseInsertsAreBounded() {
+        SegmentedRangeCache<RefString> cache = newCache();
+        assertTrue(cache.put(pos(1, 0), new RefString("0")));
+        long farEntry = (long) SegmentedRangeCache.MAX_SEGMENTS_PER_LEDGER * SegmentedRangeCache.SEGMENT_SIZE;
+        RefString far = new RefString("far");
+        assertFalse(cache.put(pos(1, farEntry), far));
+        assertEquals(far.refCnt(), 1);
+        assertEquals(cache.getNumberOfEntries(), 1);
+    }
+
+    @Test
+    public void customTimeExtraction() {
+        SegmentedRangeCache<RefString> cache = new SegmentedRangeCache<>(value -> value.s.length(),
+                x -> x.s.length());
+
+        cache.put(pos(1, 1), new RefString("1"));
+        cache.put(pos(1, 2), new RefString("22"));
+        cache.put(pos(1, 3), new RefString("333"));
+        cache.put(pos(1, 4), new RefString("4444"));
+
+        assertEquals(cache.getSize(), 10);
+        assertEquals(cache.getNumberOfEntries(), 4);
+
+        Pair<Integer, Long> evictedSize = cache.evictLEntriesBeforeTimestamp(3);
+        assertEquals(evictedSize.getRight().longValue(), 6);
+        assertEquals(evictedSize.getLeft().longValue(), 3);
+
+        assertEquals(cache.getSize(), 4);
+        assertEquals(cache.getNumberOfEntries(), 1);
+    }
+
+    @Test
+    public void testInParallel() {
+        SegmentedRangeCache<RefString> cache = new SegmentedRangeCache<>(value -> value.s.length(), x -> 0);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(cache::clear, 10, 10, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(pos(i / 100, i % 100), new RefString("zero"));
+        }
+        executor.shutdown();
+    }
+}
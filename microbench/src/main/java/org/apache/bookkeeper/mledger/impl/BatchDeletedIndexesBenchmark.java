@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.pulsar.common.util.collections.BitSetRecyclable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare the batch index acknowledgments of a cursor when the partially acknowledged batches are tracked in a
+ * {@link ConcurrentSkipListMap} of {@link BitSetRecyclable}, as the cursor used to do, and in a
+ * {@link BatchDeletedIndexes}.
+ *
+ * <p/>The messages of {@code pendingBatches} batches are acknowledged one at a time in a round-robin fashion, so that
+ * all of them are partially acknowledged, and the mark-delete position moves forward once they are all fully
+ * acknowledged. Run with {@code -prof gc} to compare the allocation rates.
+ */
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class BatchDeletedIndexesBenchmark {
+
+    private static final long LEDGER_ID = 1;
+
+    @Param({"10", "100", "1000"})
+    private int batchSize;
+
+    @Param({"1000", "100000"})
+    private int pendingBatches;
+
+    private long[][] ackSets;
+    private ConcurrentSkipListMap<PositionImpl, BitSetRecyclable> skipListIndexes;
+    private BatchDeletedIndexes primitiveIndexes;
+
+    private long firstEntryId;
+    private long acks;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        // The ack set sent for each message of a batch, where only the index of the message is cleared
+        ackSets = new long[batchSize][];
+        for (int i = 0; i < batchSize; i++) {
+            BitSetRecyclable bitSet = BitSetRecyclable.create();
+            bitSet.set(0, batchSize);
+            bitSet.clear(i);
+            ackSets[i] = bitSet.toLongArray();
+            bitSet.recycle();
+        }
+        skipListIndexes = new ConcurrentSkipListMap<>();
+        primitiveIndexes = new BatchDeletedIndexes();
+        firstEntryId = 0;
+        acks = 0;
+    }
+
+    @Benchmark
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public boolean ackSkipListMap() {
+        long entryId = firstEntryId + acks % pendingBatches;
+        long[] ackSet = ackSets[(int) (acks / pendingBatches)];
+        PositionImpl position = PositionImpl.get(LEDGER_ID, entryId);
+
+        BitSetRecyclable givenBitSet = BitSetRecyclable.create().resetWords(ackSet);
+        BitSetRecyclable bitSet = skipListIndexes.computeIfAbsent(position, (v) -> givenBitSet);
+        if (givenBitSet != bitSet) {
+            bitSet.and(givenBitSet);
+            givenBitSet.recycle();
+        }
+        boolean deleted = bitSet.isEmpty();
+        if (deleted) {
+            BitSetRecyclable bitSetRecyclable = skipListIndexes.remove(position);
+            if (bitSetRecyclable != null) {
+                bitSetRecyclable.recycle();
+            }
+        }
+
+        if (nextAck()) {
+            Map<PositionImpl, BitSetRecyclable> subMap = skipListIndexes.subMap(PositionImpl.EARLIEST, false,
+                    PositionImpl.get(LEDGER_ID, firstEntryId - 1), true);
+            subMap.values().forEach(BitSetRecyclable::recycle);
+            subMap.clear();
+        }
+        return deleted;
+    }
+
+    @Benchmark
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public boolean ackBatchDeletedIndexes() {
+        long entryId = firstEntryId + acks % pendingBatches;
+        long[] ackSet = ackSets[(int) (acks / pendingBatches)];
+
+        boolean deleted = primitiveIndexes.and(LEDGER_ID, entryId, ackSet);
+
+        if (nextAck()) {
+            primitiveIndexes.removeUpTo(LEDGER_ID, firstEntryId - 1, true);
+        }
+        return deleted;
+    }
+
+    /**
+     * @return true if the pending batches are all acknowledged and the mark-delete position moved forward
+     */
+    private boolean nextAck() {
+        if (++acks == (long) pendingBatches * batchSize) {
+            acks = 0;
+            firstEntryId += pendingBatches;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.pulsar.common.util.collections.ConcurrentOpenLongPairRangeSet;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet;
+import org.apache.pulsar.common.util.collections.LongPairRangeSet.DefaultRangeSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare the implementations of {@link LongPairRangeSet} used by {@link RangeSetWrapper} to hold the individually
+ * deleted messages of a cursor, without the rest of the cursor acknowledgment path.
+ *
+ * <p/>Like {@link ManagedCursorDeleteBenchmark}, the odd entries of a window are added first to create holes, then the
+ * even entries, after which the window is removed as the mark-delete position would be moved.
+ */
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class LongPairRangeSetBenchmark {
+
+    private static final int ENTRIES_PER_LEDGER = 50_000;
+
+    @Param({"default", "openCacheSet", "roaring"})
+    private String rangeSet;
+
+    @Param({"1000", "100000"})
+    private int ackWindow;
+
+    private LongPairRangeSet<PositionImpl> set;
+    private long acks;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        LongPairRangeSet.LongPairConsumer<PositionImpl> consumer = PositionImpl::new;
+        switch (rangeSet) {
+            case "default":
+                set = new DefaultRangeSet<>(consumer,
+                        (position) -> new LongPairRangeSet.LongPair(position.getLedgerId(), position.getEntryId()));
+                break;
+            case "openCacheSet":
+                set = new ConcurrentOpenLongPairRangeSet<>(4096, consumer);
+                break;
+            case "roaring":
+                set = new RoaringLongPairRangeSet<>(consumer);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown range set " + rangeSet);
+        }
+        acks = 0;
+    }
+
+    @Benchmark
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public void addWithHoles() {
+        long windowStart = acks - acks % ackWindow;
+        long indexInWindow = acks % ackWindow;
+        long half = ackWindow / 2;
+        long entry = windowStart + (indexInWindow < half ? 2 * indexInWindow + 1 : 2 * (indexInWindow - half));
+        long ledgerId = entry / ENTRIES_PER_LEDGER;
+        long entryId = entry % ENTRIES_PER_LEDGER;
+        set.addOpenClosed(ledgerId, entryId - 1, ledgerId, entryId);
+
+        if (++acks % ackWindow == 0) {
+            long lastEntry = acks - 1;
+            set.removeAtMost(lastEntry / ENTRIES_PER_LEDGER, lastEntry % ENTRIES_PER_LEDGER);
+        }
+    }
+}
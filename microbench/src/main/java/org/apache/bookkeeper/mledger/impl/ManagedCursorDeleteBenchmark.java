@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import io.netty.buffer.ByteBuf;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.AddEntryCallback;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.ManagedLedger;
+import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.bookkeeper.mledger.Position;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Individually acknowledge entries with cursors, through {@link ManagedCursorImpl#asyncDelete} and the range set
+ * holding the individually deleted messages, including the persistence of the mark-delete position.
+ *
+ * <p/>In each window of {@link #ACK_WINDOW} entries, the odd entries are acknowledged first, so that the range set
+ * holds up to half a window of acknowledgment holes, then the even entries, which move the mark-delete position
+ * forward. The cursors are reset to the first entry once all the entries are acknowledged.
+ */
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ManagedCursorDeleteBenchmark extends MockedManagedLedgerBenchmark {
+
+    private static final int NUM_ENTRIES = 100_000;
+    private static final int ACK_WINDOW = 1000;
+
+    @Param({"1", "10"})
+    private int numCursors;
+
+    @Param({"default", "openCacheSet", "roaring"})
+    private String rangeSet;
+
+    private ManagedLedger ledger;
+    private ManagedCursor[] cursors;
+    private long[] cursorAcks;
+    private Position[] positions;
+    private int nextCursor;
+
+    @Setup(Level.Iteration)
+    public void setup() throws Exception {
+        startFactory(new ManagedLedgerFactoryConfig());
+
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setUnackedRangesOpenCacheSetEnabled(rangeSet.equals("openCacheSet"));
+        config.setUnackedRangesRoaringBitmapEnabled(rangeSet.equals("roaring"));
+        // Keep the acknowledged ledgers, since the cursors are reset to the first entry
+        config.setRetentionTime(-1, TimeUnit.SECONDS);
+        config.setRetentionSizeInMB(-1);
+        ledger = factory.open("cursor-delete-benchmark", config);
+        cursors = new ManagedCursor[numCursors];
+        for (int i = 0; i < numCursors; i++) {
+            cursors[i] = ledger.openCursor("cursor-" + i);
+        }
+        cursorAcks = new long[numCursors];
+        nextCursor = 0;
+
+        positions = new Position[NUM_ENTRIES];
+        CompletableFuture<Void> lastAdd = new CompletableFuture<>();
+        byte[] payload = new byte[1];
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            int index = i;
+            ledger.asyncAddEntry(payload, new AddEntryCallback() {
+                @Override
+                public void addComplete(Position position, ByteBuf entryData, Object ctx) {
+                    positions[index] = position;
+                    if (index == NUM_ENTRIES - 1) {
+                        lastAdd.complete(null);
+                    }
+                }
+
+                @Override
+                public void addFailed(ManagedLedgerException exception, Object ctx) {
+                    lastAdd.completeExceptionally(exception);
+                }
+            }, null);
+        }
+        lastAdd.get();
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() throws Exception {
+        ledger.close();
+        stopFactory();
+    }
+
+    @Benchmark
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public Position delete() throws Exception {
+        return doDelete();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public Position deleteLatency() throws Exception {
+        return doDelete();
+    }
+
+    private Position doDelete() throws Exception {
+        int cursorIndex = nextCursor;
+        nextCursor = (nextCursor + 1) % numCursors;
+        ManagedCursor cursor = cursors[cursorIndex];
+
+        long acks = cursorAcks[cursorIndex]++;
+        if (acks == NUM_ENTRIES) {
+            cursor.resetCursor(positions[0]);
+            acks = 0;
+            cursorAcks[cursorIndex] = 1;
+        }
+        int windowStart = (int) (acks - acks % ACK_WINDOW);
+        int indexInWindow = (int) (acks % ACK_WINDOW);
+        int half = ACK_WINDOW / 2;
+        int offset = indexInWindow < half ? 2 * indexInWindow + 1 : 2 * (indexInWindow - half);
+
+        Position position = positions[windowStart + offset];
+        cursor.delete(position);
+        return position;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.MarkDeleteCallback;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.ManagedLedger;
+import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.bookkeeper.mledger.Position;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Add entries to a managed ledger, through {@link ManagedLedgerImpl#asyncAddEntry} and {@link OpAddEntry}, including
+ * the insertion of the entries in the cache for the active cursors.
+ *
+ * <p/>The cursors periodically mark-delete the last added entry, so that the consumed ledgers are trimmed and the
+ * memory used by the in-memory BookKeeper stays bounded.
+ */
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ManagedLedgerAddEntryBenchmark extends MockedManagedLedgerBenchmark {
+
+    private static final int MARK_DELETE_INTERVAL = 1000;
+
+    private static final MarkDeleteCallback NOOP_MARK_DELETE_CALLBACK = new MarkDeleteCallback() {
+        @Override
+        public void markDeleteComplete(Object ctx) {
+        }
+
+        @Override
+        public void markDeleteFailed(ManagedLedgerException exception, Object ctx) {
+        }
+    };
+
+    @Param({"100", "1024", "16384"})
+    private int entrySize;
+
+    @Param({"1", "10"})
+    private int numCursors;
+
+    private byte[] payload;
+    private ManagedLedger ledger;
+    private final List<ManagedCursor> cursors = new ArrayList<>();
+    private long addedEntries;
+
+    @Setup(Level.Iteration)
+    public void setup() throws Exception {
+        startFactory(new ManagedLedgerFactoryConfig());
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setMaxEntriesPerLedger(10_000);
+        ledger = factory.open("add-entry-benchmark", config);
+        for (int i = 0; i < numCursors; i++) {
+            ManagedCursor cursor = ledger.openCursor("cursor-" + i);
+            cursor.setActive();
+            cursors.add(cursor);
+        }
+        payload = new byte[entrySize];
+        addedEntries = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() throws Exception {
+        cursors.clear();
+        ledger.close();
+        stopFactory();
+    }
+
+    @Benchmark
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public Position addEntry() throws Exception {
+        return doAddEntry();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public Position addEntryLatency() throws Exception {
+        return doAddEntry();
+    }
+
+    private Position doAddEntry() throws Exception {
+        Position position = ledger.addEntry(payload);
+        if (++addedEntries % MARK_DELETE_INTERVAL == 0) {
+            for (ManagedCursor cursor : cursors) {
+                cursor.asyncMarkDelete(position, NOOP_MARK_DELETE_CALLBACK, null);
+            }
+        }
+        return position;
+    }
+}
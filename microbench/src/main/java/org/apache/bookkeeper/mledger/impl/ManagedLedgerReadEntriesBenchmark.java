@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.ManagedLedger;
+import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Read batches of entries with cursors, through {@link ManagedCursorImpl#readEntries} and either
+ * {@link org.apache.bookkeeper.mledger.impl.cache.RangeEntryCacheImpl} when the cache is enabled, or the in-memory
+ * BookKeeper when it is disabled.
+ *
+ * <p/>The cursors read the same entries in turn, and rewind when they reach the end of the ledger. The entries are
+ * evicted from the cache by mark-delete position, which the cursors never move, so that they all stay in the cache.
+ */
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ManagedLedgerReadEntriesBenchmark extends MockedManagedLedgerBenchmark {
+
+    private static final int NUM_ENTRIES = 1000;
+    private static final int READ_BATCH_SIZE = 100;
+
+    @Param({"100", "1024", "16384"})
+    private int entrySize;
+
+    @Param({"1", "10"})
+    private int numCursors;
+
+    @Param({"true", "false"})
+    private boolean cacheEnabled;
+
+    private ManagedLedger ledger;
+    private ManagedCursor[] cursors;
+    private int nextCursor;
+
+    @Setup(Level.Iteration)
+    public void setup() throws Exception {
+        ManagedLedgerFactoryConfig factoryConfig = new ManagedLedgerFactoryConfig();
+        factoryConfig.setMaxCacheSize(cacheEnabled ? 256 * 1024 * 1024 : 0);
+        factoryConfig.setCacheEvictionTimeThresholdMillis(TimeUnit.HOURS.toMillis(1));
+        startFactory(factoryConfig);
+
+        ManagedLedgerConfig config = new ManagedLedgerConfig();
+        config.setCacheEvictionByMarkDeletedPosition(true);
+        ledger = factory.open("read-entries-benchmark", config);
+        cursors = new ManagedCursor[numCursors];
+        for (int i = 0; i < numCursors; i++) {
+            cursors[i] = ledger.openCursor("cursor-" + i);
+            cursors[i].setActive();
+        }
+        byte[] payload = new byte[entrySize];
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            ledger.addEntry(payload);
+        }
+        nextCursor = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() throws Exception {
+        ledger.close();
+        stopFactory();
+    }
+
+    @Benchmark
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public int readEntries() throws Exception {
+        return doReadEntries();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public int readEntriesLatency() throws Exception {
+        return doReadEntries();
+    }
+
+    private int doReadEntries() throws Exception {
+        ManagedCursor cursor = cursors[nextCursor];
+        nextCursor = (nextCursor + 1) % numCursors;
+        if (!cursor.hasMoreEntries()) {
+            cursor.rewind();
+        }
+        List<Entry> entries = cursor.readEntries(READ_BATCH_SIZE);
+        int size = 0;
+        for (Entry entry : entries) {
+            size += entry.getLength();
+            entry.release();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.PulsarMockBookKeeper;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.pulsar.metadata.api.MetadataStoreConfig;
+import org.apache.pulsar.metadata.api.extended.MetadataStoreExtended;
+
+/**
+ * Base class of the benchmarks running a managed ledger factory against an in-memory BookKeeper and metadata store,
+ * so that they measure the managed ledger code paths rather than the storage.
+ */
+abstract class MockedManagedLedgerBenchmark {
+
+    protected OrderedScheduler executor;
+    protected MetadataStoreExtended metadataStore;
+    protected PulsarMockBookKeeper bookKeeper;
+    protected ManagedLedgerFactoryImpl factory;
+
+    protected void startFactory(ManagedLedgerFactoryConfig config) throws Exception {
+        executor = OrderedScheduler.newSchedulerBuilder().numThreads(2).name("microbench-bookkeeper").build();
+        metadataStore = MetadataStoreExtended.create("memory:local",
+                MetadataStoreConfig.builder().metadataStoreName("microbench-" + UUID.randomUUID()).build());
+        bookKeeper = new PulsarMockBookKeeper(executor);
+        // Don't simulate the latency of the bookies, which would hide the cost of the managed ledger code paths
+        bookKeeper.setDefaultDelay(0, TimeUnit.MILLISECONDS);
+        factory = new ManagedLedgerFactoryImpl(metadataStore, bookKeeper, config);
+    }
+
+    protected void stopFactory() throws Exception {
+        if (factory != null) {
+            factory.shutdown();
+            factory = null;
+        }
+        if (bookKeeper != null) {
+            bookKeeper.shutdown();
+            bookKeeper = null;
+        }
+        if (metadataStore != null) {
+            metadataStore.close();
+            metadataStore = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.pulsar.common.api.proto.BaseCommand;
+import org.apache.pulsar.common.protocol.ByteBufPair;
+import org.apache.pulsar.common.protocol.Commands;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Write a read batch of cached entries to a consumer channel and flush it, as {@link PulsarCommandSenderImpl} does.
+ *
+ * <p/>The "pair" write goes through the pipeline once per message with a {@link ByteBufPair} of a newly allocated
+ * header and the entry buffer, the "composite" write goes through it once with a composite buffer of the headers,
+ * serialized in a single buffer, and the entry buffers. The channel only counts the buffers that a socket channel
+ * would gather, so the scores are per read batch and exclude the syscalls.
+ */
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class DispatchWriteBenchmark {
+
+    private static final long CONSUMER_ID = 1;
+    private static final long LEDGER_ID = 1234;
+
+    @Param({"pair", "composite"})
+    private String write;
+
+    @Param({"1", "10", "100"})
+    private int numMessages;
+
+    @Param({"100", "10240"})
+    private int messageSize;
+
+    private ByteBuf[] entries;
+    private EmbeddedChannel channel;
+    private long gatheredBuffers;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        entries = new ByteBuf[numMessages];
+        for (int i = 0; i < numMessages; i++) {
+            byte[] payload = new byte[messageSize];
+            ThreadLocalRandom.current().nextBytes(payload);
+            entries[i] = ByteBufAllocator.DEFAULT.directBuffer(messageSize).writeBytes(payload);
+        }
+        channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+                gatheredBuffers += ((ByteBuf) msg).nioBufferCount();
+                ctx.write(msg, promise);
+            }
+        }, ByteBufPair.ENCODER);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        channel.finishAndReleaseAll();
+        for (ByteBuf entry : entries) {
+            entry.release();
+        }
+    }
+
+    @Benchmark
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public long dispatch() {
+        if (write.equals("pair")) {
+            for (int i = 0; i < numMessages; i++) {
+                BaseCommand command = Commands.newMessageCommand(CONSUMER_ID, LEDGER_ID, i, -1, 0, null, -1);
+                channel.write(Commands.serializeCommandMessageWithSize(command, entries[i].retainedDuplicate()),
+                        channel.voidPromise());
+            }
+            channel.writeAndFlush(Unpooled.EMPTY_BUFFER);
+        } else {
+            CompositeByteBuf frames = channel.alloc().compositeDirectBuffer(2 * numMessages);
+            ByteBuf headers = channel.alloc().directBuffer(64 * numMessages);
+            for (int i = 0; i < numMessages; i++) {
+                BaseCommand command = Commands.newMessageCommand(CONSUMER_ID, LEDGER_ID, i, -1, 0, null, -1);
+                ByteBuf entry = entries[i].retainedDuplicate();
+                int headerIndex = headers.writerIndex();
+                Commands.writeCommandMessageHeaders(command, entry.readableBytes(), headers);
+                frames.addComponent(true, headers.retainedSlice(headerIndex, headers.writerIndex() - headerIndex));
+                frames.addComponent(true, entry);
+            }
+            headers.release();
+            channel.writeAndFlush(frames);
+        }
+        channel.releaseOutbound();
+        return gatheredBuffers;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare the selection of the consumers of Key_Shared subscriptions by the consistent hashing selectors, from one
+ * dispatcher thread and from many of them sharing the same selector.
+ */
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class StickyKeyConsumerSelectorBenchmark {
+
+    @Param({"consistentHashing", "consistentHashingLookupTable"})
+    private String selectorType;
+
+    @Param({"10", "500"})
+    private int numConsumers;
+
+    @Param({"100"})
+    private int numberOfPoints;
+
+    private StickyKeyConsumerSelector selector;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        switch (selectorType) {
+            case "consistentHashing":
+                selector = new ConsistentHashingStickyKeyConsumerSelector(numberOfPoints);
+                break;
+            case "consistentHashingLookupTable":
+                selector = new ConsistentHashingLookupTableStickyKeyConsumerSelector(numberOfPoints);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown selector " + selectorType);
+        }
+        for (int i = 0; i < numConsumers; i++) {
+            selector.addConsumer(new BenchmarkConsumer("consumer-" + i));
+        }
+    }
+
+    @Threads(1)
+    @Benchmark
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public Consumer select001Threads() {
+        return selector.select(ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE));
+    }
+
+    @Threads(16)
+    @Benchmark
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public Consumer select016Threads() {
+        return selector.select(ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE));
+    }
+
+    /**
+     * Consumer without connection, compared by identity.
+     */
+    private static final class BenchmarkConsumer extends Consumer {
+        BenchmarkConsumer(String consumerName) {
+            super(consumerName, 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return this == obj;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+}
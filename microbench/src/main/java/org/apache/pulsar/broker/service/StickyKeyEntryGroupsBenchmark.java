@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.Position;
+import org.apache.bookkeeper.mledger.impl.EntryImpl;
+import org.apache.pulsar.broker.service.persistent.MessageRedeliveryController;
+import org.apache.pulsar.common.api.proto.MessageMetadata;
+import org.apache.pulsar.common.protocol.Commands;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Group a read batch of entries by the consumer selected for their sticky key, check the keys blocked by the
+ * messages to redeliver and build the lists of entries to send to each consumer, as the Key_Shared dispatcher does.
+ * The entries are read as they come from the managed ledger: the sticky key of each entry is peeked from its
+ * serialized metadata in every iteration.
+ *
+ * <p/>The "hashMap" grouping is the previous implementation of the dispatcher, with a map of lists of entries and a
+ * map of sets of hashes, and "entryGroups" is {@link StickyKeyEntryGroups}. The scores are per entry, run with
+ * {@code -prof gc} to compare the allocations per entry.
+ */
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class StickyKeyEntryGroupsBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"hashMap", "entryGroups"})
+    private String grouping;
+
+    @Param({"1", "10", "100"})
+    private int numConsumers;
+
+    @Param({"10", "1000"})
+    private int numKeys;
+
+    private StickyKeyConsumerSelector selector;
+    private MessageRedeliveryController redeliveryMessages;
+    private List<Entry> entries;
+    private final Map<Consumer, List<Entry>> groupedEntries = new HashMap<>();
+    private final StickyKeyEntryGroups groups = new StickyKeyEntryGroups();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        selector = new ConsistentHashingLookupTableStickyKeyConsumerSelector(100);
+        for (int i = 0; i < numConsumers; i++) {
+            selector.addConsumer(new BenchmarkConsumer("consumer-" + i));
+        }
+        // A message of a key which is not in the batches is waiting for redelivery
+        redeliveryMessages = new MessageRedeliveryController(false);
+        redeliveryMessages.add(1, 0, StickyKeyConsumerSelector.makeStickyKeyHash("blocked-key".getBytes()));
+
+        entries = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            MessageMetadata metadata = new MessageMetadata()
+                    .setProducerName("producer")
+                    .setSequenceId(i)
+                    .setPublishTime(System.currentTimeMillis())
+                    .setPartitionKey("key-" + (i % numKeys));
+            ByteBuf data = Commands.serializeMetadataAndPayload(Commands.ChecksumType.Crc32c, metadata,
+                    Unpooled.wrappedBuffer(new byte[100]));
+            entries.add(EntryImpl.create(1, i + 1, data));
+            data.release();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        entries.forEach(Entry::release);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public long groupEntries() {
+        return grouping.equals("hashMap") ? groupWithHashMaps() : groupWithEntryGroups();
+    }
+
+    private long groupWithHashMaps() {
+        long sent = 0;
+        groupedEntries.clear();
+        Map<Consumer, Set<Integer>> consumerStickyKeyHashesMap = new HashMap<>();
+        for (Entry entry : entries) {
+            int stickyKeyHash = getStickyKeyHash(entry);
+            Consumer c = selector.select(stickyKeyHash);
+            groupedEntries.computeIfAbsent(c, k -> new ArrayList<>()).add(entry);
+            consumerStickyKeyHashesMap.computeIfAbsent(c, k -> new HashSet<>()).add(stickyKeyHash);
+        }
+        for (Map.Entry<Consumer, List<Entry>> current : groupedEntries.entrySet()) {
+            List<Entry> entriesWithSameKey = current.getValue();
+            List<Position> positions = entriesWithSameKey.stream().map(Entry::getPosition)
+                    .collect(Collectors.toList());
+            if (!redeliveryMessages.containsStickyKeyHashes(consumerStickyKeyHashesMap.get(current.getKey()))) {
+                sent += positions.size() + entriesWithSameKey.size();
+            }
+        }
+        return sent;
+    }
+
+    private long groupWithEntryGroups() {
+        long sent = 0;
+        for (Entry entry : entries) {
+            int stickyKeyHash = getStickyKeyHash(entry);
+            groups.add(selector.select(stickyKeyHash), entry, stickyKeyHash);
+        }
+        for (int group = 0; group < groups.getGroupCount(); group++) {
+            int count = groups.getEntryCount(group);
+            if (!redeliveryMessages.containsStickyKeyHashes(groups.getGroupedStickyKeyHashes(),
+                    groups.getGroupOffset(group), count)) {
+                List<Entry> entriesWithSameKey = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    entriesWithSameKey.add(groups.getEntry(group, i));
+                }
+                sent += entriesWithSameKey.size();
+            }
+        }
+        groups.clear();
+        return sent;
+    }
+
+    private static int getStickyKeyHash(Entry entry) {
+        return StickyKeyConsumerSelector.makeStickyKeyHash(
+                Commands.peekStickyKey(entry.getDataBuffer(), "topic", "subscription"));
+    }
+
+    /**
+     * Consumer without connection, compared by identity.
+     */
+    private static final class BenchmarkConsumer extends Consumer {
+        BenchmarkConsumer(String consumerName) {
+            super(consumerName, 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return this == obj;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+}
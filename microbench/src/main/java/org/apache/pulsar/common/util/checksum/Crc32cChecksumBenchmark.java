@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.checksum;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compute the CRC32C checksum of a message payload with each {@link Crc32cProvider}, for several payload sizes and
+ * buffer types.
+ *
+ * <p/>The "resume" benchmark computes the checksum of the payload from the checksum of the headers, as the producer
+ * and the broker do for the metadata and the payload of a message.
+ */
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class Crc32cChecksumBenchmark {
+
+    @Param({"circe", "java"})
+    private String provider;
+
+    @Param({"64", "1024", "16384", "1048576"})
+    private int size;
+
+    @Param({"direct", "heap", "composite"})
+    private String bufferType;
+
+    private Crc32cProvider crc32cProvider;
+    private ByteBuf buffer;
+    private int headersChecksum;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        crc32cProvider = Crc32cChecksum.createProvider(provider);
+        byte[] payload = new byte[size];
+        ThreadLocalRandom.current().nextBytes(payload);
+        switch (bufferType) {
+            case "direct":
+                buffer = ByteBufAllocator.DEFAULT.directBuffer(size).writeBytes(payload);
+                break;
+            case "heap":
+                buffer = ByteBufAllocator.DEFAULT.heapBuffer(size).writeBytes(payload);
+                break;
+            default:
+                // Headers and payload of a message, as serialized by the producer
+                CompositeByteBuf composite = ByteBufAllocator.DEFAULT.compositeDirectBuffer();
+                int headersSize = Math.min(size / 2, 64);
+                composite.addComponent(true,
+                        ByteBufAllocator.DEFAULT.directBuffer(headersSize).writeBytes(payload, 0, headersSize));
+                composite.addComponent(true, ByteBufAllocator.DEFAULT.directBuffer(size - headersSize)
+                        .writeBytes(payload, headersSize, size - headersSize));
+                buffer = composite;
+                break;
+        }
+        headersChecksum = crc32cProvider.computeChecksum(Unpooled.copyLong(size));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        buffer.release();
+    }
+
+    @Benchmark
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public int compute() {
+        return crc32cProvider.computeChecksum(buffer);
+    }
+
+    @Benchmark
+    @Measurement(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    @Warmup(time = 10, timeUnit = TimeUnit.SECONDS, iterations = 1)
+    public int resume() {
+        return crc32cProvider.resumeChecksum(headersChecksum, buffer);
+    }
+}
@@ -280,6 +280,15 @@ public class ServiceConfiguration implements PulsarConfiguration {
     )
     private int numIOThreads = 2 * Runtime.getRuntime().availableProcessors();
 
+    @FieldContext(
+        category = CATEGORY_SERVER,
+        doc = "The flushes of a connection are deferred to the end of the current read or event loop task, so"
+            + " that the commands written meanwhile are flushed together. This is the number of bytes written"
+            + " to a connection after which a flush is not deferred anymore. Set to 0 to only stop deferring"
+            + " the flushes after 1024 flush requests."
+    )
+    private int connectionFlushConsolidationMaxBytes = 0;
+
     @FieldContext(
         category = CATEGORY_SERVER,
         doc = "Number of threads to use for orderedExecutor."
@@ -326,6 +335,14 @@ public class ServiceConfiguration implements PulsarConfiguration {
     )
     private boolean enableBusyWait = false;
 
+    @FieldContext(
+            category = CATEGORY_SERVER,
+            doc = "Option to use the io_uring transport for the Netty IO and acceptor threads, instead of epoll."
+                    + " It falls back to epoll when io_uring is not available on the host. It takes precedence"
+                    + " over enableBusyWait, which is only applied to the epoll event loops. Default is false."
+    )
+    private boolean enableIoUring = false;
+
     @FieldContext(category = CATEGORY_SERVER, doc = "Max concurrent web requests")
     private int maxConcurrentHttpRequests = 1024;
 
@@ -786,6 +803,13 @@ public class ServiceConfiguration implements PulsarConfiguration {
                 + "The higher the number, the more equal the assignment of keys to consumers")
     private int subscriptionKeySharedConsistentHashingReplicaPoints = 100;
 
+    @FieldContext(
+        category = CATEGORY_POLICIES,
+        doc = "On KeyShared subscriptions using consistent hashing, select the consumers from an immutable lookup "
+                + "table of the hash ring that is rebuilt when consumers are added or removed, instead of locking "
+                + "the hash ring for every message. The keys are assigned to the same consumers either way")
+    private boolean subscriptionKeySharedConsistentHashingLookupTableEnabled = false;
+
     @FieldContext(
         category = CATEGORY_POLICIES,
         doc = "Set the default behavior for message deduplication in the broker.\n\n"
@@ -822,6 +846,15 @@ public class ServiceConfiguration implements PulsarConfiguration {
     )
     private int brokerDeduplicationEntriesInterval = 1000;
 
+    @FieldContext(
+        category = CATEGORY_POLICIES,
+        minValue = 1,
+        doc = "Max number of ledger ranges that are read concurrently when replaying the entries published after"
+            + " the last dedup info snapshot, while recovering the deduplication state of a topic.\n\n"
+            + "With the default value of 1 the entries are replayed sequentially through the dedup cursor"
+    )
+    private int brokerDeduplicationRecoveryReadParallelism = 1;
+
     @FieldContext(
         category = CATEGORY_POLICIES,
         minValue = 1,
@@ -1117,6 +1150,14 @@ public class ServiceConfiguration implements PulsarConfiguration {
     )
     private boolean dispatcherDispatchMessagesInSubscriptionThread = true;
 
+    @FieldContext(
+            category = CATEGORY_SERVER,
+            doc = "Write the messages dispatched to a consumer in one go, as a composite buffer made of the command"
+                    + " headers and the entry buffers, instead of writing a frame per message. The entry buffers are"
+                    + " never copied. It has no effect on TLS connections"
+    )
+    private boolean dispatcherCompositeWriteEnabled = false;
+
     @FieldContext(
         dynamic = false,
         category = CATEGORY_SERVER,
@@ -1357,12 +1398,57 @@ public class ServiceConfiguration implements PulsarConfiguration {
     )
     private int messagePublishBufferCheckIntervalInMillis = 100;
 
+    @FieldContext(
+        category = CATEGORY_SERVER,
+        doc = "Whether to coalesce the consecutive small sends of a producer to a persistent topic into a single "
+                + "entry of the managed ledger, to reduce the number of BookKeeper writes.\n\n"
+                + "Only the uncompressed, unencrypted and non-transactional sends with the same key of the producers "
+                + "whose client supports the batch index in the send receipts are coalesced"
+    )
+    private boolean topicPublishCoalescingEnabled = false;
+
+    @FieldContext(
+        category = CATEGORY_SERVER,
+        doc = "Maximum time in microseconds that a send waits for other sends of the same producer to be coalesced "
+                + "with, when topicPublishCoalescingEnabled=true"
+    )
+    private int topicPublishCoalescingMaxDelayMicros = 1000;
+
+    @FieldContext(
+        category = CATEGORY_SERVER,
+        doc = "Maximum size in bytes of an entry built by coalescing sends, when topicPublishCoalescingEnabled=true"
+    )
+    private int topicPublishCoalescingMaxBytes = 128 * 1024;
+
+    @FieldContext(
+        category = CATEGORY_SERVER,
+        doc = "Whether to verify the checksums of the sends on the topic ordered executor instead of the IO threads. "
+                + "The sends of a producer are verified in batches, and their order is kept"
+    )
+    private boolean brokerPublishChecksumVerificationOffloadEnabled = false;
+
+    @FieldContext(
+        category = CATEGORY_SERVER,
+        doc = "Sample 1 out of N publishes of each producer to measure the latency of the phases of the publish "
+                + "(decode, interceptor, deduplication, storage queue, storage write and send receipt), exported "
+                + "per topic and namespace. 0 disables the sampling"
+    )
+    private int publishLatencyBreakdownSamplingRate = 0;
+
     @FieldContext(category = CATEGORY_SERVER, doc = "Whether to recover cursors lazily when trying to recover a "
             + "managed ledger backing a persistent topic. It can improve write availability of topics.\n"
-            + "The caveat is now when recovered ledger is ready to write we're not sure if all old consumers last mark "
-            + "delete position can be recovered or not.")
+            + "Only the mark delete positions stored in the cursors metadata are read before the topic is ready, and "
+            + "the ledgers are not trimmed past them until the cursors are recovered. The cursors are recovered in "
+            + "the background, or right away when a consumer subscribes. A cursor whose metadata can't be read "
+            + "doesn't fail the topic loading, it reads it again when it is recovered and no ledger is trimmed "
+            + "until then.")
     private boolean lazyCursorRecovery = false;
 
+    @FieldContext(category = CATEGORY_SERVER, doc = "Max number of cursors recovered concurrently when loading a "
+            + "persistent topic. It bounds the load put on the metadata store and the bookies when a lot of topics "
+            + "with many subscriptions are loaded at once, like after a broker failover. 0 means no limit.")
+    private int managedLedgerMaxConcurrentCursorRecoveries = 0;
+
     @FieldContext(
         category = CATEGORY_SERVER,
         doc = "Check between intervals to see if consumed ledgers need to be trimmed"
@@ -1978,11 +2064,33 @@ public class ServiceConfiguration implements PulsarConfiguration {
             + "inserting in cache")
     private boolean managedLedgerCacheCopyEntries = false;
 
+    @FieldContext(category = CATEGORY_STORAGE_ML, doc = "Whether the entry cache should store the entries of each "
+            + "ledger in array segments indexed by entry id, instead of a skip-list ordered by position")
+    private boolean managedLedgerCacheSegmentedEntriesEnabled = false;
+
+    @FieldContext(category = CATEGORY_STORAGE_ML, doc = "Directory on a local disk where the entries evicted from the"
+            + " managed ledger cache are spilled, in memory-mapped segment files, to serve catch-up reads without"
+            + " reading from the bookies. The segments left by a previous run are reused on startup")
+    private String managedLedgerCacheDiskTierDirectory = "data/ml-cache";
+
+    @FieldContext(category = CATEGORY_STORAGE_ML, doc = "Amount of disk space to use for the entries spilled from the"
+            + " managed ledger cache. The disk tier of the cache is disabled when set to 0")
+    private long managedLedgerCacheDiskTierSizeMB = 0;
+
+    @FieldContext(category = CATEGORY_STORAGE_ML, doc = "Size of each segment file of the managed ledger cache disk"
+            + " tier. When the disk tier is full, the oldest segment is dropped")
+    private int managedLedgerCacheDiskTierSegmentSizeMB = 64;
+
     @FieldContext(category = CATEGORY_STORAGE_ML, doc = "Maximum buffer size for bytes read from storage."
             + " This is the memory retained by data read from storage (or cache) until it has been delivered to the"
             + " Consumer Netty channel. Use O to disable")
     private long managedLedgerMaxReadsInFlightSizeInMB = 0;
 
+    @FieldContext(category = CATEGORY_STORAGE_ML, doc = "Whether to share the reads in flight budget fairly across"
+            + " namespaces. When the reads of other namespaces are waiting for the budget, a namespace that already"
+            + " has reads in flight can't hold more than an equal share of managedLedgerMaxReadsInFlightSizeInMB")
+    private boolean managedLedgerReadsInFlightFairSharingEnabled = false;
+
     @FieldContext(
         category = CATEGORY_STORAGE_ML,
         dynamic = true,
@@ -2002,6 +2110,12 @@ public class ServiceConfiguration implements PulsarConfiguration {
             dynamic = true,
             doc = "All entries that have stayed in cache for more than the configured time, will be evicted")
     private long managedLedgerCacheEvictionTimeThresholdMillis = 1000;
+    @FieldContext(category = CATEGORY_STORAGE_ML,
+            doc = "Class name of the policy used to select the entries to evict when the cache is full."
+                    + " Use org.apache.bookkeeper.mledger.impl.cache.EntryCacheFrequencyAwareEvictionPolicy to only"
+                    + " admit entries read from storage more than once and to protect the most read caches")
+    private String managedLedgerCacheEvictionPolicyClassName =
+            "org.apache.bookkeeper.mledger.impl.cache.EntryCacheDefaultEvictionPolicy";
     @FieldContext(category = CATEGORY_STORAGE_ML,
             doc = "Configure the threshold (in number of entries) from where a cursor should be considered 'backlogged'"
                     + " and thus should be set as inactive.")
@@ -2112,6 +2226,18 @@ public class ServiceConfiguration implements PulsarConfiguration {
         doc = "If enabled, the maximum \"acknowledgment holes\" will not be limited and \"acknowledgment holes\" "
                 + "are stored in multiple entries.")
     private boolean persistentUnackedRangesWithMultipleEntriesEnabled = false;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "If enabled, the `acknowledgment holes` are persisted in the cursor ledger as compressed bitmaps, and"
+            + " each update of the cursor position only appends the messages acknowledged since the previous update"
+            + " instead of all the `acknowledgment holes`. The number of holes is then not limited by"
+            + " managedLedgerMaxUnackedRangesToPersist.")
+    private boolean persistentUnackedRangesIncrementalEnabled = false;
+    @FieldContext(
+        category = CATEGORY_STORAGE_ML,
+        doc = "Number of incremental updates of the `acknowledgment holes` appended to the cursor ledger after which"
+            + " all the `acknowledgment holes` are written again, to bound the number of entries to read on recovery.")
+    private int persistentUnackedRangesCompactionThreshold = 100;
     @Deprecated
     @FieldContext(
         category = CATEGORY_STORAGE_ML,
@@ -2132,6 +2258,12 @@ public class ServiceConfiguration implements PulsarConfiguration {
             doc = "Use Open Range-Set to cache unacked messages (it is memory efficient but it can take more cpu)"
         )
     private boolean managedLedgerUnackedRangesOpenCacheSetEnabled = true;
+    @FieldContext(
+            category = CATEGORY_STORAGE_ML,
+            doc = "Use a range-set backed by roaring bitmaps to cache unacked messages. It compresses the runs of"
+                    + " acknowledged messages and takes precedence over managedLedgerUnackedRangesOpenCacheSetEnabled."
+        )
+    private boolean managedLedgerUnackedRangesRoaringBitmapEnabled = false;
     @FieldContext(
         dynamic = true,
         category = CATEGORY_STORAGE_ML,
@@ -2199,6 +2331,15 @@ public class ServiceConfiguration implements PulsarConfiguration {
                     + "0 means compression will always apply.\n")
     private long managedLedgerInfoCompressionThresholdInBytes = 16 * 1024;
 
+    @FieldContext(category = CATEGORY_STORAGE_ML,
+            doc = "Max number of ledgers kept in the ManagedLedgerInfo node of a topic. Beyond it, the oldest ledgers "
+                    + "are sealed into separate metadata nodes of this many ledgers, so that a ledger rollover or a "
+                    + "trim only rewrites the pages it touches instead of the whole ledgers list.\n"
+                    + "0 keeps the whole list in the ManagedLedgerInfo node. Brokers that don't support the paged "
+                    + "layout only see the ledgers of the ManagedLedgerInfo node: set it back to 0 and let the topics "
+                    + "update their ledgers list before downgrading.")
+    private int managedLedgerInfoPageSize = 0;
+
 
     @FieldContext(category = CATEGORY_STORAGE_ML,
             doc = "ManagedCursorInfo compression type, option values (NONE, LZ4, ZLIB, ZSTD, SNAPPY). \n"
@@ -3107,6 +3248,65 @@ public class ServiceConfiguration implements PulsarConfiguration {
     )
     private boolean cacheEvictionByMarkDeletedPosition = false;
 
+    @FieldContext(
+            category = CATEGORY_STORAGE_ML,
+            doc = "Retain the cached entries that were not read yet by all the active cursors of a topic, instead of "
+                    + "evicting them once they're older than managedLedgerCacheEvictionTimeThresholdMillis."
+    )
+    private boolean managedLedgerCacheRetentionByActiveCursors = false;
+
+    @FieldContext(
+            category = CATEGORY_STORAGE_ML,
+            doc = "Max size of the entries retained in cache for the active cursors of a single topic, when"
+                    + " managedLedgerCacheRetentionByActiveCursors is enabled. Over it, the entries furthest ahead of"
+                    + " the slowest active cursor are evicted first."
+    )
+    private long managedLedgerCacheRetentionMaxSizePerTopicInMB = 32;
+
+    @FieldContext(
+            category = CATEGORY_STORAGE_ML,
+            doc = "Whether the entries following the reads of a cursor that is sequentially catching up on its"
+                    + " backlog should be prefetched in the managed ledger cache. The number of prefetched entries"
+                    + " follows the read throughput of the cursor, and is capped by the memory available in the cache"
+                    + " and in managedLedgerMaxReadsInFlightSizeInMB. When managedLedgerMinimumBacklogCursorsForCaching"
+                    + " is enabled, only the cursors whose reads are cached read ahead."
+    )
+    private boolean managedLedgerReadAheadEnabled = false;
+
+    @FieldContext(
+            category = CATEGORY_STORAGE_ML,
+            doc = "Max number of entries prefetched ahead of the read position of a cursor, when"
+                    + " managedLedgerReadAheadEnabled is enabled."
+    )
+    private int managedLedgerReadAheadMaxEntries = 1000;
+
+    @FieldContext(
+            category = CATEGORY_STORAGE_ML,
+            doc = "Whether a newly added entry is handed over directly to the caught-up cursors waiting to read it,"
+                    + " instead of having each of them read it back from the entry cache. The cursors that are"
+                    + " behind keep reading their backlog as usual."
+    )
+    private boolean managedLedgerTailFanOutEnabled = false;
+
+    @FieldContext(
+            category = CATEGORY_STORAGE_ML,
+            doc = "Interval in milliseconds between the entries sampled in the publish time index of a ledger. The"
+                    + " index is stored with the ledger when it is closed and narrows the range of entries read when"
+                    + " seeking a subscription by time or expiring messages by TTL. At most 64 entries are sampled"
+                    + " per ledger, the interval is doubled for the rest of a ledger when it is reached."
+                    + " The index adds up to ~1KB per ledger to the metadata of the managed ledger."
+                    + " 0 disables the index."
+    )
+    private long managedLedgerTimestampIndexIntervalMillis = 0;
+
+    @FieldContext(
+            category = CATEGORY_STORAGE_ML,
+            doc = "Fraction of the max entries, max size or max rollover time of the current ledger of a topic above"
+                    + " which the next ledger is created and registered ahead of the rollover, so that the publishes"
+                    + " don't wait for a new ledger to be created when the current one is full. 0 disables it."
+    )
+    private double managedLedgerStandbyLedgerThreshold = 0;
+
     /**** --- Transaction config variables. --- ****/
     @FieldContext(
             category = CATEGORY_TRANSACTION,
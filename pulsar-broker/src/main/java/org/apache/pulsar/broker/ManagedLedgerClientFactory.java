@@ -62,9 +62,17 @@ public class ManagedLedgerClientFactory implements ManagedLedgerStorage {
         managedLedgerFactoryConfig.setCacheEvictionIntervalMs(conf.getManagedLedgerCacheEvictionIntervalMs());
         managedLedgerFactoryConfig.setCacheEvictionTimeThresholdMillis(
                 conf.getManagedLedgerCacheEvictionTimeThresholdMillis());
+        managedLedgerFactoryConfig.setCacheEvictionPolicyClassName(conf.getManagedLedgerCacheEvictionPolicyClassName());
         managedLedgerFactoryConfig.setCopyEntriesInCache(conf.isManagedLedgerCacheCopyEntries());
+        managedLedgerFactoryConfig.setSegmentedEntryCacheEnabled(conf.isManagedLedgerCacheSegmentedEntriesEnabled());
+        managedLedgerFactoryConfig.setDiskCacheDirectory(conf.getManagedLedgerCacheDiskTierDirectory());
+        managedLedgerFactoryConfig.setDiskCacheMaxSize(conf.getManagedLedgerCacheDiskTierSizeMB() * 1024L * 1024L);
+        managedLedgerFactoryConfig.setDiskCacheSegmentSize(
+                conf.getManagedLedgerCacheDiskTierSegmentSizeMB() * 1024 * 1024);
         managedLedgerFactoryConfig.setManagedLedgerMaxReadsInFlightSize(
                 conf.getManagedLedgerMaxReadsInFlightSizeInMB() * 1024L * 1024L);
+        managedLedgerFactoryConfig.setManagedLedgerReadsInFlightFairSharingEnabled(
+                conf.isManagedLedgerReadsInFlightFairSharingEnabled());
         managedLedgerFactoryConfig.setPrometheusStatsLatencyRolloverSeconds(
                 conf.getManagedLedgerPrometheusStatsLatencyRolloverSeconds());
         managedLedgerFactoryConfig.setTraceTaskExecution(conf.isManagedLedgerTraceTaskExecution());
@@ -72,6 +80,7 @@ public class ManagedLedgerClientFactory implements ManagedLedgerStorage {
         managedLedgerFactoryConfig.setManagedLedgerInfoCompressionType(conf.getManagedLedgerInfoCompressionType());
         managedLedgerFactoryConfig.setManagedLedgerInfoCompressionThresholdInBytes(
                 conf.getManagedLedgerInfoCompressionThresholdInBytes());
+        managedLedgerFactoryConfig.setManagedLedgerInfoPageSize(conf.getManagedLedgerInfoPageSize());
         managedLedgerFactoryConfig.setStatsPeriodSeconds(conf.getManagedLedgerStatsPeriodSeconds());
         managedLedgerFactoryConfig.setManagedCursorInfoCompressionType(conf.getManagedCursorInfoCompressionType());
         managedLedgerFactoryConfig.setManagedCursorInfoCompressionThresholdInBytes(
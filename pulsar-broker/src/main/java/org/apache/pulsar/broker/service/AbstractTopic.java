@@ -60,6 +60,7 @@ import org.apache.pulsar.broker.service.BrokerServiceException.TopicTerminatedEx
 import org.apache.pulsar.broker.service.plugin.EntryFilter;
 import org.apache.pulsar.broker.service.schema.SchemaRegistryService;
 import org.apache.pulsar.broker.service.schema.exceptions.IncompatibleSchemaException;
+import org.apache.pulsar.broker.stats.PublishLatencyStats;
 import org.apache.pulsar.broker.stats.prometheus.metrics.Summary;
 import org.apache.pulsar.common.api.proto.CommandSubscribe.SubType;
 import org.apache.pulsar.common.naming.NamespaceName;
@@ -113,6 +114,10 @@ public abstract class AbstractTopic implements Topic, TopicPolicyListener<TopicP
 
     protected StatsBuckets addEntryLatencyStatsUsec = new StatsBuckets(ENTRY_LATENCY_BUCKETS_USEC);
 
+    // Latency of the phases of the sampled publishes, null if the publishes are not sampled
+    @Getter
+    protected final PublishLatencyStats publishLatencyStats;
+
     // Whether messages published must be encrypted or not in this topic
     protected volatile boolean isEncryptionRequired = false;
 
@@ -171,6 +176,8 @@ public abstract class AbstractTopic implements Topic, TopicPolicyListener<TopicP
 
         this.lastActive = System.nanoTime();
         this.preciseTopicPublishRateLimitingEnable = config.isPreciseTopicPublishRateLimiterEnable();
+        this.publishLatencyStats = config.getPublishLatencyBreakdownSamplingRate() > 0
+                ? new PublishLatencyStats(topic, brokerService.getPublishPhaseLatencyHistogram()) : null;
         topicPublishRateLimiter = new PublishRateLimiterImpl(brokerService.getPulsar().getMonotonicSnapshotClock());
         updateActiveRateLimiters();
     }
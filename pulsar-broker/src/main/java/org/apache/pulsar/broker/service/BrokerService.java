@@ -38,6 +38,7 @@ import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.ssl.SslContext;
 import io.netty.util.concurrent.DefaultThreadFactory;
+import io.opentelemetry.api.metrics.DoubleHistogram;
 import io.opentelemetry.api.metrics.ObservableLongUpDownCounter;
 import io.prometheus.client.Histogram;
 import java.io.Closeable;
@@ -127,6 +128,7 @@ import org.apache.pulsar.broker.service.persistent.PersistentTopic;
 import org.apache.pulsar.broker.service.persistent.SystemTopic;
 import org.apache.pulsar.broker.service.plugin.EntryFilterProvider;
 import org.apache.pulsar.broker.stats.ClusterReplicationMetrics;
+import org.apache.pulsar.broker.stats.PublishLatencyStats;
 import org.apache.pulsar.broker.stats.prometheus.metrics.ObserverGauge;
 import org.apache.pulsar.broker.stats.prometheus.metrics.Summary;
 import org.apache.pulsar.broker.validator.BindAddressValidator;
@@ -166,6 +168,7 @@ import org.apache.pulsar.common.policies.data.RetentionPolicies;
 import org.apache.pulsar.common.policies.data.TopicPolicies;
 import org.apache.pulsar.common.policies.data.TopicType;
 import org.apache.pulsar.common.policies.data.stats.TopicStatsImpl;
+import org.apache.pulsar.common.protocol.Commands;
 import org.apache.pulsar.common.protocol.schema.SchemaVersion;
 import org.apache.pulsar.common.stats.Metrics;
 import org.apache.pulsar.common.util.FieldParser;
@@ -257,6 +260,10 @@ public class BrokerService implements Closeable {
     private final ObservableLongUpDownCounter pendingTopicLoadOperationsCounter;
     private final ObservableLongUpDownCounter pendingTopicLoadOperationsLimitCounter;
 
+    // Latency of the phases of the sampled publishes, if the sampling is enabled
+    @Getter
+    private final DoubleHistogram publishPhaseLatencyHistogram;
+
     private final ScheduledExecutorService inactivityMonitor;
     private final ScheduledExecutorService messageExpiryMonitor;
     private final ScheduledExecutorService compactionMonitor;
@@ -345,8 +352,8 @@ public class BrokerService implements Closeable {
         final DefaultThreadFactory acceptorThreadFactory =
                 new ExecutorProvider.ExtendedThreadFactory("pulsar-acceptor");
 
-        this.acceptorGroup = EventLoopUtil.newEventLoopGroup(
-                pulsar.getConfiguration().getNumAcceptorThreads(), false, acceptorThreadFactory);
+        this.acceptorGroup = EventLoopUtil.newEventLoopGroup(pulsar.getConfiguration().getNumAcceptorThreads(),
+                false, pulsar.getConfiguration().isEnableIoUring(), acceptorThreadFactory);
         this.workerGroup = eventLoopGroup;
         this.statsUpdater = OrderedScheduler.newSchedulerBuilder()
                 .name("pulsar-stats-updater")
@@ -452,6 +459,14 @@ public class BrokerService implements Closeable {
                 .setUnit("{operation}")
                 .buildWithCallback(
                         measurement -> measurement.record(pulsar.getConfig().getMaxConcurrentTopicLoadRequest()));
+        this.publishPhaseLatencyHistogram = pulsar.getConfig().getPublishLatencyBreakdownSamplingRate() > 0
+                ? pulsar.getOpenTelemetry().getMeter()
+                        .histogramBuilder(PublishLatencyStats.PUBLISH_PHASE_DURATION_METRIC_NAME)
+                        .setDescription("The duration of each phase of the publishes sampled with "
+                                + "\"publishLatencyBreakdownSamplingRate\" defined in broker.conf.")
+                        .setUnit("s")
+                        .build()
+                : null;
 
         this.brokerEntryMetadataInterceptors = BrokerEntryMetadataUtils
                 .loadBrokerEntryMetadataInterceptors(pulsar.getConfiguration().getBrokerEntryMetadataInterceptors(),
@@ -516,7 +531,8 @@ public class BrokerService implements Closeable {
             DefaultThreadFactory defaultThreadFactory =
                     new ExecutorProvider.ExtendedThreadFactory("pulsar-ph-" + protocol);
             EventLoopGroup dedicatedWorkerGroup =
-                    EventLoopUtil.newEventLoopGroup(configuration.getNumIOThreads(), false, defaultThreadFactory);
+                    EventLoopUtil.newEventLoopGroup(configuration.getNumIOThreads(), false,
+                            configuration.isEnableIoUring(), defaultThreadFactory);
             bootstrap.channel(EventLoopUtil.getServerSocketChannelClass(dedicatedWorkerGroup));
             protocolHandlersWorkerGroups.add(dedicatedWorkerGroup);
             bootstrap.group(this.acceptorGroup, dedicatedWorkerGroup);
@@ -1902,6 +1918,10 @@ public class BrokerService implements Closeable {
                     .setMaxUnackedRangesToPersist(serviceConfig.getManagedLedgerMaxUnackedRangesToPersist());
             managedLedgerConfig.setPersistentUnackedRangesWithMultipleEntriesEnabled(
                     serviceConfig.isPersistentUnackedRangesWithMultipleEntriesEnabled());
+            managedLedgerConfig.setPersistentUnackedRangesIncrementalEnabled(
+                    serviceConfig.isPersistentUnackedRangesIncrementalEnabled());
+            managedLedgerConfig.setPersistentUnackedRangesCompactionThreshold(
+                    serviceConfig.getPersistentUnackedRangesCompactionThreshold());
             managedLedgerConfig.setMaxUnackedRangesToPersistInMetadataStore(
                     serviceConfig.getManagedLedgerMaxUnackedRangesToPersistInMetadataStore());
             managedLedgerConfig.setMaxEntriesPerLedger(serviceConfig.getManagedLedgerMaxEntriesPerLedger());
@@ -1922,6 +1942,8 @@ public class BrokerService implements Closeable {
             managedLedgerConfig.setMetadataEnsembleSize(serviceConfig.getManagedLedgerDefaultEnsembleSize());
             managedLedgerConfig.setUnackedRangesOpenCacheSetEnabled(
                     serviceConfig.isManagedLedgerUnackedRangesOpenCacheSetEnabled());
+            managedLedgerConfig.setUnackedRangesRoaringBitmapEnabled(
+                    serviceConfig.isManagedLedgerUnackedRangesRoaringBitmapEnabled());
             managedLedgerConfig.setMetadataWriteQuorumSize(serviceConfig.getManagedLedgerDefaultWriteQuorum());
             managedLedgerConfig.setMetadataAckQuorumSize(serviceConfig.getManagedLedgerDefaultAckQuorum());
             managedLedgerConfig
@@ -1934,16 +1956,36 @@ public class BrokerService implements Closeable {
             managedLedgerConfig.setRetentionSizeInMB(retentionPolicies.getRetentionSizeInMB());
             managedLedgerConfig.setAutoSkipNonRecoverableData(serviceConfig.isAutoSkipNonRecoverableData());
             managedLedgerConfig.setLazyCursorRecovery(serviceConfig.isLazyCursorRecovery());
+            managedLedgerConfig.setMaxConcurrentCursorRecoveries(
+                    serviceConfig.getManagedLedgerMaxConcurrentCursorRecoveries());
             managedLedgerConfig.setInactiveLedgerRollOverTime(
                     serviceConfig.getManagedLedgerInactiveLedgerRolloverTimeSeconds(), TimeUnit.SECONDS);
             managedLedgerConfig.setCacheEvictionByMarkDeletedPosition(
                     serviceConfig.isCacheEvictionByMarkDeletedPosition());
+            managedLedgerConfig.setCacheRetentionByActiveCursors(
+                    serviceConfig.isManagedLedgerCacheRetentionByActiveCursors());
+            managedLedgerConfig.setCacheRetentionMaxSizeBytes(
+                    serviceConfig.getManagedLedgerCacheRetentionMaxSizePerTopicInMB() * 1024L * 1024L);
+            managedLedgerConfig.setReadAheadEnabled(serviceConfig.isManagedLedgerReadAheadEnabled());
+            managedLedgerConfig.setReadAheadMaxEntries(serviceConfig.getManagedLedgerReadAheadMaxEntries());
+            managedLedgerConfig.setTailFanOutEnabled(serviceConfig.isManagedLedgerTailFanOutEnabled());
+            managedLedgerConfig.setStandbyLedgerThreshold(serviceConfig.getManagedLedgerStandbyLedgerThreshold());
+            managedLedgerConfig.setTimestampIndexIntervalMillis(
+                    serviceConfig.getManagedLedgerTimestampIndexIntervalMillis());
+            managedLedgerConfig.setEntryTimestampExtractor(entryData -> {
+                try {
+                    return Commands.getEntryTimestamp(entryData);
+                } catch (IOException e) {
+                    return -1;
+                }
+            });
             managedLedgerConfig.setMinimumBacklogCursorsForCaching(
                     serviceConfig.getManagedLedgerMinimumBacklogCursorsForCaching());
             managedLedgerConfig.setMinimumBacklogEntriesForCaching(
                     serviceConfig.getManagedLedgerMinimumBacklogEntriesForCaching());
             managedLedgerConfig.setMaxBacklogBetweenCursorsForCaching(
                     serviceConfig.getManagedLedgerMaxBacklogBetweenCursorsForCaching());
+            managedLedgerConfig.setReadsInFlightGroup(namespace.toString());
 
             OffloadPoliciesImpl nsLevelOffloadPolicies =
                     (OffloadPoliciesImpl) policies.map(p -> p.offload_policies).orElse(null);
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import org.apache.pulsar.client.api.Range;
+import org.apache.pulsar.common.util.Murmur3_32Hash;
+
+/**
+ * This is a consumer selector based on consistent hashing, which assigns the keys to the consumers exactly like
+ * {@link ConsistentHashingStickyKeyConsumerSelector}, without locking when selecting a consumer.
+ *
+ * The hash ring is only modified when consumers are added or removed. After each modification, an immutable lookup
+ * table of the ring is built and published, holding the sorted points of the ring, the consumers of each point and
+ * a jump table from the high bits of the hashes to the first point of the ring that can hold them. Selecting a
+ * consumer reads the current lookup table, and usually finds the point holding a hash in a single step.
+ */
+public class ConsistentHashingLookupTableStickyKeyConsumerSelector implements StickyKeyConsumerSelector {
+    // use NUL character as field separator for hash key calculation
+    private static final String KEY_SEPARATOR = "\0";
+
+    private static final LookupTable EMPTY_LOOKUP_TABLE = new LookupTable(new TreeMap<>());
+
+    // Consistent-Hash ring, guarded by the selector monitor
+    private final NavigableMap<Integer, List<Consumer>> hashRing = new TreeMap<>();
+
+    private final int numberOfPoints;
+
+    private volatile LookupTable lookupTable = EMPTY_LOOKUP_TABLE;
+
+    public ConsistentHashingLookupTableStickyKeyConsumerSelector(int numberOfPoints) {
+        this.numberOfPoints = numberOfPoints;
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> addConsumer(Consumer consumer) {
+        // Insert multiple points on the hash ring for every consumer
+        // The points are deterministically added based on the hash of the consumer name
+        for (int i = 0; i < numberOfPoints; i++) {
+            int hash = calculateHashForConsumerAndIndex(consumer, i);
+            List<Consumer> consumers = hashRing.computeIfAbsent(hash, k -> new ArrayList<>(1));
+            if (!consumers.contains(consumer)) {
+                consumers.add(consumer);
+                consumers.sort(Comparator.comparing(Consumer::consumerName, String::compareTo));
+            }
+        }
+        lookupTable = new LookupTable(hashRing);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static int calculateHashForConsumerAndIndex(Consumer consumer, int index) {
+        String key = consumer.consumerName() + KEY_SEPARATOR + index;
+        return Murmur3_32Hash.getInstance().makeHash(key.getBytes());
+    }
+
+    @Override
+    public synchronized void removeConsumer(Consumer consumer) {
+        // Remove all the points that were added for this consumer
+        for (int i = 0; i < numberOfPoints; i++) {
+            int hash = calculateHashForConsumerAndIndex(consumer, i);
+            List<Consumer> consumers = hashRing.get(hash);
+            if (consumers != null) {
+                consumers.removeIf(c -> c.equals(consumer));
+                if (consumers.isEmpty()) {
+                    hashRing.remove(hash);
+                }
+            }
+        }
+        lookupTable = hashRing.isEmpty() ? EMPTY_LOOKUP_TABLE : new LookupTable(hashRing);
+    }
+
+    @Override
+    public Consumer select(int hash) {
+        return lookupTable.select(hash);
+    }
+
+    @Override
+    public Map<Consumer, List<Range>> getConsumerKeyHashRanges() {
+        LookupTable lookupTable = this.lookupTable;
+        Map<Consumer, List<Range>> result = new LinkedHashMap<>();
+        int start = 0;
+        for (int i = 0; i < lookupTable.points.length; i++) {
+            int point = lookupTable.points[i];
+            for (Consumer consumer : lookupTable.consumers[i]) {
+                result.computeIfAbsent(consumer, key -> new ArrayList<>()).add(Range.of(start, point));
+            }
+            start = point + 1;
+        }
+        return result;
+    }
+
+    private static final class LookupTable {
+        private static final int MAX_BUCKET_BITS = 20;
+
+        // Sorted points of the ring, and the consumers of each point
+        private final int[] points;
+        private final Consumer[][] consumers;
+        // Index of the first point greater than or equal to the lowest hash of each bucket of hashes
+        private final int[] buckets;
+        private final int bucketShift;
+
+        LookupTable(NavigableMap<Integer, List<Consumer>> hashRing) {
+            int size = hashRing.size();
+            points = new int[size];
+            consumers = new Consumer[size][];
+            int i = 0;
+            for (Map.Entry<Integer, List<Consumer>> entry : hashRing.entrySet()) {
+                points[i] = entry.getKey();
+                consumers[i] = entry.getValue().toArray(new Consumer[0]);
+                i++;
+            }
+
+            // Use about two buckets per point, so that most buckets hold at most one point
+            int bucketBits = Math.min(MAX_BUCKET_BITS,
+                    Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(2 * size - 1, 1)));
+            bucketShift = Integer.SIZE - 1 - bucketBits;
+            buckets = new int[1 << bucketBits];
+            int point = 0;
+            for (int bucket = 0; bucket < buckets.length; bucket++) {
+                long lowestHash = (long) bucket << bucketShift;
+                while (point < size && points[point] < lowestHash) {
+                    point++;
+                }
+                buckets[bucket] = point;
+            }
+        }
+
+        Consumer select(int hash) {
+            if (points.length == 0) {
+                return null;
+            }
+            // Find the first point greater than or equal to the hash, starting from the first point of its bucket
+            int point = hash < 0 ? 0 : buckets[hash >>> bucketShift];
+            while (point < points.length && points[point] < hash) {
+                point++;
+            }
+            if (point == points.length) {
+                point = 0;
+            }
+            Consumer[] pointConsumers = consumers[point];
+            return pointConsumers[hash % pointConsumers.length];
+        }
+    }
+}
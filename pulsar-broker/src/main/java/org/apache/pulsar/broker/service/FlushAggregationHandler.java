@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import java.util.concurrent.Future;
+import org.apache.pulsar.common.protocol.ByteBufPair;
+
+/**
+ * Aggregates the flushes of a broker connection.
+ *
+ * <p/>The flushes requested while a read is in progress are deferred to the end of the read, the ones requested
+ * outside a read are deferred to a task submitted to the event loop, so that all the commands written during an event
+ * loop tick (send receipts, dispatched messages, lookup responses...) go out with a single flush. The flush is not
+ * deferred anymore once {@code maxPendingFlushes} flushes or {@code maxPendingBytes} bytes are pending.
+ *
+ * <p/>The writes are never reordered, only the flushes are delayed, so the ordering of the commands sent to a producer
+ * or a consumer is preserved. It works like Netty's {@link io.netty.handler.flush.FlushConsolidationHandler}
+ * with {@code consolidateWhenNoReadInProgress} enabled, and records the number of flushes and of flushed bytes in the
+ * {@link PulsarStats}.
+ */
+public class FlushAggregationHandler extends ChannelDuplexHandler {
+
+    private final int maxPendingFlushes;
+    private final long maxPendingBytes;
+    private final PulsarStats pulsarStats;
+    private final Runnable flushTask;
+
+    private ChannelHandlerContext ctx;
+    private int pendingFlushes;
+    private long pendingBytes;
+    private boolean readInProgress;
+    private Future<?> nextScheduledFlush;
+
+    /**
+     * @param maxPendingFlushes
+     *            the number of flushes after which the pending writes are flushed
+     * @param maxPendingBytes
+     *            the number of written bytes after which a flush is not deferred anymore, 0 to disable
+     * @param pulsarStats
+     *            the broker stats the flushes are recorded to
+     */
+    public FlushAggregationHandler(int maxPendingFlushes, long maxPendingBytes, PulsarStats pulsarStats) {
+        if (maxPendingFlushes <= 0) {
+            throw new IllegalArgumentException("maxPendingFlushes: " + maxPendingFlushes + " (expected: > 0)");
+        }
+        if (maxPendingBytes < 0) {
+            throw new IllegalArgumentException("maxPendingBytes: " + maxPendingBytes + " (expected: >= 0)");
+        }
+        this.maxPendingFlushes = maxPendingFlushes;
+        this.maxPendingBytes = maxPendingBytes;
+        this.pulsarStats = pulsarStats;
+        this.flushTask = () -> {
+            nextScheduledFlush = null;
+            if (pendingFlushes > 0 && !readInProgress) {
+                flushNow(ctx);
+            }
+        };
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        pendingBytes += sizeOf(msg);
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (++pendingFlushes >= maxPendingFlushes || (maxPendingBytes > 0 && pendingBytes >= maxPendingBytes)) {
+            flushNow(ctx);
+        } else if (!readInProgress) {
+            scheduleFlush(ctx);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        resetReadAndFlushIfNeeded(ctx);
+        ctx.close(promise);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable()) {
+            // Flush the pending writes so that the channel becomes writable again
+            flushIfNeeded(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        flushIfNeeded(ctx);
+    }
+
+    private void resetReadAndFlushIfNeeded(ChannelHandlerContext ctx) {
+        readInProgress = false;
+        flushIfNeeded(ctx);
+    }
+
+    private void flushIfNeeded(ChannelHandlerContext ctx) {
+        if (pendingFlushes > 0) {
+            flushNow(ctx);
+        }
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        cancelScheduledFlush();
+        if (pulsarStats != null) {
+            pulsarStats.recordConnectionFlush(pendingBytes);
+        }
+        pendingFlushes = 0;
+        pendingBytes = 0;
+        ctx.flush();
+    }
+
+    private void scheduleFlush(ChannelHandlerContext ctx) {
+        if (nextScheduledFlush == null) {
+            nextScheduledFlush = ctx.channel().eventLoop().submit(flushTask);
+        }
+    }
+
+    private void cancelScheduledFlush() {
+        if (nextScheduledFlush != null) {
+            nextScheduledFlush.cancel(false);
+            nextScheduledFlush = null;
+        }
+    }
+
+    private static long sizeOf(Object msg) {
+        if (msg instanceof ByteBuf buf) {
+            return buf.readableBytes();
+        } else if (msg instanceof ByteBufPair pair) {
+            return pair.readableBytes();
+        } else if (msg instanceof ByteBufHolder holder) {
+            return holder.content().readableBytes();
+        }
+        return 0;
+    }
+}
@@ -18,24 +18,27 @@
  */
 package org.apache.pulsar.broker.service;
 
-import static com.scurrilous.circe.checksum.Crc32cIntChecksum.computeChecksum;
 import static org.apache.pulsar.broker.service.AbstractReplicator.REPL_PRODUCER_NAME_DELIMITER;
 import static org.apache.pulsar.common.protocol.Commands.hasChecksum;
 import static org.apache.pulsar.common.protocol.Commands.readChecksum;
+import static org.apache.pulsar.common.util.checksum.Crc32cChecksum.computeChecksum;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import io.netty.buffer.ByteBuf;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
+import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import org.apache.bookkeeper.mledger.AddEntryLatencyRecorder;
 import org.apache.bookkeeper.mledger.Position;
 import org.apache.pulsar.broker.ServiceConfiguration;
 import org.apache.pulsar.broker.intercept.BrokerInterceptor;
@@ -45,6 +48,8 @@ import org.apache.pulsar.broker.service.BrokerServiceException.TopicTerminatedEx
 import org.apache.pulsar.broker.service.Topic.PublishContext;
 import org.apache.pulsar.broker.service.nonpersistent.NonPersistentTopic;
 import org.apache.pulsar.broker.service.persistent.PersistentTopic;
+import org.apache.pulsar.broker.stats.PublishLatencyStats;
+import org.apache.pulsar.broker.stats.PublishLatencyStats.Phase;
 import org.apache.pulsar.client.api.transaction.TxnID;
 import org.apache.pulsar.common.api.proto.CommandTopicMigrated.ResourceType;
 import org.apache.pulsar.common.api.proto.MessageMetadata;
@@ -102,6 +107,17 @@ public class Producer {
     private final String clientAddress; // IP address only, no port number included
     private final AtomicBoolean isDisconnecting = new AtomicBoolean(false);
 
+    // Thread verifying the checksums of the publishes, when the verification is offloaded from the IO thread
+    private final Executor checksumVerificationExecutor;
+    // Publishes waiting for the verification of their checksum, in the order they were received
+    private final ArrayDeque<PendingPublish> pendingChecksumVerifications = new ArrayDeque<>();
+    // Guarded by pendingChecksumVerifications
+    private boolean checksumVerificationScheduled;
+
+    // Sample 1 out of publishLatencySamplingRate publishes to measure the latency of their phases, if positive
+    private final int publishLatencySamplingRate;
+    private long publishLatencySampleCounter;
+
     public Producer(Topic topic, TransportCnx cnx, long producerId, String producerName, String appId,
             boolean isEncrypted, Map<String, String> metadata, SchemaVersion schemaVersion, long epoch,
             boolean userProvidedProducerName,
@@ -157,6 +173,10 @@ public class Producer {
 
         this.clientAddress = cnx.clientSourceAddress();
         this.brokerInterceptor = cnx.getBrokerService().getInterceptor();
+        this.checksumVerificationExecutor = serviceConf.isBrokerPublishChecksumVerificationOffloadEnabled()
+                ? cnx.getBrokerService().getTopicOrderedExecutor().chooseThread(producerName) : null;
+        this.publishLatencySamplingRate = topic.getPublishLatencyStats() != null
+                ? serviceConf.getPublishLatencyBreakdownSamplingRate() : 0;
     }
 
     /**
@@ -188,7 +208,8 @@ public class Producer {
 
     public void publishMessage(long producerId, long sequenceId, ByteBuf headersAndPayload, long batchSize,
             boolean isChunked, boolean isMarker, Position position) {
-        if (checkAndStartPublish(producerId, sequenceId, headersAndPayload, batchSize, position)) {
+        if (checkAndStartPublish(producerId, sequenceId, headersAndPayload, batchSize, position,
+                checksumVerificationExecutor == null)) {
             publishMessageToTopic(headersAndPayload, sequenceId, batchSize, isChunked, isMarker, position);
         }
     }
@@ -203,7 +224,8 @@ public class Producer {
             });
             return;
         }
-        if (checkAndStartPublish(producerId, highestSequenceId, headersAndPayload, batchSize, position)) {
+        if (checkAndStartPublish(producerId, highestSequenceId, headersAndPayload, batchSize, position,
+                checksumVerificationExecutor == null)) {
             publishMessageToTopic(headersAndPayload, lowestSequenceId, highestSequenceId, batchSize, isChunked,
                     isMarker, position);
         }
@@ -211,6 +233,11 @@ public class Producer {
 
     public boolean checkAndStartPublish(long producerId, long sequenceId, ByteBuf headersAndPayload, long batchSize,
                                         Position position) {
+        return checkAndStartPublish(producerId, sequenceId, headersAndPayload, batchSize, position, true);
+    }
+
+    private boolean checkAndStartPublish(long producerId, long sequenceId, ByteBuf headersAndPayload, long batchSize,
+                                         Position position, boolean verifyChecksum) {
         if (!isShadowTopic && position != null) {
             cnx.execute(() -> {
                 cnx.getCommandSender().sendSendError(producerId, sequenceId, ServerError.NotAllowedError,
@@ -236,7 +263,7 @@ public class Producer {
             return false;
         }
 
-        if (!verifyChecksum(headersAndPayload)) {
+        if (verifyChecksum && !verifyChecksum(headersAndPayload)) {
             cnx.execute(() -> {
                 cnx.getCommandSender().sendSendError(producerId, sequenceId, ServerError.ChecksumError,
                         "Checksum failed on the broker");
@@ -272,11 +299,7 @@ public class Producer {
         MessagePublishContext messagePublishContext =
                 MessagePublishContext.get(this, sequenceId, msgIn, headersAndPayload.readableBytes(),
                         batchSize, isChunked, System.nanoTime(), isMarker, position);
-        if (brokerInterceptor != null) {
-            brokerInterceptor
-                    .onMessagePublish(this, headersAndPayload, messagePublishContext);
-        }
-        topic.publishMessage(headersAndPayload, messagePublishContext);
+        publishMessageToTopic(headersAndPayload, messagePublishContext, null);
     }
 
     private void publishMessageToTopic(ByteBuf headersAndPayload, long lowestSequenceId, long highestSequenceId,
@@ -284,11 +307,108 @@ public class Producer {
         MessagePublishContext messagePublishContext = MessagePublishContext.get(this, lowestSequenceId,
                 highestSequenceId, msgIn, headersAndPayload.readableBytes(), batchSize,
                 isChunked, System.nanoTime(), isMarker, position);
-        if (brokerInterceptor != null) {
-            brokerInterceptor
-                    .onMessagePublish(this, headersAndPayload, messagePublishContext);
+        publishMessageToTopic(headersAndPayload, messagePublishContext, null);
+    }
+
+    private void publishMessageToTopic(ByteBuf headersAndPayload, MessagePublishContext messagePublishContext,
+                                       TxnID txnID) {
+        if (publishLatencySamplingRate > 0 && ++publishLatencySampleCounter % publishLatencySamplingRate == 0) {
+            messagePublishContext.latencySampled = true;
+            if (cnx instanceof ServerCnx serverCnx) {
+                topic.getPublishLatencyStats().recordLatency(Phase.DECODE,
+                        messagePublishContext.startTimeNs - serverCnx.getCommandReceivedTimeNs());
+            }
+        }
+        if (checksumVerificationExecutor != null) {
+            // Keep the order of all the publishes of the producer, with or without checksum
+            PendingPublish pendingPublish = new PendingPublish(headersAndPayload.retain(), messagePublishContext,
+                    txnID);
+            synchronized (pendingChecksumVerifications) {
+                pendingChecksumVerifications.add(pendingPublish);
+                if (checksumVerificationScheduled) {
+                    return;
+                }
+                checksumVerificationScheduled = true;
+            }
+            checksumVerificationExecutor.execute(this::verifyChecksumsAndPublish);
+            return;
+        }
+        notifyInterceptor(headersAndPayload, messagePublishContext);
+        if (txnID != null) {
+            topic.publishTxnMessage(txnID, headersAndPayload, messagePublishContext);
+        } else {
+            topic.publishMessage(headersAndPayload, messagePublishContext);
+        }
+    }
+
+    private void notifyInterceptor(ByteBuf headersAndPayload, MessagePublishContext messagePublishContext) {
+        if (brokerInterceptor == null) {
+            return;
+        }
+        long startTimeNs = messagePublishContext.latencySampled ? System.nanoTime() : 0;
+        brokerInterceptor.onMessagePublish(this, headersAndPayload, messagePublishContext);
+        if (messagePublishContext.latencySampled) {
+            topic.getPublishLatencyStats().recordLatency(Phase.INTERCEPTOR, System.nanoTime() - startTimeNs);
+        }
+    }
+
+    /**
+     * Verify the checksums of all the publishes received since the last run, and publish them to the topic.
+     */
+    private void verifyChecksumsAndPublish() {
+        while (true) {
+            PendingPublish pendingPublish;
+            synchronized (pendingChecksumVerifications) {
+                pendingPublish = pendingChecksumVerifications.poll();
+                if (pendingPublish == null) {
+                    checksumVerificationScheduled = false;
+                    return;
+                }
+            }
+            ByteBuf headersAndPayload = pendingPublish.headersAndPayload;
+            MessagePublishContext messagePublishContext = pendingPublish.messagePublishContext;
+            try {
+                if (verifyChecksum(headersAndPayload)) {
+                    notifyInterceptor(headersAndPayload, messagePublishContext);
+                    if (pendingPublish.txnID != null) {
+                        topic.publishTxnMessage(pendingPublish.txnID, headersAndPayload, messagePublishContext);
+                    } else {
+                        topic.publishMessage(headersAndPayload, messagePublishContext);
+                    }
+                } else {
+                    int msgSize = headersAndPayload.readableBytes();
+                    cnx.execute(() -> {
+                        cnx.getCommandSender().sendSendError(producerId,
+                                Math.max(messagePublishContext.getHighestSequenceId(),
+                                        messagePublishContext.getSequenceId()),
+                                ServerError.ChecksumError, "Checksum failed on the broker");
+                        cnx.completedSendOperation(isNonPersistentTopic, msgSize);
+                        publishOperationCompleted();
+                        messagePublishContext.recycle();
+                    });
+                }
+            } catch (Throwable t) {
+                log.error("[{}] [{}] Failed to publish message", topic, producerName, t);
+                messagePublishContext.completed(new BrokerServiceException(t), -1, -1);
+            } finally {
+                headersAndPayload.release();
+            }
+        }
+    }
+
+    /**
+     * Publish waiting for the verification of its checksum.
+     */
+    private static final class PendingPublish {
+        private final ByteBuf headersAndPayload;
+        private final MessagePublishContext messagePublishContext;
+        private final TxnID txnID;
+
+        PendingPublish(ByteBuf headersAndPayload, MessagePublishContext messagePublishContext, TxnID txnID) {
+            this.headersAndPayload = headersAndPayload;
+            this.messagePublishContext = messagePublishContext;
+            this.txnID = txnID;
         }
-        topic.publishMessage(headersAndPayload, messagePublishContext);
     }
 
     private boolean verifyChecksum(ByteBuf headersAndPayload) {
@@ -364,7 +484,8 @@ public class Producer {
     /**
      * MessagePublishContext implements Position because that ShadowManagedLedger need to know the source position info.
      */
-    private static final class MessagePublishContext implements PublishContext, Runnable, Position {
+    private static final class MessagePublishContext implements PublishContext, Runnable, Position,
+            AddEntryLatencyRecorder {
         /*
          * To store context information built by message payload
          * processors (time duration, size etc), if any configured
@@ -390,6 +511,13 @@ public class Producer {
 
         private long entryTimestamp;
 
+        // Index of the first message in the entry, when the broker has coalesced the publish with others
+        private int batchIndexOffset = -1;
+
+        // Whether the latency of the phases of the publish is measured, and the time the write was completed
+        private boolean latencySampled;
+        private long completedTimeNs;
+
         @Override
         public Position getNext() {
             return null;
@@ -469,6 +597,30 @@ public class Producer {
             return originalSequenceId;
         }
 
+        @Override
+        public boolean supportsBatchIndexOffset() {
+            return producer.getCnx() instanceof ServerCnx serverCnx && serverCnx.supportsSendReceiptBatchIndex();
+        }
+
+        @Override
+        public void setBatchIndexOffset(int batchIndexOffset) {
+            this.batchIndexOffset = batchIndexOffset;
+        }
+
+        @Override
+        public boolean isLatencySampled() {
+            return latencySampled;
+        }
+
+        @Override
+        public void recordAddEntryLatency(long queuedNanos, long ledgerWriteNanos) {
+            if (latencySampled) {
+                PublishLatencyStats publishLatencyStats = producer.topic.getPublishLatencyStats();
+                publishLatencyStats.recordLatency(Phase.STORAGE_QUEUE, queuedNanos);
+                publishLatencyStats.recordLatency(Phase.STORAGE_WRITE, ledgerWriteNanos);
+            }
+        }
+
         @Override
         public void setOriginalHighestSequenceId(long originalHighestSequenceId) {
             this.originalHighestSequenceId = originalHighestSequenceId;
@@ -514,6 +666,9 @@ public class Producer {
 
                 this.ledgerId = ledgerId;
                 this.entryId = entryId;
+                if (latencySampled) {
+                    completedTimeNs = System.nanoTime();
+                }
                 producer.cnx.execute(this);
             }
         }
@@ -543,8 +698,17 @@ public class Producer {
             // stats
             rateIn.recordMultipleEvents(batchSize, msgSize);
             producer.topic.recordAddLatency(System.nanoTime() - startTimeNs, TimeUnit.NANOSECONDS);
-            producer.cnx.getCommandSender().sendSendReceiptResponse(producer.producerId, sequenceId, highestSequenceId,
-                    ledgerId, entryId);
+            if (batchIndexOffset >= 0) {
+                producer.cnx.getCommandSender().sendSendReceiptResponse(producer.producerId, sequenceId,
+                        highestSequenceId, ledgerId, entryId, batchIndexOffset);
+            } else {
+                producer.cnx.getCommandSender().sendSendReceiptResponse(producer.producerId, sequenceId,
+                        highestSequenceId, ledgerId, entryId);
+            }
+            if (latencySampled) {
+                producer.topic.getPublishLatencyStats().recordLatency(Phase.SEND_RECEIPT,
+                        System.nanoTime() - completedTimeNs);
+            }
             producer.cnx.completedSendOperation(producer.isNonPersistentTopic, msgSize);
             if (this.chunked) {
                 producer.chunkedMessageRate.recordEvent();
@@ -572,6 +736,8 @@ public class Producer {
             callback.isMarker = isMarker;
             callback.ledgerId = position == null ? -1 : position.getLedgerId();
             callback.entryId = position == null ? -1 : position.getEntryId();
+            callback.batchIndexOffset = -1;
+            callback.latencySampled = false;
             if (callback.propertyMap != null) {
                 callback.propertyMap.clear();
             }
@@ -594,6 +760,8 @@ public class Producer {
             callback.isMarker = isMarker;
             callback.ledgerId = position == null ? -1 : position.getLedgerId();
             callback.entryId = position == null ? -1 : position.getEntryId();
+            callback.batchIndexOffset = -1;
+            callback.latencySampled = false;
             if (callback.propertyMap != null) {
                 callback.propertyMap.clear();
             }
@@ -641,6 +809,9 @@ public class Producer {
             startTimeNs = -1L;
             chunked = false;
             isMarker = false;
+            batchIndexOffset = -1;
+            latencySampled = false;
+            completedTimeNs = 0L;
             if (propertyMap != null) {
                 propertyMap.clear();
             }
@@ -818,17 +989,14 @@ public class Producer {
 
     public void publishTxnMessage(TxnID txnID, long producerId, long sequenceId, long highSequenceId,
                                   ByteBuf headersAndPayload, long batchSize, boolean isChunked, boolean isMarker) {
-        if (!checkAndStartPublish(producerId, sequenceId, headersAndPayload, batchSize, null)) {
+        if (!checkAndStartPublish(producerId, sequenceId, headersAndPayload, batchSize, null,
+                checksumVerificationExecutor == null)) {
             return;
         }
         MessagePublishContext messagePublishContext =
                 MessagePublishContext.get(this, sequenceId, highSequenceId, msgIn,
                         headersAndPayload.readableBytes(), batchSize, isChunked, System.nanoTime(), isMarker, null);
-        if (brokerInterceptor != null) {
-            brokerInterceptor
-                    .onMessagePublish(this, headersAndPayload, messagePublishContext);
-        }
-        topic.publishTxnMessage(txnID, headersAndPayload, messagePublishContext);
+        publishMessageToTopic(headersAndPayload, messagePublishContext, txnID);
     }
 
     public SchemaVersion getSchemaVersion() {
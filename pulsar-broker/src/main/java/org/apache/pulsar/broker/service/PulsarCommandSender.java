@@ -49,6 +49,9 @@ public interface PulsarCommandSender {
     void sendSendReceiptResponse(long producerId, long sequenceId, long highestId, long ledgerId,
                                  long entryId);
 
+    void sendSendReceiptResponse(long producerId, long sequenceId, long highestId, long ledgerId,
+                                 long entryId, int batchIndex);
+
     void sendSendError(long producerId, long sequenceId, ServerError error, String errorMsg);
 
     void sendGetTopicsOfNamespaceResponse(List<String> topics, String topicsHash, boolean filtered,
@@ -19,6 +19,7 @@
 package org.apache.pulsar.broker.service;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
@@ -29,6 +30,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.mledger.Entry;
 import org.apache.pulsar.broker.intercept.BrokerInterceptor;
 import org.apache.pulsar.client.api.transaction.TxnID;
+import org.apache.pulsar.common.allocator.PulsarByteBufAllocator;
 import org.apache.pulsar.common.api.proto.BaseCommand;
 import org.apache.pulsar.common.api.proto.CommandLookupTopicResponse;
 import org.apache.pulsar.common.api.proto.CommandTopicMigrated.ResourceType;
@@ -42,6 +44,9 @@ import org.apache.pulsar.common.util.netty.NettyChannelUtil;
 @Slf4j
 public class PulsarCommandSenderImpl implements PulsarCommandSender {
 
+    // Expected size of the frame size and command that precede each dispatched message
+    private static final int ESTIMATED_MESSAGE_HEADERS_SIZE = 64;
+
     private final BrokerInterceptor interceptor;
     private final ServerCnx cnx;
 
@@ -111,6 +116,16 @@ public class PulsarCommandSenderImpl implements PulsarCommandSender {
         writeAndFlush(outBuf);
     }
 
+    @Override
+    public void sendSendReceiptResponse(long producerId, long sequenceId, long highestId, long ledgerId,
+                                        long entryId, int batchIndex) {
+        BaseCommand command = Commands.newSendReceiptCommand(producerId, sequenceId, highestId, ledgerId,
+                entryId, batchIndex);
+        safeIntercept(command, cnx);
+        ByteBuf outBuf = Commands.serializeWithSize(command);
+        writeAndFlush(outBuf);
+    }
+
     @Override
     public void sendSendError(long producerId, long sequenceId, ServerError error, String errorMsg) {
         BaseCommand command = Commands.newSendErrorCommand(producerId, sequenceId, error, errorMsg);
@@ -231,6 +246,14 @@ public class PulsarCommandSenderImpl implements PulsarCommandSender {
             // and in the completion of the writePromise
             // it is safe to use a simple ArrayList
             List<Entry> entriesToRelease = new ArrayList<>(entries.size());
+            // When enabled, all the messages are written at once as a composite buffer that references the headers
+            // and the entry buffers, rather than going through the pipeline once per message
+            CompositeByteBuf frames = null;
+            ByteBuf headers = null;
+            if (cnx.isCompositeDispatchWriteEnabled()) {
+                frames = ctx.alloc().compositeDirectBuffer(Math.max(2, 2 * entries.size()));
+                headers = PulsarByteBufAllocator.DEFAULT.buffer(ESTIMATED_MESSAGE_HEADERS_SIZE * entries.size());
+            }
             for (int i = 0; i < entries.size(); i++) {
                 Entry entry = entries.get(i);
                 if (entry == null) {
@@ -274,16 +297,27 @@ public class PulsarCommandSenderImpl implements PulsarCommandSender {
                 int redeliveryCount = redeliveryTracker
                         .getRedeliveryCount(entry.getLedgerId(), entry.getEntryId());
 
-                ctx.write(
-                        cnx.newMessageAndIntercept(consumerId, entry.getLedgerId(), entry.getEntryId(), partitionIdx,
-                                redeliveryCount, metadataAndPayload,
-                                batchIndexesAcks == null ? null : batchIndexesAcks.getAckSet(i), topicName, epoch),
-                        ctx.voidPromise());
+                long[] ackSet = batchIndexesAcks == null ? null : batchIndexesAcks.getAckSet(i);
+                if (frames != null) {
+                    cnx.addMessageAndIntercept(frames, headers, consumerId, entry.getLedgerId(), entry.getEntryId(),
+                            partitionIdx, redeliveryCount, metadataAndPayload, ackSet, topicName, epoch);
+                } else {
+                    ctx.write(
+                            cnx.newMessageAndIntercept(consumerId, entry.getLedgerId(), entry.getEntryId(),
+                                    partitionIdx, redeliveryCount, metadataAndPayload, ackSet, topicName, epoch),
+                            ctx.voidPromise());
+                }
                 entriesToRelease.add(entry);
             }
 
-            // Use an empty write here so that we can just tie the flush with the write promise for last entry
-            ctx.writeAndFlush(Unpooled.EMPTY_BUFFER, writePromise);
+            if (frames != null) {
+                // The slices added to the frames hold their own reference to the headers
+                headers.release();
+                ctx.writeAndFlush(frames, writePromise);
+            } else {
+                // Use an empty write here so that we can just tie the flush with the write promise for last entry
+                ctx.writeAndFlush(Unpooled.EMPTY_BUFFER, writePromise);
+            }
             writePromise.addListener((future) -> {
                 // release the entries only after flushing the channel
                 //
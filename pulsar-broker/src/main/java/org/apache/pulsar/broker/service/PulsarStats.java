@@ -265,6 +265,14 @@ public class PulsarStats implements Closeable {
         }
     }
 
+    public void recordDedupRecoveryTimeValue(String topic, long dedupRecoveryLatencyMs) {
+        try {
+            brokerOperabilityMetrics.recordDedupRecoveryTimeValue(dedupRecoveryLatencyMs);
+        } catch (Exception ex) {
+            log.warn("Exception while recording dedup recovery time for topic {}, {}", topic, ex.getMessage());
+        }
+    }
+
     public void recordTopicLoadFailed() {
         brokerOperabilityMetrics.recordTopicLoadFailed();
     }
@@ -284,4 +292,8 @@ public class PulsarStats implements Closeable {
     public void recordConnectionCreateFail() {
         brokerOperabilityMetrics.recordConnectionCreateFail();
     }
+
+    public void recordConnectionFlush(long flushedBytes) {
+        brokerOperabilityMetrics.recordConnectionFlush(flushedBytes);
+    }
 }
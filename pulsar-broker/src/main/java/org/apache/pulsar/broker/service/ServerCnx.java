@@ -34,6 +34,7 @@ import static org.apache.pulsar.common.protocol.Commands.newLookupErrorResponse;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOption;
@@ -214,6 +215,14 @@ public class ServerCnx extends PulsarHandler implements TransportCnx {
     private final int maxPendingSendRequests;
     private final int resumeReadsThreshold;
     private int pendingSendRequest = 0;
+    // Whether a sample of the publishes is timed, to measure the latency of their phases
+    private final boolean publishLatencySamplingEnabled;
+    // Time the last command was received, to measure the latency of the sampled publishes
+    private long commandReceivedTimeNs;
+    // Whether the dispatched messages are written as a composite buffer, it's never the case on TLS connections
+    // since the TLS handler would modify the entry buffers that are shared with the cache
+    private final boolean dispatcherCompositeWriteEnabled;
+    private boolean compositeDispatchWriteEnabled;
     private final String replicatorPrefix;
     private String clientVersion = null;
     private String proxyVersion = null;
@@ -328,6 +337,8 @@ public class ServerCnx extends PulsarHandler implements TransportCnx {
         this.maxMessageSize = conf.getMaxMessageSize();
         this.maxPendingSendRequests = conf.getMaxPendingPublishRequestsPerConnection();
         this.resumeReadsThreshold = maxPendingSendRequests / 2;
+        this.publishLatencySamplingEnabled = conf.getPublishLatencyBreakdownSamplingRate() > 0;
+        this.dispatcherCompositeWriteEnabled = conf.isDispatcherCompositeWriteEnabled();
         this.preciseDispatcherFlowControl = conf.isPreciseDispatcherFlowControl();
         this.encryptionRequireOnProducer = conf.isEncryptionRequireOnProducer();
         // Assign a portion of max-pending bytes to each IO thread
@@ -361,6 +372,8 @@ public class ServerCnx extends PulsarHandler implements TransportCnx {
             log.debug("New connection from {}", remoteAddress);
         }
         this.ctx = ctx;
+        this.compositeDispatchWriteEnabled = dispatcherCompositeWriteEnabled
+                && ctx.pipeline().get(PulsarChannelInitializer.TLS_HANDLER) == null;
         this.commandSender = new PulsarCommandSenderImpl(brokerInterceptor, this);
         this.service.getPulsarStats().recordConnectionCreate();
         cnxsPerThread.get().add(this);
@@ -3332,6 +3345,29 @@ public class ServerCnx extends PulsarHandler implements TransportCnx {
         BaseCommand command = Commands.newMessageCommand(consumerId, ledgerId, entryId, partition, redeliveryCount,
                 ackSet, epoch);
         ByteBufPair res = Commands.serializeCommandMessageWithSize(command, metadataAndPayload);
+        interceptMessage(command, consumerId, ledgerId, entryId, metadataAndPayload);
+        return res;
+    }
+
+    /**
+     * Same as {@link #newMessageAndIntercept}, but the frame is appended to {@code frames} instead of being returned.
+     * The command header is serialized in {@code headers}, which is shared by all the frames of a dispatch, and the
+     * ownership of {@code metadataAndPayload} is transferred to {@code frames}.
+     */
+    public void addMessageAndIntercept(CompositeByteBuf frames, ByteBuf headers, long consumerId, long ledgerId,
+            long entryId, int partition, int redeliveryCount, ByteBuf metadataAndPayload, long[] ackSet,
+            String topic, long epoch) {
+        BaseCommand command = Commands.newMessageCommand(consumerId, ledgerId, entryId, partition, redeliveryCount,
+                ackSet, epoch);
+        int headerIndex = headers.writerIndex();
+        Commands.writeCommandMessageHeaders(command, metadataAndPayload.readableBytes(), headers);
+        frames.addComponent(true, headers.retainedSlice(headerIndex, headers.writerIndex() - headerIndex));
+        frames.addComponent(true, metadataAndPayload);
+        interceptMessage(command, consumerId, ledgerId, entryId, metadataAndPayload);
+    }
+
+    private void interceptMessage(BaseCommand command, long consumerId, long ledgerId, long entryId,
+                                  ByteBuf metadataAndPayload) {
         if (brokerInterceptor != null) {
             try {
                 brokerInterceptor.onPulsarCommand(command, this);
@@ -3344,7 +3380,10 @@ public class ServerCnx extends PulsarHandler implements TransportCnx {
                 log.error("Exception occur when intercept messages.", e);
             }
         }
-        return res;
+    }
+
+    boolean isCompositeDispatchWriteEnabled() {
+        return compositeDispatchWriteEnabled;
     }
 
     private static final Logger log = LoggerFactory.getLogger(ServerCnx.class);
@@ -3408,6 +3447,14 @@ public class ServerCnx extends PulsarHandler implements TransportCnx {
         return features != null && features.isSupportsPartialProducer();
     }
 
+    boolean supportsSendReceiptBatchIndex() {
+        return features != null && features.isSupportsSendReceiptBatchIndex();
+    }
+
+    long getCommandReceivedTimeNs() {
+        return commandReceivedTimeNs;
+    }
+
     @Override
     public String getClientVersion() {
         return clientVersion;
@@ -3525,6 +3572,9 @@ public class ServerCnx extends PulsarHandler implements TransportCnx {
     @Override
     protected void messageReceived() {
         super.messageReceived();
+        if (publishLatencySamplingEnabled) {
+            commandReceivedTimeNs = System.nanoTime();
+        }
         if (connectionCheckInProgress != null && !connectionCheckInProgress.isDone()) {
             connectionCheckInProgress.complete(Optional.of(true));
             connectionCheckInProgress = null;
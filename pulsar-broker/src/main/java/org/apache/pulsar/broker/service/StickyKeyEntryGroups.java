@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import java.util.Arrays;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.apache.bookkeeper.mledger.Entry;
+
+/**
+ * Groups the entries of a read batch by the consumer selected for their sticky key, keeping the order of the entries
+ * within each group and the order in which the consumers were first selected.
+ *
+ * <p/>The consumers are numbered by group index through an identity hash table, and the entries and their sticky key
+ * hashes are kept in primitive arrays, which are reused from one batch to the next. Once the arrays have grown to the
+ * size of the read batches, grouping the entries doesn't allocate any object.
+ */
+@NotThreadSafe
+public class StickyKeyEntryGroups {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Entries in the order they were added, with their sticky key hash and their group
+    private Entry[] entries = new Entry[INITIAL_CAPACITY];
+    private int[] stickyKeyHashes = new int[INITIAL_CAPACITY];
+    private int[] entryGroups = new int[INITIAL_CAPACITY];
+    private int size;
+
+    // Consumer of each group, and the number of entries of the group
+    private Consumer[] consumers = new Consumer[INITIAL_CAPACITY];
+    private int[] groupSizes = new int[INITIAL_CAPACITY];
+    private int groupCount;
+
+    // Open addressing table from the consumers to their group
+    private Consumer[] tableConsumers = new Consumer[INITIAL_CAPACITY];
+    private int[] tableGroups = new int[INITIAL_CAPACITY];
+
+    // Entries and sticky key hashes sorted by group, and the index of the first entry of each group
+    private Entry[] groupedEntries = new Entry[INITIAL_CAPACITY];
+    private int[] groupedStickyKeyHashes = new int[INITIAL_CAPACITY];
+    private int[] groupOffsets = new int[INITIAL_CAPACITY + 1];
+    private boolean grouped = true;
+
+    /**
+     * Add an entry to the group of the given consumer.
+     */
+    public void add(Consumer consumer, Entry entry, int stickyKeyHash) {
+        if (size == entries.length) {
+            int capacity = size * 2;
+            entries = Arrays.copyOf(entries, capacity);
+            stickyKeyHashes = Arrays.copyOf(stickyKeyHashes, capacity);
+            entryGroups = Arrays.copyOf(entryGroups, capacity);
+        }
+        int group;
+        if (size > 0 && consumers[entryGroups[size - 1]] == consumer) {
+            // Consecutive entries often have the same key
+            group = entryGroups[size - 1];
+        } else {
+            group = getOrAddGroup(consumer);
+        }
+        entries[size] = entry;
+        stickyKeyHashes[size] = stickyKeyHash;
+        entryGroups[size] = group;
+        size++;
+        groupSizes[group]++;
+        grouped = false;
+    }
+
+    private int getOrAddGroup(Consumer consumer) {
+        int mask = tableConsumers.length - 1;
+        int slot = mix(System.identityHashCode(consumer)) & mask;
+        while (true) {
+            Consumer slotConsumer = tableConsumers[slot];
+            if (slotConsumer == consumer) {
+                return tableGroups[slot];
+            } else if (slotConsumer == null) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int group = groupCount++;
+        if (group == consumers.length) {
+            consumers = Arrays.copyOf(consumers, group * 2);
+            groupSizes = Arrays.copyOf(groupSizes, group * 2);
+        }
+        consumers[group] = consumer;
+        groupSizes[group] = 0;
+        tableConsumers[slot] = consumer;
+        tableGroups[slot] = group;
+        // Keep the table at most half full
+        if (groupCount * 2 > tableConsumers.length) {
+            rehash(tableConsumers.length * 2);
+        }
+        return group;
+    }
+
+    private void rehash(int capacity) {
+        tableConsumers = new Consumer[capacity];
+        tableGroups = new int[capacity];
+        int mask = capacity - 1;
+        for (int group = 0; group < groupCount; group++) {
+            int slot = mix(System.identityHashCode(consumers[group])) & mask;
+            while (tableConsumers[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            tableConsumers[slot] = consumers[group];
+            tableGroups[slot] = group;
+        }
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Sort the entries by group, with a counting sort that keeps the order of the entries within each group.
+     */
+    private void group() {
+        if (grouped) {
+            return;
+        }
+        if (groupedEntries.length < entries.length) {
+            groupedEntries = new Entry[entries.length];
+            groupedStickyKeyHashes = new int[entries.length];
+        }
+        if (groupOffsets.length < consumers.length + 1) {
+            groupOffsets = new int[consumers.length + 1];
+        }
+        int offset = 0;
+        for (int group = 0; group < groupCount; group++) {
+            groupOffsets[group] = offset;
+            offset += groupSizes[group];
+        }
+        for (int i = 0; i < size; i++) {
+            int index = groupOffsets[entryGroups[i]]++;
+            groupedEntries[index] = entries[i];
+            groupedStickyKeyHashes[index] = stickyKeyHashes[i];
+        }
+        // Each offset now points to the first entry of the next group
+        for (int group = groupCount; group > 0; group--) {
+            groupOffsets[group] = groupOffsets[group - 1];
+        }
+        groupOffsets[0] = 0;
+        grouped = true;
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    public Consumer getConsumer(int group) {
+        return consumers[group];
+    }
+
+    public int getEntryCount(int group) {
+        return groupSizes[group];
+    }
+
+    /**
+     * Get the index of the first entry of a group in {@link #getGroupedStickyKeyHashes()}.
+     */
+    public int getGroupOffset(int group) {
+        group();
+        return groupOffsets[group];
+    }
+
+    public Entry getEntry(int group, int index) {
+        group();
+        return groupedEntries[groupOffsets[group] + index];
+    }
+
+    /**
+     * Get the sticky key hashes of all the entries, sorted by group. The array is only valid until the next change.
+     */
+    public int[] getGroupedStickyKeyHashes() {
+        group();
+        return groupedStickyKeyHashes;
+    }
+
+    /**
+     * Remove all the entries and consumers, without releasing the entries.
+     */
+    public void clear() {
+        Arrays.fill(entries, 0, size, null);
+        Arrays.fill(groupedEntries, 0, size, null);
+        Arrays.fill(consumers, 0, groupCount, null);
+        Arrays.fill(tableConsumers, null);
+        size = 0;
+        groupCount = 0;
+        grouped = true;
+    }
+}
@@ -30,6 +30,7 @@ import org.apache.pulsar.broker.service.persistent.SubscribeRateLimiter;
 import org.apache.pulsar.broker.service.plugin.EntryFilter;
 import org.apache.pulsar.broker.stats.ClusterReplicationMetrics;
 import org.apache.pulsar.broker.stats.NamespaceStats;
+import org.apache.pulsar.broker.stats.PublishLatencyStats;
 import org.apache.pulsar.client.api.MessageId;
 import org.apache.pulsar.client.api.transaction.TxnID;
 import org.apache.pulsar.common.api.proto.CommandSubscribe.InitialPosition;
@@ -127,6 +128,27 @@ public interface Topic {
         default void setEntryTimestamp(long entryTimestamp) {
 
         }
+
+        /**
+         * Whether the messages of the publish can be acknowledged with a batch index, when the broker coalesces
+         * them with other publishes into the same entry.
+         */
+        default boolean supportsBatchIndexOffset() {
+            return false;
+        }
+
+        /**
+         * Set the index of the first message of the publish in the entry it was coalesced into.
+         */
+        default void setBatchIndexOffset(int batchIndexOffset) {
+        }
+
+        /**
+         * Whether the latency of the phases of the publish is measured.
+         */
+        default boolean isLatencySampled() {
+            return false;
+        }
     }
 
     CompletableFuture<Void> initialize();
@@ -158,6 +180,11 @@ public interface Topic {
      */
     void recordAddLatency(long latency, TimeUnit unit);
 
+    /**
+     * Latency of the phases of the sampled publishes, or null if the publishes are not sampled.
+     */
+    PublishLatencyStats getPublishLatencyStats();
+
     /**
      * increase the publishing limited times.
      */
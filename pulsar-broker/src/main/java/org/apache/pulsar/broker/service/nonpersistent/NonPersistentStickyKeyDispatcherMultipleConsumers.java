@@ -28,6 +28,7 @@ import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.mledger.Entry;
 import org.apache.pulsar.broker.ServiceConfiguration;
 import org.apache.pulsar.broker.service.BrokerServiceException;
+import org.apache.pulsar.broker.service.ConsistentHashingLookupTableStickyKeyConsumerSelector;
 import org.apache.pulsar.broker.service.ConsistentHashingStickyKeyConsumerSelector;
 import org.apache.pulsar.broker.service.Consumer;
 import org.apache.pulsar.broker.service.EntryBatchSizes;
@@ -61,7 +62,11 @@ public class NonPersistentStickyKeyDispatcherMultipleConsumers extends NonPersis
             case AUTO_SPLIT:
             default:
                 ServiceConfiguration conf = topic.getBrokerService().getPulsar().getConfiguration();
-                if (conf.isSubscriptionKeySharedUseConsistentHashing()) {
+                if (conf.isSubscriptionKeySharedUseConsistentHashing()
+                        && conf.isSubscriptionKeySharedConsistentHashingLookupTableEnabled()) {
+                    this.selector = new ConsistentHashingLookupTableStickyKeyConsumerSelector(
+                            conf.getSubscriptionKeySharedConsistentHashingReplicaPoints());
+                } else if (conf.isSubscriptionKeySharedUseConsistentHashing()) {
                     this.selector = new ConsistentHashingStickyKeyConsumerSelector(
                             conf.getSubscriptionKeySharedConsistentHashingReplicaPoints());
                 } else {
@@ -78,6 +83,7 @@ public class NonPersistentStickyKeyDispatcherMultipleConsumers extends NonPersis
         if (selector instanceof HashRangeExclusiveStickyKeyConsumerSelector) {
             keySharedMode = KeySharedMode.STICKY;
         } else if (selector instanceof ConsistentHashingStickyKeyConsumerSelector
+                || selector instanceof ConsistentHashingLookupTableStickyKeyConsumerSelector
                 || selector instanceof HashRangeAutoSplitStickyKeyConsumerSelector) {
             keySharedMode = KeySharedMode.AUTO_SPLIT;
         } else {
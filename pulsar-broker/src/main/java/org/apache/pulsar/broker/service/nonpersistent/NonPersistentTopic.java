@@ -880,6 +880,9 @@ public class NonPersistentTopic extends AbstractTopic implements Topic, TopicPol
         this.addEntryLatencyStatsUsec.refresh();
         NamespaceStats.add(this.addEntryLatencyStatsUsec.getBuckets(), nsStats.addLatencyBucket);
         this.addEntryLatencyStatsUsec.reset();
+        if (publishLatencyStats != null) {
+            publishLatencyStats.refresh();
+        }
         // Close topic object
         topicStatsStream.endObject();
     }
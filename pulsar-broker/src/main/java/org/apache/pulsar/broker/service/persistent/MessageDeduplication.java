@@ -19,15 +19,17 @@
 package org.apache.pulsar.broker.service.persistent;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
 import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.DeleteCursorCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.MarkDeleteCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.OpenCursorCallback;
@@ -37,12 +39,15 @@ import org.apache.bookkeeper.mledger.ManagedCursor;
 import org.apache.bookkeeper.mledger.ManagedLedger;
 import org.apache.bookkeeper.mledger.ManagedLedgerException;
 import org.apache.bookkeeper.mledger.Position;
+import org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl;
 import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfo;
 import org.apache.pulsar.broker.PulsarService;
 import org.apache.pulsar.broker.service.Topic.PublishContext;
 import org.apache.pulsar.common.api.proto.MessageMetadata;
 import org.apache.pulsar.common.protocol.Commands;
-import org.apache.pulsar.common.util.collections.ConcurrentOpenHashMap;
+import org.apache.pulsar.common.util.FutureUtil;
+import org.apache.pulsar.common.util.collections.ConcurrentObjectLongHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,6 +63,9 @@ public class MessageDeduplication {
 
     private static final String IS_LAST_CHUNK = "isLastChunk";
 
+    // Number of entries read at once when replaying the entries published after the last snapshot
+    private static final int REPLAY_READ_BATCH_SIZE = 100;
+
     enum Status {
 
         // Deduplication is initialized
@@ -99,22 +107,25 @@ public class MessageDeduplication {
     private volatile Status status;
 
     // Map that contains the highest sequenceId that have been sent by each producers. The map will be updated before
-    // the messages are persisted
+    // the messages are persisted. Sequence ids are stored as primitive longs, so updating the entry of a known
+    // producer doesn't allocate
     @VisibleForTesting
-    final ConcurrentOpenHashMap<String, Long> highestSequencedPushed =
-            ConcurrentOpenHashMap.<String, Long>newBuilder()
+    final ConcurrentObjectLongHashMap<String> highestSequencedPushed =
+            ConcurrentObjectLongHashMap.<String>newBuilder()
                     .expectedItems(16)
                     .concurrencyLevel(1)
+                    .autoShrink(true)
                     .build();
 
     // Map that contains the highest sequenceId that have been persistent by each producers. The map will be updated
     // after the messages are persisted
     @VisibleForTesting
-    final ConcurrentOpenHashMap<String, Long> highestSequencedPersisted =
-            ConcurrentOpenHashMap.<String, Long>newBuilder()
-            .expectedItems(16)
-            .concurrencyLevel(1)
-            .build();
+    final ConcurrentObjectLongHashMap<String> highestSequencedPersisted =
+            ConcurrentObjectLongHashMap.<String>newBuilder()
+                    .expectedItems(16)
+                    .concurrencyLevel(1)
+                    .autoShrink(true)
+                    .build();
 
     // Number of persisted entries after which to store a snapshot of the sequence ids map
     private final int snapshotInterval;
@@ -128,6 +139,9 @@ public class MessageDeduplication {
     // Max number of producer for which to persist the sequence id information
     private final int maxNumberOfProducers;
 
+    // Max number of ledger ranges read concurrently when replaying the entries published after the last snapshot
+    private final int recoveryReadParallelism;
+
     // Map used to track the inactive producer along with the timestamp of their last activity
     private final Map<String, Long> inactiveProducers = new ConcurrentHashMap<>();
 
@@ -143,6 +157,7 @@ public class MessageDeduplication {
         this.status = Status.Initialized;
         this.snapshotInterval = pulsar.getConfiguration().getBrokerDeduplicationEntriesInterval();
         this.maxNumberOfProducers = pulsar.getConfiguration().getBrokerDeduplicationMaxNumberOfProducers();
+        this.recoveryReadParallelism = pulsar.getConfiguration().getBrokerDeduplicationRecoveryReadParallelism();
         this.snapshotCounter = 0;
         this.replicatorPrefix = pulsar.getConfiguration().getReplicatorPrefix();
     }
@@ -156,10 +171,27 @@ public class MessageDeduplication {
         });
 
         // Replay all the entries and apply all the sequence ids updates
-        log.info("[{}] Replaying {} entries for deduplication", topic.getName(), managedCursor.getNumberOfEntries());
-        CompletableFuture<Position> future = new CompletableFuture<>();
-        replayCursor(future);
+        long recoveryStartNanos = System.nanoTime();
+        long entriesToReplay = managedCursor.getNumberOfEntries();
+        log.info("[{}] Replaying {} entries for deduplication", topic.getName(), entriesToReplay);
+        CompletableFuture<Position> future;
+        if (recoveryReadParallelism > 1 && entriesToReplay > REPLAY_READ_BATCH_SIZE
+                && managedLedger instanceof ManagedLedgerImpl ml) {
+            future = replayRangesInParallel(ml, entriesToReplay).thenCompose(lastReplayedPosition -> {
+                // Pick up the entries that were added while the ranges were being read
+                CompletableFuture<Position> tailFuture = new CompletableFuture<>();
+                replayCursor(tailFuture);
+                return tailFuture.thenApply(position -> position != null ? position : lastReplayedPosition);
+            });
+        } else {
+            future = new CompletableFuture<>();
+            replayCursor(future);
+        }
         return future.thenAccept(lastPosition -> {
+            long recoveryTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - recoveryStartNanos);
+            log.info("[{}] Replayed {} entries for deduplication in {} ms", topic.getName(), entriesToReplay,
+                    recoveryTimeMs);
+            pulsar.getBrokerService().getPulsarStats().recordDedupRecoveryTimeValue(topic.getName(), recoveryTimeMs);
             if (lastPosition != null && snapshotCounter >= snapshotInterval) {
                 snapshotCounter = 0;
                 takeSnapshot(lastPosition);
@@ -208,6 +240,148 @@ public class MessageDeduplication {
         }, null, PositionImpl.LATEST);
     }
 
+    /**
+     * Read the entries published from the cursor position until the most recent by splitting them in ranges that
+     * don't span across ledgers. Up to {@link #recoveryReadParallelism} ranges are read at a time, each one through
+     * its own non-durable cursor. The sequence ids found in each range are applied in publish order once all the
+     * ranges are read, so the outcome is the same as replaying the entries sequentially.
+     *
+     * @return future completed with the position of the last replayed entry, or null if there were no entries
+     */
+    private CompletableFuture<Position> replayRangesInParallel(ManagedLedgerImpl ml, long entriesToReplay) {
+        PositionImpl readPosition = (PositionImpl) managedCursor.getReadPosition();
+        PositionImpl lastConfirmedEntry = (PositionImpl) ml.getLastConfirmedEntry();
+        long entriesPerRange = Math.max(REPLAY_READ_BATCH_SIZE,
+                (entriesToReplay + recoveryReadParallelism - 1) / recoveryReadParallelism);
+
+        List<ReplayRange> ranges = new ArrayList<>();
+        for (Map.Entry<Long, LedgerInfo> ledger : ml.getLedgersInfo()
+                .subMap(readPosition.getLedgerId(), true, lastConfirmedEntry.getLedgerId(), true).entrySet()) {
+            long ledgerId = ledger.getKey();
+            long firstEntryId = ledgerId == readPosition.getLedgerId() ? readPosition.getEntryId() : 0;
+            long lastEntryId = ledgerId == lastConfirmedEntry.getLedgerId() ? lastConfirmedEntry.getEntryId()
+                    : ledger.getValue().getEntries() - 1;
+            for (long entryId = firstEntryId; entryId <= lastEntryId; entryId += entriesPerRange) {
+                ranges.add(new ReplayRange(ledgerId, entryId, Math.min(lastEntryId, entryId + entriesPerRange - 1)));
+            }
+        }
+        log.info("[{}] Replaying the entries for deduplication in {} ranges", topic.getName(), ranges.size());
+
+        AtomicInteger nextRange = new AtomicInteger();
+        List<CompletableFuture<Void>> readers = new ArrayList<>();
+        for (int i = 0; i < Math.min(recoveryReadParallelism, ranges.size()); i++) {
+            readers.add(readNextRanges(ml, ranges, nextRange));
+        }
+
+        return FutureUtil.waitForAll(readers).thenApply(__ -> {
+            Position lastPosition = null;
+            for (ReplayRange range : ranges) {
+                range.sequenceIds.forEach((producerName, sequenceId) -> {
+                    highestSequencedPushed.put(producerName, sequenceId);
+                    highestSequencedPersisted.put(producerName, sequenceId);
+                    producerRemoved(producerName);
+                });
+                snapshotCounter += range.replayedEntries;
+                if (range.lastPosition != null) {
+                    lastPosition = range.lastPosition;
+                }
+            }
+            if (lastPosition != null) {
+                // Move the dedup cursor past the replayed entries
+                managedCursor.seek(ml.getNextValidPosition((PositionImpl) lastPosition), true);
+            }
+            return lastPosition;
+        });
+    }
+
+    private CompletableFuture<Void> readNextRanges(ManagedLedgerImpl ml, List<ReplayRange> ranges,
+                                                   AtomicInteger nextRange) {
+        int index = nextRange.getAndIncrement();
+        if (index >= ranges.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return readRange(ml, ranges.get(index)).thenCompose(__ -> readNextRanges(ml, ranges, nextRange));
+    }
+
+    private CompletableFuture<Void> readRange(ManagedLedgerImpl ml, ReplayRange range) {
+        ManagedCursor cursor;
+        try {
+            // The cursor is positioned on the entry that precedes the range, so that it starts reading the range
+            cursor = ml.newNonDurableCursor(new PositionImpl(range.ledgerId, range.firstEntryId - 1));
+        } catch (ManagedLedgerException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        readRange(cursor, range, future);
+        return future.whenComplete((__, ex) -> ml.asyncDeleteCursor(cursor.getName(), new DeleteCursorCallback() {
+            @Override
+            public void deleteCursorComplete(Object ctx) {
+                // Nothing to do
+            }
+
+            @Override
+            public void deleteCursorFailed(ManagedLedgerException exception, Object ctx) {
+                log.warn("[{}] Failed to delete the deduplication replay cursor {}", topic.getName(),
+                        cursor.getName(), exception);
+            }
+        }, null));
+    }
+
+    private void readRange(ManagedCursor cursor, ReplayRange range, CompletableFuture<Void> future) {
+        cursor.asyncReadEntries(REPLAY_READ_BATCH_SIZE, new ReadEntriesCallback() {
+            @Override
+            public void readEntriesComplete(List<Entry> entries, Object ctx) {
+                for (Entry entry : entries) {
+                    if (range.lastPosition == null || range.lastPosition.compareTo(range.endPosition) < 0) {
+                        // Only the fields of the metadata are needed, the payload is never copied
+                        MessageMetadata md = Commands.parseMessageMetadata(entry.getDataBuffer());
+                        range.sequenceIds.put(md.getProducerName(),
+                                Math.max(md.getHighestSequenceId(), md.getSequenceId()));
+                        range.replayedEntries++;
+                        range.lastPosition = (PositionImpl) entry.getPosition();
+                    }
+                    entry.release();
+                }
+
+                if (!entries.isEmpty() && range.lastPosition.compareTo(range.endPosition) < 0
+                        && cursor.hasMoreEntries()) {
+                    // Read next batch of entries
+                    pulsar.getExecutor().execute(() -> readRange(cursor, range, future));
+                } else {
+                    future.complete(null);
+                }
+            }
+
+            @Override
+            public void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
+                future.completeExceptionally(exception);
+            }
+        }, null, range.endPosition);
+    }
+
+    /**
+     * Range of entries of a single ledger, along with the highest sequence ids found in it.
+     */
+    private static final class ReplayRange {
+        private final long ledgerId;
+        private final long firstEntryId;
+        private final PositionImpl endPosition;
+        private final ConcurrentObjectLongHashMap<String> sequenceIds =
+                ConcurrentObjectLongHashMap.<String>newBuilder()
+                        .expectedItems(16)
+                        .concurrencyLevel(1)
+                        .build();
+        private int replayedEntries;
+        private PositionImpl lastPosition;
+
+        ReplayRange(long ledgerId, long firstEntryId, long lastEntryId) {
+            this.ledgerId = ledgerId;
+            this.firstEntryId = firstEntryId;
+            this.endPosition = new PositionImpl(ledgerId, lastEntryId);
+        }
+    }
+
     public Status getStatus() {
         return status;
     }
@@ -370,8 +544,8 @@ public class MessageDeduplication {
         // Synchronize the get() and subsequent put() on the map. This would only be relevant if the producer
         // disconnects and re-connects very quickly. At that point the call can be coming from a different thread
         synchronized (highestSequencedPushed) {
-            Long lastSequenceIdPushed = highestSequencedPushed.get(producerName);
-            if (lastSequenceIdPushed != null && sequenceId <= lastSequenceIdPushed) {
+            long lastSequenceIdPushed = highestSequencedPushed.getOrDefault(producerName, Long.MIN_VALUE);
+            if (sequenceId <= lastSequenceIdPushed) {
                 if (log.isDebugEnabled()) {
                     log.debug("[{}] Message identified as duplicated producer={} seq-id={} -- highest-seq-id={}",
                             topic.getName(), producerName, sequenceId, lastSequenceIdPushed);
@@ -383,8 +557,8 @@ public class MessageDeduplication {
                 // If current message's seq id is between lastSequenceIdPersisted and
                 // lastSequenceIdPushed, then we cannot be sure whether the message is a dup or not
                 // we should return an error to the producer for the latter case so that it can retry at a future time
-                Long lastSequenceIdPersisted = highestSequencedPersisted.get(producerName);
-                if (lastSequenceIdPersisted != null && sequenceId <= lastSequenceIdPersisted) {
+                long lastSequenceIdPersisted = highestSequencedPersisted.getOrDefault(producerName, Long.MIN_VALUE);
+                if (sequenceId <= lastSequenceIdPersisted) {
                     return MessageDupStatus.Dup;
                 } else {
                     return MessageDupStatus.Unknown;
@@ -433,9 +607,7 @@ public class MessageDeduplication {
         }
 
         highestSequencedPushed.clear();
-        for (String producer : highestSequencedPersisted.keys()) {
-            highestSequencedPushed.put(producer, highestSequencedPersisted.get(producer));
-        }
+        highestSequencedPersisted.forEach(highestSequencedPushed::put);
     }
 
     private void takeSnapshot(Position position) {
@@ -447,7 +619,8 @@ public class MessageDeduplication {
             return;
         }
 
-        Map<String, Long> snapshot = new TreeMap<>();
+        Map<String, Long> snapshot = Maps.newHashMapWithExpectedSize(
+                (int) Math.min(highestSequencedPersisted.size(), maxNumberOfProducers));
         highestSequencedPersisted.forEach((producerName, sequenceId) -> {
             if (snapshot.size() < maxNumberOfProducers) {
                 snapshot.put(producerName, sequenceId);
@@ -536,8 +709,7 @@ public class MessageDeduplication {
     }
 
     public long getLastPublishedSequenceId(String producerName) {
-        Long sequenceId = highestSequencedPushed.get(producerName);
-        return sequenceId != null ? sequenceId : -1;
+        return highestSequencedPushed.getOrDefault(producerName, -1);
     }
 
     public void takeSnapshot() {
@@ -145,6 +145,24 @@ public class MessageRedeliveryController {
         return false;
     }
 
+    /**
+     * Check whether any of the sticky key hashes in the given range of the array is blocked by the messages to
+     * redeliver, without boxing the hashes.
+     */
+    public boolean containsStickyKeyHashes(int[] stickyKeyHashes, int offset, int length) {
+        if (!allowOutOfOrderDelivery && !hashesRefCount.isEmpty()) {
+            for (int i = offset, end = offset + length; i < end; i++) {
+                int stickyKeyHash = stickyKeyHashes[i];
+                // The entries with the same key are often adjacent, only look up each run of hashes once
+                if ((i == offset || stickyKeyHash != stickyKeyHashes[i - 1])
+                        && hashesRefCount.containsKey(stickyKeyHash)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public NavigableSet<PositionImpl> getMessagesToReplayNow(int maxMessagesToRead) {
         return messagesToRedeliver.items(maxMessagesToRead, PositionImpl::new);
     }
@@ -22,6 +22,7 @@ import com.google.common.annotations.VisibleForTesting;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.LongAdder;
 import javax.annotation.Nullable;
@@ -88,6 +89,7 @@ public class PersistentMessageExpiryMonitor implements FindEntryCallback, Messag
             // First filter the entire Ledger reached TTL based on the Ledger closing time to avoid client clock skew
             checkExpiryByLedgerClosureTime(cursor, messageTTLInSeconds);
             // Some part of entries in active Ledger may have reached TTL, so we need to continue searching.
+            long expiryTimestamp = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(messageTTLInSeconds);
             cursor.asyncFindNewestMatching(ManagedCursor.FindPositionConstraint.SearchActiveEntries, entry -> {
                 try {
                     long entryTimestamp = Commands.getEntryTimestamp(entry.getDataBuffer());
@@ -98,7 +100,7 @@ public class PersistentMessageExpiryMonitor implements FindEntryCallback, Messag
                     entry.release();
                 }
                 return false;
-            }, this, null);
+            }, expiryTimestamp, this, null, false);
             return true;
         } else {
             if (log.isDebugEnabled()) {
@@ -23,7 +23,6 @@ import io.netty.util.concurrent.FastThreadLocal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -33,7 +32,6 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 import org.apache.bookkeeper.mledger.Entry;
 import org.apache.bookkeeper.mledger.ManagedCursor;
 import org.apache.bookkeeper.mledger.Position;
@@ -42,6 +40,7 @@ import org.apache.bookkeeper.mledger.impl.PositionImpl;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.pulsar.broker.ServiceConfiguration;
 import org.apache.pulsar.broker.service.BrokerServiceException;
+import org.apache.pulsar.broker.service.ConsistentHashingLookupTableStickyKeyConsumerSelector;
 import org.apache.pulsar.broker.service.ConsistentHashingStickyKeyConsumerSelector;
 import org.apache.pulsar.broker.service.Consumer;
 import org.apache.pulsar.broker.service.EntryBatchIndexesAcks;
@@ -50,6 +49,7 @@ import org.apache.pulsar.broker.service.HashRangeAutoSplitStickyKeyConsumerSelec
 import org.apache.pulsar.broker.service.HashRangeExclusiveStickyKeyConsumerSelector;
 import org.apache.pulsar.broker.service.SendMessageInfo;
 import org.apache.pulsar.broker.service.StickyKeyConsumerSelector;
+import org.apache.pulsar.broker.service.StickyKeyEntryGroups;
 import org.apache.pulsar.broker.service.Subscription;
 import org.apache.pulsar.client.api.Range;
 import org.apache.pulsar.common.api.proto.CommandSubscribe.SubType;
@@ -74,6 +74,9 @@ public class PersistentStickyKeyDispatcherMultipleConsumers extends PersistentDi
      */
     private final LinkedHashMap<Consumer, PositionImpl> recentlyJoinedConsumers;
 
+    // Reused to group the entries of each read by consumer, null while in use
+    private StickyKeyEntryGroups entryGroups = new StickyKeyEntryGroups();
+
     PersistentStickyKeyDispatcherMultipleConsumers(PersistentTopic topic, ManagedCursor cursor,
             Subscription subscription, ServiceConfiguration conf, KeySharedMeta ksm) {
         super(topic, cursor, subscription, ksm.isAllowOutOfOrderDelivery());
@@ -83,7 +86,11 @@ public class PersistentStickyKeyDispatcherMultipleConsumers extends PersistentDi
         this.keySharedMode = ksm.getKeySharedMode();
         switch (this.keySharedMode) {
         case AUTO_SPLIT:
-            if (conf.isSubscriptionKeySharedUseConsistentHashing()) {
+            if (conf.isSubscriptionKeySharedUseConsistentHashing()
+                    && conf.isSubscriptionKeySharedConsistentHashingLookupTableEnabled()) {
+                selector = new ConsistentHashingLookupTableStickyKeyConsumerSelector(
+                        conf.getSubscriptionKeySharedConsistentHashingReplicaPoints());
+            } else if (conf.isSubscriptionKeySharedUseConsistentHashing()) {
                 selector = new ConsistentHashingStickyKeyConsumerSelector(
                         conf.getSubscriptionKeySharedConsistentHashingReplicaPoints());
             } else {
@@ -160,14 +167,6 @@ public class PersistentStickyKeyDispatcherMultipleConsumers extends PersistentDi
         }
     }
 
-    private static final FastThreadLocal<Map<Consumer, List<Entry>>> localGroupedEntries =
-            new FastThreadLocal<Map<Consumer, List<Entry>>>() {
-                @Override
-                protected Map<Consumer, List<Entry>> initialValue() throws Exception {
-                    return new HashMap<>();
-                }
-            };
-
     private static final FastThreadLocal<Map<Consumer, List<PositionImpl>>> localGroupedPositions =
             new FastThreadLocal<Map<Consumer, List<PositionImpl>>>() {
                 @Override
@@ -232,84 +231,96 @@ public class PersistentStickyKeyDispatcherMultipleConsumers extends PersistentDi
             }
         }
 
-        final Map<Consumer, List<Entry>> groupedEntries = localGroupedEntries.get();
-        groupedEntries.clear();
-        final Map<Consumer, Set<Integer>> consumerStickyKeyHashesMap = new HashMap<>();
-
-        for (Entry entry : entries) {
-            int stickyKeyHash = getStickyKeyHash(entry);
-            Consumer c = selector.select(stickyKeyHash);
-            if (c != null) {
-                groupedEntries.computeIfAbsent(c, k -> new ArrayList<>()).add(entry);
-                consumerStickyKeyHashesMap.computeIfAbsent(c, k -> new HashSet<>()).add(stickyKeyHash);
-            } else {
-                addMessageToReplay(entry.getLedgerId(), entry.getEntryId(), stickyKeyHash);
-                entry.release();
-            }
-        }
-
-        AtomicInteger keyNumbers = new AtomicInteger(groupedEntries.size());
-
-        int currentThreadKeyNumber = groupedEntries.size();
-        if (currentThreadKeyNumber == 0) {
-            currentThreadKeyNumber = -1;
+        // Reuse the groups of the dispatcher, unless they are in use by an outer call of this method
+        StickyKeyEntryGroups groups = this.entryGroups;
+        this.entryGroups = null;
+        if (groups == null) {
+            groups = new StickyKeyEntryGroups();
         }
-        for (Map.Entry<Consumer, List<Entry>> current : groupedEntries.entrySet()) {
-            Consumer consumer = current.getKey();
-            assert consumer != null; // checked when added to groupedEntries
-            List<Entry> entriesWithSameKey = current.getValue();
-            int entriesWithSameKeyCount = entriesWithSameKey.size();
-            int availablePermits = getAvailablePermits(consumer);
-            int messagesForC = getRestrictedMaxEntriesForConsumer(consumer,
-                    entriesWithSameKey.stream().map(Entry::getPosition).collect(Collectors.toList()), availablePermits,
-                    readType, consumerStickyKeyHashesMap.get(consumer));
-            if (log.isDebugEnabled()) {
-                log.debug("[{}] select consumer {} with messages num {}, read type is {}",
-                        name, consumer.consumerName(), messagesForC, readType);
-            }
-
-            if (messagesForC < entriesWithSameKeyCount) {
-                // We are not able to push all the messages with given key to its consumer,
-                // so we discard for now and mark them for later redelivery
-                for (int i = messagesForC; i < entriesWithSameKeyCount; i++) {
-                    Entry entry = entriesWithSameKey.get(i);
-                    long stickyKeyHash = getStickyKeyHash(entry);
+        int groupCount;
+        int currentThreadKeyNumber;
+        try {
+            for (Entry entry : entries) {
+                // The hash is kept in the groups, so that the metadata is only peeked once by the dispatcher
+                int stickyKeyHash = getStickyKeyHash(entry);
+                Consumer c = selector.select(stickyKeyHash);
+                if (c != null) {
+                    groups.add(c, entry, stickyKeyHash);
+                } else {
                     addMessageToReplay(entry.getLedgerId(), entry.getEntryId(), stickyKeyHash);
                     entry.release();
-                    entriesWithSameKey.set(i, null);
                 }
             }
 
-            if (messagesForC > 0) {
-                // remove positions first from replay list first : sendMessages recycles entries
-                if (readType == ReadType.Replay) {
-                    for (int i = 0; i < messagesForC; i++) {
-                        Entry entry = entriesWithSameKey.get(i);
-                        redeliveryMessages.remove(entry.getLedgerId(), entry.getEntryId());
+            groupCount = groups.getGroupCount();
+            AtomicInteger keyNumbers = new AtomicInteger(groupCount);
+
+            currentThreadKeyNumber = groupCount;
+            if (currentThreadKeyNumber == 0) {
+                currentThreadKeyNumber = -1;
+            }
+            for (int group = 0; group < groupCount; group++) {
+                Consumer consumer = groups.getConsumer(group);
+                int entriesWithSameKeyCount = groups.getEntryCount(group);
+                int availablePermits = getAvailablePermits(consumer);
+                int messagesForC = getRestrictedMaxEntriesForConsumer(consumer, groups, group, availablePermits,
+                        readType);
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] select consumer {} with messages num {}, read type is {}",
+                            name, consumer.consumerName(), messagesForC, readType);
+                }
+
+                if (messagesForC < entriesWithSameKeyCount) {
+                    // We are not able to push all the messages with given key to its consumer,
+                    // so we discard for now and mark them for later redelivery
+                    int[] stickyKeyHashes = groups.getGroupedStickyKeyHashes();
+                    int offset = groups.getGroupOffset(group);
+                    for (int i = messagesForC; i < entriesWithSameKeyCount; i++) {
+                        Entry entry = groups.getEntry(group, i);
+                        addMessageToReplay(entry.getLedgerId(), entry.getEntryId(), stickyKeyHashes[offset + i]);
+                        entry.release();
                     }
                 }
 
-                SendMessageInfo sendMessageInfo = SendMessageInfo.getThreadLocal();
-                EntryBatchSizes batchSizes = EntryBatchSizes.get(messagesForC);
-                EntryBatchIndexesAcks batchIndexesAcks = EntryBatchIndexesAcks.get(messagesForC);
-                totalEntries += filterEntriesForConsumer(entriesWithSameKey, batchSizes, sendMessageInfo,
-                        batchIndexesAcks, cursor, readType == ReadType.Replay, consumer);
-                consumer.sendMessages(entriesWithSameKey, batchSizes, batchIndexesAcks,
-                        sendMessageInfo.getTotalMessages(),
-                        sendMessageInfo.getTotalBytes(), sendMessageInfo.getTotalChunkedMessages(),
-                        getRedeliveryTracker()).addListener(future -> {
-                    if (future.isDone() && keyNumbers.decrementAndGet() == 0) {
-                        readMoreEntries();
+                if (messagesForC > 0) {
+                    // The list is handed over to the consumer, which reads it from the connection thread
+                    List<Entry> entriesWithSameKey = new ArrayList<>(messagesForC);
+                    for (int i = 0; i < messagesForC; i++) {
+                        entriesWithSameKey.add(groups.getEntry(group, i));
+                    }
+                    // remove positions first from replay list first : sendMessages recycles entries
+                    if (readType == ReadType.Replay) {
+                        for (int i = 0; i < messagesForC; i++) {
+                            Entry entry = entriesWithSameKey.get(i);
+                            redeliveryMessages.remove(entry.getLedgerId(), entry.getEntryId());
+                        }
                     }
-                });
 
-                TOTAL_AVAILABLE_PERMITS_UPDATER.getAndAdd(this,
-                        -(sendMessageInfo.getTotalMessages() - batchIndexesAcks.getTotalAckedIndexCount()));
-                totalMessagesSent += sendMessageInfo.getTotalMessages();
-                totalBytesSent += sendMessageInfo.getTotalBytes();
-            } else {
-                currentThreadKeyNumber = keyNumbers.decrementAndGet();
+                    SendMessageInfo sendMessageInfo = SendMessageInfo.getThreadLocal();
+                    EntryBatchSizes batchSizes = EntryBatchSizes.get(messagesForC);
+                    EntryBatchIndexesAcks batchIndexesAcks = EntryBatchIndexesAcks.get(messagesForC);
+                    totalEntries += filterEntriesForConsumer(entriesWithSameKey, batchSizes, sendMessageInfo,
+                            batchIndexesAcks, cursor, readType == ReadType.Replay, consumer);
+                    consumer.sendMessages(entriesWithSameKey, batchSizes, batchIndexesAcks,
+                            sendMessageInfo.getTotalMessages(),
+                            sendMessageInfo.getTotalBytes(), sendMessageInfo.getTotalChunkedMessages(),
+                            getRedeliveryTracker()).addListener(future -> {
+                        if (future.isDone() && keyNumbers.decrementAndGet() == 0) {
+                            readMoreEntries();
+                        }
+                    });
+
+                    TOTAL_AVAILABLE_PERMITS_UPDATER.getAndAdd(this,
+                            -(sendMessageInfo.getTotalMessages() - batchIndexesAcks.getTotalAckedIndexCount()));
+                    totalMessagesSent += sendMessageInfo.getTotalMessages();
+                    totalBytesSent += sendMessageInfo.getTotalBytes();
+                } else {
+                    currentThreadKeyNumber = keyNumbers.decrementAndGet();
+                }
             }
+        } finally {
+            groups.clear();
+            this.entryGroups = groups;
         }
 
         // acquire message-dispatch permits for already delivered messages
@@ -336,28 +347,68 @@ public class PersistentStickyKeyDispatcherMultipleConsumers extends PersistentDi
         return false;
     }
 
-    private int getRestrictedMaxEntriesForConsumer(Consumer consumer, List<? extends Position> entries,
-           int availablePermits, ReadType readType, Set<Integer> stickyKeyHashes) {
-        int maxMessages = Math.min(entries.size(), availablePermits);
+    private int getRestrictedMaxEntriesForConsumer(Consumer consumer, StickyKeyEntryGroups groups, int group,
+            int availablePermits, ReadType readType) {
+        int maxMessages = Math.min(groups.getEntryCount(group), availablePermits);
         if (maxMessages == 0) {
             return 0;
         }
-        if (readType == ReadType.Normal && stickyKeyHashes != null
-                && redeliveryMessages.containsStickyKeyHashes(stickyKeyHashes)) {
+        if (readType == ReadType.Normal && redeliveryMessages.containsStickyKeyHashes(
+                groups.getGroupedStickyKeyHashes(), groups.getGroupOffset(group), groups.getEntryCount(group))) {
             // If redeliveryMessages contains messages that correspond to the same hash as the messages
             // that the dispatcher is trying to send, do not send those messages for order guarantee
             return 0;
         }
-        if (recentlyJoinedConsumers == null) {
+        PositionImpl maxReadPosition = getMaxReadPositionForConsumer(consumer, readType);
+        if (maxReadPosition == null) {
+            return maxMessages;
+        }
+        // Here, the consumer is one that has recently joined, so we can only send messages that were
+        // published before it has joined.
+        for (int i = 0; i < maxMessages; i++) {
+            Entry entry = groups.getEntry(group, i);
+            if (maxReadPosition.compareTo(entry.getLedgerId(), entry.getEntryId()) <= 0) {
+                // We have already crossed the divider line. All messages in the list are now
+                // newer than what we can currently dispatch to this consumer
+                return i;
+            }
+        }
+        return maxMessages;
+    }
+
+    private int getRestrictedMaxEntriesForConsumer(Consumer consumer, List<PositionImpl> positions,
+           int availablePermits, ReadType readType) {
+        int maxMessages = Math.min(positions.size(), availablePermits);
+        if (maxMessages == 0) {
+            return 0;
+        }
+        PositionImpl maxReadPosition = getMaxReadPositionForConsumer(consumer, readType);
+        if (maxReadPosition == null) {
             return maxMessages;
         }
+        for (int i = 0; i < maxMessages; i++) {
+            if (positions.get(i).compareTo(maxReadPosition) >= 0) {
+                return i;
+            }
+        }
+        return maxMessages;
+    }
+
+    /**
+     * Get the position up to which the messages can be sent to a consumer, or null if the consumer can receive any
+     * message.
+     */
+    private PositionImpl getMaxReadPositionForConsumer(Consumer consumer, ReadType readType) {
+        if (recentlyJoinedConsumers == null) {
+            return null;
+        }
         removeConsumersFromRecentJoinedConsumers();
         PositionImpl maxReadPosition = recentlyJoinedConsumers.get(consumer);
         // At this point, all the old messages were already consumed and this consumer
         // is now ready to receive any message
         if (maxReadPosition == null) {
             // The consumer has not recently joined, so we can send all messages
-            return maxMessages;
+            return null;
         }
 
         // If the read type is Replay, we should avoid send messages that hold by other consumer to the new consumers,
@@ -380,17 +431,7 @@ public class PersistentStickyKeyDispatcherMultipleConsumers extends PersistentDi
                 maxReadPosition = minReadPositionForRecentJoinedConsumer;
             }
         }
-        // Here, the consumer is one that has recently joined, so we can only send messages that were
-        // published before it has joined.
-        for (int i = 0; i < maxMessages; i++) {
-            if (((PositionImpl) entries.get(i)).compareTo(maxReadPosition) >= 0) {
-                // We have already crossed the divider line. All messages in the list are now
-                // newer than what we can currently dispatch to this consumer
-                return i;
-            }
-        }
-
-        return maxMessages;
+        return maxReadPosition;
     }
 
     @Override
@@ -489,7 +530,7 @@ public class PersistentStickyKeyDispatcherMultipleConsumers extends PersistentDi
                 continue;
             }
             int posCountToRead = getRestrictedMaxEntriesForConsumer(item.getKey(), item.getValue(), availablePermits,
-                    ReadType.Replay, null);
+                    ReadType.Replay);
             if (posCountToRead > 0) {
                 res.addAll(item.getValue().subList(0, posCountToRead));
             }
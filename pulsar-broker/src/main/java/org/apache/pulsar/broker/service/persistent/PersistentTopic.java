@@ -86,6 +86,7 @@ import org.apache.bookkeeper.net.BookieId;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.pulsar.broker.PulsarServerException;
+import org.apache.pulsar.broker.ServiceConfiguration;
 import org.apache.pulsar.broker.delayed.BucketDelayedDeliveryTrackerFactory;
 import org.apache.pulsar.broker.delayed.DelayedDeliveryTrackerFactory;
 import org.apache.pulsar.broker.loadbalance.extensions.ExtensibleLoadManagerImpl;
@@ -127,6 +128,7 @@ import org.apache.pulsar.broker.service.persistent.DispatchRateLimiter.Type;
 import org.apache.pulsar.broker.service.schema.BookkeeperSchemaStorage;
 import org.apache.pulsar.broker.stats.ClusterReplicationMetrics;
 import org.apache.pulsar.broker.stats.NamespaceStats;
+import org.apache.pulsar.broker.stats.PublishLatencyStats.Phase;
 import org.apache.pulsar.broker.stats.ReplicationMetrics;
 import org.apache.pulsar.broker.transaction.buffer.TransactionBuffer;
 import org.apache.pulsar.broker.transaction.buffer.impl.TransactionBufferDisable;
@@ -273,6 +275,9 @@ public class PersistentTopic extends AbstractTopic implements Topic, AddEntryCal
     @Getter
     private final ExecutorService orderedExecutor;
 
+    // Coalesces the small publishes into larger entries, when enabled
+    private final PublishCoalescer publishCoalescer;
+
     @Getter
     private final PersistentTopicMetrics persistentTopicMetrics = new PersistentTopicMetrics();
 
@@ -363,6 +368,15 @@ public class PersistentTopic extends AbstractTopic implements Topic, AddEntryCal
         } else {
             shadowSourceTopic = null;
         }
+        ServiceConfiguration config = brokerService.pulsar().getConfiguration();
+        if (config.isTopicPublishCoalescingEnabled() && !isSystemTopic()) {
+            // Leave room for the metadata of the coalesced entries
+            this.publishCoalescer = new PublishCoalescer(this, brokerService.executor(),
+                    config.getTopicPublishCoalescingMaxDelayMicros(),
+                    Math.min(config.getTopicPublishCoalescingMaxBytes(), config.getMaxMessageSize() / 2));
+        } else {
+            this.publishCoalescer = null;
+        }
     }
 
     @Override
@@ -451,6 +465,7 @@ public class PersistentTopic extends AbstractTopic implements Topic, AddEntryCal
             this.transactionBuffer = new TransactionBufferDisable(this);
         }
         shadowSourceTopic = null;
+        publishCoalescer = null;
     }
 
     private void initializeDispatchRateLimiterIfNeeded() {
@@ -570,11 +585,19 @@ public class PersistentTopic extends AbstractTopic implements Topic, AddEntryCal
             return;
         }
 
+        long dedupStartTimeNs = publishContext.isLatencySampled() ? System.nanoTime() : 0;
         MessageDeduplication.MessageDupStatus status =
                 messageDeduplication.isDuplicate(publishContext, headersAndPayload);
+        if (publishContext.isLatencySampled()) {
+            publishLatencyStats.recordLatency(Phase.DEDUPLICATION, System.nanoTime() - dedupStartTimeNs);
+        }
         switch (status) {
             case NotDup:
-                asyncAddEntry(headersAndPayload, publishContext);
+                if (publishCoalescer != null) {
+                    publishCoalescer.publish(headersAndPayload, publishContext);
+                } else {
+                    asyncAddEntry(headersAndPayload, publishContext);
+                }
                 break;
             case Dup:
                 // Immediately acknowledge duplicated message
@@ -606,7 +629,7 @@ public class PersistentTopic extends AbstractTopic implements Topic, AddEntryCal
         }
     }
 
-    private void asyncAddEntry(ByteBuf headersAndPayload, PublishContext publishContext) {
+    void asyncAddEntry(ByteBuf headersAndPayload, PublishContext publishContext) {
         if (brokerService.isBrokerEntryMetadataEnabled()) {
             ledger.asyncAddEntry(headersAndPayload,
                     (int) publishContext.getNumberOfMessages(), this, publishContext);
@@ -615,6 +638,15 @@ public class PersistentTopic extends AbstractTopic implements Topic, AddEntryCal
         }
     }
 
+    /**
+     * Add an entry built by coalescing publishes, each of which was counted as a pending write operation.
+     */
+    void asyncAddCoalescedEntry(ByteBuf entry, PublishContext publishContext, int numPublishes) {
+        // The entry completes a single write operation
+        pendingWriteOps.addAndGet(1 - numPublishes);
+        asyncAddEntry(entry, publishContext);
+    }
+
     public void asyncReadEntry(PositionImpl position, AsyncCallbacks.ReadEntryCallback callback, Object ctx) {
         if (ledger instanceof ManagedLedgerImpl) {
             ((ManagedLedgerImpl) ledger).asyncReadEntry(position, callback, ctx);
@@ -2345,6 +2377,9 @@ public class PersistentTopic extends AbstractTopic implements Topic, AddEntryCal
         this.addEntryLatencyStatsUsec.refresh();
         NamespaceStats.add(this.addEntryLatencyStatsUsec.getBuckets(), nsStats.addLatencyBucket);
         this.addEntryLatencyStatsUsec.reset();
+        if (publishLatencyStats != null) {
+            publishLatencyStats.refresh();
+        }
     }
 
     public double getLastUpdatedAvgPublishRateInMsg() {
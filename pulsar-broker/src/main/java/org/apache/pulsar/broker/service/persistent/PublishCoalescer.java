@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service.persistent;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.mledger.AddEntryLatencyRecorder;
+import org.apache.pulsar.broker.service.Topic.PublishContext;
+import org.apache.pulsar.common.allocator.PulsarByteBufAllocator;
+import org.apache.pulsar.common.api.proto.CompressionType;
+import org.apache.pulsar.common.api.proto.MessageMetadata;
+import org.apache.pulsar.common.protocol.Commands;
+import org.apache.pulsar.common.protocol.Commands.ChecksumType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces the consecutive small publishes of each producer of a persistent topic into a single entry, to write
+ * fewer and larger entries to BookKeeper.
+ *
+ * <p/>The publishes of a producer are held for at most the configured delay, and are written in a batch entry built
+ * by the broker as soon as they reach the configured size, the key of the messages changes or a publish that can't
+ * be coalesced is received. Each publish is then acknowledged with the index of its first message in the entry, so
+ * the producer gets the same message ids as the consumers.
+ *
+ * <p/>Only the publishes of the same producer are coalesced together: the producer name and the sequence ids of the
+ * entry are used by the deduplication and by the replication, so they must be those of the messages of the entry.
+ */
+class PublishCoalescer {
+    private final PersistentTopic topic;
+    private final ScheduledExecutorService executor;
+    private final long maxDelayMicros;
+    private final int maxBytes;
+
+    // Publishes waiting to be written, by producer name
+    private final Map<String, PendingEntry> pendingEntries = new HashMap<>();
+    // Metadata of the publishes being coalesced, which must not overwrite the metadata peeked by the publishes
+    private final MessageMetadata publishMetadata = new MessageMetadata();
+
+    PublishCoalescer(PersistentTopic topic, ScheduledExecutorService executor, long maxDelayMicros, int maxBytes) {
+        this.topic = topic;
+        this.executor = executor;
+        this.maxDelayMicros = maxDelayMicros;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Write the publish, either alone or coalesced with the next publishes of the same producer.
+     */
+    void publish(ByteBuf headersAndPayload, PublishContext publishContext) {
+        String producerName = publishContext.getProducerName();
+        MessageMetadata metadata = null;
+        if (producerName != null && publishContext.supportsBatchIndexOffset() && !publishContext.isMarkerMessage()
+                && !publishContext.isChunked() && headersAndPayload.readableBytes() < maxBytes) {
+            metadata = Commands.peekMessageMetadata(headersAndPayload, topic.getName(), -1);
+            if (metadata != null && !canCoalesce(metadata)) {
+                metadata = null;
+            }
+        }
+
+        synchronized (this) {
+            PendingEntry pending = producerName != null ? pendingEntries.get(producerName) : null;
+            if (pending != null && (metadata == null || !pending.hasSameKey(metadata)
+                    || pending.size + headersAndPayload.readableBytes() > maxBytes)) {
+                // Keep the order of the publishes of the producer
+                pendingEntries.remove(producerName);
+                pending.write();
+                pending = null;
+            }
+            if (metadata == null) {
+                topic.asyncAddEntry(headersAndPayload, publishContext);
+                return;
+            }
+            if (pending == null) {
+                pending = new PendingEntry(metadata);
+                pendingEntries.put(producerName, pending);
+                PendingEntry scheduled = pending;
+                executor.schedule(() -> writeAfterDelay(producerName, scheduled), maxDelayMicros,
+                        TimeUnit.MICROSECONDS);
+            }
+            pending.add(headersAndPayload, publishContext,
+                    metadata.hasNumMessagesInBatch() ? metadata.getNumMessagesInBatch() : 1);
+        }
+    }
+
+    private synchronized void writeAfterDelay(String producerName, PendingEntry pending) {
+        if (pendingEntries.get(producerName) == pending) {
+            pendingEntries.remove(producerName);
+            pending.write();
+        }
+    }
+
+    private static boolean canCoalesce(MessageMetadata metadata) {
+        if (metadata.hasNumMessagesInBatch() && (metadata.getNumMessagesInBatch() <= 0
+                || metadata.getPropertiesCount() > 0)) {
+            // The properties of a batch entry don't belong to any message
+            return false;
+        }
+        return metadata.getCompression() == CompressionType.NONE
+                && metadata.getEncryptionKeysCount() == 0 && !metadata.hasEncryptionParam()
+                && !metadata.hasEncryptionAlgo()
+                && !metadata.hasUuid() && !metadata.hasChunkId() && !metadata.hasNumChunksFromMsg()
+                && !metadata.hasTxnidMostBits() && !metadata.hasTxnidLeastBits()
+                && !metadata.hasReplicatedFrom() && metadata.getReplicateTosCount() == 0
+                && !metadata.hasDeliverAtTime() && !metadata.hasMarkerType();
+    }
+
+    /**
+     * Publishes of a producer, with the same key and schema, to be written in the same entry.
+     */
+    private class PendingEntry {
+        private final String partitionKey;
+        private final boolean partitionKeyB64Encoded;
+        private final byte[] orderingKey;
+        private final byte[] schemaVersion;
+
+        private final List<ByteBuf> buffers = new ArrayList<>();
+        private final List<PublishContext> publishContexts = new ArrayList<>();
+        private final List<Integer> numMessages = new ArrayList<>();
+        private int size;
+
+        PendingEntry(MessageMetadata metadata) {
+            this.partitionKey = metadata.hasPartitionKey() ? metadata.getPartitionKey() : null;
+            this.partitionKeyB64Encoded = metadata.isPartitionKeyB64Encoded();
+            this.orderingKey = metadata.hasOrderingKey() ? metadata.getOrderingKey() : null;
+            this.schemaVersion = metadata.hasSchemaVersion() ? metadata.getSchemaVersion() : null;
+        }
+
+        boolean hasSameKey(MessageMetadata metadata) {
+            return Objects.equals(partitionKey, metadata.hasPartitionKey() ? metadata.getPartitionKey() : null)
+                    && partitionKeyB64Encoded == metadata.isPartitionKeyB64Encoded()
+                    && Arrays.equals(orderingKey, metadata.hasOrderingKey() ? metadata.getOrderingKey() : null)
+                    && Arrays.equals(schemaVersion,
+                    metadata.hasSchemaVersion() ? metadata.getSchemaVersion() : null);
+        }
+
+        void add(ByteBuf headersAndPayload, PublishContext publishContext, int messages) {
+            buffers.add(headersAndPayload.retain());
+            publishContexts.add(publishContext);
+            numMessages.add(messages);
+            size += headersAndPayload.readableBytes();
+        }
+
+        void write() {
+            if (buffers.size() == 1) {
+                // Nothing to coalesce, the publish is written as it was received
+                ByteBuf buffer = buffers.get(0);
+                topic.asyncAddEntry(buffer, publishContexts.get(0));
+                buffer.release();
+                return;
+            }
+
+            CoalescedPublishContext coalescedContext = new CoalescedPublishContext(publishContexts);
+            ByteBuf batchBuffer = PulsarByteBufAllocator.DEFAULT.buffer(size);
+            MessageMetadata entryMetadata = new MessageMetadata();
+            int batchIndex = 0;
+            for (int i = 0; i < buffers.size(); i++) {
+                ByteBuf buffer = buffers.get(i);
+                ByteBuf payload = buffer.duplicate();
+                Commands.parseMessageMetadata(payload, publishMetadata);
+                if (i == 0) {
+                    entryMetadata.copyFrom(publishMetadata);
+                }
+                if (publishMetadata.hasNumMessagesInBatch()) {
+                    // The payload is already a batch of messages with their single message metadata
+                    batchBuffer.writeBytes(payload);
+                } else {
+                    Commands.serializeSingleMessageInBatchWithPayload(publishMetadata, payload, batchBuffer);
+                }
+                buffer.release();
+                coalescedContext.batchIndexOffsets[i] = batchIndex;
+                batchIndex += numMessages.get(i);
+            }
+
+            // The properties of the first message belong to its single message metadata
+            entryMetadata.clearProperties();
+            entryMetadata.clearEventTime();
+            entryMetadata.clearNullValue();
+            entryMetadata.clearNullPartitionKey();
+            entryMetadata.setNumMessagesInBatch(batchIndex);
+            entryMetadata.setUncompressedSize(batchBuffer.readableBytes());
+            entryMetadata.setSequenceId(coalescedContext.getSequenceId());
+            entryMetadata.setHighestSequenceId(coalescedContext.getHighestSequenceId());
+            ByteBuf entry = Commands.serializeMetadataAndPayload(ChecksumType.Crc32c, entryMetadata, batchBuffer);
+            batchBuffer.release();
+
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] [{}] Coalesced {} publishes with {} messages in an entry of {} bytes", topic.getName(),
+                        coalescedContext.getProducerName(), publishContexts.size(), batchIndex,
+                        entry.readableBytes());
+            }
+            topic.asyncAddCoalescedEntry(entry, coalescedContext, publishContexts.size());
+            entry.release();
+        }
+    }
+
+    /**
+     * Context of an entry built by coalescing publishes, which completes the context of each of them.
+     */
+    static class CoalescedPublishContext implements PublishContext, AddEntryLatencyRecorder {
+        private final List<PublishContext> publishContexts;
+        private final int[] batchIndexOffsets;
+        private final long highestSequenceId;
+        private final long numberOfMessages;
+        private final long msgSize;
+
+        CoalescedPublishContext(List<PublishContext> publishContexts) {
+            this.publishContexts = publishContexts;
+            this.batchIndexOffsets = new int[publishContexts.size()];
+            long highestSequenceId = -1L;
+            long numberOfMessages = 0;
+            long msgSize = 0;
+            for (PublishContext publishContext : publishContexts) {
+                highestSequenceId = Math.max(highestSequenceId,
+                        Math.max(publishContext.getHighestSequenceId(), publishContext.getSequenceId()));
+                numberOfMessages += publishContext.getNumberOfMessages();
+                msgSize += publishContext.getMsgSize();
+            }
+            this.highestSequenceId = highestSequenceId;
+            this.numberOfMessages = numberOfMessages;
+            this.msgSize = msgSize;
+        }
+
+        @Override
+        public String getProducerName() {
+            return publishContexts.get(0).getProducerName();
+        }
+
+        @Override
+        public long getSequenceId() {
+            return publishContexts.get(0).getSequenceId();
+        }
+
+        @Override
+        public long getHighestSequenceId() {
+            return highestSequenceId;
+        }
+
+        @Override
+        public long getNumberOfMessages() {
+            return numberOfMessages;
+        }
+
+        @Override
+        public long getMsgSize() {
+            return msgSize;
+        }
+
+        @Override
+        public void setMetadataFromEntryData(ByteBuf entryData) {
+            for (PublishContext publishContext : publishContexts) {
+                publishContext.setMetadataFromEntryData(entryData);
+            }
+        }
+
+        @Override
+        public long getEntryTimestamp() {
+            return publishContexts.get(0).getEntryTimestamp();
+        }
+
+        @Override
+        public void setEntryTimestamp(long entryTimestamp) {
+            for (PublishContext publishContext : publishContexts) {
+                publishContext.setEntryTimestamp(entryTimestamp);
+            }
+        }
+
+        @Override
+        public void recordAddEntryLatency(long queuedNanos, long ledgerWriteNanos) {
+            for (PublishContext publishContext : publishContexts) {
+                if (publishContext instanceof AddEntryLatencyRecorder recorder) {
+                    recorder.recordAddEntryLatency(queuedNanos, ledgerWriteNanos);
+                }
+            }
+        }
+
+        @Override
+        public void completed(Exception e, long ledgerId, long entryId) {
+            for (int i = 0; i < publishContexts.size(); i++) {
+                PublishContext publishContext = publishContexts.get(i);
+                if (e == null) {
+                    publishContext.setBatchIndexOffset(batchIndexOffsets[i]);
+                }
+                publishContext.completed(e, ledgerId, entryId);
+            }
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(PublishCoalescer.class);
+}
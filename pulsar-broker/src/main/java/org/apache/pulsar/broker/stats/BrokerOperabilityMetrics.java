@@ -34,23 +34,29 @@ public class BrokerOperabilityMetrics {
     private final List<Metrics> metricsList;
     private final String localCluster;
     private final DimensionStats topicLoadStats;
+    private final DimensionStats dedupRecoveryStats;
     private final String brokerName;
     private final LongAdder connectionTotalCreatedCount;
     private final LongAdder connectionCreateSuccessCount;
     private final LongAdder connectionCreateFailCount;
     private final LongAdder connectionTotalClosedCount;
     private final LongAdder connectionActive;
+    private final LongAdder connectionFlushCount;
+    private final LongAdder connectionFlushedBytes;
 
     public BrokerOperabilityMetrics(String localCluster, String brokerName) {
         this.metricsList = new ArrayList<>();
         this.localCluster = localCluster;
         this.topicLoadStats = new DimensionStats("pulsar_topic_load_times", 60);
+        this.dedupRecoveryStats = new DimensionStats("pulsar_dedup_recovery_times", 60);
         this.brokerName = brokerName;
         this.connectionTotalCreatedCount = new LongAdder();
         this.connectionCreateSuccessCount = new LongAdder();
         this.connectionCreateFailCount = new LongAdder();
         this.connectionTotalClosedCount = new LongAdder();
         this.connectionActive = new LongAdder();
+        this.connectionFlushCount = new LongAdder();
+        this.connectionFlushedBytes = new LongAdder();
     }
 
     public List<Metrics> getMetrics() {
@@ -61,6 +67,7 @@ public class BrokerOperabilityMetrics {
     private void generate() {
         reset();
         metricsList.add(getTopicLoadMetrics());
+        metricsList.add(getDedupRecoveryMetrics());
         metricsList.add(getConnectionMetrics());
     }
 
@@ -75,6 +82,8 @@ public class BrokerOperabilityMetrics {
         rMetrics.put("brk_connection_create_fail_count", connectionCreateFailCount.longValue());
         rMetrics.put("brk_connection_closed_total_count", connectionTotalClosedCount.longValue());
         rMetrics.put("brk_active_connections", connectionActive.longValue());
+        rMetrics.put("brk_connection_flush_count", connectionFlushCount.longValue());
+        rMetrics.put("brk_connection_flushed_bytes", connectionFlushedBytes.longValue());
         return rMetrics;
     }
 
@@ -92,6 +101,10 @@ public class BrokerOperabilityMetrics {
         return metrics;
     }
 
+    Metrics getDedupRecoveryMetrics() {
+        return getDimensionMetrics("pulsar_dedup_recovery_times", "dedup_recovery", dedupRecoveryStats);
+    }
+
     Metrics getDimensionMetrics(String metricsName, String dimensionName, DimensionStats stats) {
         Metrics dMetrics = Metrics.create(getDimensionMap(metricsName));
 
@@ -111,12 +124,17 @@ public class BrokerOperabilityMetrics {
     public void reset() {
         metricsList.clear();
         topicLoadStats.reset();
+        dedupRecoveryStats.reset();
     }
 
     public void recordTopicLoadTimeValue(long topicLoadLatencyMs) {
         topicLoadStats.recordDimensionTimeValue(topicLoadLatencyMs, TimeUnit.MILLISECONDS);
     }
 
+    public void recordDedupRecoveryTimeValue(long dedupRecoveryLatencyMs) {
+        dedupRecoveryStats.recordDimensionTimeValue(dedupRecoveryLatencyMs, TimeUnit.MILLISECONDS);
+    }
+
     public void recordTopicLoadFailed() {
         this.TOPIC_LOAD_FAILED.inc();
     }
@@ -138,4 +156,9 @@ public class BrokerOperabilityMetrics {
     public void recordConnectionCreateFail() {
         this.connectionCreateFailCount.increment();
     }
+
+    public void recordConnectionFlush(long flushedBytes) {
+        this.connectionFlushCount.increment();
+        this.connectionFlushedBytes.add(flushedBytes);
+    }
 }
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.stats;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import org.apache.bookkeeper.mledger.util.StatsBuckets;
+import org.apache.pulsar.common.naming.TopicName;
+import org.apache.pulsar.common.stats.MetricsUtil;
+import org.apache.pulsar.opentelemetry.OpenTelemetryAttributes;
+
+/**
+ * Latency of each phase of the publishes of a topic, measured on a sample of the publishes.
+ *
+ * <p/>The latencies are aggregated in buckets, refreshed with the other stats of the topic, and recorded in the
+ * OpenTelemetry histogram of the broker, if any.
+ */
+public class PublishLatencyStats {
+
+    public static final String PUBLISH_PHASE_DURATION_METRIC_NAME = "pulsar.broker.topic.publish.phase.duration";
+
+    public static final AttributeKey<String> PULSAR_PUBLISH_PHASE = AttributeKey.stringKey("pulsar.publish.phase");
+
+    public static final long[] PHASE_LATENCY_BUCKETS_USEC = { 10, 50, 100, 500, 1_000, 5_000, 10_000, 50_000,
+            100_000, 1_000_000 };
+
+    // Suffixes of the Prometheus metrics of the buckets, with the upper bound in milliseconds, e.g. "_le_0_05"
+    public static final String[] PHASE_LATENCY_BUCKET_SUFFIXES = new String[PHASE_LATENCY_BUCKETS_USEC.length + 1];
+
+    static {
+        for (int i = 0; i < PHASE_LATENCY_BUCKETS_USEC.length; i++) {
+            PHASE_LATENCY_BUCKET_SUFFIXES[i] = "_le_" + BigDecimal.valueOf(PHASE_LATENCY_BUCKETS_USEC[i], 3)
+                    .stripTrailingZeros().toPlainString().replace('.', '_');
+        }
+        PHASE_LATENCY_BUCKET_SUFFIXES[PHASE_LATENCY_BUCKETS_USEC.length] = "_overflow";
+    }
+
+    /**
+     * Phase of the publish of a message.
+     */
+    public enum Phase {
+        /**
+         * From the reception of the send command to the start of the publish, after the producer checks.
+         */
+        DECODE("decode"),
+        /**
+         * Broker interceptors notified of the publish.
+         */
+        INTERCEPTOR("interceptor"),
+        /**
+         * Check of the sequence id of the message by the deduplication.
+         */
+        DEDUPLICATION("deduplication"),
+        /**
+         * Wait of the entry in the managed ledger before being written to the ledger, e.g. during a ledger rollover.
+         */
+        STORAGE_QUEUE("storage_queue"),
+        /**
+         * Write of the entry to the bookies.
+         */
+        STORAGE_WRITE("storage_write"),
+        /**
+         * From the completion of the write to the send receipt written to the connection.
+         */
+        SEND_RECEIPT("send_receipt");
+
+        @Getter
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final StatsBuckets[] latencyBuckets = new StatsBuckets[PHASES.length];
+    private final DoubleHistogram histogram;
+    private final Attributes[] attributes = new Attributes[PHASES.length];
+
+    public PublishLatencyStats(String topic, DoubleHistogram histogram) {
+        this.histogram = histogram;
+        String namespace = TopicName.get(topic).getNamespace();
+        for (Phase phase : PHASES) {
+            latencyBuckets[phase.ordinal()] = new StatsBuckets(PHASE_LATENCY_BUCKETS_USEC);
+            attributes[phase.ordinal()] = Attributes.of(
+                    OpenTelemetryAttributes.PULSAR_NAMESPACE, namespace,
+                    OpenTelemetryAttributes.PULSAR_TOPIC, topic,
+                    PULSAR_PUBLISH_PHASE, phase.getLabel());
+        }
+    }
+
+    public void recordLatency(Phase phase, long latencyNanos) {
+        latencyBuckets[phase.ordinal()].addValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        if (histogram != null) {
+            histogram.record(MetricsUtil.convertToSeconds(latencyNanos, TimeUnit.NANOSECONDS),
+                    attributes[phase.ordinal()]);
+        }
+    }
+
+    /**
+     * Make the latencies recorded since the last refresh visible in the buckets.
+     */
+    public void refresh() {
+        for (StatsBuckets buckets : latencyBuckets) {
+            buckets.refresh();
+        }
+    }
+
+    public StatsBuckets getLatencyBuckets(Phase phase) {
+        return latencyBuckets[phase.ordinal()];
+    }
+}
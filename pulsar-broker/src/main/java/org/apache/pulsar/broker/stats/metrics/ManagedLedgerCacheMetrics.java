@@ -24,6 +24,7 @@ import io.netty.buffer.PoolChunkMetric;
 import io.netty.buffer.PooledByteBufAllocator;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import org.apache.bookkeeper.mledger.ManagedLedgerFactoryMXBean;
 import org.apache.bookkeeper.mledger.impl.cache.RangeEntryCacheImpl;
 import org.apache.pulsar.broker.PulsarService;
@@ -57,6 +58,22 @@ public class ManagedLedgerCacheMetrics extends AbstractMetrics {
         m.put("brk_ml_cache_hits_throughput", mlCacheStats.getCacheHitsThroughput());
         m.put("brk_ml_cache_misses_throughput", mlCacheStats.getCacheMissesThroughput());
 
+        if (mlCacheStats.getDiskCacheMaxSize() > 0) {
+            m.put("brk_ml_cache_disk_used_size", mlCacheStats.getDiskCacheUsedSize());
+            m.put("brk_ml_cache_disk_written_entries_total", mlCacheStats.getDiskCacheWrittenEntriesCount());
+            m.put("brk_ml_cache_disk_hits_rate", mlCacheStats.getDiskCacheHitsRate());
+            m.put("brk_ml_cache_disk_misses_rate", mlCacheStats.getDiskCacheMissesRate());
+            m.put("brk_ml_cache_disk_hits_throughput", mlCacheStats.getDiskCacheHitsThroughput());
+            m.put("brk_ml_cache_disk_read_latency_avg_usec", mlCacheStats.getDiskCacheReadLatencyAverageUsec());
+        }
+
+        // Hit ratio and admission stats, labeled with the eviction policy that produced them
+        Metrics policyMetrics = createMetrics(Map.of("policy", mlCacheStats.getCacheEvictionPolicy()));
+        double reads = mlCacheStats.getCacheHitsRate() + mlCacheStats.getCacheMissesRate();
+        policyMetrics.put("brk_ml_cache_hits_ratio", reads > 0 ? mlCacheStats.getCacheHitsRate() / reads : 0.0);
+        policyMetrics.put("brk_ml_cache_admission_rejected_entries_total",
+                mlCacheStats.getCacheAdmissionRejectedEntriesCount());
+
         PooledByteBufAllocator allocator = RangeEntryCacheImpl.ALLOCATOR;
         long activeAllocations = 0;
         long activeAllocationsSmall = 0;
@@ -91,6 +108,7 @@ public class ManagedLedgerCacheMetrics extends AbstractMetrics {
 
         metrics.clear();
         metrics.add(m);
+        metrics.add(policyMetrics);
         return metrics;
 
     }
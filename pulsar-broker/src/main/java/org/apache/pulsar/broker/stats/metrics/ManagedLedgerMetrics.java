@@ -35,6 +35,8 @@ public class ManagedLedgerMetrics extends AbstractMetrics {
     private Map<Metrics, List<ManagedLedgerImpl>> ledgersByDimensionMap;
     // temp map to prepare aggregation metrics
     private Map<String, Double> tempAggregatedMetricsMap;
+    // temp map to prepare max metrics
+    private Map<String, Long> tempMaxMetricsMap;
     private static final Buckets
             BRK_ML_ADDENTRYLATENCYBUCKETS = new Buckets("brk_ml_AddEntryLatencyBuckets",
             ENTRY_LATENCY_BUCKETS_MS);
@@ -42,6 +44,8 @@ public class ManagedLedgerMetrics extends AbstractMetrics {
             "brk_ml_LedgerAddEntryLatencyBuckets", ENTRY_LATENCY_BUCKETS_MS);
     private static final Buckets BRK_ML_LEDGERSWITCHLATENCYBUCKETS = new Buckets(
             "brk_ml_LedgerSwitchLatencyBuckets", ENTRY_LATENCY_BUCKETS_MS);
+    private static final Buckets BRK_ML_LEDGERROLLOVERSTALLBUCKETS = new Buckets(
+            "brk_ml_LedgerRolloverStallBuckets", ENTRY_LATENCY_BUCKETS_MS);
 
     private static final Buckets
             BRK_ML_ENTRYSIZEBUCKETS = new Buckets("brk_ml_EntrySizeBuckets", ENTRY_SIZE_BUCKETS_BYTES);
@@ -53,6 +57,7 @@ public class ManagedLedgerMetrics extends AbstractMetrics {
         this.metricsCollection = new ArrayList<>();
         this.ledgersByDimensionMap = new HashMap<>();
         this.tempAggregatedMetricsMap = new HashMap<>();
+        this.tempMaxMetricsMap = new HashMap<>();
         this.statsPeriodSeconds = ((ManagedLedgerFactoryImpl) pulsar.getManagedLedgerFactory())
                 .getConfig().getStatsPeriodSeconds();
     }
@@ -81,6 +86,7 @@ public class ManagedLedgerMetrics extends AbstractMetrics {
 
             // prepare aggregation map
             tempAggregatedMetricsMap.clear();
+            tempMaxMetricsMap.clear();
 
             // generate the collections by each metrics and then apply the aggregation
 
@@ -110,6 +116,14 @@ public class ManagedLedgerMetrics extends AbstractMetrics {
                         lStats.getReadEntriesRate());
                 populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_ReadEntriesOpsCacheMissesRate",
                         lStats.getReadEntriesOpsCacheMissesRate());
+                populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_CacheRetentionHits",
+                        (double) lStats.getCacheRetentionHits());
+                populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_ReadAheadPrefetchedEntries",
+                        (double) lStats.getReadAheadPrefetchedEntries());
+                populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_ReadAheadConsumedEntries",
+                        (double) lStats.getReadAheadConsumedEntries());
+                populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_TailFanOutEntries",
+                        (double) lStats.getTailFanOutEntries());
                 populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_ReadEntriesSucceeded",
                         (double) lStats.getReadEntriesSucceeded());
                 populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_StoredMessagesSize",
@@ -125,11 +139,20 @@ public class ManagedLedgerMetrics extends AbstractMetrics {
                 BRK_ML_LEDGERSWITCHLATENCYBUCKETS.populateBucketEntries(tempAggregatedMetricsMap,
                         lStats.getLedgerSwitchLatencyBuckets(),
                         statsPeriodSeconds);
+                BRK_ML_LEDGERROLLOVERSTALLBUCKETS.populateBucketEntries(tempAggregatedMetricsMap,
+                        lStats.getLedgerRolloverStallBuckets(),
+                        statsPeriodSeconds);
                 BRK_ML_ENTRYSIZEBUCKETS.populateBucketEntries(tempAggregatedMetricsMap,
                         lStats.getEntrySizeBuckets(),
                         statsPeriodSeconds);
                 populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_MarkDeleteRate",
                         lStats.getMarkDeleteRate());
+
+                // Slowest load of a topic of the namespace
+                populateMaxMap(tempMaxMetricsMap, "brk_ml_MaxLedgersRecoveryTimeMs",
+                        lStats.getLedgersRecoveryTimeMillis());
+                populateMaxMap(tempMaxMetricsMap, "brk_ml_MaxCursorsRecoveryTimeMs",
+                        lStats.getCursorsRecoveryTimeMillis());
             }
 
             // SUM up collections of each metrics
@@ -138,6 +161,18 @@ public class ManagedLedgerMetrics extends AbstractMetrics {
 
                 metrics.put(ma.getKey(), ma.getValue());
             }
+            for (Entry<String, Long> ma : tempMaxMetricsMap.entrySet()) {
+                metrics.put(ma.getKey(), ma.getValue());
+            }
+
+            // Ratio of the prefetched entries that were read by the cursors before being evicted
+            double readAheadPrefetchedEntries =
+                    tempAggregatedMetricsMap.getOrDefault("brk_ml_ReadAheadPrefetchedEntries", 0.0);
+            if (readAheadPrefetchedEntries > 0) {
+                metrics.put("brk_ml_ReadAheadUsefulnessRatio",
+                        tempAggregatedMetricsMap.getOrDefault("brk_ml_ReadAheadConsumedEntries", 0.0)
+                                / readAheadPrefetchedEntries);
+            }
 
             metricsCollection.add(metrics);
         }
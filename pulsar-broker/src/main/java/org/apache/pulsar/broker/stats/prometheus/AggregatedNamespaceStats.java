@@ -69,6 +69,8 @@ public class AggregatedNamespaceStats {
     StatsBuckets compactionLatencyBuckets = new StatsBuckets(CompactionRecord.WRITE_LATENCY_BUCKETS_USEC);
     long delayedMessageIndexSizeInBytes;
 
+    PublishPhaseLatencyStats publishPhaseLatencyStats = new PublishPhaseLatencyStats();
+
     Map<String, TopicMetricBean> bucketDelayedIndexStats = new HashMap<>();
 
     @SuppressWarnings("DuplicatedCode")
@@ -177,11 +179,13 @@ public class AggregatedNamespaceStats {
         compactionCompactedEntriesCount += stats.compactionCompactedEntriesCount;
         compactionCompactedEntriesSize += stats.compactionCompactedEntriesSize;
         compactionLatencyBuckets.addAll(stats.compactionLatencyBuckets);
+        publishPhaseLatencyStats.add(stats.publishPhaseLatencyStats);
     }
 
     @SuppressWarnings("DuplicatedCode")
     public void reset() {
         managedLedgerStats.reset();
+        publishPhaseLatencyStats.reset();
         topicsCount = 0;
         subscriptionsCount = 0;
         producersCount = 0;
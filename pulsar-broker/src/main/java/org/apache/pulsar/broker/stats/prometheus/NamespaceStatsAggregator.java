@@ -214,6 +214,10 @@ public class NamespaceStatsAggregator {
         stats.bytesOutCounter = tStatus.bytesOutCounter;
         stats.averageMsgSize = tStatus.averageMsgSize;
         stats.publishRateLimitedTimes = tStatus.publishRateLimitedTimes;
+        if (topic.getPublishLatencyStats() != null) {
+            stats.publishPhaseLatencyStats.add(topic.getPublishLatencyStats());
+            stats.publishPhaseLatencyStats.refresh();
+        }
         stats.delayedMessageIndexSizeInBytes = tStatus.delayedMessageIndexSizeInBytes;
         stats.bucketDelayedIndexStats = tStatus.bucketDelayedIndexStats;
         stats.abortedTxnCount = tStatus.abortedTxnCount;
@@ -485,6 +489,10 @@ public class NamespaceStatsAggregator {
         writeMetric(stream, "pulsar_entry_size_sum", stats.managedLedgerStats.entrySizeBuckets.getSum(),
                 cluster, namespace);
 
+        stats.publishPhaseLatencyStats.refresh();
+        stats.publishPhaseLatencyStats.writeMetrics((metricName, value, phase) -> writeMetric(stream, metricName,
+                value, cluster, namespace, "phase", phase));
+
         writeReplicationStat(stream, "pulsar_replication_rate_in", stats,
                 replStats -> replStats.msgRateIn, cluster, namespace);
         writeReplicationStat(stream, "pulsar_replication_rate_out", stats,
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.stats.prometheus;
+
+import org.apache.bookkeeper.mledger.util.StatsBuckets;
+import org.apache.pulsar.broker.stats.PublishLatencyStats;
+import org.apache.pulsar.broker.stats.PublishLatencyStats.Phase;
+
+/**
+ * Latency of the phases of the sampled publishes, of a topic or aggregated for a namespace.
+ */
+class PublishPhaseLatencyStats {
+
+    private static final Phase[] PHASES = Phase.values();
+
+    // Whether the publishes of any of the topics are sampled
+    boolean sampled;
+    final StatsBuckets[] latencyBuckets = new StatsBuckets[PHASES.length];
+
+    PublishPhaseLatencyStats() {
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            latencyBuckets[i] = new StatsBuckets(PublishLatencyStats.PHASE_LATENCY_BUCKETS_USEC);
+        }
+    }
+
+    void add(PublishLatencyStats topicStats) {
+        sampled = true;
+        for (Phase phase : PHASES) {
+            latencyBuckets[phase.ordinal()].addAll(topicStats.getLatencyBuckets(phase));
+        }
+    }
+
+    void add(PublishPhaseLatencyStats other) {
+        if (!other.sampled) {
+            return;
+        }
+        sampled = true;
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            latencyBuckets[i].addAll(other.latencyBuckets[i]);
+        }
+    }
+
+    void refresh() {
+        for (StatsBuckets buckets : latencyBuckets) {
+            buckets.refresh();
+        }
+    }
+
+    void reset() {
+        sampled = false;
+        for (StatsBuckets buckets : latencyBuckets) {
+            buckets.reset();
+        }
+    }
+
+    /**
+     * Write the buckets, count and sum of the latency of each phase, labeled with the phase.
+     */
+    void writeMetrics(MetricWriter writer) {
+        if (!sampled) {
+            return;
+        }
+        for (Phase phase : PHASES) {
+            StatsBuckets buckets = latencyBuckets[phase.ordinal()];
+            long[] values = buckets.getBuckets();
+            for (int i = 0; i < values.length; i++) {
+                writer.write("pulsar_publish_phase_latency" + PublishLatencyStats.PHASE_LATENCY_BUCKET_SUFFIXES[i],
+                        values[i], phase.getLabel());
+            }
+            writer.write("pulsar_publish_phase_latency_count", buckets.getCount(), phase.getLabel());
+            writer.write("pulsar_publish_phase_latency_sum", buckets.getSum(), phase.getLabel());
+        }
+    }
+
+    interface MetricWriter {
+        void write(String metricName, Number value, String phase);
+    }
+}
@@ -79,6 +79,7 @@ class TopicStats {
     public long sizeBasedBacklogQuotaExceededEvictionCount;
     public long timeBasedBacklogQuotaExceededEvictionCount;
 
+    PublishPhaseLatencyStats publishPhaseLatencyStats = new PublishPhaseLatencyStats();
 
     @SuppressWarnings("DuplicatedCode")
     public void reset() {
@@ -117,6 +118,7 @@ class TopicStats {
         compactionCompactedEntriesCount = 0;
         compactionCompactedEntriesSize = 0;
         compactionLatencyBuckets.reset();
+        publishPhaseLatencyStats.reset();
         delayedMessageIndexSizeInBytes = 0;
         bucketDelayedIndexStats.clear();
 
@@ -275,6 +277,9 @@ class TopicStats {
         writeMetric(stream, "pulsar_entry_size_sum", stats.managedLedgerStats.entrySizeBuckets.getSum(),
                 cluster, namespace, topic, splitTopicAndPartitionIndexLabel);
 
+        stats.publishPhaseLatencyStats.writeMetrics((metricName, value, phase) -> writeTopicMetric(stream,
+                metricName, value, cluster, namespace, topic, splitTopicAndPartitionIndexLabel, "phase", phase));
+
         stats.producerStats.forEach((p, producerStats) -> {
             writeProducerMetric(stream, "pulsar_producer_msg_rate_in", producerStats.msgRateIn,
                     cluster, namespace, topic, p, producerStats.producerId, splitTopicAndPartitionIndexLabel);
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import lombok.Cleanup;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.apache.pulsar.common.util.FutureUtil;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Test the dispatch of the messages to the consumers as composite buffers.
+ */
+@Test(groups = "broker")
+public class CompositeDispatchWriteTest extends BrokerTestBase {
+
+    @DataProvider(name = "batching")
+    public static Object[][] batching() {
+        return new Object[][] {{false}, {true}};
+    }
+
+    @BeforeClass
+    protected void setup() throws Exception {
+        conf.setDispatcherCompositeWriteEnabled(true);
+        conf.setAcknowledgmentAtBatchIndexLevelEnabled(true);
+        baseSetup();
+    }
+
+    @AfterClass(alwaysRun = true)
+    protected void cleanup() throws Exception {
+        internalCleanup();
+    }
+
+    @Test(dataProvider = "batching")
+    public void testProduceAndConsume(boolean batching) throws Exception {
+        final String topic = "persistent://" + newTopicName();
+        final int messages = 200;
+
+        @Cleanup
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("sub")
+                .subscriptionType(SubscriptionType.Shared)
+                .subscribe();
+        @Cleanup
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING)
+                .topic(topic)
+                .enableBatching(batching)
+                .batchingMaxMessages(10)
+                .create();
+
+        List<CompletableFuture<MessageId>> futures = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            futures.add(producer.newMessage().key("key-" + i).value("msg-" + i).sendAsync());
+        }
+        FutureUtil.waitForAll(futures).get();
+
+        for (int i = 0; i < messages; i++) {
+            Message<String> message = consumer.receive(5, TimeUnit.SECONDS);
+            assertEquals(message.getValue(), "msg-" + i);
+            assertEquals(message.getKey(), "key-" + i);
+            assertEquals(message.getMessageId(), futures.get(i).get());
+            consumer.acknowledge(message);
+        }
+        assertNull(consumer.receive(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRedeliveryOfPartiallyAckedBatch() throws Exception {
+        final String topic = "persistent://" + newTopicName();
+        final int messages = 10;
+
+        @Cleanup
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("sub")
+                .subscriptionType(SubscriptionType.Shared)
+                .enableBatchIndexAcknowledgment(true)
+                .negativeAckRedeliveryDelay(100, TimeUnit.MILLISECONDS)
+                .subscribe();
+        @Cleanup
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING)
+                .topic(topic)
+                .enableBatching(true)
+                .batchingMaxMessages(messages)
+                .batchingMaxPublishDelay(1, TimeUnit.SECONDS)
+                .create();
+
+        List<CompletableFuture<MessageId>> futures = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            futures.add(producer.sendAsync("msg-" + i));
+        }
+        FutureUtil.waitForAll(futures).get();
+
+        // Acknowledge the even messages and negatively acknowledge the odd ones
+        for (int i = 0; i < messages; i++) {
+            Message<String> message = consumer.receive(5, TimeUnit.SECONDS);
+            assertEquals(message.getValue(), "msg-" + i);
+            if (i % 2 == 0) {
+                consumer.acknowledge(message);
+            } else {
+                consumer.negativeAcknowledge(message);
+            }
+        }
+
+        // Only the odd messages are redelivered, with their redelivery count
+        for (int i = 1; i < messages; i += 2) {
+            Message<String> message = consumer.receive(5, TimeUnit.SECONDS);
+            assertEquals(message.getValue(), "msg-" + i);
+            assertTrue(message.getRedeliveryCount() > 0);
+            consumer.acknowledge(message);
+        }
+        assertNull(consumer.receive(100, TimeUnit.MILLISECONDS));
+    }
+}
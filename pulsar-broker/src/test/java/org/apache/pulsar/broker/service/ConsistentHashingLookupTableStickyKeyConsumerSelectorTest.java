@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = "broker")
+public class ConsistentHashingLookupTableStickyKeyConsumerSelectorTest {
+
+    private static Consumer mockConsumer(String consumerName) {
+        Consumer consumer = mock(Consumer.class);
+        when(consumer.consumerName()).thenReturn(consumerName);
+        return consumer;
+    }
+
+    private static void assertSameSelection(StickyKeyConsumerSelector expected,
+                                            StickyKeyConsumerSelector selector, Random random) {
+        for (int i = 0; i < 10000; i++) {
+            int hash = StickyKeyConsumerSelector.makeStickyKeyHash(UUID.randomUUID().toString().getBytes());
+            Assert.assertSame(selector.select(hash), expected.select(hash));
+            hash = random.nextInt(Integer.MAX_VALUE);
+            Assert.assertSame(selector.select(hash), expected.select(hash));
+        }
+        Assert.assertSame(selector.select(0), expected.select(0));
+        Assert.assertSame(selector.select(Integer.MAX_VALUE), expected.select(Integer.MAX_VALUE));
+        Assert.assertEquals(selector.getConsumerKeyHashRanges(), expected.getConsumerKeyHashRanges());
+    }
+
+    @Test
+    public void testSameSelectionAsConsistentHashingSelector() {
+        Random random = new Random(0);
+        for (int numberOfPoints : new int[]{1, 3, 100}) {
+            ConsistentHashingStickyKeyConsumerSelector expected =
+                    new ConsistentHashingStickyKeyConsumerSelector(numberOfPoints);
+            ConsistentHashingLookupTableStickyKeyConsumerSelector selector =
+                    new ConsistentHashingLookupTableStickyKeyConsumerSelector(numberOfPoints);
+            Assert.assertNull(selector.select("anyKey".getBytes()));
+            Assert.assertTrue(selector.getConsumerKeyHashRanges().isEmpty());
+
+            List<Consumer> consumers = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                Consumer consumer = mockConsumer("consumer" + i);
+                consumers.add(consumer);
+                expected.addConsumer(consumer);
+                selector.addConsumer(consumer);
+                if (i % 10 == 0) {
+                    assertSameSelection(expected, selector, random);
+                }
+            }
+            // Consumers with the same name share the points of the ring
+            Consumer sameName = mockConsumer("consumer1");
+            consumers.add(sameName);
+            expected.addConsumer(sameName);
+            selector.addConsumer(sameName);
+            assertSameSelection(expected, selector, random);
+
+            while (!consumers.isEmpty()) {
+                Consumer consumer = consumers.remove(random.nextInt(consumers.size()));
+                expected.removeConsumer(consumer);
+                selector.removeConsumer(consumer);
+                if (consumers.size() % 10 == 0) {
+                    assertSameSelection(expected, selector, random);
+                }
+            }
+            Assert.assertNull(selector.select("anyKey".getBytes()));
+        }
+    }
+
+    @Test
+    public void shouldRemoveConsumersFromConsumerKeyHashRanges() {
+        ConsistentHashingLookupTableStickyKeyConsumerSelector selector =
+                new ConsistentHashingLookupTableStickyKeyConsumerSelector(12);
+        List<Consumer> consumers = IntStream.range(1, 100).mapToObj(i -> mockConsumer("consumer" + i))
+                .collect(Collectors.toList());
+
+        // when consumers are added
+        consumers.forEach(selector::addConsumer);
+        // then each consumer should have a range
+        Assert.assertEquals(selector.getConsumerKeyHashRanges().size(), consumers.size());
+        // when consumers are removed
+        consumers.forEach(selector::removeConsumer);
+        // then there should be no mapping remaining
+        Assert.assertEquals(selector.getConsumerKeyHashRanges().size(), 0);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = "broker")
+public class FlushAggregationHandlerTest {
+
+    private PulsarStats pulsarStats;
+
+    @BeforeMethod
+    public void setup() {
+        pulsarStats = mock(PulsarStats.class);
+    }
+
+    @Test
+    public void testFlushDeferredToEndOfTask() {
+        EmbeddedChannel channel = new EmbeddedChannel(new FlushAggregationHandler(1024, 0, pulsarStats));
+
+        // The embedded channel runs the pending tasks on each write, so write everything before flushing
+        for (int i = 0; i < 3; i++) {
+            channel.write(newBuffer(i, 10));
+        }
+        for (int i = 0; i < 3; i++) {
+            channel.flush();
+        }
+        assertTrue(channel.outboundMessages().isEmpty());
+        verify(pulsarStats, never()).recordConnectionFlush(anyLong());
+
+        channel.runPendingTasks();
+        assertOutbound(channel, 3);
+        verify(pulsarStats, times(1)).recordConnectionFlush(30);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testFlushDeferredToEndOfRead() {
+        EmbeddedChannel channel = newEchoChannel(new FlushAggregationHandler(1024, 0, pulsarStats));
+
+        channel.pipeline().fireChannelRead(newBuffer(0, 10));
+        channel.pipeline().fireChannelRead(newBuffer(1, 10));
+        // The scheduled flush doesn't run while a read is in progress
+        channel.runPendingTasks();
+        assertTrue(channel.outboundMessages().isEmpty());
+
+        channel.pipeline().fireChannelReadComplete();
+        assertOutbound(channel, 2);
+        verify(pulsarStats, times(1)).recordConnectionFlush(20);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testFlushOnMaxPendingBytes() {
+        EmbeddedChannel channel = newEchoChannel(new FlushAggregationHandler(1024, 25, pulsarStats));
+
+        channel.pipeline().fireChannelRead(newBuffer(0, 10));
+        channel.pipeline().fireChannelRead(newBuffer(1, 10));
+        assertTrue(channel.outboundMessages().isEmpty());
+
+        // The flush isn't deferred to the end of the read anymore
+        channel.pipeline().fireChannelRead(newBuffer(2, 10));
+        assertOutbound(channel, 3);
+        verify(pulsarStats, times(1)).recordConnectionFlush(30);
+
+        // There is nothing left to flush at the end of the read
+        channel.pipeline().fireChannelReadComplete();
+        verify(pulsarStats, times(1)).recordConnectionFlush(anyLong());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testFlushOnMaxPendingFlushes() {
+        EmbeddedChannel channel = newEchoChannel(new FlushAggregationHandler(2, 0, pulsarStats));
+
+        channel.pipeline().fireChannelRead(newBuffer(0, 10));
+        assertTrue(channel.outboundMessages().isEmpty());
+        channel.pipeline().fireChannelRead(newBuffer(1, 10));
+        assertOutbound(channel, 2);
+        verify(pulsarStats, times(1)).recordConnectionFlush(20);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testFlushOnClose() {
+        EmbeddedChannel channel = new EmbeddedChannel(new FlushAggregationHandler(1024, 0, pulsarStats));
+
+        channel.write(newBuffer(0, 10));
+        channel.flush();
+        channel.close();
+        assertOutbound(channel, 1);
+        verify(pulsarStats, times(1)).recordConnectionFlush(10);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidMaxPendingFlushes() {
+        new FlushAggregationHandler(0, 0, pulsarStats);
+    }
+
+    private static EmbeddedChannel newEchoChannel(FlushAggregationHandler handler) {
+        return new EmbeddedChannel(handler, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                ctx.writeAndFlush(msg);
+            }
+        });
+    }
+
+    private static ByteBuf newBuffer(int index, int size) {
+        ByteBuf buf = Unpooled.buffer(size);
+        buf.writeInt(index);
+        buf.writerIndex(size);
+        return buf;
+    }
+
+    private static void assertOutbound(EmbeddedChannel channel, int expectedMessages) {
+        assertEquals(channel.outboundMessages().size(), expectedMessages);
+        // The writes are flushed in order
+        for (int i = 0; i < expectedMessages; i++) {
+            ByteBuf buf = channel.readOutbound();
+            assertEquals(buf.getInt(0), i);
+            ReferenceCountUtil.release(buf);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import lombok.Cleanup;
+import org.apache.pulsar.broker.service.persistent.PersistentTopic;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.apache.pulsar.common.util.FutureUtil;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Test for the coalescing of the small publishes into larger entries.
+ */
+@Test(groups = "broker")
+public class PublishCoalescingTest extends BrokerTestBase {
+
+    @DataProvider(name = "batching")
+    public static Object[][] batching() {
+        return new Object[][] {{false}, {true}};
+    }
+
+    @BeforeClass
+    protected void setup() throws Exception {
+        conf.setTopicPublishCoalescingEnabled(true);
+        // Wait long enough for all the sends of a test to be coalesced
+        conf.setTopicPublishCoalescingMaxDelayMicros((int) TimeUnit.MILLISECONDS.toMicros(200));
+        conf.setTopicPublishCoalescingMaxBytes(4096);
+        baseSetup();
+    }
+
+    @AfterClass(alwaysRun = true)
+    protected void cleanup() throws Exception {
+        internalCleanup();
+    }
+
+    @Test(dataProvider = "batching")
+    public void testProducerAndConsumerMessageIds(boolean batching) throws Exception {
+        final String topic = "persistent://" + newTopicName();
+        final int messages = 100;
+
+        @Cleanup
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("sub")
+                .subscriptionType(SubscriptionType.Shared)
+                .subscribe();
+        @Cleanup
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING)
+                .topic(topic)
+                .enableBatching(batching)
+                .batchingMaxMessages(3)
+                .create();
+
+        List<CompletableFuture<MessageId>> futures = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            futures.add(producer.newMessage().value("msg-" + i).property("index", String.valueOf(i)).sendAsync());
+        }
+        FutureUtil.waitForAll(futures).get();
+
+        for (int i = 0; i < messages; i++) {
+            Message<String> message = consumer.receive(5, TimeUnit.SECONDS);
+            assertEquals(message.getValue(), "msg-" + i);
+            assertEquals(message.getProperty("index"), String.valueOf(i));
+            assertEquals(message.getSequenceId(), i);
+            assertEquals(message.getMessageId(), futures.get(i).get());
+            consumer.acknowledge(message);
+        }
+        assertNull(consumer.receive(100, TimeUnit.MILLISECONDS));
+
+        PersistentTopic persistentTopic = (PersistentTopic) pulsar.getBrokerService().getTopicReference(topic).get();
+        assertTrue(persistentTopic.getNumberOfEntries() < messages);
+    }
+
+    @Test
+    public void testDifferentKeysAreNotCoalesced() throws Exception {
+        final String topic = "persistent://" + newTopicName();
+        final int messages = 30;
+
+        @Cleanup
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("sub")
+                .subscriptionType(SubscriptionType.Key_Shared)
+                .subscribe();
+        @Cleanup
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING)
+                .topic(topic)
+                .enableBatching(false)
+                .create();
+
+        // Runs of 5 messages with the same key
+        List<CompletableFuture<MessageId>> futures = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            futures.add(producer.newMessage().key("key-" + (i / 5)).value("msg-" + i).sendAsync());
+        }
+        FutureUtil.waitForAll(futures).get();
+
+        for (int i = 0; i < messages; i++) {
+            Message<String> message = consumer.receive(5, TimeUnit.SECONDS);
+            assertEquals(message.getValue(), "msg-" + i);
+            assertEquals(message.getKey(), "key-" + (i / 5));
+            assertEquals(message.getMessageId(), futures.get(i).get());
+            consumer.acknowledge(message);
+        }
+
+        PersistentTopic persistentTopic = (PersistentTopic) pulsar.getBrokerService().getTopicReference(topic).get();
+        assertEquals(persistentTopic.getNumberOfEntries(), messages / 5);
+    }
+}
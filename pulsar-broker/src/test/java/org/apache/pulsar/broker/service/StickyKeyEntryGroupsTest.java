@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.apache.bookkeeper.mledger.Entry;
+import org.testng.annotations.Test;
+
+@Test(groups = "broker")
+public class StickyKeyEntryGroupsTest {
+
+    @Test
+    public void testGroupEntries() {
+        Consumer consumer1 = mock(Consumer.class);
+        Consumer consumer2 = mock(Consumer.class);
+        Entry[] entries = new Entry[5];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = mock(Entry.class);
+        }
+
+        StickyKeyEntryGroups groups = new StickyKeyEntryGroups();
+        groups.add(consumer2, entries[0], 10);
+        groups.add(consumer1, entries[1], 11);
+        groups.add(consumer2, entries[2], 12);
+        groups.add(consumer2, entries[3], 10);
+        groups.add(consumer1, entries[4], 13);
+
+        assertEquals(groups.getGroupCount(), 2);
+        assertSame(groups.getConsumer(0), consumer2);
+        assertEquals(groups.getEntryCount(0), 3);
+        assertSame(groups.getEntry(0, 0), entries[0]);
+        assertSame(groups.getEntry(0, 1), entries[2]);
+        assertSame(groups.getEntry(0, 2), entries[3]);
+        assertSame(groups.getConsumer(1), consumer1);
+        assertEquals(groups.getEntryCount(1), 2);
+        assertSame(groups.getEntry(1, 0), entries[1]);
+        assertSame(groups.getEntry(1, 1), entries[4]);
+
+        int[] stickyKeyHashes = groups.getGroupedStickyKeyHashes();
+        assertEquals(groups.getGroupOffset(0), 0);
+        assertEquals(groups.getGroupOffset(1), 3);
+        assertEquals(stickyKeyHashes[0], 10);
+        assertEquals(stickyKeyHashes[1], 12);
+        assertEquals(stickyKeyHashes[2], 10);
+        assertEquals(stickyKeyHashes[3], 11);
+        assertEquals(stickyKeyHashes[4], 13);
+
+        groups.clear();
+        assertEquals(groups.getGroupCount(), 0);
+        groups.add(consumer1, entries[0], 10);
+        assertEquals(groups.getGroupCount(), 1);
+        assertSame(groups.getConsumer(0), consumer1);
+        assertEquals(groups.getEntryCount(0), 1);
+        assertSame(groups.getEntry(0, 0), entries[0]);
+    }
+
+    @Test
+    public void testGroupManyEntriesAndConsumers() {
+        Random random = new Random(0);
+        List<Consumer> consumers = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            consumers.add(mock(Consumer.class));
+        }
+        StickyKeyEntryGroups groups = new StickyKeyEntryGroups();
+        for (int batch = 0; batch < 5; batch++) {
+            Map<Consumer, List<Entry>> expectedEntries = new LinkedHashMap<>();
+            Map<Consumer, List<Integer>> expectedHashes = new LinkedHashMap<>();
+            int numEntries = random.nextInt(2000);
+            int numConsumers = 1 + random.nextInt(consumers.size());
+            for (int i = 0; i < numEntries; i++) {
+                Consumer consumer = consumers.get(random.nextInt(numConsumers));
+                Entry entry = mock(Entry.class);
+                int stickyKeyHash = random.nextInt(Integer.MAX_VALUE);
+                groups.add(consumer, entry, stickyKeyHash);
+                expectedEntries.computeIfAbsent(consumer, k -> new ArrayList<>()).add(entry);
+                expectedHashes.computeIfAbsent(consumer, k -> new ArrayList<>()).add(stickyKeyHash);
+            }
+
+            assertEquals(groups.getGroupCount(), expectedEntries.size());
+            int group = 0;
+            for (Map.Entry<Consumer, List<Entry>> expected : expectedEntries.entrySet()) {
+                assertSame(groups.getConsumer(group), expected.getKey());
+                List<Entry> entries = expected.getValue();
+                List<Integer> hashes = expectedHashes.get(expected.getKey());
+                assertEquals(groups.getEntryCount(group), entries.size());
+                int offset = groups.getGroupOffset(group);
+                for (int i = 0; i < entries.size(); i++) {
+                    assertSame(groups.getEntry(group, i), entries.get(i));
+                    assertEquals(groups.getGroupedStickyKeyHashes()[offset + i], hashes.get(i).intValue());
+                }
+                group++;
+            }
+            groups.clear();
+        }
+    }
+}
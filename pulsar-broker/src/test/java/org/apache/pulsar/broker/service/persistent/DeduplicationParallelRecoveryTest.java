@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service.persistent;
+
+import static org.apache.pulsar.broker.stats.prometheus.PrometheusMetricsClient.Metric;
+import static org.apache.pulsar.broker.stats.prometheus.PrometheusMetricsClient.parseMetrics;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import com.google.common.collect.Multimap;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import lombok.Cleanup;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl;
+import org.apache.pulsar.PrometheusMetricsTestUtil;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.ProducerConsumerBase;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.common.util.FutureUtil;
+import org.awaitility.Awaitility;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test the recovery of the deduplication state by reading the ledgers in parallel.
+ */
+@Test(groups = "broker")
+public class DeduplicationParallelRecoveryTest extends ProducerConsumerBase {
+
+    @BeforeClass
+    @Override
+    protected void setup() throws Exception {
+        conf.setBrokerDeduplicationEnabled(true);
+        conf.setBrokerDeduplicationRecoveryReadParallelism(4);
+        // Make sure that all the entries are replayed on recovery
+        conf.setBrokerDeduplicationEntriesInterval(100_000);
+        conf.setBrokerDeduplicationSnapshotFrequencyInSeconds(0);
+        conf.setManagedLedgerMaxEntriesPerLedger(150);
+        conf.setManagedLedgerMinLedgerRolloverTimeMinutes(0);
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @AfterClass(alwaysRun = true)
+    @Override
+    protected void cleanup() throws Exception {
+        super.internalCleanup();
+    }
+
+    @Test
+    public void testRecoverSequenceIdsInParallel() throws Exception {
+        final String topic = "persistent://my-property/my-ns/dedup-parallel-recovery";
+        final int numProducers = 3;
+        final int messagesPerProducer = 300;
+
+        List<CompletableFuture<MessageId>> futures = new ArrayList<>();
+        List<Producer<String>> producers = new ArrayList<>();
+        for (int i = 0; i < numProducers; i++) {
+            producers.add(pulsarClient.newProducer(Schema.STRING)
+                    .topic(topic)
+                    .producerName("producer-" + i)
+                    .enableBatching(false)
+                    .create());
+        }
+        for (int j = 0; j < messagesPerProducer; j++) {
+            for (int i = 0; i < numProducers; i++) {
+                futures.add(producers.get(i).newMessage().value("msg-" + j).sequenceId(j).sendAsync());
+            }
+        }
+        FutureUtil.waitForAll(futures).get();
+        for (Producer<String> producer : producers) {
+            producer.close();
+        }
+
+        PersistentTopic persistentTopic =
+                (PersistentTopic) pulsar.getBrokerService().getTopicReference(topic).get();
+        ManagedLedgerImpl ml = (ManagedLedgerImpl) persistentTopic.getManagedLedger();
+        assertTrue(ml.getLedgersInfo().size() > 1);
+
+        admin.topics().unload(topic);
+        persistentTopic = (PersistentTopic) pulsar.getBrokerService().getTopic(topic, false).get().get();
+        MessageDeduplication messageDeduplication = persistentTopic.getMessageDeduplication();
+        Awaitility.await().until(messageDeduplication::isEnabled);
+
+        for (int i = 0; i < numProducers; i++) {
+            assertEquals(messageDeduplication.getLastPublishedSequenceId("producer-" + i), messagesPerProducer - 1);
+            assertEquals(messageDeduplication.highestSequencedPersisted.get("producer-" + i),
+                    messagesPerProducer - 1);
+        }
+
+        // The replay cursors are removed and the dedup cursor is moved past the replayed entries
+        for (ManagedCursor cursor : persistentTopic.getManagedLedger().getCursors()) {
+            assertTrue(cursor.isDurable());
+        }
+        assertFalse(messageDeduplication.getManagedCursor().hasMoreEntries());
+
+        // A message already published is still identified as duplicated
+        @Cleanup
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING)
+                .topic(topic)
+                .producerName("producer-0")
+                .enableBatching(false)
+                .create();
+        long numberOfEntries = persistentTopic.getManagedLedger().getNumberOfEntries();
+        producer.newMessage().value("dup").sequenceId(10).send();
+        assertEquals(persistentTopic.getManagedLedger().getNumberOfEntries(), numberOfEntries);
+        producer.newMessage().value("new").sequenceId(messagesPerProducer).send();
+        assertEquals(persistentTopic.getManagedLedger().getNumberOfEntries(), numberOfEntries + 1);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrometheusMetricsTestUtil.generate(pulsar, true, false, false, output);
+        Multimap<String, Metric> metrics = parseMetrics(output.toString());
+        assertFalse(metrics.get("pulsar_dedup_recovery_times_count").isEmpty());
+    }
+}
@@ -55,7 +55,7 @@ import org.apache.pulsar.client.api.Schema;
 import org.apache.pulsar.common.api.proto.MessageMetadata;
 import org.apache.pulsar.common.protocol.Commands;
 import org.apache.pulsar.broker.qos.AsyncTokenBucket;
-import org.apache.pulsar.common.util.collections.ConcurrentOpenHashMap;
+import org.apache.pulsar.common.util.collections.ConcurrentObjectLongHashMap;
 import org.apache.pulsar.compaction.CompactionServiceFactory;
 import org.awaitility.Awaitility;
 import org.testng.Assert;
@@ -96,31 +96,27 @@ public class MessageDuplicationTest extends BrokerTestBase {
         MessageDeduplication.MessageDupStatus status = messageDeduplication.isDuplicate(publishContext1, byteBuf1);
         assertEquals(status, MessageDeduplication.MessageDupStatus.NotDup);
 
-        Long lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 0);
+        long lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
+        assertEquals(lastSequenceIdPushed, 0);
 
         status = messageDeduplication.isDuplicate(publishContext2, byteBuf2);
         assertEquals(status, MessageDeduplication.MessageDupStatus.NotDup);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName2);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 1);
+        assertEquals(lastSequenceIdPushed, 1);
 
         byteBuf1 = getMessage(producerName1, 1);
         publishContext1 = getPublishContext(producerName1, 1);
         status = messageDeduplication.isDuplicate(publishContext1, byteBuf1);
         assertEquals(status, MessageDeduplication.MessageDupStatus.NotDup);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 1);
+        assertEquals(lastSequenceIdPushed, 1);
 
         byteBuf1 = getMessage(producerName1, 5);
         publishContext1 = getPublishContext(producerName1, 5);
         status = messageDeduplication.isDuplicate(publishContext1, byteBuf1);
         assertEquals(status, MessageDeduplication.MessageDupStatus.NotDup);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 5);
+        assertEquals(lastSequenceIdPushed, 5);
 
         byteBuf1 = getMessage(producerName1, 0);
         publishContext1 = getPublishContext(producerName1, 0);
@@ -128,8 +124,7 @@ public class MessageDuplicationTest extends BrokerTestBase {
         // should expect unknown because highestSequencePersisted is empty
         assertEquals(status, MessageDeduplication.MessageDupStatus.Unknown);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 5);
+        assertEquals(lastSequenceIdPushed, 5);
 
         // update highest sequence persisted
         messageDeduplication.highestSequencedPersisted.put(producerName1, 0L);
@@ -140,8 +135,7 @@ public class MessageDuplicationTest extends BrokerTestBase {
         // now that highestSequencedPersisted, message with seqId of zero can be classified as a dup
         assertEquals(status, MessageDeduplication.MessageDupStatus.Dup);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 5);
+        assertEquals(lastSequenceIdPushed, 5);
 
         // update highest sequence persisted
         messageDeduplication.highestSequencedPushed.put(producerName1, 0L);
@@ -151,15 +145,13 @@ public class MessageDuplicationTest extends BrokerTestBase {
         status = messageDeduplication.isDuplicate(publishContext1, byteBuf1);
         assertEquals(status, MessageDeduplication.MessageDupStatus.NotDup);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 5);
+        assertEquals(lastSequenceIdPushed, 5);
 
         publishContext1 = getPublishContext(producerName1, 4, 8);
         status = messageDeduplication.isDuplicate(publishContext1, byteBuf1);
         assertEquals(status, MessageDeduplication.MessageDupStatus.Unknown);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 5);
+        assertEquals(lastSequenceIdPushed, 5);
     }
 
     @Test
@@ -227,9 +219,10 @@ public class MessageDuplicationTest extends BrokerTestBase {
         assertFalse(inactiveProducers.containsKey(producerName3));
         field = MessageDeduplication.class.getDeclaredField("highestSequencedPushed");
         field.setAccessible(true);
-        ConcurrentOpenHashMap<String, Long> highestSequencedPushed = (ConcurrentOpenHashMap<String, Long>) field.get(messageDeduplication);
+        ConcurrentObjectLongHashMap<String> highestSequencedPushed =
+                (ConcurrentObjectLongHashMap<String>) field.get(messageDeduplication);
 
-        assertEquals((long) highestSequencedPushed.get(producerName1), 2L);
+        assertEquals(highestSequencedPushed.get(producerName1), 2L);
         assertFalse(highestSequencedPushed.containsKey(producerName2));
         assertFalse(highestSequencedPushed.containsKey(producerName3));
     }
@@ -281,22 +274,18 @@ public class MessageDuplicationTest extends BrokerTestBase {
         persistentTopic.publishMessage(byteBuf1, publishContext1);
         persistentTopic.addComplete(new PositionImpl(0, 1), null, publishContext1);
         verify(managedLedger, times(1)).asyncAddEntry(any(ByteBuf.class), any(), any());
-        Long lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 0);
+        long lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
+        assertEquals(lastSequenceIdPushed, 0);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPersisted.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 0);
+        assertEquals(lastSequenceIdPushed, 0);
 
         persistentTopic.publishMessage(byteBuf2, publishContext2);
         persistentTopic.addComplete(new PositionImpl(0, 2), null, publishContext2);
         verify(managedLedger, times(2)).asyncAddEntry(any(ByteBuf.class), any(), any());
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName2);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 1);
+        assertEquals(lastSequenceIdPushed, 1);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPersisted.get(producerName2);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 1);
+        assertEquals(lastSequenceIdPushed, 1);
 
         byteBuf1 = getMessage(producerName1, 1);
         publishContext1 = getPublishContext(producerName1, 1);
@@ -304,11 +293,9 @@ public class MessageDuplicationTest extends BrokerTestBase {
         persistentTopic.addComplete(new PositionImpl(0, 3), null, publishContext1);
         verify(managedLedger, times(3)).asyncAddEntry(any(ByteBuf.class), any(), any());
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 1);
+        assertEquals(lastSequenceIdPushed, 1);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPersisted.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 1);
+        assertEquals(lastSequenceIdPushed, 1);
 
         byteBuf1 = getMessage(producerName1, 5);
         publishContext1 = getPublishContext(producerName1, 5);
@@ -316,11 +303,9 @@ public class MessageDuplicationTest extends BrokerTestBase {
         persistentTopic.addComplete(new PositionImpl(0, 4), null, publishContext1);
         verify(managedLedger, times(4)).asyncAddEntry(any(ByteBuf.class), any(), any());
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 5);
+        assertEquals(lastSequenceIdPushed, 5);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPersisted.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 5);
+        assertEquals(lastSequenceIdPushed, 5);
 
         // publish dup
         byteBuf1 = getMessage(producerName1, 0);
@@ -328,8 +313,7 @@ public class MessageDuplicationTest extends BrokerTestBase {
         persistentTopic.publishMessage(byteBuf1, publishContext1);
         verify(managedLedger, times(4)).asyncAddEntry(any(ByteBuf.class), any(), any());
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 5);
+        assertEquals(lastSequenceIdPushed, 5);
         verify(publishContext1, times(1)).completed(eq(null), eq(-1L), eq(-1L));
 
         // publish message unknown dup status
@@ -339,11 +323,9 @@ public class MessageDuplicationTest extends BrokerTestBase {
         persistentTopic.publishMessage(byteBuf1, publishContext1);
         verify(managedLedger, times(5)).asyncAddEntry(any(ByteBuf.class), any(), any());
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 6);
+        assertEquals(lastSequenceIdPushed, 6);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPersisted.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 5);
+        assertEquals(lastSequenceIdPushed, 5);
 
         // publish same message again
         byteBuf1 = getMessage(producerName1, 6);
@@ -366,13 +348,13 @@ public class MessageDuplicationTest extends BrokerTestBase {
         assertEquals(messageDeduplication.highestSequencedPushed.size(), 2);
         assertEquals(messageDeduplication.highestSequencedPersisted.size(), 2);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertEquals(lastSequenceIdPushed.longValue(), 6);
+        assertEquals(lastSequenceIdPushed, 6);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPersisted.get(producerName1);
-        assertEquals(lastSequenceIdPushed.longValue(), 6);
+        assertEquals(lastSequenceIdPushed, 6);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName2);
-        assertEquals(lastSequenceIdPushed.longValue(), 1);
+        assertEquals(lastSequenceIdPushed, 1);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPersisted.get(producerName2);
-        assertEquals(lastSequenceIdPushed.longValue(), 1);
+        assertEquals(lastSequenceIdPushed, 1);
         verify(messageDeduplication, times(1)).resetHighestSequenceIdPushed();
 
         // try dup
@@ -382,8 +364,7 @@ public class MessageDuplicationTest extends BrokerTestBase {
         verify(managedLedger, times(6)).asyncAddEntry(any(ByteBuf.class), any(), any());
         verify(publishContext1, times(1)).completed(eq(null), eq(-1L), eq(-1L));
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 6);
+        assertEquals(lastSequenceIdPushed, 6);
 
         // try new message
         byteBuf1 = getMessage(producerName1, 8);
@@ -392,11 +373,9 @@ public class MessageDuplicationTest extends BrokerTestBase {
         verify(managedLedger, times(7)).asyncAddEntry(any(ByteBuf.class), any(), any());
         persistentTopic.addComplete(new PositionImpl(0, 5), null, publishContext1);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPushed.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 8);
+        assertEquals(lastSequenceIdPushed, 8);
         lastSequenceIdPushed = messageDeduplication.highestSequencedPersisted.get(producerName1);
-        assertNotNull(lastSequenceIdPushed);
-        assertEquals(lastSequenceIdPushed.longValue(), 8);
+        assertEquals(lastSequenceIdPushed, 8);
 
     }
 
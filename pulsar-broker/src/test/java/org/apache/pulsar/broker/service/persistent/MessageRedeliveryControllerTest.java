@@ -211,6 +211,29 @@ public class MessageRedeliveryControllerTest {
         assertFalse(controller.containsStickyKeyHashes(Set.of(105, 106)));
     }
 
+    @Test(dataProvider = "allowOutOfOrderDelivery", timeOut = 10000)
+    public void testContainsStickyKeyHashesInArray(boolean allowOutOfOrderDelivery) throws Exception {
+        MessageRedeliveryController controller = new MessageRedeliveryController(allowOutOfOrderDelivery);
+        int[] stickyKeyHashes = new int[]{99, 99, 100, 105, 105, 101, 106};
+        assertFalse(controller.containsStickyKeyHashes(stickyKeyHashes, 0, stickyKeyHashes.length));
+
+        controller.add(1, 1, 100);
+        controller.add(1, 2, 101);
+
+        assertEquals(controller.containsStickyKeyHashes(stickyKeyHashes, 0, stickyKeyHashes.length),
+                !allowOutOfOrderDelivery);
+        assertEquals(controller.containsStickyKeyHashes(stickyKeyHashes, 2, 1), !allowOutOfOrderDelivery);
+        assertEquals(controller.containsStickyKeyHashes(stickyKeyHashes, 4, 2), !allowOutOfOrderDelivery);
+        assertFalse(controller.containsStickyKeyHashes(stickyKeyHashes, 0, 2));
+        assertFalse(controller.containsStickyKeyHashes(stickyKeyHashes, 3, 2));
+        assertFalse(controller.containsStickyKeyHashes(stickyKeyHashes, 6, 1));
+        assertFalse(controller.containsStickyKeyHashes(stickyKeyHashes, 0, 0));
+
+        controller.remove(1, 1);
+        controller.remove(1, 2);
+        assertFalse(controller.containsStickyKeyHashes(stickyKeyHashes, 0, stickyKeyHashes.length));
+    }
+
     @Test(dataProvider = "allowOutOfOrderDelivery", timeOut = 10000)
     public void testGetMessagesToReplayNow(boolean allowOutOfOrderDelivery) throws Exception {
         MessageRedeliveryController controller = new MessageRedeliveryController(allowOutOfOrderDelivery);
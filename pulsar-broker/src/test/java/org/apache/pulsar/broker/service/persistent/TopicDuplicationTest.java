@@ -194,8 +194,8 @@ public class TopicDuplicationTest extends ProducerConsumerBase {
             assertNotNull(messageDeduplication.highestSequencedPushed);
             long seqId = messageDeduplication.getLastPublishedSequenceId(producerName);
             assertEquals(seqId, maxSeq);
-            assertEquals(messageDeduplication.highestSequencedPersisted.get(producerName).longValue(), maxSeq);
-            assertEquals(messageDeduplication.highestSequencedPushed.get(producerName).longValue(), maxSeq);
+            assertEquals(messageDeduplication.highestSequencedPersisted.get(producerName), maxSeq);
+            assertEquals(messageDeduplication.highestSequencedPushed.get(producerName), maxSeq);
         }).get();
     }
 
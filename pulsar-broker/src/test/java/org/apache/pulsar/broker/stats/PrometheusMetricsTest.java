@@ -1640,6 +1640,13 @@ public class PrometheusMetricsTest extends BrokerTestBase {
         cm = (List<Metric>) metrics.get("pulsar_active_connections");
         compareBrokerConnectionStateCount(cm, 1.0);
 
+        cm = (List<Metric>) metrics.get("pulsar_connection_flush_count");
+        assertEquals(cm.size(), 1);
+        assertTrue(cm.get(0).value > 0);
+        cm = (List<Metric>) metrics.get("pulsar_connection_flushed_bytes");
+        assertEquals(cm.size(), 1);
+        assertTrue(cm.get(0).value > 0);
+
         pulsarClient.close();
         statsOut = new ByteArrayOutputStream();
         PrometheusMetricsTestUtil.generate(pulsar, true, false, false, statsOut);
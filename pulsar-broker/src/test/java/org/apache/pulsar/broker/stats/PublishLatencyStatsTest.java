@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.stats;
+
+import static org.apache.pulsar.broker.stats.prometheus.PrometheusMetricsClient.Metric;
+import static org.apache.pulsar.broker.stats.prometheus.PrometheusMetricsClient.parseMetrics;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import com.google.common.collect.Multimap;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import java.io.ByteArrayOutputStream;
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.Cleanup;
+import org.apache.pulsar.PrometheusMetricsTestUtil;
+import org.apache.pulsar.broker.service.BrokerTestBase;
+import org.apache.pulsar.broker.stats.PublishLatencyStats.Phase;
+import org.apache.pulsar.broker.testcontext.PulsarTestContext;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.opentelemetry.OpenTelemetryAttributes;
+import org.awaitility.Awaitility;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = "broker")
+public class PublishLatencyStatsTest extends BrokerTestBase {
+
+    @BeforeClass
+    @Override
+    protected void setup() throws Exception {
+        conf.setPublishLatencyBreakdownSamplingRate(2);
+        baseSetup();
+    }
+
+    @Override
+    protected void customizeMainPulsarTestContextBuilder(PulsarTestContext.Builder builder) {
+        super.customizeMainPulsarTestContextBuilder(builder);
+        builder.enableOpenTelemetry(true);
+    }
+
+    @AfterClass(alwaysRun = true)
+    @Override
+    protected void cleanup() throws Exception {
+        internalCleanup();
+    }
+
+    @Test
+    public void testPublishLatencyBreakdown() throws Exception {
+        final String topic = "persistent://" + newTopicName();
+        final int messages = 20;
+
+        @Cleanup
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING)
+                .topic(topic)
+                .enableBatching(false)
+                .create();
+        for (int i = 0; i < messages; i++) {
+            producer.send("msg-" + i);
+        }
+
+        // The latency of the send receipt is recorded after the receipt is sent
+        PublishLatencyStats publishLatencyStats =
+                pulsar.getBrokerService().getTopicReference(topic).get().getPublishLatencyStats();
+        long[] counts = new long[Phase.values().length];
+        Awaitility.await().untilAsserted(() -> {
+            publishLatencyStats.refresh();
+            for (Phase phase : Phase.values()) {
+                counts[phase.ordinal()] += publishLatencyStats.getLatencyBuckets(phase).getCount();
+            }
+            assertEquals(counts[Phase.SEND_RECEIPT.ordinal()], messages / 2);
+        });
+        assertEquals(counts[Phase.DECODE.ordinal()], messages / 2);
+        assertEquals(counts[Phase.DEDUPLICATION.ordinal()], messages / 2);
+        assertEquals(counts[Phase.STORAGE_QUEUE.ordinal()], messages / 2);
+        assertEquals(counts[Phase.STORAGE_WRITE.ordinal()], messages / 2);
+        // No broker interceptor is configured
+        assertEquals(counts[Phase.INTERCEPTOR.ordinal()], 0);
+
+        MetricData metric = pulsarTestContext.getOpenTelemetryMetricReader().collectAllMetrics().stream()
+                .filter(m -> m.getName().equals(PublishLatencyStats.PUBLISH_PHASE_DURATION_METRIC_NAME))
+                .findFirst().orElseThrow();
+        HistogramPointData point = metric.getHistogramData().getPoints().stream()
+                .filter(p -> topic.equals(p.getAttributes().get(OpenTelemetryAttributes.PULSAR_TOPIC))
+                        && "storage_write".equals(p.getAttributes().get(PublishLatencyStats.PULSAR_PUBLISH_PHASE)))
+                .findFirst().orElseThrow();
+        assertEquals(point.getCount(), messages / 2);
+        assertEquals(point.getAttributes().get(OpenTelemetryAttributes.PULSAR_NAMESPACE), "prop/ns-abc");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrometheusMetricsTestUtil.generate(pulsar, true, false, false, output);
+        Multimap<String, Metric> metrics = parseMetrics(output.toString());
+        Collection<Metric> latencyCounts = metrics.get("pulsar_publish_phase_latency_count");
+        Set<String> phases = latencyCounts.stream()
+                .filter(m -> topic.equals(m.tags.get("topic")))
+                .map(m -> m.tags.get("phase"))
+                .collect(Collectors.toSet());
+        assertEquals(phases, Set.of("decode", "interceptor", "deduplication", "storage_queue", "storage_write",
+                "send_receipt"));
+        assertNotNull(metrics.get("pulsar_publish_phase_latency_le_0_01"));
+    }
+}
@@ -26,6 +26,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import org.apache.pulsar.broker.service.BrokerTestBase;
 import org.apache.pulsar.client.api.ClientBuilder;
@@ -215,6 +216,46 @@ public class MessageChecksumTest extends BrokerTestBase {
         });
     }
 
+    @Test
+    public void testCorruptedMessageIsRejectedByBroker() throws Exception {
+        // GIVEN
+        final String topicName = "persistent://prop/use/ns-abc/testCorruptedMessageIsRejectedByBroker";
+        PulsarTestClient pulsarTestClient = (PulsarTestClient) pulsarClient;
+        ProducerImpl<byte[]> producer = (ProducerImpl<byte[]>) pulsarClient.newProducer()
+                .topic(topicName)
+                .enableBatching(false)
+                .messageRoutingMode(MessageRoutingMode.SinglePartition)
+                .create();
+        Consumer<byte[]> consumer = pulsarClient.newConsumer()
+                .topic(topicName)
+                .subscriptionName("my-sub")
+                .subscribe();
+        producer.send("message-1".getBytes());
+
+        // WHEN
+        // a message is tampered after its checksum has been calculated, while it is pending
+        pulsarTestClient.dropOpSendMessages();
+        byte[] messageBytes = "message-2".getBytes();
+        TypedMessageBuilder<byte[]> messageBuilder = producer.newMessage().value(messageBytes);
+        CompletableFuture<MessageId> tamperedMessageSendFuture = messageBuilder.sendAsync();
+        pulsarTestClient.setPendingMessageCallback(null);
+        pulsarTestClient.disconnectProducerAndRejectReconnecting(producer);
+        ((TypedMessageBuilderImpl<byte[]>) messageBuilder).getContent().put(messageBytes.length - 1, (byte) '3');
+        pulsarTestClient.allowReconnecting();
+
+        // THEN
+        // the broker rejects the message and the following messages are still published in order
+        try {
+            tamperedMessageSendFuture.get(10, TimeUnit.SECONDS);
+            fail("Broker should detect the corrupted message");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof PulsarClientException.ChecksumException);
+        }
+        producer.send("message-4".getBytes());
+        assertEquals(new String(consumer.receive(1, TimeUnit.SECONDS).getData()), "message-1");
+        assertEquals(new String(consumer.receive(1, TimeUnit.SECONDS).getData()), "message-4");
+    }
+
     @Test
     public void testTamperingMessageIsDetected() throws Exception {
         // GIVEN
@@ -465,9 +465,14 @@ public class ClientCnx extends PulsarHandler {
         long highestSequenceId = sendReceipt.getHighestSequenceId();
         long ledgerId = -1;
         long entryId = -1;
+        int batchIndex = -1;
         if (sendReceipt.hasMessageId()) {
             ledgerId = sendReceipt.getMessageId().getLedgerId();
             entryId = sendReceipt.getMessageId().getEntryId();
+            if (sendReceipt.getMessageId().hasBatchIndex()) {
+                // The broker has coalesced the send with others into the same entry
+                batchIndex = sendReceipt.getMessageId().getBatchIndex();
+            }
         }
 
         if (ledgerId == -1 && entryId == -1) {
@@ -482,7 +487,7 @@ public class ClientCnx extends PulsarHandler {
 
         ProducerImpl<?> producer = producers.get(producerId);
         if (producer != null) {
-            producer.ackReceived(this, sequenceId, highestSequenceId, ledgerId, entryId);
+            producer.ackReceived(this, sequenceId, highestSequenceId, ledgerId, entryId, batchIndex);
         } else {
             if (log.isDebugEnabled()) {
                 log.debug("Producer is {} already closed, ignore published message [{}-{}]", producerId, ledgerId,
@@ -20,8 +20,6 @@ package org.apache.pulsar.client.impl;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
-import static com.scurrilous.circe.checksum.Crc32cIntChecksum.computeChecksum;
-import static com.scurrilous.circe.checksum.Crc32cIntChecksum.resumeChecksum;
 import static java.lang.String.format;
 import static org.apache.pulsar.client.impl.MessageImpl.SchemaState.Broken;
 import static org.apache.pulsar.client.impl.MessageImpl.SchemaState.None;
@@ -30,6 +28,8 @@ import static org.apache.pulsar.client.impl.ProducerBase.MultiSchemaMode.Enabled
 import static org.apache.pulsar.common.protocol.Commands.hasChecksum;
 import static org.apache.pulsar.common.protocol.Commands.readChecksum;
 import static org.apache.pulsar.common.util.Runnables.catchingAndLoggingThrowables;
+import static org.apache.pulsar.common.util.checksum.Crc32cChecksum.computeChecksum;
+import static org.apache.pulsar.common.util.checksum.Crc32cChecksum.resumeChecksum;
 import com.google.common.annotations.VisibleForTesting;
 import io.netty.buffer.ByteBuf;
 import io.netty.util.AbstractReferenceCounted;
@@ -1213,6 +1213,17 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
     }
 
     void ackReceived(ClientCnx cnx, long sequenceId, long highestSequenceId, long ledgerId, long entryId) {
+        ackReceived(cnx, sequenceId, highestSequenceId, ledgerId, entryId, -1);
+    }
+
+    /**
+     * Handle the receipt of a send.
+     *
+     * @param batchIndexOffset the index in the entry of the first message of the send, when the broker has coalesced
+     *                         it with other sends into the same entry, or -1
+     */
+    void ackReceived(ClientCnx cnx, long sequenceId, long highestSequenceId, long ledgerId, long entryId,
+                     int batchIndexOffset) {
         OpSendMsg op = null;
         synchronized (this) {
             op = pendingMessages.peek();
@@ -1261,7 +1272,7 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
 
         OpSendMsg finalOp = op;
         LAST_SEQ_ID_PUBLISHED_UPDATER.getAndUpdate(this, last -> Math.max(last, getHighestSequenceId(finalOp)));
-        op.setMessageId(ledgerId, entryId, partitionIndex);
+        op.setMessageId(ledgerId, entryId, partitionIndex, batchIndexOffset);
         if (op.totalChunks > 1) {
             if (op.chunkId == 0) {
                 op.chunkedMessageCtx.firstChunkMessageId = new MessageIdImpl(ledgerId, entryId, partitionIndex);
@@ -1612,8 +1623,18 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
             this.batchSizeByte = batchSizeByte;
         }
 
-        void setMessageId(long ledgerId, long entryId, int partitionIndex) {
-            if (msg != null) {
+        void setMessageId(long ledgerId, long entryId, int partitionIndex, int batchIndexOffset) {
+            if (batchIndexOffset >= 0) {
+                // The broker has coalesced the messages with others into the same entry
+                if (msg != null) {
+                    msg.setMessageId(new BatchMessageIdImpl(ledgerId, entryId, partitionIndex, batchIndexOffset));
+                } else {
+                    for (int batchIndex = 0; batchIndex < msgs.size(); batchIndex++) {
+                        msgs.get(batchIndex).setMessageId(new BatchMessageIdImpl(ledgerId, entryId, partitionIndex,
+                                batchIndexOffset + batchIndex));
+                    }
+                }
+            } else if (msg != null) {
                 msg.setMessageId(new MessageIdImpl(ledgerId, entryId, partitionIndex));
             } else if (msgs.size() == 1) {
                 // If there is only one message in batch, the producer will publish messages like non-batch
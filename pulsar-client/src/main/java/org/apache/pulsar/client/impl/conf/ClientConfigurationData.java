@@ -253,6 +253,13 @@ public class ClientConfigurationData implements Serializable, Cloneable {
     )
     private boolean enableBusyWait = false;
 
+    @ApiModelProperty(
+            name = "enableIoUring",
+            value = "Whether to use IOUringEventLoopGroup instead of EpollEventLoopGroup, falling back to epoll when"
+                    + " io_uring is not available."
+    )
+    private boolean enableIoUring = false;
+
     @ApiModelProperty(
             name = "listenerName",
             value = "Listener name for lookup. Clients can use listenerName to choose one of the listeners "
@@ -18,9 +18,9 @@
  */
 package org.apache.pulsar.common.protocol;
 
-import static com.scurrilous.circe.checksum.Crc32cIntChecksum.computeChecksum;
-import static com.scurrilous.circe.checksum.Crc32cIntChecksum.resumeChecksum;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.pulsar.common.util.checksum.Crc32cChecksum.computeChecksum;
+import static org.apache.pulsar.common.util.checksum.Crc32cChecksum.resumeChecksum;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 import io.netty.buffer.ByteBuf;
@@ -190,6 +190,7 @@ public class Commands {
         flags.setSupportsAuthRefresh(true);
         flags.setSupportsBrokerEntryMetadata(true);
         flags.setSupportsPartialProducer(true);
+        flags.setSupportsSendReceiptBatchIndex(true);
     }
 
     public static ByteBuf newConnect(String authMethodName, String authData, int protocolVersion, String libVersion,
@@ -274,6 +275,10 @@ public class Commands {
         }
         connect.setProtocolVersion(protocolVersion);
         setFeatureFlags(connect.setFeatureFlags());
+        if (proxyVersion != null) {
+            // The proxy doesn't know whether the clients behind it handle the batch index of the send receipts
+            connect.getFeatureFlags().setSupportsSendReceiptBatchIndex(false);
+        }
 
         return serializeWithSize(cmd);
     }
@@ -402,6 +407,13 @@ public class Commands {
         return cmd;
     }
 
+    public static BaseCommand newSendReceiptCommand(long producerId, long sequenceId, long highestId, long ledgerId,
+            long entryId, int batchIndex) {
+        BaseCommand cmd = newSendReceiptCommand(producerId, sequenceId, highestId, ledgerId, entryId);
+        cmd.getSendReceipt().getMessageId().setBatchIndex(batchIndex);
+        return cmd;
+    }
+
     public static ByteBuf newSendReceipt(long producerId, long sequenceId, long highestId, long ledgerId,
             long entryId) {
         return serializeWithSize(newSendReceiptCommand(producerId, sequenceId, highestId, ledgerId, entryId));
@@ -1905,17 +1917,24 @@ public class Commands {
         //
         // metadataAndPayload contains from magic-number to the payload included
 
+        int headersSize = 4 + 4 + cmd.getSerializedSize();
+        ByteBuf headers = PulsarByteBufAllocator.DEFAULT.buffer(headersSize);
+        writeCommandMessageHeaders(cmd, metadataAndPayload.readableBytes(), headers);
+        return ByteBufPair.get(headers, metadataAndPayload);
+    }
+
+    /**
+     * Write the frame size and the command that precede a message of {@code metadataAndPayloadSize} bytes.
+     */
+    public static void writeCommandMessageHeaders(BaseCommand cmd, int metadataAndPayloadSize, ByteBuf headers) {
         int cmdSize = cmd.getSerializedSize();
-        int totalSize = 4 + cmdSize + metadataAndPayload.readableBytes();
-        int headersSize = 4 + 4 + cmdSize;
+        int totalSize = 4 + cmdSize + metadataAndPayloadSize;
 
-        ByteBuf headers = PulsarByteBufAllocator.DEFAULT.buffer(headersSize);
         headers.writeInt(totalSize); // External frame
 
         // Write cmd
         headers.writeInt(cmdSize);
         cmd.writeTo(headers);
-        return ByteBufPair.get(headers, metadataAndPayload);
     }
 
     public static int getNumberOfMessagesInBatch(ByteBuf metadataAndPayload, String subscription,
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.checksum;
+
+import com.scurrilous.circe.checksum.Crc32cIntChecksum;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Checksums computed by the Circe library of BookKeeper, with SSE 4.2 instructions through JNI when the native
+ * library is available.
+ */
+public class CirceCrc32cProvider implements Crc32cProvider {
+
+    @Override
+    public int computeChecksum(ByteBuf buffer) {
+        return Crc32cIntChecksum.computeChecksum(buffer);
+    }
+
+    @Override
+    public int resumeChecksum(int previousChecksum, ByteBuf buffer) {
+        return Crc32cIntChecksum.resumeChecksum(previousChecksum, buffer);
+    }
+}
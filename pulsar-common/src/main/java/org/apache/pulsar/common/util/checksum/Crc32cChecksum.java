@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.checksum;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.netty.buffer.ByteBuf;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pulsar.common.util.Reflections;
+
+/**
+ * Holder of the provider computing the CRC32C checksums of the messages.
+ *
+ * <p/>The provider is selected with the {@value #PULSAR_CRC32C_PROVIDER} system property, which is either
+ * {@code circe}, the default, {@code java} or the name of a class implementing {@link Crc32cProvider}.
+ */
+@UtilityClass
+@Slf4j
+public class Crc32cChecksum {
+
+    public static final String PULSAR_CRC32C_PROVIDER = "pulsar.crc32c.provider";
+
+    public static final Crc32cProvider DEFAULT = createProvider(System.getProperty(PULSAR_CRC32C_PROVIDER, "circe"));
+
+    @VisibleForTesting
+    static Crc32cProvider createProvider(String provider) {
+        try {
+            switch (provider) {
+                case "circe":
+                    return new CirceCrc32cProvider();
+                case "java":
+                    return new JavaCrc32cProvider();
+                default:
+                    return Reflections.createInstance(provider, Crc32cProvider.class,
+                            Thread.currentThread().getContextClassLoader());
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to create the CRC32C provider {}, using the default provider", provider, e);
+            return new CirceCrc32cProvider();
+        }
+    }
+
+    /**
+     * Compute the checksum of the readable bytes of a buffer, without changing its reader index.
+     */
+    public static int computeChecksum(ByteBuf buffer) {
+        return DEFAULT.computeChecksum(buffer);
+    }
+
+    /**
+     * Compute the checksum of some data followed by the readable bytes of a buffer, from the checksum of the data.
+     */
+    public static int resumeChecksum(int previousChecksum, ByteBuf buffer) {
+        return DEFAULT.resumeChecksum(previousChecksum, buffer);
+    }
+}
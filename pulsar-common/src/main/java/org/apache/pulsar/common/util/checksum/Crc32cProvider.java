@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.checksum;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Computes the CRC32C checksums of the messages.
+ */
+public interface Crc32cProvider {
+
+    /**
+     * Compute the checksum of the readable bytes of a buffer, without changing its reader index.
+     */
+    int computeChecksum(ByteBuf buffer);
+
+    /**
+     * Compute the checksum of some data followed by the readable bytes of a buffer, from the checksum of the data.
+     */
+    int resumeChecksum(int previousChecksum, ByteBuf buffer);
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.checksum;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * Checksums computed by {@code java.util.zip.CRC32C} of the JDK, which the JIT compiles to the CRC32C instructions
+ * of the CPU. It requires Java 9 or later, and is bound through method handles that the JIT inlines.
+ *
+ * <p/>The direct buffers are read in place through their NIO views, the heap buffers through their array and the
+ * composite buffers component by component, so the data is never copied. As {@code CRC32C} can't start from a given
+ * checksum, the checksums are resumed by combining the checksum of the previous data with the checksum of the buffer,
+ * as done by zlib. A {@code CRC32C} instance is kept per thread and reset before each use.
+ */
+public class JavaCrc32cProvider implements Crc32cProvider {
+    // CRC32C polynomial, in reversed bit order
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    // x^(2^n) modulo the polynomial, for n from 0 to 31
+    private static final int[] X_POW_2N = new int[32];
+
+    private static final MethodHandle NEW_CRC32C;
+    private static final MethodHandle UPDATE_BYTE_BUFFER;
+
+    private static final FastThreadLocal<Checksum> LOCAL_CRC32C = new FastThreadLocal<Checksum>() {
+        @Override
+        protected Checksum initialValue() throws Exception {
+            try {
+                return (Checksum) NEW_CRC32C.invokeExact();
+            } catch (Throwable t) {
+                throw new IllegalStateException("Failed to create a CRC32C checksum", t);
+            }
+        }
+    };
+
+    static {
+        // x^1, in reversed bit order
+        int p = 1 << 30;
+        X_POW_2N[0] = p;
+        for (int n = 1; n < X_POW_2N.length; n++) {
+            p = multiplyModP(p, p);
+            X_POW_2N[n] = p;
+        }
+
+        MethodHandle newCrc32c = null;
+        MethodHandle updateByteBuffer = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            newCrc32c = lookup.findConstructor(Class.forName("java.util.zip.CRC32C"),
+                    MethodType.methodType(void.class)).asType(MethodType.methodType(Checksum.class));
+            updateByteBuffer = lookup.findVirtual(Checksum.class, "update",
+                    MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException e) {
+            // Running on Java 8
+        }
+        NEW_CRC32C = newCrc32c;
+        UPDATE_BYTE_BUFFER = updateByteBuffer;
+    }
+
+    public JavaCrc32cProvider() {
+        if (!isAvailable()) {
+            throw new IllegalStateException("java.util.zip.CRC32C requires Java 9 or later");
+        }
+    }
+
+    public static boolean isAvailable() {
+        return NEW_CRC32C != null && UPDATE_BYTE_BUFFER != null;
+    }
+
+    @Override
+    public int computeChecksum(ByteBuf buffer) {
+        try {
+            Checksum crc = LOCAL_CRC32C.get();
+            crc.reset();
+            update(crc, buffer, buffer.readerIndex(), buffer.readableBytes());
+            return (int) crc.getValue();
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to compute the checksum", t);
+        }
+    }
+
+    @Override
+    public int resumeChecksum(int previousChecksum, ByteBuf buffer) {
+        return combine(previousChecksum, computeChecksum(buffer), buffer.readableBytes());
+    }
+
+    private static void update(Checksum crc, ByteBuf buffer, int index, int length) throws Throwable {
+        if (buffer.hasArray()) {
+            crc.update(buffer.array(), buffer.arrayOffset() + index, length);
+        } else if (buffer.nioBufferCount() == 1) {
+            UPDATE_BYTE_BUFFER.invokeExact(crc, buffer.nioBuffer(index, length));
+        } else {
+            for (ByteBuffer nioBuffer : buffer.nioBuffers(index, length)) {
+                UPDATE_BYTE_BUFFER.invokeExact(crc, nioBuffer);
+            }
+        }
+    }
+
+    /**
+     * Get the checksum of two consecutive data from their checksums and the length of the second one.
+     */
+    static int combine(int checksum1, int checksum2, long length2) {
+        // Shift the first checksum by the number of bits of the second data
+        return multiplyModP(xPow8nModP(length2), checksum1) ^ checksum2;
+    }
+
+    /**
+     * Multiply two polynomials modulo the CRC32C polynomial, in reversed bit order.
+     */
+    private static int multiplyModP(int a, int b) {
+        int m = 1 << 31;
+        int p = 0;
+        while (true) {
+            if ((a & m) != 0) {
+                p ^= b;
+                if ((a & (m - 1)) == 0) {
+                    break;
+                }
+            }
+            m >>>= 1;
+            b = (b & 1) != 0 ? (b >>> 1) ^ POLYNOMIAL : b >>> 1;
+        }
+        return p;
+    }
+
+    /**
+     * Get x^(8n) modulo the CRC32C polynomial.
+     */
+    private static int xPow8nModP(long n) {
+        // x^0
+        int p = 1 << 31;
+        // Start from x^8 = x^(2^3)
+        int k = 3;
+        while (n != 0) {
+            if ((n & 1) != 0) {
+                p = multiplyModP(X_POW_2N[k & 31], p);
+            }
+            n >>>= 1;
+            k++;
+        }
+        return p;
+    }
+}
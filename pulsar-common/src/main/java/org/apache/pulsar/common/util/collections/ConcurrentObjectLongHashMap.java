@@ -0,0 +1,640 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Concurrent hash map from objects to primitive longs.
+ *
+ * <p>Provides similar methods as a {@code ConcurrentMap<K,Long>} but since it's an open hash map with linear probing,
+ * no node allocations are required to store the keys and values, and no boxing is required. Updating the value of a
+ * key that is already present doesn't allocate and keeps the key instance that was first inserted.
+ *
+ * <br>
+ * <b>WARN: method forEach do not guarantee thread safety, nor does the keys method.</b>
+ * <br>
+ * The forEach method is specifically designed for single-threaded usage. When iterating over a map
+ * with concurrent writes, it becomes possible for new values to be either observed or not observed.
+ * There is no guarantee that if we write value1 and value2, and are able to see value2, then we will also see value1.
+ * In some cases, it is even possible to encounter two mappings with the same key,
+ * leading the keys method to return a List containing two identical keys.
+ *
+ * @param <K> the type of the keys
+ */
+@SuppressWarnings("unchecked")
+public class ConcurrentObjectLongHashMap<K> {
+
+    private static final Object EmptyKey = null;
+    private static final Object DeletedKey = new Object();
+
+    public static final long ValueNotFound = -1L;
+
+    private static final int DefaultExpectedItems = 256;
+    private static final int DefaultConcurrencyLevel = 16;
+
+    private static final float DefaultMapFillFactor = 0.66f;
+    private static final float DefaultMapIdleFactor = 0.15f;
+
+    private static final float DefaultExpandFactor = 2;
+    private static final float DefaultShrinkFactor = 2;
+
+    private static final boolean DefaultAutoShrink = false;
+
+    private final Section<K>[] sections;
+
+    public static <K> Builder<K> newBuilder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Builder of ConcurrentObjectLongHashMap.
+     */
+    public static class Builder<K> {
+        int expectedItems = DefaultExpectedItems;
+        int concurrencyLevel = DefaultConcurrencyLevel;
+        float mapFillFactor = DefaultMapFillFactor;
+        float mapIdleFactor = DefaultMapIdleFactor;
+        float expandFactor = DefaultExpandFactor;
+        float shrinkFactor = DefaultShrinkFactor;
+        boolean autoShrink = DefaultAutoShrink;
+
+        public Builder<K> expectedItems(int expectedItems) {
+            this.expectedItems = expectedItems;
+            return this;
+        }
+
+        public Builder<K> concurrencyLevel(int concurrencyLevel) {
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
+        public Builder<K> mapFillFactor(float mapFillFactor) {
+            this.mapFillFactor = mapFillFactor;
+            return this;
+        }
+
+        public Builder<K> mapIdleFactor(float mapIdleFactor) {
+            this.mapIdleFactor = mapIdleFactor;
+            return this;
+        }
+
+        public Builder<K> expandFactor(float expandFactor) {
+            this.expandFactor = expandFactor;
+            return this;
+        }
+
+        public Builder<K> shrinkFactor(float shrinkFactor) {
+            this.shrinkFactor = shrinkFactor;
+            return this;
+        }
+
+        public Builder<K> autoShrink(boolean autoShrink) {
+            this.autoShrink = autoShrink;
+            return this;
+        }
+
+        public ConcurrentObjectLongHashMap<K> build() {
+            return new ConcurrentObjectLongHashMap<>(expectedItems, concurrencyLevel,
+                    mapFillFactor, mapIdleFactor, autoShrink, expandFactor, shrinkFactor);
+        }
+    }
+
+    /**
+     * An object-long consumer.
+     */
+    public interface ObjectLongConsumer<K> {
+        void accept(K key, long value);
+    }
+
+    private ConcurrentObjectLongHashMap(int expectedItems, int concurrencyLevel,
+                                        float mapFillFactor, float mapIdleFactor,
+                                        boolean autoShrink, float expandFactor, float shrinkFactor) {
+        checkArgument(expectedItems > 0);
+        checkArgument(concurrencyLevel > 0);
+        checkArgument(expectedItems >= concurrencyLevel);
+        checkArgument(mapFillFactor > 0 && mapFillFactor < 1);
+        checkArgument(mapIdleFactor > 0 && mapIdleFactor < 1);
+        checkArgument(mapFillFactor > mapIdleFactor);
+        checkArgument(expandFactor > 1);
+        checkArgument(shrinkFactor > 1);
+
+        int numSections = concurrencyLevel;
+        int perSectionExpectedItems = expectedItems / numSections;
+        int perSectionCapacity = (int) (perSectionExpectedItems / mapFillFactor);
+        this.sections = (Section<K>[]) new Section[numSections];
+
+        for (int i = 0; i < numSections; i++) {
+            sections[i] = new Section<>(perSectionCapacity, mapFillFactor, mapIdleFactor,
+                    autoShrink, expandFactor, shrinkFactor);
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Section<K> s : sections) {
+            size += s.size;
+        }
+        return size;
+    }
+
+    public long capacity() {
+        long capacity = 0;
+        for (Section<K> s : sections) {
+            capacity += s.capacity;
+        }
+        return capacity;
+    }
+
+    public boolean isEmpty() {
+        for (Section<K> s : sections) {
+            if (s.size != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    long getUsedBucketCount() {
+        long usedBucketCount = 0;
+        for (Section<K> s : sections) {
+            usedBucketCount += s.usedBuckets;
+        }
+        return usedBucketCount;
+    }
+
+    /**
+     * @param key
+     * @return the value or -1 if the key was not present.
+     */
+    public long get(K key) {
+        return getOrDefault(key, ValueNotFound);
+    }
+
+    /**
+     * @param key
+     * @param defaultValue
+     * @return the value or {@code defaultValue} if the key was not present.
+     */
+    public long getOrDefault(K key, long defaultValue) {
+        requireNonNull(key);
+        long h = hash(key);
+        return getSection(h).get(key, defaultValue, (int) h);
+    }
+
+    public boolean containsKey(K key) {
+        requireNonNull(key);
+        long h = hash(key);
+        return getSection(h).containsKey(key, (int) h);
+    }
+
+    /**
+     * @param key
+     * @param value
+     * @return the previous value associated with the key or -1 if the key was not present.
+     */
+    public long put(K key, long value) {
+        requireNonNull(key);
+        long h = hash(key);
+        return getSection(h).put(key, value, (int) h, false);
+    }
+
+    /**
+     * @param key
+     * @param value
+     * @return the current value associated with the key or -1 if the key was not present and the value was inserted.
+     */
+    public long putIfAbsent(K key, long value) {
+        requireNonNull(key);
+        long h = hash(key);
+        return getSection(h).put(key, value, (int) h, true);
+    }
+
+    /**
+     * Remove an existing entry if found.
+     *
+     * @param key
+     * @return the value associated with the key or -1 if key was not present.
+     */
+    public long remove(K key) {
+        requireNonNull(key);
+        long h = hash(key);
+        return getSection(h).remove(key, (int) h);
+    }
+
+    private Section<K> getSection(long hash) {
+        // Use 32 msb out of long to get the section
+        final int sectionIdx = (int) (hash >>> 32) & (sections.length - 1);
+        return sections[sectionIdx];
+    }
+
+    public void clear() {
+        for (Section<K> s : sections) {
+            s.clear();
+        }
+    }
+
+    /**
+     * Iterate over all the entries in the map and apply the processor function to each of them.
+     * <p>
+     * <b>Warning: Do Not Guarantee Thread-Safety.</b>
+     * @param processor the function to apply to each entry
+     */
+    public void forEach(ObjectLongConsumer<? super K> processor) {
+        for (Section<K> s : sections) {
+            s.forEach(processor);
+        }
+    }
+
+    /**
+     * @return a new list of all keys (makes a copy).
+     */
+    public List<K> keys() {
+        List<K> keys = new ArrayList<>((int) size());
+        forEach((key, value) -> keys.add(key));
+        return keys;
+    }
+
+    // A section is a portion of the hash map that is covered by a single
+    @SuppressWarnings("serial")
+    private static final class Section<K> extends StampedLock {
+        // Keys and values are stored in parallel arrays, values are never boxed
+        private volatile Object[] keys;
+        private volatile long[] values;
+
+        private volatile int capacity;
+        private final int initCapacity;
+        private static final AtomicIntegerFieldUpdater<Section> SIZE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Section.class, "size");
+
+        private volatile int size;
+        private int usedBuckets;
+        private int resizeThresholdUp;
+        private int resizeThresholdBelow;
+        private final float mapFillFactor;
+        private final float mapIdleFactor;
+        private final float expandFactor;
+        private final float shrinkFactor;
+        private final boolean autoShrink;
+
+        Section(int capacity, float mapFillFactor, float mapIdleFactor, boolean autoShrink,
+                float expandFactor, float shrinkFactor) {
+            this.capacity = alignToPowerOfTwo(capacity);
+            this.initCapacity = this.capacity;
+            this.keys = new Object[this.capacity];
+            this.values = new long[this.capacity];
+            this.size = 0;
+            this.usedBuckets = 0;
+            this.autoShrink = autoShrink;
+            this.mapFillFactor = mapFillFactor;
+            this.mapIdleFactor = mapIdleFactor;
+            this.expandFactor = expandFactor;
+            this.shrinkFactor = shrinkFactor;
+            this.resizeThresholdUp = (int) (this.capacity * mapFillFactor);
+            this.resizeThresholdBelow = (int) (this.capacity * mapIdleFactor);
+        }
+
+        long get(K key, long defaultValue, int keyHash) {
+            long stamp = tryOptimisticRead();
+            boolean acquiredLock = false;
+            // add local variables here, so OutOfBound won't happen
+            Object[] keys = this.keys;
+            long[] values = this.values;
+            if (keys.length != values.length) {
+                // A rehash is in progress, wait for it by taking the read lock
+                stamp = readLock();
+                acquiredLock = true;
+                keys = this.keys;
+                values = this.values;
+            }
+            // use keys.length as capacity to avoid rehash changing capacity
+            int bucket = signSafeMod(keyHash, keys.length);
+
+            try {
+                while (true) {
+                    // First try optimistic locking
+                    Object storedKey = keys[bucket];
+                    long storedValue = values[bucket];
+
+                    if (!acquiredLock && validate(stamp)) {
+                        // The values we have read are consistent
+                        if (key.equals(storedKey)) {
+                            return storedValue;
+                        } else if (storedKey == EmptyKey) {
+                            // Not found
+                            return defaultValue;
+                        }
+                    } else {
+                        // Fallback to acquiring read lock
+                        if (!acquiredLock) {
+                            stamp = readLock();
+                            acquiredLock = true;
+                            // update local variables
+                            keys = this.keys;
+                            values = this.values;
+                            bucket = signSafeMod(keyHash, keys.length);
+                            storedKey = keys[bucket];
+                            storedValue = values[bucket];
+                        }
+
+                        if (key.equals(storedKey)) {
+                            return storedValue;
+                        } else if (storedKey == EmptyKey) {
+                            // Not found
+                            return defaultValue;
+                        }
+                    }
+
+                    bucket = (bucket + 1) & (keys.length - 1);
+                }
+            } finally {
+                if (acquiredLock) {
+                    unlockRead(stamp);
+                }
+            }
+        }
+
+        boolean containsKey(K key, int keyHash) {
+            long stamp = readLock();
+            try {
+                int bucket = signSafeMod(keyHash, capacity);
+                while (true) {
+                    Object storedKey = keys[bucket];
+                    if (key.equals(storedKey)) {
+                        return true;
+                    } else if (storedKey == EmptyKey) {
+                        return false;
+                    }
+                    bucket = (bucket + 1) & (keys.length - 1);
+                }
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+
+        long put(K key, long value, int keyHash, boolean onlyIfAbsent) {
+            long stamp = writeLock();
+            int bucket = signSafeMod(keyHash, capacity);
+
+            // Remember where we find the first available spot
+            int firstDeletedKey = -1;
+
+            try {
+                while (true) {
+                    Object storedKey = keys[bucket];
+
+                    if (key.equals(storedKey)) {
+                        long storedValue = values[bucket];
+                        if (!onlyIfAbsent) {
+                            // Over written an old value for same key
+                            values[bucket] = value;
+                        }
+                        return storedValue;
+                    } else if (storedKey == EmptyKey) {
+                        // Found an empty bucket. This means the key is not in the map. If we've already seen a deleted
+                        // key, we should write at that position
+                        if (firstDeletedKey != -1) {
+                            bucket = firstDeletedKey;
+                        } else {
+                            ++usedBuckets;
+                        }
+
+                        values[bucket] = value;
+                        keys[bucket] = key;
+                        SIZE_UPDATER.incrementAndGet(this);
+                        return ValueNotFound;
+                    } else if (storedKey == DeletedKey) {
+                        // The bucket contained a different deleted key
+                        if (firstDeletedKey == -1) {
+                            firstDeletedKey = bucket;
+                        }
+                    }
+
+                    bucket = (bucket + 1) & (keys.length - 1);
+                }
+            } finally {
+                if (usedBuckets > resizeThresholdUp) {
+                    try {
+                        // Expand the hashmap
+                        int newCapacity = alignToPowerOfTwo((int) (capacity * expandFactor));
+                        rehash(newCapacity);
+                    } finally {
+                        unlockWrite(stamp);
+                    }
+                } else {
+                    unlockWrite(stamp);
+                }
+            }
+        }
+
+        private long remove(K key, int keyHash) {
+            long stamp = writeLock();
+            int bucket = signSafeMod(keyHash, capacity);
+
+            try {
+                while (true) {
+                    Object storedKey = keys[bucket];
+                    if (key.equals(storedKey)) {
+                        long storedValue = values[bucket];
+                        SIZE_UPDATER.decrementAndGet(this);
+                        cleanBucket(bucket);
+                        return storedValue;
+                    } else if (storedKey == EmptyKey) {
+                        // Key wasn't found
+                        return ValueNotFound;
+                    }
+
+                    bucket = (bucket + 1) & (keys.length - 1);
+                }
+
+            } finally {
+                if (autoShrink && size < resizeThresholdBelow) {
+                    try {
+                        // Shrinking must at least ensure initCapacity,
+                        // so as to avoid frequent shrinking and expansion near initCapacity
+                        int newCapacity = Math.max(alignToPowerOfTwo((int) (capacity / shrinkFactor)), initCapacity);
+                        int newResizeThresholdUp = (int) (newCapacity * mapFillFactor);
+                        if (newCapacity < capacity && newResizeThresholdUp > size) {
+                            // shrink the hashmap
+                            rehash(newCapacity);
+                        }
+                    } finally {
+                        unlockWrite(stamp);
+                    }
+                } else {
+                    unlockWrite(stamp);
+                }
+            }
+        }
+
+        private void cleanBucket(int bucket) {
+            int nextInArray = (bucket + 1) & (keys.length - 1);
+            if (keys[nextInArray] == EmptyKey) {
+                keys[bucket] = EmptyKey;
+                values[bucket] = ValueNotFound;
+                --usedBuckets;
+
+                // Cleanup all the buckets that were in `DeletedKey` state, so that we can reduce unnecessary expansions
+                bucket = (bucket - 1) & (keys.length - 1);
+                while (keys[bucket] == DeletedKey) {
+                    keys[bucket] = EmptyKey;
+                    values[bucket] = ValueNotFound;
+                    --usedBuckets;
+
+                    bucket = (bucket - 1) & (keys.length - 1);
+                }
+            } else {
+                keys[bucket] = DeletedKey;
+                values[bucket] = ValueNotFound;
+            }
+        }
+
+        void clear() {
+            long stamp = writeLock();
+
+            try {
+                if (autoShrink && capacity > initCapacity) {
+                    shrinkToInitCapacity();
+                } else {
+                    Arrays.fill(keys, EmptyKey);
+                    Arrays.fill(values, ValueNotFound);
+                    this.size = 0;
+                    this.usedBuckets = 0;
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        public void forEach(ObjectLongConsumer<? super K> processor) {
+            // Take a reference to the data tables, if there is a rehashing event, we'll be
+            // simply iterating over a snapshot of the data.
+            long stamp = readLock();
+            Object[] keys = this.keys;
+            long[] values = this.values;
+            unlockRead(stamp);
+
+            // Go through all the buckets for this section. We try to renew the stamp only after a validation
+            // error, otherwise we keep going with the same.
+            stamp = 0;
+            for (int bucket = 0; bucket < keys.length; bucket++) {
+                if (stamp == 0) {
+                    stamp = tryOptimisticRead();
+                }
+
+                Object storedKey = keys[bucket];
+                long storedValue = values[bucket];
+
+                if (!validate(stamp)) {
+                    // Fallback to acquiring read lock
+                    stamp = readLock();
+
+                    try {
+                        storedKey = keys[bucket];
+                        storedValue = values[bucket];
+                    } finally {
+                        unlockRead(stamp);
+                    }
+
+                    stamp = 0;
+                }
+
+                if (storedKey != DeletedKey && storedKey != EmptyKey) {
+                    processor.accept((K) storedKey, storedValue);
+                }
+            }
+        }
+
+        private void rehash(int newCapacity) {
+            Object[] newKeys = new Object[newCapacity];
+            long[] newValues = new long[newCapacity];
+
+            // Re-hash table
+            for (int i = 0; i < keys.length; i++) {
+                Object storedKey = keys[i];
+                if (storedKey != EmptyKey && storedKey != DeletedKey) {
+                    insertKeyValueNoLock(newKeys, newValues, (K) storedKey, values[i]);
+                }
+            }
+
+            keys = newKeys;
+            values = newValues;
+            usedBuckets = size;
+            // Capacity needs to be updated after the values, so that we won't see
+            // a capacity value bigger than the actual array size
+            capacity = newCapacity;
+            resizeThresholdUp = (int) (capacity * mapFillFactor);
+            resizeThresholdBelow = (int) (capacity * mapIdleFactor);
+        }
+
+        private void shrinkToInitCapacity() {
+            keys = new Object[initCapacity];
+            values = new long[initCapacity];
+            size = 0;
+            usedBuckets = 0;
+            // Capacity needs to be updated after the values, so that we won't see
+            // a capacity value bigger than the actual array size
+            capacity = initCapacity;
+            resizeThresholdUp = (int) (capacity * mapFillFactor);
+            resizeThresholdBelow = (int) (capacity * mapIdleFactor);
+        }
+
+        private static <K> void insertKeyValueNoLock(Object[] keys, long[] values, K key, long value) {
+            int bucket = signSafeMod(hash(key), keys.length);
+
+            while (true) {
+                Object storedKey = keys[bucket];
+
+                if (storedKey == EmptyKey) {
+                    // The bucket is empty, so we can use it
+                    keys[bucket] = key;
+                    values[bucket] = value;
+                    return;
+                }
+
+                bucket = (bucket + 1) & (keys.length - 1);
+            }
+        }
+    }
+
+    private static final long HashMixer = 0xc6a4a7935bd1e995L;
+    private static final int R = 47;
+
+    static final <K> long hash(K key) {
+        long hash = key.hashCode() * HashMixer;
+        hash ^= hash >>> R;
+        hash *= HashMixer;
+        return hash;
+    }
+
+    static final int signSafeMod(long n, int max) {
+        return (int) n & (max - 1);
+    }
+
+    private static int alignToPowerOfTwo(int n) {
+        return (int) Math.pow(2, 32 - Integer.numberOfLeadingZeros(n - 1));
+    }
+}
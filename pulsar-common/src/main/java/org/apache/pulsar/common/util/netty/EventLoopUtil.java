@@ -56,16 +56,37 @@ public class EventLoopUtil {
      * @return an EventLoopGroup suitable for the current platform
      */
     public static EventLoopGroup newEventLoopGroup(int nThreads, boolean enableBusyWait, ThreadFactory threadFactory) {
+        return newEventLoopGroup(nThreads, enableBusyWait, false, threadFactory);
+    }
+
+    /**
+     * @param enableIoUring
+     *            whether to use an io_uring based EventLoopGroup, falling back to epoll when io_uring is not
+     *            available. It takes precedence over enableBusyWait, which is only applied to the epoll
+     *            event loops
+     * @return an EventLoopGroup suitable for the current platform
+     */
+    public static EventLoopGroup newEventLoopGroup(int nThreads, boolean enableBusyWait, boolean enableIoUring,
+                                                   ThreadFactory threadFactory) {
         if (Epoll.isAvailable()) {
-            String enableIoUring = System.getProperty(ENABLE_IO_URING);
+            String enableIoUringProperty = System.getProperty(ENABLE_IO_URING);
 
             // By default, io_uring will not be enabled, even if available. The environment variable will be used:
             // enable.io_uring=1
-            if (StringUtils.equalsAnyIgnoreCase(enableIoUring, "1", "true")) {
+            if (StringUtils.equalsAnyIgnoreCase(enableIoUringProperty, "1", "true")) {
                 // Throw exception if IOUring cannot be used
                 IOUring.ensureAvailability();
                 return new IOUringEventLoopGroup(nThreads, threadFactory);
+            } else if (enableIoUring && IOUring.isAvailable()) {
+                if (enableBusyWait) {
+                    log.warn("Busy-wait is not supported by the io_uring event loops and is ignored");
+                }
+                return new IOUringEventLoopGroup(nThreads, threadFactory);
             } else {
+                if (enableIoUring) {
+                    log.warn("io_uring is not available, falling back to epoll: {}",
+                            IOUring.unavailabilityCause().getMessage());
+                }
                 if (!enableBusyWait) {
                     // Regular Epoll based event loop
                     return new EpollEventLoopGroup(nThreads, threadFactory);
@@ -91,6 +112,9 @@ public class EventLoopUtil {
                 return eventLoopGroup;
             }
         } else {
+            if (enableIoUring) {
+                log.warn("io_uring is not available, falling back to NIO");
+            }
             // Fallback to NIO
             return new NioEventLoopGroup(nThreads, threadFactory);
         }
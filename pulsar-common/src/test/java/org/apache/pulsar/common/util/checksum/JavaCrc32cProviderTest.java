@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.checksum;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import com.scurrilous.circe.checksum.Crc32cIntChecksum;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.Random;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class JavaCrc32cProviderTest {
+    private final JavaCrc32cProvider provider = new JavaCrc32cProvider();
+
+    @DataProvider(name = "sizes")
+    public static Object[][] sizes() {
+        return new Object[][] {{0}, {1}, {7}, {64}, {1000}, {65536}, {1_000_003}};
+    }
+
+    @Test(dataProvider = "sizes")
+    public void testComputeChecksum(int size) {
+        byte[] data = randomBytes(size);
+        int expected = Crc32cIntChecksum.computeChecksum(Unpooled.wrappedBuffer(data));
+
+        ByteBuf heap = Unpooled.wrappedBuffer(data);
+        assertEquals(provider.computeChecksum(heap), expected);
+        assertEquals(heap.readerIndex(), 0);
+
+        ByteBuf direct = PooledByteBufAllocator.DEFAULT.directBuffer(size + 10);
+        direct.writeBytes(new byte[10]).writeBytes(data).skipBytes(10);
+        assertEquals(provider.computeChecksum(direct), expected);
+        assertEquals(provider.computeChecksum(direct.slice()), expected);
+        assertEquals(direct.readerIndex(), 10);
+        direct.release();
+
+        CompositeByteBuf composite = ByteBufAllocator.DEFAULT.compositeDirectBuffer();
+        composite.addComponent(true, Unpooled.wrappedBuffer(data, 0, size / 3));
+        composite.addComponent(true, Unpooled.directBuffer(size).writeBytes(data, size / 3, size - size / 3));
+        assertEquals(provider.computeChecksum(composite), expected);
+        composite.release();
+    }
+
+    @Test(dataProvider = "sizes")
+    public void testResumeChecksum(int size) {
+        byte[] data = randomBytes(size);
+        int expected = Crc32cIntChecksum.computeChecksum(Unpooled.wrappedBuffer(data));
+        for (int split : new int[] {0, size / 2, size}) {
+            int checksum = provider.computeChecksum(Unpooled.wrappedBuffer(data, 0, split));
+            ByteBuf rest = Unpooled.directBuffer(size).writeBytes(data, split, size - split);
+            assertEquals(provider.resumeChecksum(checksum, rest), expected);
+            assertEquals(Crc32cIntChecksum.resumeChecksum(checksum, rest), expected);
+            rest.release();
+        }
+    }
+
+    @Test
+    public void testCreateProvider() {
+        assertTrue(Crc32cChecksum.createProvider("circe") instanceof CirceCrc32cProvider);
+        assertTrue(Crc32cChecksum.createProvider("java") instanceof JavaCrc32cProvider);
+        assertTrue(Crc32cChecksum.createProvider(JavaCrc32cProvider.class.getName()) instanceof JavaCrc32cProvider);
+        assertTrue(Crc32cChecksum.createProvider("org.example.Unknown") instanceof CirceCrc32cProvider);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.Cleanup;
+import org.testng.annotations.Test;
+
+/**
+ * Test the concurrent object-long hashmap class.
+ */
+public class ConcurrentObjectLongHashMapTest {
+
+    @Test
+    public void testConstructor() {
+        try {
+            ConcurrentObjectLongHashMap.newBuilder()
+                    .expectedItems(0)
+                    .build();
+            fail("should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+
+        try {
+            ConcurrentObjectLongHashMap.newBuilder()
+                    .expectedItems(4)
+                    .concurrencyLevel(8)
+                    .build();
+            fail("should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void simpleInsertions() {
+        ConcurrentObjectLongHashMap<String> map = ConcurrentObjectLongHashMap.<String>newBuilder()
+                .expectedItems(16)
+                .build();
+
+        assertTrue(map.isEmpty());
+        assertEquals(map.put("1", 1), -1);
+        assertFalse(map.isEmpty());
+
+        assertEquals(map.put("2", 2), -1);
+        assertEquals(map.put("3", 3), -1);
+
+        assertEquals(map.size(), 3);
+
+        assertEquals(map.get("1"), 1);
+        assertEquals(map.size(), 3);
+
+        assertEquals(map.remove("1"), 1);
+        assertEquals(map.size(), 2);
+        assertEquals(map.get("1"), -1);
+        assertEquals(map.getOrDefault("1", Long.MIN_VALUE), Long.MIN_VALUE);
+        assertFalse(map.containsKey("1"));
+        assertEquals(map.get("5"), -1);
+        assertEquals(map.size(), 2);
+
+        assertEquals(map.put("1", 1), -1);
+        assertEquals(map.size(), 3);
+        assertEquals(map.put("1", 4), 1);
+        assertEquals(map.size(), 3);
+
+        assertEquals(map.putIfAbsent("1", 5), 4);
+        assertEquals(map.get("1"), 4);
+        assertEquals(map.putIfAbsent("6", 6), -1);
+        assertEquals(map.get("6"), 6);
+    }
+
+    @Test
+    public void testNegativeValues() {
+        ConcurrentObjectLongHashMap<String> map = ConcurrentObjectLongHashMap.<String>newBuilder()
+                .expectedItems(16)
+                .concurrencyLevel(1)
+                .build();
+
+        map.put("a", -1);
+        assertTrue(map.containsKey("a"));
+        assertEquals(map.getOrDefault("a", Long.MIN_VALUE), -1);
+        assertEquals(map.size(), 1);
+    }
+
+    @Test
+    public void testKeyInstanceIsRetained() {
+        ConcurrentObjectLongHashMap<String> map = ConcurrentObjectLongHashMap.<String>newBuilder()
+                .expectedItems(16)
+                .concurrencyLevel(1)
+                .build();
+
+        String key = new String("producer");
+        map.put(key, 1);
+        map.put(new String("producer"), 2);
+
+        List<String> keys = map.keys();
+        assertEquals(keys.size(), 1);
+        assertSame(keys.get(0), key);
+        assertEquals(map.get("producer"), 2);
+    }
+
+    @Test
+    public void testRehashing() {
+        int n = 16;
+        ConcurrentObjectLongHashMap<String> map = ConcurrentObjectLongHashMap.<String>newBuilder()
+                .expectedItems(n / 2)
+                .concurrencyLevel(1)
+                .build();
+        assertEquals(map.capacity(), n);
+        assertEquals(map.size(), 0);
+
+        for (int i = 0; i < n; i++) {
+            map.put(Integer.toString(i), i);
+        }
+
+        assertEquals(map.capacity(), 2 * n);
+        assertEquals(map.size(), n);
+        for (int i = 0; i < n; i++) {
+            assertEquals(map.get(Integer.toString(i)), i);
+        }
+    }
+
+    @Test
+    public void testExpandAndShrink() {
+        ConcurrentObjectLongHashMap<String> map = ConcurrentObjectLongHashMap.<String>newBuilder()
+                .expectedItems(2)
+                .concurrencyLevel(1)
+                .autoShrink(true)
+                .mapIdleFactor(0.25f)
+                .build();
+        assertEquals(map.capacity(), 4);
+
+        map.put("k1", 1);
+        map.put("k2", 2);
+        map.put("k3", 3);
+
+        // expand hashmap
+        assertEquals(map.capacity(), 8);
+
+        assertEquals(map.remove("k1"), 1);
+        // not shrink
+        assertEquals(map.capacity(), 8);
+        assertEquals(map.remove("k2"), 2);
+        // shrink hashmap
+        assertEquals(map.capacity(), 4);
+
+        assertEquals(map.get("k3"), 3);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(map.getUsedBucketCount(), 0);
+    }
+
+    @Test
+    public void testRemoveDeletedKeys() {
+        ConcurrentObjectLongHashMap<String> map = ConcurrentObjectLongHashMap.<String>newBuilder()
+                .expectedItems(16)
+                .concurrencyLevel(1)
+                .build();
+
+        for (int i = 0; i < 10; i++) {
+            map.put("key-" + i, i);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals(map.remove("key-" + i), i);
+        }
+        assertTrue(map.isEmpty());
+        assertEquals(map.getUsedBucketCount(), 0);
+        assertEquals(map.remove("key-0"), -1);
+    }
+
+    @Test
+    public void testForEach() {
+        ConcurrentObjectLongHashMap<String> map = ConcurrentObjectLongHashMap.<String>newBuilder().build();
+        Map<String, Long> expected = new HashMap<>();
+        Random random = new Random();
+        for (int i = 0; i < 1000; i++) {
+            long value = random.nextLong();
+            map.put("key-" + i, value);
+            expected.put("key-" + i, value);
+        }
+
+        Map<String, Long> found = new HashMap<>();
+        map.forEach(found::put);
+        assertEquals(found, expected);
+
+        List<String> keys = map.keys();
+        Collections.sort(keys);
+        List<String> expectedKeys = new ArrayList<>(expected.keySet());
+        Collections.sort(expectedKeys);
+        assertEquals(keys, expectedKeys);
+    }
+
+    @Test
+    public void concurrentInsertionsAndReads() throws Throwable {
+        ConcurrentObjectLongHashMap<String> map = ConcurrentObjectLongHashMap.<String>newBuilder()
+                .expectedItems(16)
+                .concurrencyLevel(1)
+                .build();
+        @Cleanup("shutdownNow")
+        ExecutorService executor = Executors.newCachedThreadPool();
+
+        final int nThreads = 16;
+        final int n = 10_000;
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < nThreads; i++) {
+            final int threadIdx = i;
+
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < n; j++) {
+                    String key = threadIdx + "-" + j;
+                    map.put(key, j);
+                    assertEquals(map.get(key), j);
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        assertEquals(map.size(), n * nThreads);
+    }
+}
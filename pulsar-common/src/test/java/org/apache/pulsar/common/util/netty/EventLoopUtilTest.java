@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.netty;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.testng.annotations.Test;
+
+public class EventLoopUtilTest {
+
+    @Test
+    public void testDefaultEventLoopGroup() throws Exception {
+        EventLoopGroup eventLoopGroup = EventLoopUtil.newEventLoopGroup(1, false,
+                new DefaultThreadFactory("test-event-loop"));
+        try {
+            if (Epoll.isAvailable()) {
+                assertTrue(eventLoopGroup instanceof EpollEventLoopGroup);
+                assertEquals(EventLoopUtil.getClientSocketChannelClass(eventLoopGroup), EpollSocketChannel.class);
+                assertEquals(EventLoopUtil.getServerSocketChannelClass(eventLoopGroup),
+                        EpollServerSocketChannel.class);
+            } else {
+                assertTrue(eventLoopGroup instanceof NioEventLoopGroup);
+            }
+        } finally {
+            EventLoopUtil.shutdownGracefully(eventLoopGroup).get();
+        }
+    }
+
+    @Test
+    public void testIoUringEventLoopGroupWithFallback() throws Exception {
+        EventLoopGroup eventLoopGroup = EventLoopUtil.newEventLoopGroup(1, false, true,
+                new DefaultThreadFactory("test-event-loop"));
+        try {
+            if (Epoll.isAvailable() && IOUring.isAvailable()) {
+                assertTrue(eventLoopGroup instanceof IOUringEventLoopGroup);
+                assertEquals(EventLoopUtil.getClientSocketChannelClass(eventLoopGroup), IOUringSocketChannel.class);
+                assertEquals(EventLoopUtil.getServerSocketChannelClass(eventLoopGroup),
+                        IOUringServerSocketChannel.class);
+            } else if (Epoll.isAvailable()) {
+                assertTrue(eventLoopGroup instanceof EpollEventLoopGroup);
+            } else {
+                assertTrue(eventLoopGroup instanceof NioEventLoopGroup);
+                assertEquals(EventLoopUtil.getClientSocketChannelClass(eventLoopGroup), NioSocketChannel.class);
+                assertEquals(EventLoopUtil.getServerSocketChannelClass(eventLoopGroup),
+                        NioServerSocketChannel.class);
+            }
+        } finally {
+            EventLoopUtil.shutdownGracefully(eventLoopGroup).get();
+        }
+    }
+}
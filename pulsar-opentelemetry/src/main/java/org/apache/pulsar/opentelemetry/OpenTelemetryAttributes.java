@@ -29,4 +29,14 @@ public interface OpenTelemetryAttributes {
      * {@link OpenTelemetryService}.
      */
     AttributeKey<String> PULSAR_CLUSTER = AttributeKey.stringKey("pulsar.cluster");
+
+    /**
+     * The name of the Pulsar namespace.
+     */
+    AttributeKey<String> PULSAR_NAMESPACE = AttributeKey.stringKey("pulsar.namespace");
+
+    /**
+     * The name of the Pulsar topic.
+     */
+    AttributeKey<String> PULSAR_TOPIC = AttributeKey.stringKey("pulsar.topic");
 }
@@ -776,6 +776,13 @@ public class ProxyConfiguration implements PulsarConfiguration {
     )
     private int numAcceptorThreads = 1;
 
+    @FieldContext(
+            category = CATEGORY_SERVER,
+            doc = "Option to use the io_uring transport for the Netty IO and acceptor threads, instead of epoll."
+                    + " It falls back to epoll when io_uring is not available on the host. Default is false."
+    )
+    private boolean enableIoUring = false;
+
     @Deprecated
     @FieldContext(
             category = CATEGORY_PLUGIN,
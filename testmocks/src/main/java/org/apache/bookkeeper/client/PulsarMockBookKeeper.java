@@ -89,6 +89,8 @@ public class PulsarMockBookKeeper extends BookKeeper {
     }
 
     final Queue<Long> addEntryDelaysMillis = new ConcurrentLinkedQueue<>();
+    // Delay of the reads and of the adds without a programmed delay, to simulate the latency of the bookies
+    volatile long defaultDelayMillis = 1;
     final List<CompletableFuture<Void>> failures = new ArrayList<>();
     final List<CompletableFuture<Void>> addEntryFailures = new ArrayList<>();
 
@@ -367,6 +369,14 @@ public class PulsarMockBookKeeper extends BookKeeper {
         addEntryDelaysMillis.add(unit.toMillis(delay));
     }
 
+    /**
+     * Set the delay of the reads and of the adds without a programmed delay. It can be set to 0 to only measure the
+     * overhead of the client.
+     */
+    public void setDefaultDelay(long delay, TimeUnit unit) {
+        defaultDelayMillis = unit.toMillis(delay);
+    }
+
     static int getExceptionCode(Throwable t) {
         if (t instanceof BKException) {
             return ((BKException) t).getCode();
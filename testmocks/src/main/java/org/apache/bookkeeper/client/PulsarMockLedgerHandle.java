@@ -110,9 +110,11 @@ public class PulsarMockLedgerHandle extends LedgerHandle {
 
                 log.debug("Entries read: {}", seq);
 
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
+                if (bk.defaultDelayMillis > 0) {
+                    try {
+                        Thread.sleep(bk.defaultDelayMillis);
+                    } catch (InterruptedException e) {
+                    }
                 }
 
                 Enumeration<LedgerEntry> entries = new Enumeration<LedgerEntry>() {
@@ -171,12 +173,14 @@ public class PulsarMockLedgerHandle extends LedgerHandle {
         bk.getAddEntryFailure().thenComposeAsync((res) -> {
                 Long delayMillis = bk.addEntryDelaysMillis.poll();
                 if (delayMillis == null) {
-                    delayMillis = 1L;
+                    delayMillis = bk.defaultDelayMillis;
                 }
 
-                try {
-                    Thread.sleep(delayMillis);
-                } catch (InterruptedException e) {
+                if (delayMillis > 0) {
+                    try {
+                        Thread.sleep(delayMillis);
+                    } catch (InterruptedException e) {
+                    }
                 }
 
                 if (fenced) {